@@ -0,0 +1,306 @@
+package heap;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A bucket queue: an adaptable priority queue for integer keys in a small
+ * fixed range, 0 to levels - 1 (256 levels by default). It never compares
+ * keys; each key has its own bucket, and each bucket is a doubly linked
+ * list of its entries in the order they arrived, so equal keys come out
+ * first in, first out.
+ *
+ * An occupancy bitmap, one bit per bucket packed into longs, finds the
+ * first non-empty bucket for min and removeMin with one
+ * numberOfTrailingZeros per 64 levels, so with 256 levels that is at most
+ * four words. insert, remove, replaceKey and replaceValue are O(1) list
+ * splices.
+ *
+ * Keys outside the range are rejected with an InvalidKeyException. The
+ * entries handed out are the list nodes themselves, and keep working
+ * until they are removed.
+ */
+
+public class BucketQueue<V> implements AdaptablePriorityQueue<Integer,V> {
+
+	private static final int DEFAULT_LEVELS = 256;
+
+	private final Node<V>[] _heads;
+	private final Node<V>[] _tails;
+	// Bit b % 64 of word b / 64 is set if bucket b is not empty
+	private final long[] _occupied;
+	private int _size;
+
+	/**
+	 * Creates an empty queue for keys 0 to 255.
+	 */
+	public BucketQueue() {
+		this(DEFAULT_LEVELS);
+	}
+
+	/**
+	 * Creates an empty queue for keys 0 to levels - 1.
+	 *
+	 * @param levels the number of distinct keys
+	 * @throws IllegalArgumentException if levels is not positive
+	 */
+	@SuppressWarnings("unchecked")
+	public BucketQueue(int levels) {
+		if (levels < 1){
+			throw new IllegalArgumentException("ERROR: A bucket queue needs at least one level");
+		}
+		_heads = new Node[levels];
+		_tails = new Node[levels];
+		_occupied = new long[(levels + 63) >>> 6];
+		_size = 0;
+	}
+
+	/**
+	 * Returns the number of entries in the queue.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns whether the queue is empty.
+	 *
+	 * @return true if the queue is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns the number of distinct keys the queue accepts.
+	 *
+	 * @return one more than the largest valid key
+	 */
+	public int getLevels() {
+		return _heads.length;
+	}
+
+	/**
+	 * Returns but does not remove the entry with minimum key that was
+	 * inserted first.
+	 *
+	 * @return the entry with the minimum key in the queue
+	 * @throws EmptyPriorityQueueException if the queue is empty
+	 */
+	public Entry<Integer,V> min() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return _heads[this.firstOccupied()];
+	}
+
+	/**
+	 * Inserts a key-value pair at the back of its key's bucket and
+	 * returns the entry created. This method runs in O(1) time.
+	 *
+	 * @param key to be used as the key the queue is sorting with
+	 * @param value stored with the associated key in the queue
+	 * @return the entry created using the key/value parameters
+	 * @throws InvalidKeyException if the key is null or out of range
+	 */
+	public Entry<Integer,V> insert(Integer key, V value) throws InvalidKeyException {
+		int k = this.checkKey(key);
+		Node<V> node = new Node<V>(this, k, value);
+		this.append(node);
+		_size++;
+		return node;
+	}
+
+	/**
+	 * Removes and returns the entry with minimum key that was inserted
+	 * first. This method scans the occupancy bitmap, one word per 64
+	 * levels.
+	 *
+	 * @return the entry with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the queue is empty
+	 */
+	public Entry<Integer,V> removeMin() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		Node<V> min = _heads[this.firstOccupied()];
+		this.unlink(min);
+		this.detach(min);
+		return min;
+	}
+
+	/**
+	 * Removes and returns the given entry from the queue. This method
+	 * runs in O(1) time.
+	 *
+	 * @param entry to be removed from the queue
+	 * @return the entry specified for removal by the parameter
+	 * @throws InvalidEntryException if the entry is not in this queue
+	 */
+	public Entry<Integer,V> remove(Entry<Integer,V> entry) throws InvalidEntryException {
+		Node<V> node = this.checkEntry(entry);
+		this.unlink(node);
+		this.detach(node);
+		return node;
+	}
+
+	/**
+	 * Replaces the key of the given entry in O(1) time. The entry moves
+	 * to the back of its new key's bucket, as if it had just been
+	 * inserted; if the key is unchanged it keeps its place.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this queue
+	 * @throws InvalidKeyException if the key is null or out of range
+	 */
+	public Integer replaceKey(Entry<Integer,V> entry, Integer key) throws InvalidEntryException, InvalidKeyException {
+		Node<V> node = this.checkEntry(entry);
+		int k = this.checkKey(key);
+		int oldKey = node._key;
+		if (k != oldKey){
+			this.unlink(node);
+			node._key = k;
+			this.append(node);
+		}
+		return oldKey;
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1)
+	 * time.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this queue
+	 */
+	public V replaceValue(Entry<Integer,V> entry, V value) throws InvalidEntryException {
+		Node<V> node = this.checkEntry(entry);
+		V oldValue = node._value;
+		node._value = value;
+		return oldValue;
+	}
+
+	// The lowest non-empty bucket; the queue must not be empty
+	private int firstOccupied() {
+		int word = 0;
+		while (_occupied[word] == 0){
+			word++;
+		}
+		return (word << 6) + Long.numberOfTrailingZeros(_occupied[word]);
+	}
+
+	// Puts a node at the back of the list of its bucket
+	private void append(Node<V> node) {
+		int bucket = node._key;
+		node._next = null;
+		node._prev = _tails[bucket];
+		if (node._prev == null){
+			_heads[bucket] = node;
+			_occupied[bucket >>> 6] |= 1L << bucket;
+		} else {
+			node._prev._next = node;
+		}
+		_tails[bucket] = node;
+	}
+
+	// Takes a node out of the list of its bucket
+	private void unlink(Node<V> node) {
+		int bucket = node._key;
+		if (node._prev == null){
+			_heads[bucket] = node._next;
+		} else {
+			node._prev._next = node._next;
+		}
+		if (node._next == null){
+			_tails[bucket] = node._prev;
+		} else {
+			node._next._prev = node._prev;
+		}
+		if (_heads[bucket] == null){
+			_occupied[bucket >>> 6] &= ~(1L << bucket);
+		}
+		node._prev = null;
+		node._next = null;
+	}
+
+	// Marks a removed node as no longer in the queue
+	private void detach(Node<V> node) {
+		node._queue = null;
+		_size--;
+	}
+
+	/**
+	 * Checks that the key is present and within the queue's range, and
+	 * unboxes it.
+	 *
+	 * @param key to be checked
+	 * @return the key as an int
+	 * @throws InvalidKeyException if the key is null or out of range
+	 */
+	private int checkKey(Integer key) throws InvalidKeyException {
+		if (key == null){
+			throw new InvalidKeyException("ERROR: Key is null");
+		}
+		int k = key;
+		if (k < 0 || k >= _heads.length){
+			throw new InvalidKeyException("ERROR: Key " + k + " is outside 0 to " + (_heads.length - 1));
+		}
+		return k;
+	}
+
+	/**
+	 * Checks that the entry is a node currently in this queue.
+	 *
+	 * @param entry to be checked
+	 * @return the entry cast as a Node
+	 * @throws InvalidEntryException if the entry is not in this queue
+	 */
+	@SuppressWarnings("unchecked")
+	private Node<V> checkEntry(Entry<Integer,V> entry) throws InvalidEntryException {
+		if (!(entry instanceof Node)){
+			throw new InvalidEntryException("Invalid entry");
+		}
+		Node<V> node = (Node<V>) entry;
+		if (node._queue != this){
+			throw new InvalidEntryException("ERROR: Entry is not in this queue");
+		}
+		return node;
+	}
+
+	private void checkNotEmpty() throws EmptyPriorityQueueException {
+		if (_size == 0){
+			throw new EmptyPriorityQueueException("ERROR: Queue is empty");
+		}
+	}
+
+	/**
+	 * An entry of the queue, which is also a node in its bucket's doubly
+	 * linked list.
+	 */
+	private static final class Node<V> implements Entry<Integer,V> {
+
+		private BucketQueue<V> _queue;
+		private int _key;
+		private V _value;
+		private Node<V> _prev;
+		private Node<V> _next;
+
+		private Node(BucketQueue<V> queue, int key, V value) {
+			_queue = queue;
+			_key = key;
+			_value = value;
+		}
+
+		public Integer getKey() {
+			return _key;
+		}
+
+		public V getValue() {
+			return _value;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * This class is used to test the functionality of BucketQueue.
+ */
+
+/* Since equal keys must come out first in, first out, the random test
+ * checks against a list kept in exactly the order the queue should
+ * return: by key, then by when the entry last got its key.
+ */
+
+public class BucketQueueTest {
+
+	/**
+	 * To check that removeMin() returns keys in order, and equal keys in
+	 * the order they were inserted.
+	 */
+	@Test
+	public void testFifoAmongEqualKeys() {
+		BucketQueue<String> queue = new BucketQueue<String>();
+		queue.insert(200, "A");
+		queue.insert(3, "B");
+		queue.insert(200, "C");
+		queue.insert(3, "D");
+		queue.insert(64, "E");
+		queue.insert(3, "F");
+		assertThat(queue.min().getValue(), is("B"));
+		String[] expected = {"B", "D", "F", "E", "A", "C"};
+		for (String value : expected){
+			assertThat(queue.removeMin().getValue(), is(value));
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+	/**
+	 * To check that replaceKey() moves an entry to the back of its new
+	 * bucket, and that an unchanged key keeps its place.
+	 */
+	@Test
+	public void testReplaceKey() {
+		BucketQueue<String> queue = new BucketQueue<String>();
+		Entry<Integer,String> a = queue.insert(5, "A");
+		queue.insert(5, "B");
+		Entry<Integer,String> c = queue.insert(9, "C");
+		assertThat(queue.replaceKey(c, 5), is(9));
+		assertThat(queue.replaceKey(a, 5), is(5));
+		assertThat(queue.replaceValue(a, "Z"), is("A"));
+		assertThat(queue.removeMin().getValue(), is("Z"));
+		assertThat(queue.removeMin().getValue(), is("B"));
+		assertThat(queue.removeMin().getValue(), is("C"));
+	}
+
+	/**
+	 * To check a random mix of operations, over a range that spans
+	 * several bitmap words, against a list in the expected order.
+	 */
+	@Test
+	public void testRandomOperations() {
+		int levels = 300;
+		BucketQueue<Integer> queue = new BucketQueue<Integer>(levels);
+		List<Entry<Integer,Integer>> expected = new ArrayList<Entry<Integer,Integer>>();
+		Random random = new Random(14);
+		for (int step = 0; step < 20000; step++){
+			int op = random.nextInt(10);
+			if (op < 4 || expected.isEmpty()){
+				Entry<Integer,Integer> entry = queue.insert(random.nextInt(levels), step);
+				this.place(expected, entry);
+			} else if (op < 6){
+				assertThat(queue.removeMin(), is(expected.remove(0)));
+			} else if (op < 7){
+				Entry<Integer,Integer> entry = expected.remove(random.nextInt(expected.size()));
+				queue.remove(entry);
+			} else {
+				Entry<Integer,Integer> entry = expected.get(random.nextInt(expected.size()));
+				int key = random.nextInt(levels);
+				if (key != entry.getKey()){
+					expected.remove(entry);
+					queue.replaceKey(entry, key);
+					this.place(expected, entry);
+				}
+			}
+			assertThat(queue.size(), is(expected.size()));
+		}
+		for (Entry<Integer,Integer> entry : expected){
+			assertThat(queue.removeMin(), is(entry));
+		}
+	}
+
+	// Puts an entry after every entry with a key less than or equal to its own
+	private void place(List<Entry<Integer,Integer>> list, Entry<Integer,Integer> entry) {
+		int i = list.size();
+		while (i > 0 && list.get(i - 1).getKey() > entry.getKey()){
+			i--;
+		}
+		list.add(i, entry);
+	}
+
+	/**
+	 * Here we test that a key at or above the number of levels throws an
+	 * InvalidKeyException.
+	 */
+	@Test(expected = InvalidKeyException.class)
+	public void testInsertTooLargeThrowsInvalidKeyException() {
+		BucketQueue<String> queue = new BucketQueue<String>(16);
+		queue.insert(16, "A");
+	}
+
+	/**
+	 * Here we test that a negative key throws an InvalidKeyException.
+	 */
+	@Test(expected = InvalidKeyException.class)
+	public void testReplaceKeyNegativeThrowsInvalidKeyException() {
+		BucketQueue<String> queue = new BucketQueue<String>();
+		queue.replaceKey(queue.insert(1, "A"), -1);
+	}
+
+	/**
+	 * Here we test that an entry can't be used once it has been removed.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testRemovedEntryThrowsInvalidEntryException() {
+		BucketQueue<String> queue = new BucketQueue<String>();
+		Entry<Integer,String> entry = queue.insert(1, "A");
+		queue.removeMin();
+		queue.remove(entry);
+	}
+
+	/**
+	 * Here we test that removeMin() on an empty queue throws an
+	 * EmptyPriorityQueueException.
+	 */
+	@Test(expected = EmptyPriorityQueueException.class)
+	public void testRemoveMinThrowsEmptyPriorityQueueException() {
+		BucketQueue<String> queue = new BucketQueue<String>();
+		queue.removeMin();
+	}
+
+}
@@ -0,0 +1,231 @@
+package heap;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.locks.StampedLock;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A thread-safe adaptable priority queue built on MyHeap. Every change
+ * to the heap is made under the write lock of a StampedLock, so changes
+ * happen one at a time. min(), size() and isEmpty() first try an
+ * optimistic read: they read the heap without locking and then check
+ * that no writer got in the way, only taking the read lock if one did.
+ * Readers that just peek at the minimum therefore don't queue behind
+ * each other, and only wait for a writer when they actually race one.
+ *
+ * Entries returned by this queue are the heap's own MyHeapEntry objects.
+ * Their keys and values should only be changed through replaceKey() and
+ * replaceValue() on this queue.
+ */
+
+public class ConcurrentMyHeap<K,V> implements AdaptablePriorityQueue<K,V> {
+
+	private final MyHeap<K,V> _heap;
+	private final StampedLock _lock;
+
+	/**
+	 * Creates an empty (binary) heap with the given comparator.
+	 *
+	 * @param comparator the comparator to be used for heap keys
+	 */
+	public ConcurrentMyHeap(Comparator<K> comparator) {
+		this(comparator, 2);
+	}
+
+	/**
+	 * Creates an empty d-ary heap with the given comparator.
+	 *
+	 * @param comparator the comparator to be used for heap keys
+	 * @param arity the number of children per node
+	 * @throws IllegalArgumentException if arity is less than 2
+	 */
+	public ConcurrentMyHeap(Comparator<K> comparator, int arity) {
+		_heap = new MyHeap<K,V>(comparator, arity);
+		_lock = new StampedLock();
+	}
+
+	/**
+	 * Returns the size of the heap, without locking unless a writer is
+	 * active at the same time.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		long stamp = _lock.tryOptimisticRead();
+		int size = _heap.size();
+		if (!_lock.validate(stamp)){
+			stamp = _lock.readLock();
+			try {
+				size = _heap.size();
+			} finally {
+				_lock.unlockRead(stamp);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns whether the heap is empty, without locking unless a writer
+	 * is active at the same time.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key, without
+	 * locking unless a writer is active at the same time.
+	 *
+	 * @return the entry with the minimum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+
+	/* The optimistic read may see the heap in the middle of a change (for
+	 * example a stale root, or null if it looked empty), but the stamp
+	 * tells us whether that could have happened. We only trust what we
+	 * read, including "empty", once the stamp has been validated.
+	 */
+
+	public Entry<K,V> min() throws EmptyPriorityQueueException {
+		long stamp = _lock.tryOptimisticRead();
+		Entry<K,V> min = _heap.peek();
+		if (!_lock.validate(stamp)){
+			stamp = _lock.readLock();
+			try {
+				min = _heap.peek();
+			} finally {
+				_lock.unlockRead(stamp);
+			}
+		}
+		if (min == null){
+			throw new EmptyPriorityQueueException("ERROR: Heap is empty");
+		}
+		return min;
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the entry created using the key/value parameters
+	 * @throws InvalidKeyException if the key is not suitable for this heap
+	 */
+	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
+		long stamp = _lock.writeLock();
+		try {
+			return _heap.insert(key, value);
+		} finally {
+			_lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key.
+	 *
+	 * @return the entry with the with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
+		long stamp = _lock.writeLock();
+		try {
+			return _heap.removeMin();
+		} finally {
+			_lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Removes and returns the minimum entry, or returns null if the heap
+	 * is empty. Checking isEmpty() and then calling removeMin() is not
+	 * safe when other threads are removing too; this does both at once.
+	 *
+	 * @return the entry with the minimum key, now removed, or null
+	 */
+	public Entry<K,V> pollMin() {
+		long stamp = _lock.writeLock();
+		try {
+			return _heap.isEmpty() ? null : _heap.removeMin();
+		} finally {
+			_lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Removes up to max entries with the least keys and adds them to the
+	 * collection, least key first, all under one write lock. See
+	 * MyHeap.drainTo.
+	 *
+	 * @param collection to add the removed entries to
+	 * @param max the most entries to remove
+	 * @return the number of entries removed
+	 * @throws IllegalArgumentException if max is negative
+	 */
+	public int drainTo(Collection<? super Entry<K,V>> collection, int max) throws IllegalArgumentException {
+		long stamp = _lock.writeLock();
+		try {
+			return _heap.drainTo(collection, max);
+		} finally {
+			_lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap.
+	 *
+	 * @param entry to be removed from the heap
+	 * @return the entry specified for removal by the parameter
+	 * @throws InvalidEntryException if the entry cannot be removed from this heap
+	 */
+	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+		long stamp = _lock.writeLock();
+		try {
+			return _heap.remove(entry);
+		} finally {
+			_lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Replaces the key of the given entry.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is invalid
+	 * @throws InvalidKeyException if the key is invalid
+	 */
+	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		long stamp = _lock.writeLock();
+		try {
+			return _heap.replaceKey(entry, key);
+		} finally {
+			_lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Replaces the value of the given entry.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry cannot have its value replaced
+	 */
+	public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {
+		long stamp = _lock.writeLock();
+		try {
+			return _heap.replaceValue(entry, value);
+		} finally {
+			_lock.unlockWrite(stamp);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+
+/**
+ * This class is used to test the functionality of ConcurrentMyHeap.
+ */
+
+/* Since ConcurrentMyHeap hands every operation to a MyHeap, we only test the
+ * basic operations single-threaded and leave the rest to MyHeapTest. The
+ * other tests run several threads at once: writers inserting and removing
+ * while a reader keeps calling min(), and then all threads draining the heap
+ * together, checking that no entry is lost or handed out twice.
+ */
+
+public class ConcurrentMyHeapTest {
+
+	private static final int THREADS = 4;
+	private static final int PER_THREAD = 5000;
+
+	/**
+	 * To check the basic operations, which simply go through to MyHeap.
+	 */
+	@Test
+	public void testSingleThreaded() {
+		ConcurrentMyHeap<Integer, String> heap = new ConcurrentMyHeap<Integer, String>(new IntegerComparator());
+		assertThat(heap.isEmpty(), is(true));
+
+		heap.insert(11, "A");
+		Entry<Integer,String> entry = heap.insert(13, "B");
+		heap.insert(64, "C");
+		assertThat(heap.size(), is(3));
+		assertThat(heap.min().getKey(), is(11));
+
+		heap.replaceKey(entry, 7);
+		assertThat(heap.replaceValue(entry, "D"), is("B"));
+		assertThat(heap.removeMin().getValue(), is("D"));
+		assertThat(heap.remove(heap.min()).getKey(), is(11));
+		assertThat(heap.pollMin().getKey(), is(64));
+		assertTrue(heap.pollMin() == null);
+	}
+
+	/**
+	 * To check that min() keeps returning real entries of the heap while
+	 * other threads insert and remove. Each writer inserts its keys and then
+	 * removes as many entries as it inserted, so the heap ends up empty.
+	 */
+	@Test
+	public void testMinWhileWriting() throws InterruptedException {
+		final ConcurrentMyHeap<Integer, Integer> heap = new ConcurrentMyHeap<Integer, Integer>(new IntegerComparator());
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		final AtomicBoolean done = new AtomicBoolean(false);
+
+		Thread reader = new Thread() {
+			public void run() {
+				while (!done.get()){
+					try {
+						Entry<Integer,Integer> min = heap.min();
+						if (min.getKey() < 0 || !min.getKey().equals(min.getValue())){
+							errors.add(new AssertionError("Bad entry " + min.getKey()));
+						}
+					} catch (EmptyPriorityQueueException e){
+						// Fine, the writers may have emptied it
+					} catch (Throwable t){
+						errors.add(t);
+					}
+				}
+			}
+		};
+		reader.start();
+
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++){
+			final int offset = t * PER_THREAD;
+			writers.add(new Thread() {
+				public void run() {
+					for (int i = 0; i < PER_THREAD; i++){
+						heap.insert(offset + i, offset + i);
+					}
+					for (int i = 0; i < PER_THREAD; i++){
+						heap.removeMin();
+					}
+				}
+			});
+		}
+		for (Thread writer : writers){
+			writer.start();
+		}
+		for (Thread writer : writers){
+			writer.join();
+		}
+		done.set(true);
+		reader.join();
+
+		assertThat(errors.size(), is(0));
+		assertThat(heap.size(), is(0));
+	}
+
+	/**
+	 * To check that threads draining the heap together get every entry
+	 * exactly once, and that each thread sees its entries in order.
+	 */
+	@Test
+	public void testConcurrentDrain() throws InterruptedException {
+		final ConcurrentMyHeap<Integer, Integer> heap = new ConcurrentMyHeap<Integer, Integer>(new IntegerComparator(), 4);
+		for (int i = THREADS * PER_THREAD - 1; i >= 0; i--){
+			heap.insert(i, i);
+		}
+
+		final List<List<Integer>> drained = new ArrayList<List<Integer>>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++){
+			final List<Integer> mine = new ArrayList<Integer>();
+			drained.add(mine);
+			threads.add(new Thread() {
+				public void run() {
+					Entry<Integer,Integer> entry;
+					while ((entry = heap.pollMin()) != null){
+						mine.add(entry.getKey());
+					}
+				}
+			});
+		}
+		for (Thread thread : threads){
+			thread.start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+
+		List<Integer> all = new ArrayList<Integer>();
+		for (List<Integer> mine : drained){
+			for (int i = 1; i < mine.size(); i++){
+				assertTrue(mine.get(i - 1) < mine.get(i));
+			}
+			all.addAll(mine);
+		}
+		Collections.sort(all);
+		assertThat(all.size(), is(THREADS * PER_THREAD));
+		for (int i = 0; i < all.size(); i++){
+			assertThat(all.get(i), is(i));
+		}
+	}
+
+	/**
+	 * To check that threads taking batches with drainTo also get every
+	 * entry exactly once and each in order.
+	 */
+	@Test
+	public void testConcurrentBatchDrain() throws InterruptedException {
+		final ConcurrentMyHeap<Integer, Integer> heap = new ConcurrentMyHeap<Integer, Integer>(new IntegerComparator());
+		for (int i = THREADS * PER_THREAD - 1; i >= 0; i--){
+			heap.insert(i, i);
+		}
+
+		final List<List<Entry<Integer,Integer>>> drained = new ArrayList<List<Entry<Integer,Integer>>>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++){
+			final List<Entry<Integer,Integer>> mine = new ArrayList<Entry<Integer,Integer>>();
+			drained.add(mine);
+			threads.add(new Thread() {
+				public void run() {
+					while (heap.drainTo(mine, 64) > 0){
+						// Keep taking batches until the heap is empty
+					}
+				}
+			});
+		}
+		for (Thread thread : threads){
+			thread.start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+
+		List<Integer> all = new ArrayList<Integer>();
+		for (List<Entry<Integer,Integer>> mine : drained){
+			for (int i = 1; i < mine.size(); i++){
+				assertTrue(mine.get(i - 1).getKey() < mine.get(i).getKey());
+			}
+			for (Entry<Integer,Integer> entry : mine){
+				all.add(entry.getKey());
+			}
+		}
+		Collections.sort(all);
+		assertThat(all.size(), is(THREADS * PER_THREAD));
+		for (int i = 0; i < all.size(); i++){
+			assertThat(all.get(i), is(i));
+		}
+	}
+
+}
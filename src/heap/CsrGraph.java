@@ -0,0 +1,116 @@
+package heap;
+
+/**
+ * A directed graph with non-negative integer edge weights, in compressed
+ * sparse row (CSR) form: three int arrays and no object per vertex or
+ * edge. The edges out of vertex v are at indexes offset(v) up to
+ * offset(v + 1) of the target and weight arrays, so walking them is a
+ * sequential scan. A graph with 10^7 edges takes about 80MB.
+ *
+ * Graphs are built in one go from parallel arrays of edges, which are
+ * grouped by source with a counting sort in O(V + E) time, and can't be
+ * changed afterwards.
+ */
+
+public class CsrGraph {
+
+	private final int _vertices;
+	// Edges out of v are at _offsets[v] up to _offsets[v + 1]
+	private final int[] _offsets;
+	private final int[] _targets;
+	private final int[] _weights;
+
+	private CsrGraph(int vertices, int[] offsets, int[] targets, int[] weights) {
+		_vertices = vertices;
+		_offsets = offsets;
+		_targets = targets;
+		_weights = weights;
+	}
+
+	/**
+	 * Builds a graph from parallel arrays of edges: edge i goes from
+	 * from[i] to to[i] with weight weights[i]. The edges out of each
+	 * vertex keep the order they had in the arrays.
+	 *
+	 * @param vertices the number of vertices, numbered from 0
+	 * @param from the source of each edge
+	 * @param to the target of each edge
+	 * @param weights the weight of each edge
+	 * @return the graph
+	 * @throws IllegalArgumentException if the arrays differ in length, a
+	 *         vertex is out of range, or a weight is negative
+	 */
+	public static CsrGraph fromEdges(int vertices, int[] from, int[] to, int[] weights)
+			throws IllegalArgumentException {
+		if (vertices < 0 || from.length != to.length || from.length != weights.length){
+			throw new IllegalArgumentException("ERROR: Edge arrays differ in length");
+		}
+		int[] offsets = new int[vertices + 1];
+		for (int i = 0; i < from.length; i++){
+			if (from[i] < 0 || from[i] >= vertices || to[i] < 0 || to[i] >= vertices){
+				throw new IllegalArgumentException("ERROR: Edge " + i + " has a vertex out of range");
+			}
+			if (weights[i] < 0){
+				throw new IllegalArgumentException("ERROR: Edge " + i + " has a negative weight");
+			}
+			offsets[from[i] + 1]++;
+		}
+		for (int v = 0; v < vertices; v++){
+			offsets[v + 1] += offsets[v];
+		}
+
+		// Place each edge at the next free index of its source's range
+		int[] next = new int[vertices];
+		System.arraycopy(offsets, 0, next, 0, vertices);
+		int[] targets = new int[from.length];
+		int[] edgeWeights = new int[from.length];
+		for (int i = 0; i < from.length; i++){
+			int index = next[from[i]]++;
+			targets[index] = to[i];
+			edgeWeights[index] = weights[i];
+		}
+		return new CsrGraph(vertices, offsets, targets, edgeWeights);
+	}
+
+	/**
+	 * @return the number of vertices
+	 */
+	public int vertexCount() {
+		return _vertices;
+	}
+
+	/**
+	 * @return the number of edges
+	 */
+	public int edgeCount() {
+		return _targets.length;
+	}
+
+	/**
+	 * Returns the index of the first edge out of the vertex. The edges
+	 * out of v are the indexes from offset(v) up to offset(v + 1), and
+	 * offset(vertexCount()) is the number of edges.
+	 *
+	 * @param vertex from 0 to vertexCount()
+	 * @return the index of its first edge
+	 */
+	public int offset(int vertex) {
+		return _offsets[vertex];
+	}
+
+	/**
+	 * @param edge an edge index
+	 * @return the vertex the edge goes to
+	 */
+	public int target(int edge) {
+		return _targets[edge];
+	}
+
+	/**
+	 * @param edge an edge index
+	 * @return the weight of the edge
+	 */
+	public int weight(int edge) {
+		return _weights[edge];
+	}
+}
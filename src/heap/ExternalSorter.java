@@ -0,0 +1,325 @@
+package heap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Sorts more elements than fit in memory. Sorted runs are spilled to
+ * temporary files and then merged with a KWayMerger.
+ *
+ * Runs are made by replacement selection with a MyHeap holding at most
+ * "budget" elements. Each heap key is an element tagged with the run it
+ * belongs to, ordered by run and then by element. The least is written to
+ * the current run, and the next input element takes its place (with
+ * MyHeap.replaceMin, one downHeap). It joins the current run if it is not
+ * less than the element just written, or else the next run. When the
+ * least key belongs to the next run, the current run is finished. On
+ * random input the runs average about twice the budget, and input that is
+ * already sorted comes out as a single run.
+ *
+ * Runs are written through a 64KB buffer in the segment format of
+ * KWayMerger ([int length][element] records encoded with a HeapCodec,
+ * then an end marker), so the output is also a segment that
+ * KWayMerger.readSegment can read. If there are more runs than the
+ * merge fan-in, groups of them are merged into longer runs first, so no
+ * more than fan-in files are open at once. Every temporary file is
+ * deleted by the time sort returns, whether or not it succeeds.
+ *
+ * The counts and times of the last sort are kept for each phase, and
+ * report() sums them up as throughput.
+ */
+
+public class ExternalSorter<T> {
+
+	private static final int DEFAULT_FAN_IN = 128;
+
+	private final Comparator<? super T> _comp;
+	private final HeapCodec<T> _codec;
+	private final int _budget;
+	private final int _fanIn;
+	private final File _directory;
+
+	// Counts and times of the last sort
+	private long _records;
+	private int _runs;
+	private int _intermediateMerges;
+	private long _runNanos;
+	private long _mergeNanos;
+
+	/**
+	 * Creates a sorter that holds at most budget elements in memory and
+	 * merges up to 128 runs at once.
+	 *
+	 * @param comparator the order to sort in
+	 * @param codec to encode the elements in the run files with
+	 * @param budget the number of elements the run heap may hold
+	 * @param directory where the run files go, or null for the system default
+	 * @throws IllegalArgumentException if the comparator is null or the budget is not positive
+	 */
+	public ExternalSorter(Comparator<? super T> comparator, HeapCodec<T> codec, int budget, File directory) {
+		this(comparator, codec, budget, DEFAULT_FAN_IN, directory);
+	}
+
+	/**
+	 * Creates a sorter that holds at most budget elements in memory and
+	 * merges up to fanIn runs at once.
+	 *
+	 * @param comparator the order to sort in
+	 * @param codec to encode the elements in the run files with
+	 * @param budget the number of elements the run heap may hold
+	 * @param fanIn the most runs merged (and files open) at once
+	 * @param directory where the run files go, or null for the system default
+	 * @throws IllegalArgumentException if the comparator is null, the
+	 *         budget is not positive or fanIn is less than 2
+	 */
+	public ExternalSorter(Comparator<? super T> comparator, HeapCodec<T> codec, int budget, int fanIn,
+			File directory) {
+		if (comparator == null || codec == null){
+			throw new IllegalArgumentException();
+		}
+		if (budget < 1 || fanIn < 2){
+			throw new IllegalArgumentException("ERROR: Budget must be at least 1 and fan-in at least 2");
+		}
+		_comp = comparator;
+		_codec = codec;
+		_budget = budget;
+		_fanIn = fanIn;
+		_directory = directory;
+	}
+
+	/**
+	 * Sorts the input and writes it to the output as a segment (see
+	 * KWayMerger.writeSegment). The output channel is left open.
+	 *
+	 * @param input the elements to be sorted
+	 * @param output to write the sorted elements to
+	 * @throws IOException if a run file or the output fails
+	 */
+	public void sort(Iterator<? extends T> input, WritableByteChannel output) throws IOException {
+		_records = 0;
+		_runs = 0;
+		_intermediateMerges = 0;
+		List<File> runs = new ArrayList<File>();
+		try {
+			long start = System.nanoTime();
+			this.makeRuns(input, runs);
+			_runNanos = System.nanoTime() - start;
+			_runs = runs.size();
+
+			start = System.nanoTime();
+			while (runs.size() > _fanIn){
+				List<File> group = new ArrayList<File>(runs.subList(0, _fanIn));
+				runs.subList(0, _fanIn).clear();
+				File merged = this.newRunFile();
+				runs.add(merged);
+				FileChannel channel = FileChannel.open(merged.toPath(), StandardOpenOption.WRITE);
+				try {
+					this.merge(group, channel);
+				} finally {
+					channel.close();
+				}
+				_intermediateMerges++;
+			}
+			this.merge(runs, output);
+			_mergeNanos = System.nanoTime() - start;
+		} finally {
+			for (File run : runs){
+				run.delete();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of elements the last sort wrote.
+	 *
+	 * @return the element count
+	 */
+	public long getRecordCount() {
+		return _records;
+	}
+
+	/**
+	 * Returns the number of runs replacement selection made in the last
+	 * sort.
+	 *
+	 * @return the run count
+	 */
+	public int getRunCount() {
+		return _runs;
+	}
+
+	/**
+	 * Returns the number of merges done before the final one in the last
+	 * sort, because there were more runs than the fan-in.
+	 *
+	 * @return the number of intermediate merges
+	 */
+	public int getIntermediateMerges() {
+		return _intermediateMerges;
+	}
+
+	/**
+	 * Returns how long the last sort took to make its runs.
+	 *
+	 * @return the run generation time in nanoseconds
+	 */
+	public long getRunNanos() {
+		return _runNanos;
+	}
+
+	/**
+	 * Returns how long the last sort took to merge its runs, including
+	 * any intermediate merges.
+	 *
+	 * @return the merge time in nanoseconds
+	 */
+	public long getMergeNanos() {
+		return _mergeNanos;
+	}
+
+	/**
+	 * Sums up the last sort: how many runs it made and how long they
+	 * were on average, and the throughput of each phase in elements per
+	 * second.
+	 *
+	 * @return a one-line report
+	 */
+	public String report() {
+		return String.format("%d records, %d runs (average %.0f), run generation %.0f rec/s, merge %.0f rec/s"
+				+ " (%d intermediate merges)", _records, _runs, _runs == 0 ? 0.0 : (double) _records / _runs,
+				_records * 1e9 / Math.max(1, _runNanos), _records * 1e9 / Math.max(1, _mergeNanos),
+				_intermediateMerges);
+	}
+
+	/**
+	 * Reads the whole input through a run heap of at most budget
+	 * elements, writing each run to a new temporary file.
+	 *
+	 * @param input the elements to be sorted
+	 * @param runs the list the run files are added to, in order
+	 * @throws IOException if a run file fails
+	 */
+	@SuppressWarnings("unchecked")
+	private void makeRuns(Iterator<? extends T> input, List<File> runs) throws IOException {
+		// Fill the heap bottom-up with the first budget elements, all in run 0
+		List<Tagged<T>> first = new ArrayList<Tagged<T>>();
+		while (first.size() < _budget && input.hasNext()){
+			first.add(new Tagged<T>(0, input.next()));
+		}
+		MyHeap<Tagged<T>, Void> heap = new MyHeap<Tagged<T>, Void>(new RunOrder<T>(_comp));
+		heap.insertAll(first.toArray(new Tagged[first.size()]), new Void[first.size()]);
+		first = null;
+
+		int run = -1;
+		FileChannel channel = null;
+		KWayMerger.SegmentWriter<T> writer = null;
+		try {
+			while (!heap.isEmpty()){
+				Tagged<T> min = heap.min().getKey();
+				if (min._run != run){
+					if (writer != null){
+						writer.finish();
+						channel.close();
+					}
+					File file = this.newRunFile();
+					runs.add(file);
+					channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+					writer = new KWayMerger.SegmentWriter<T>(channel, _codec);
+					run = min._run;
+				}
+				writer.write(min._element);
+				_records++;
+
+				if (input.hasNext()){
+					T next = input.next();
+					int nextRun = _comp.compare(next, min._element) >= 0 ? run : run + 1;
+					heap.replaceMin(new MyHeapEntry<Tagged<T>, Void>(new Tagged<T>(nextRun, next), null));
+				} else {
+					heap.removeMin();
+				}
+			}
+			if (writer != null){
+				writer.finish();
+			}
+		} finally {
+			if (channel != null){
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Merges the given run files into one segment written to the
+	 * channel, and deletes them.
+	 *
+	 * @param runs the run files to be merged
+	 * @param output to write the merged segment to
+	 * @throws IOException if a file or the output fails
+	 */
+	private void merge(List<File> runs, WritableByteChannel output) throws IOException {
+		List<FileChannel> channels = new ArrayList<FileChannel>(runs.size());
+		try {
+			for (File run : runs){
+				channels.add(FileChannel.open(run.toPath(), StandardOpenOption.READ));
+			}
+			KWayMerger<T> merger = KWayMerger.ofChannels(_comp, channels, _codec);
+			KWayMerger.SegmentWriter<T> writer = new KWayMerger.SegmentWriter<T>(output, _codec);
+			while (merger.hasNext()){
+				writer.write(merger.next());
+			}
+			writer.finish();
+		} finally {
+			for (FileChannel channel : channels){
+				channel.close();
+			}
+			for (File run : runs){
+				run.delete();
+			}
+		}
+	}
+
+	// A new, empty temporary file for a run
+	private File newRunFile() throws IOException {
+		return File.createTempFile("run", ".seg", _directory);
+	}
+
+	/**
+	 * A run heap key: an element and the number of the run it is to go in.
+	 */
+	private static final class Tagged<T> {
+
+		private final int _run;
+		private final T _element;
+
+		private Tagged(int run, T element) {
+			_run = run;
+			_element = element;
+		}
+	}
+
+	/**
+	 * Orders run heap keys by run, and then by element.
+	 */
+	private static final class RunOrder<T> implements Comparator<Tagged<T>> {
+
+		private final Comparator<? super T> _comp;
+
+		private RunOrder(Comparator<? super T> comp) {
+			_comp = comp;
+		}
+
+		public int compare(Tagged<T> a, Tagged<T> b) {
+			if (a._run != b._run){
+				return a._run < b._run ? -1 : 1;
+			}
+			return _comp.compare(a._element, b._element);
+		}
+	}
+}
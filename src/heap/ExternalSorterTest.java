@@ -0,0 +1,155 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class is used to test the functionality of ExternalSorter.
+ */
+
+/* Each test sorts into a byte array, reads the output back as a segment
+ * and compares it with sorting the input in memory. The run files go in a
+ * fresh temporary directory, which must be empty again afterwards.
+ */
+
+public class ExternalSorterTest {
+
+	private File _directory;
+
+	@Before
+	public void setUp() throws IOException {
+		_directory = Files.createTempDirectory("sort").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : _directory.listFiles()){
+			file.delete();
+		}
+		_directory.delete();
+	}
+
+	/**
+	 * To check that random input is sorted, that replacement selection
+	 * makes runs about twice the budget on average, and that no run files
+	 * are left behind.
+	 */
+	@Test
+	public void testRandomInput() throws IOException {
+		List<Integer> input = this.randomInput(100000, 22);
+		ExternalSorter<Integer> sorter = new ExternalSorter<Integer>(new IntegerComparator(),
+				HeapCodec.INTEGER, 1000, _directory);
+		List<Integer> output = this.sort(sorter, input, HeapCodec.INTEGER);
+		Collections.sort(input);
+		assertThat(output, is(input));
+		assertThat(sorter.getRecordCount(), is(100000L));
+		// Runs of about 2000 on average: well under the 100 that runs of
+		// exactly the budget would make
+		assertTrue(sorter.getRunCount() >= 40 && sorter.getRunCount() <= 60);
+		assertThat(sorter.getIntermediateMerges(), is(0));
+		assertThat(_directory.listFiles().length, is(0));
+	}
+
+	/**
+	 * To check that sorted input makes a single run and reversed input
+	 * makes runs of exactly the budget.
+	 */
+	@Test
+	public void testPresortedInput() throws IOException {
+		List<Integer> input = new ArrayList<Integer>();
+		for (int i = 0; i < 10000; i++){
+			input.add(i);
+		}
+		ExternalSorter<Integer> sorter = new ExternalSorter<Integer>(new IntegerComparator(),
+				HeapCodec.INTEGER, 100, _directory);
+		assertThat(this.sort(sorter, input, HeapCodec.INTEGER), is(input));
+		assertThat(sorter.getRunCount(), is(1));
+
+		List<Integer> reversed = new ArrayList<Integer>(input);
+		Collections.reverse(reversed);
+		assertThat(this.sort(sorter, reversed, HeapCodec.INTEGER), is(input));
+		assertThat(sorter.getRunCount(), is(100));
+	}
+
+	/**
+	 * To check that more runs than the fan-in are merged in groups first,
+	 * with a variable-width codec.
+	 */
+	@Test
+	public void testIntermediateMerges() throws IOException {
+		List<String> input = new ArrayList<String>();
+		for (int key : this.randomInput(5000, 23)){
+			input.add("record " + key);
+		}
+		ExternalSorter<String> sorter = new ExternalSorter<String>(new Comparator<String>() {
+			public int compare(String a, String b) {
+				return a.compareTo(b);
+			}
+		}, HeapCodec.STRING, 50, 4, _directory);
+		List<String> output = this.sort(sorter, input, HeapCodec.STRING);
+		Collections.sort(input);
+		assertThat(output, is(input));
+		assertTrue(sorter.getIntermediateMerges() > 0);
+		assertThat(_directory.listFiles().length, is(0));
+	}
+
+	/**
+	 * To check that empty input gives an empty (but readable) segment.
+	 */
+	@Test
+	public void testEmptyInput() throws IOException {
+		ExternalSorter<Integer> sorter = new ExternalSorter<Integer>(new IntegerComparator(),
+				HeapCodec.INTEGER, 10, _directory);
+		assertTrue(this.sort(sorter, new ArrayList<Integer>(), HeapCodec.INTEGER).isEmpty());
+		assertThat(sorter.getRunCount(), is(0));
+	}
+
+	/**
+	 * Here we test that a budget of 0 throws an IllegalArgumentException.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroBudgetThrowsIllegalArgumentException() {
+		new ExternalSorter<Integer>(new IntegerComparator(), HeapCodec.INTEGER, 0, _directory);
+	}
+
+	// Sorts the input into a byte array and reads it back
+	private <T> List<T> sort(ExternalSorter<T> sorter, List<T> input, HeapCodec<T> codec) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		sorter.sort(input.iterator(), Channels.newChannel(out));
+		Iterator<T> segment = KWayMerger.readSegment(Channels.newChannel(
+				new ByteArrayInputStream(out.toByteArray())), codec);
+		List<T> output = new ArrayList<T>();
+		while (segment.hasNext()){
+			output.add(segment.next());
+		}
+		return output;
+	}
+
+	private List<Integer> randomInput(int n, long seed) {
+		Random random = new Random(seed);
+		List<Integer> input = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++){
+			input.add(random.nextInt(1000000));
+		}
+		return input;
+	}
+
+}
@@ -0,0 +1,1090 @@
+package heap;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.Entry;
+
+/**
+ * A simple timing harness for the heaps in this package. Run it with
+ *
+ *     java heap.HeapBenchmark [n] [benchmark ...]
+ *
+ * where n is the number of entries (10^6 by default) and the optional
+ * names pick which comparisons to run (all of them by default).
+ *
+ * Each workload is run a few times to warm up the JIT and then timed
+ * several more times; the best time is reported in nanoseconds per
+ * operation. The numbers are only meant for comparing designs against
+ * each other on the same machine.
+ */
+
+public class HeapBenchmark {
+
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int MEASURED_ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		List<String> names = Arrays.asList(args).subList(Math.min(1, args.length), args.length);
+
+		if (names.isEmpty() || names.contains("arity")){
+			HeapBenchmark.compareArities(n);
+		}
+		if (names.isEmpty() || names.contains("bulk")){
+			HeapBenchmark.compareBulkLoad(n);
+		}
+		if (names.isEmpty() || names.contains("concurrent")){
+			HeapBenchmark.compareConcurrent(n);
+		}
+		if (names.isEmpty() || names.contains("offheap")){
+			HeapBenchmark.compareOffHeap(n);
+		}
+		if (names.isEmpty() || names.contains("dijkstra")){
+			HeapBenchmark.compareDijkstra(n);
+		}
+		if (names.isEmpty() || names.contains("journal")){
+			HeapBenchmark.compareJournal(n);
+		}
+		if (names.isEmpty() || names.contains("radix")){
+			HeapBenchmark.compareRadix(n);
+		}
+		if (names.isEmpty() || names.contains("bucket")){
+			HeapBenchmark.compareBucketQueue(n);
+		}
+		if (names.isEmpty() || names.contains("timers")){
+			HeapBenchmark.compareTimers(n);
+		}
+		if (names.isEmpty() || names.contains("topk")){
+			HeapBenchmark.compareTopK(n);
+		}
+		if (names.isEmpty() || names.contains("merge")){
+			HeapBenchmark.compareMerge(n);
+		}
+		if (names.isEmpty() || names.contains("extsort")){
+			HeapBenchmark.measureExternalSort(n);
+		}
+		if (names.isEmpty() || names.contains("paths")){
+			HeapBenchmark.compareShortestPaths(n);
+		}
+		if (names.isEmpty() || names.contains("metrics")){
+			HeapBenchmark.compareMetrics(n);
+		}
+		if (names.isEmpty() || names.contains("events")){
+			HeapBenchmark.compareEvents(n);
+		}
+		if (names.isEmpty() || names.contains("batch")){
+			HeapBenchmark.compareBatches(n);
+		}
+		if (names.isEmpty() || names.contains("lazy")){
+			HeapBenchmark.compareLazyRemoval(n);
+		}
+		if (names.isEmpty() || names.contains("minmax")){
+			HeapBenchmark.compareMinMax(n);
+		}
+	}
+
+	/**
+	 * Compares MyHeap and PairingHeap running Dijkstra's algorithm on a
+	 * random graph with n / 8 vertices and 8 edges out of each, where
+	 * most of the work is replaceKey calls that lower a tentative
+	 * distance. Every vertex starts in the queue with an "infinite"
+	 * distance, as in the textbook version.
+	 *
+	 * @param n the number of edges
+	 */
+	private static void compareDijkstra(int n) {
+		final int vertices = Math.max(2, n / 8);
+		final int[][] targets = new int[vertices][8];
+		final int[][] weights = new int[vertices][8];
+		Random random = new Random(n);
+		for (int v = 0; v < vertices; v++){
+			for (int e = 0; e < 8; e++){
+				targets[v][e] = random.nextInt(vertices);
+				weights[v][e] = 1 + random.nextInt(1000);
+			}
+		}
+		System.out.println("Dijkstra, " + vertices + " vertices, " + 8L * vertices + " edges (ns/edge)");
+		for (final String name : new String[] {"MyHeap", "MyHeap (4-ary)", "PairingHeap"}){
+			double time = HeapBenchmark.measure(new Workload(0, 8L * vertices) {
+				@SuppressWarnings("unchecked")
+				void run() {
+					AdaptablePriorityQueue<Integer, Integer> queue;
+					if (name.equals("MyHeap")){
+						queue = new MyHeap<Integer, Integer>(new IntegerComparator());
+					} else if (name.equals("PairingHeap")){
+						queue = new PairingHeap<Integer, Integer>(new IntegerComparator());
+					} else {
+						queue = new MyHeap<Integer, Integer>(new IntegerComparator(), 4);
+					}
+					Entry<Integer, Integer>[] entries = new Entry[vertices];
+					for (int v = 0; v < vertices; v++){
+						entries[v] = queue.insert(v == 0 ? 0 : Integer.MAX_VALUE / 2, v);
+					}
+					while (!queue.isEmpty()){
+						Entry<Integer, Integer> min = queue.removeMin();
+						int v = min.getValue();
+						entries[v] = null;
+						for (int e = 0; e < 8; e++){
+							Entry<Integer, Integer> target = entries[targets[v][e]];
+							int distance = min.getKey() + weights[v][e];
+							if (target != null && distance < target.getKey()){
+								queue.replaceKey(target, distance);
+							}
+						}
+					}
+				}
+			});
+			System.out.println(String.format("%-16s %10.1f", name, time));
+		}
+	}
+
+	/**
+	 * Compares MyHeap and RadixHeap as the event queue of a discrete
+	 * event simulation (the "hold" model): n / 16 events are pending, and
+	 * each step takes out the earliest and schedules a new one a random
+	 * delay after it, so the keys only ever move forward in time.
+	 *
+	 * @param n the number of steps
+	 */
+	private static void compareRadix(int n) {
+		final int pending = Math.max(1, n / 16);
+		final int steps = n;
+		final long[] delays = new long[pending + steps];
+		Random random = new Random(n);
+		for (int i = 0; i < delays.length; i++){
+			delays[i] = 1 + random.nextInt(1 << 20);
+		}
+		System.out.println("Event queue, " + pending + " pending events (ns/step)");
+		for (final String name : new String[] {"MyHeap", "RadixHeap"}){
+			double time = HeapBenchmark.measure(new Workload(0, steps) {
+				void run() {
+					AdaptablePriorityQueue<Long, Integer> queue;
+					if (name.equals("MyHeap")){
+						queue = new MyHeap<Long, Integer>(new Comparator<Long>() {
+							public int compare(Long a, Long b) {
+								return a.compareTo(b);
+							}
+						});
+					} else {
+						queue = new RadixHeap<Integer>();
+					}
+					for (int i = 0; i < pending; i++){
+						queue.insert(delays[i], i);
+					}
+					for (int i = pending; i < pending + steps; i++){
+						Entry<Long, Integer> event = queue.removeMin();
+						queue.insert(event.getKey() + delays[i], i);
+					}
+				}
+			});
+			System.out.println(String.format("%-16s %10.1f", name, time));
+		}
+	}
+
+	/**
+	 * Compares MyHeap and BucketQueue on n inserts with keys from 256
+	 * priority levels, followed by n removeMins.
+	 *
+	 * @param n the number of entries
+	 */
+	private static void compareBucketQueue(int n) {
+		final Integer[] levels = new Integer[n];
+		Random random = new Random(n);
+		for (int i = 0; i < n; i++){
+			levels[i] = random.nextInt(256);
+		}
+		System.out.println("256 priority levels, n = " + n + " (ns/op)");
+		for (final String name : new String[] {"MyHeap", "BucketQueue"}){
+			double time = HeapBenchmark.measure(new Workload(0, 2L * n) {
+				void run() {
+					AdaptablePriorityQueue<Integer, Integer> queue;
+					if (name.equals("MyHeap")){
+						queue = new MyHeap<Integer, Integer>(new IntegerComparator());
+					} else {
+						queue = new BucketQueue<Integer>();
+					}
+					for (Integer level : levels){
+						queue.insert(level, level);
+					}
+					while (!queue.isEmpty()){
+						queue.removeMin();
+					}
+				}
+			});
+			System.out.println(String.format("%-16s %10.1f", name, time));
+		}
+	}
+
+	/**
+	 * Compares MyHeap and TimingWheel managing request timeouts: each
+	 * tick schedules one timeout 1,000 to 100,000 ticks out and, nine
+	 * times out of ten, cancels the one scheduled 1,000 ticks earlier,
+	 * as when the request completes in time. The MyHeap fires timers by
+	 * removing its minimum while it is due.
+	 *
+	 * @param n the number of ticks
+	 */
+	private static void compareTimers(int n) {
+		final int window = 1000;
+		final long[] delays = new long[n];
+		final boolean[] cancels = new boolean[n];
+		Random random = new Random(n);
+		for (int i = 0; i < n; i++){
+			delays[i] = 1000 + random.nextInt(99000);
+			cancels[i] = random.nextInt(10) != 0;
+		}
+		System.out.println("Timeouts, " + n + " ticks, 90% cancelled (ns/tick)");
+		for (final String name : new String[] {"MyHeap", "TimingWheel"}){
+			double time = HeapBenchmark.measure(new Workload(0, n) {
+				@SuppressWarnings("unchecked")
+				void run() {
+					Entry<Long, Integer>[] recent = new Entry[window];
+					if (name.equals("MyHeap")){
+						MyHeap<Long, Integer> heap = new MyHeap<Long, Integer>(new Comparator<Long>() {
+							public int compare(Long a, Long b) {
+								return a.compareTo(b);
+							}
+						});
+						for (int now = 0; now < delays.length; now++){
+							while (!heap.isEmpty() && heap.min().getKey() <= now){
+								heap.removeMin();
+							}
+							Entry<Long, Integer> old = recent[now % window];
+							if (old != null && cancels[now] && old.getKey() > now){
+								heap.remove(old);
+							}
+							recent[now % window] = heap.insert(now + delays[now], now);
+						}
+					} else {
+						TimingWheel<Integer> wheel = new TimingWheel<Integer>();
+						for (int now = 0; now < delays.length; now++){
+							if (now > 0){
+								wheel.tick();
+							}
+							Entry<Long, Integer> old = recent[now % window];
+							if (old != null && cancels[now]){
+								wheel.cancel(old);
+							}
+							recent[now % window] = wheel.schedule((long) now + delays[now], now);
+						}
+					}
+				}
+			});
+			System.out.println(String.format("%-16s %10.1f", name, time));
+		}
+	}
+
+	/**
+	 * Compares two ways of finding the 100 greatest of n random keys:
+	 * inserting all of them into a MyHeap ordered greatest first and
+	 * removing the first 100, or offering them to a TopK.
+	 *
+	 * @param n the length of the stream
+	 */
+	private static void compareTopK(int n) {
+		final int k = 100;
+		System.out.println("Top " + k + " of " + n + " keys (ns/key)");
+		for (final String name : new String[] {"MyHeap", "TopK"}){
+			double time = HeapBenchmark.measure(new Workload(n, n) {
+				private final Integer[] _boxed = this.boxedKeys();
+
+				void run() {
+					if (name.equals("MyHeap")){
+						MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(
+								Collections.reverseOrder(new IntegerComparator()));
+						for (Integer key : _boxed){
+							heap.insert(key, key);
+						}
+						for (int i = 0; i < k; i++){
+							heap.removeMin();
+						}
+					} else {
+						TopK<Integer, Integer> top = new TopK<Integer, Integer>(new IntegerComparator(), k);
+						for (Integer key : _boxed){
+							top.offer(key, key);
+						}
+					}
+				}
+			});
+			System.out.println(String.format("%-16s %10.1f", name, time));
+		}
+	}
+
+	/**
+	 * Compares merging 256 sorted runs of n / 256 keys each through a
+	 * MyHeap (removeMin the least head, insert that run's next key) and
+	 * through a KWayMerger.
+	 *
+	 * @param n the total number of keys
+	 */
+	private static void compareMerge(int n) {
+		final int k = 256;
+		final Integer[][] runs = new Integer[k][];
+		Random random = new Random(n);
+		for (int r = 0; r < k; r++){
+			int[] run = new int[n / k];
+			for (int i = 0; i < run.length; i++){
+				run[i] = random.nextInt(Integer.MAX_VALUE / 2);
+			}
+			Arrays.sort(run);
+			runs[r] = new Integer[run.length];
+			for (int i = 0; i < run.length; i++){
+				runs[r][i] = run[i];
+			}
+		}
+		System.out.println("Merging " + k + " runs of " + n / k + " keys (ns/key)");
+		for (final String name : new String[] {"MyHeap", "KWayMerger"}){
+			double time = HeapBenchmark.measure(new Workload(0, (long) k * (n / k)) {
+				void run() {
+					List<Iterator<Integer>> sources = new ArrayList<Iterator<Integer>>(k);
+					for (Integer[] run : runs){
+						sources.add(Arrays.asList(run).iterator());
+					}
+					if (name.equals("MyHeap")){
+						MyHeap<Integer, Iterator<Integer>> heap =
+								new MyHeap<Integer, Iterator<Integer>>(new IntegerComparator());
+						for (Iterator<Integer> source : sources){
+							if (source.hasNext()){
+								heap.insert(source.next(), source);
+							}
+						}
+						while (!heap.isEmpty()){
+							Iterator<Integer> source = heap.removeMin().getValue();
+							if (source.hasNext()){
+								heap.insert(source.next(), source);
+							}
+						}
+					} else {
+						KWayMerger<Integer> merger = new KWayMerger<Integer>(new IntegerComparator(), sources);
+						while (merger.hasNext()){
+							merger.next();
+						}
+					}
+				}
+			});
+			System.out.println(String.format("%-16s %10.1f", name, time));
+		}
+	}
+
+	/**
+	 * Sorts n random keys with an ExternalSorter whose budget is n / 16,
+	 * into a temporary file, and prints its report of each phase. The
+	 * first sorts warm up the JIT and only the last is reported.
+	 *
+	 * @param n the number of keys
+	 */
+	private static void measureExternalSort(int n) throws IOException {
+		List<Integer> keys = new ArrayList<Integer>(n);
+		Random random = new Random(n);
+		for (int i = 0; i < n; i++){
+			keys.add(random.nextInt(Integer.MAX_VALUE / 2));
+		}
+		ExternalSorter<Integer> sorter = new ExternalSorter<Integer>(new IntegerComparator(),
+				HeapCodec.INTEGER, Math.max(1, n / 16), null);
+		System.out.println("External sort, n = " + n + ", budget " + Math.max(1, n / 16));
+		for (int round = 0; round < WARMUP_ROUNDS; round++){
+			File output = File.createTempFile("sorted", ".seg");
+			FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.WRITE);
+			try {
+				sorter.sort(keys.iterator(), channel);
+			} finally {
+				channel.close();
+				output.delete();
+			}
+		}
+		System.out.println(sorter.report());
+	}
+
+	/**
+	 * Compares the two ShortestPaths strategies, with Dijkstra's algorithm
+	 * and with A*, on point-to-point queries across a square grid of about
+	 * n / 4 vertices (4 edges out of each, weights 1 to 4). The same 100
+	 * random queries are run on one engine per combination, so after the
+	 * first round nothing is allocated but the boxed keys.
+	 *
+	 * @param n the number of edges
+	 */
+	private static void compareShortestPaths(int n) {
+		final int side = Math.max(2, (int) Math.sqrt(n / 4));
+		int[] from = new int[4 * side * side];
+		int[] to = new int[from.length];
+		int[] weights = new int[from.length];
+		int edges = 0;
+		Random random = new Random(n);
+		for (int v = 0; v < side * side; v++){
+			int[] neighbours = {v % side + 1 < side ? v + 1 : -1, v % side > 0 ? v - 1 : -1,
+					v + side < side * side ? v + side : -1, v - side};
+			for (int w : neighbours){
+				if (w >= 0){
+					from[edges] = v;
+					to[edges] = w;
+					weights[edges] = 1 + random.nextInt(4);
+					edges++;
+				}
+			}
+		}
+		final CsrGraph graph = CsrGraph.fromEdges(side * side, Arrays.copyOf(from, edges),
+				Arrays.copyOf(to, edges), Arrays.copyOf(weights, edges));
+		final int[] sources = new int[100];
+		final int[] targets = new int[100];
+		for (int q = 0; q < 100; q++){
+			sources[q] = random.nextInt(side * side);
+			targets[q] = random.nextInt(side * side);
+		}
+
+		System.out.println("Shortest paths, " + side + "x" + side + " grid (us/query, settled, stale)");
+		for (ShortestPaths.Strategy strategy : ShortestPaths.Strategy.values()){
+			for (final boolean aStar : new boolean[] {false, true}){
+				final ShortestPaths paths = new ShortestPaths(graph, strategy);
+				final long[] counts = new long[2];
+				double time = HeapBenchmark.measure(new Workload(0, 100) {
+					void run() {
+						counts[0] = 0;
+						counts[1] = 0;
+						for (int q = 0; q < 100; q++){
+							if (aStar){
+								paths.distance(sources[q], targets[q], new Manhattan(side, targets[q]));
+							} else {
+								paths.distance(sources[q], targets[q]);
+							}
+							counts[0] += paths.getSettledCount();
+							counts[1] += paths.getStaleCount();
+						}
+					}
+				});
+				String name = (aStar ? "A* " : "Dijkstra ") + (strategy == ShortestPaths.Strategy.DECREASE_KEY
+						? "decrease" : "lazy");
+				System.out.println(String.format("%-16s %10.1f %10d %10d", name, time / 1000,
+						counts[0] / 100, counts[1] / 100));
+			}
+		}
+	}
+
+	/**
+	 * Compares MyHeap with metrics off and on, filling a heap with n
+	 * random keys and emptying it again. With metrics off the only extra
+	 * work is a null check per operation, so the first figure should
+	 * match what MyHeap did before metrics existed.
+	 *
+	 * @param n the number of entries
+	 */
+	private static void compareMetrics(int n) {
+		System.out.println("MyHeap metrics, n = " + n + " (ns/op)");
+		for (final boolean enabled : new boolean[] {false, true}){
+			double time = HeapBenchmark.measure(new Workload(n, 2L * n) {
+				private final Integer[] _boxed = this.boxedKeys();
+
+				void run() {
+					MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator());
+					if (enabled){
+						heap.enableMetrics();
+					}
+					for (int i = 0; i < _boxed.length; i++){
+						heap.insert(_boxed[i], _boxed[i]);
+					}
+					while (!heap.isEmpty()){
+						heap.removeMin();
+					}
+				}
+			});
+			System.out.println(String.format("%-16s %10.1f", enabled ? "metrics on" : "metrics off", time));
+		}
+	}
+
+	/**
+	 * Compares MyHeap with no flight recording and with a recording that
+	 * has HeapOperationEvent enabled at its default threshold, filling a
+	 * heap with n random keys and emptying it again. Almost no operation
+	 * crosses the threshold, so the difference is what every operation
+	 * pays for the event being on: the comparator wrapper, its count and
+	 * its sampled timing.
+	 *
+	 * @param n the number of entries
+	 */
+	private static void compareEvents(int n) {
+		System.out.println("MyHeap flight recording, n = " + n + " (ns/op)");
+		for (final boolean recording : new boolean[] {false, true}){
+			jdk.jfr.Recording events = new jdk.jfr.Recording();
+			if (recording){
+				events.enable(HeapOperationEvent.class);
+				events.start();
+			}
+			double time = HeapBenchmark.measure(new Workload(n, 2L * n) {
+				private final Integer[] _boxed = this.boxedKeys();
+
+				void run() {
+					MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator());
+					for (int i = 0; i < _boxed.length; i++){
+						heap.insert(_boxed[i], _boxed[i]);
+					}
+					while (!heap.isEmpty()){
+						heap.removeMin();
+					}
+				}
+			});
+			events.close();
+			System.out.println(String.format("%-16s %10.1f", recording ? "recording on" : "recording off", time));
+		}
+	}
+
+	/**
+	 * Compares emptying a heap of n random keys in batches of 64, 256 and
+	 * 1024 entries, with a loop of removeMin() calls per batch against
+	 * one drainTo per batch. Both build the heap the same way, with
+	 * insertAll, so the difference is all in the removals.
+	 *
+	 * @param n the number of entries
+	 */
+	private static void compareBatches(int n) {
+		System.out.println("MyHeap batches, n = " + n + " (ns/entry)");
+		System.out.println(String.format("%-6s %12s %12s", "batch", "removeMin", "drainTo"));
+		for (final int batch : new int[] {64, 256, 1024}){
+			double loop = HeapBenchmark.measure(new Workload(n, n) {
+				private final Integer[] _boxed = this.boxedKeys();
+
+				void run() {
+					MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator());
+					heap.insertAll(_boxed, _boxed);
+					List<Entry<Integer, Integer>> out = new ArrayList<Entry<Integer, Integer>>(batch);
+					while (!heap.isEmpty()){
+						out.clear();
+						for (int i = 0; i < batch && !heap.isEmpty(); i++){
+							out.add(heap.removeMin());
+						}
+					}
+				}
+			});
+			double drain = HeapBenchmark.measure(new Workload(n, n) {
+				private final Integer[] _boxed = this.boxedKeys();
+
+				void run() {
+					MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator());
+					heap.insertAll(_boxed, _boxed);
+					List<Entry<Integer, Integer>> out = new ArrayList<Entry<Integer, Integer>>(batch);
+					while (!heap.isEmpty()){
+						out.clear();
+						heap.drainTo(out, batch);
+					}
+				}
+			});
+			System.out.println(String.format("%-6d %12.1f %12.1f", batch, loop, drain));
+		}
+	}
+
+	/**
+	 * Compares eager and lazy removal on a cancellation-heavy workload:
+	 * n entries are inserted, nine in ten of them are removed through
+	 * remove(entry) in random order, and the rest are emptied out with
+	 * removeMin(). The lazy heap compacts once half of its tree is dead.
+	 *
+	 * @param n the number of entries
+	 */
+	private static void compareLazyRemoval(int n) {
+		List<Integer> order = new ArrayList<Integer>(n);
+		for (int i = 0; i < n; i++){
+			if (i % 10 != 0){
+				order.add(i);
+			}
+		}
+		Collections.shuffle(order, new Random(n));
+		final int[] cancelled = new int[order.size()];
+		for (int i = 0; i < cancelled.length; i++){
+			cancelled[i] = order.get(i);
+		}
+
+		System.out.println("MyHeap removal, n = " + n + " (ns/op)");
+		for (final boolean lazy : new boolean[] {false, true}){
+			double time = HeapBenchmark.measure(new Workload(n, 2L * n) {
+				private final Integer[] _boxed = this.boxedKeys();
+
+				void run() {
+					MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator());
+					if (lazy){
+						heap.enableLazyRemoval(0.5);
+					}
+					List<Entry<Integer, Integer>> entries = new ArrayList<Entry<Integer, Integer>>(_boxed.length);
+					for (int i = 0; i < _boxed.length; i++){
+						entries.add(heap.insert(_boxed[i], _boxed[i]));
+					}
+					for (int i = 0; i < cancelled.length; i++){
+						heap.remove(entries.get(cancelled[i]));
+					}
+					while (!heap.isEmpty()){
+						heap.removeMin();
+					}
+				}
+			});
+			System.out.println(String.format("%-16s %10.1f", lazy ? "lazy" : "eager", time));
+		}
+	}
+
+	/**
+	 * Compares a MinMaxHeap against the two cross-linked MyHeaps it
+	 * replaces, as a bounded queue holding at most n / 10 entries: n
+	 * random keys are inserted, the greatest key is evicted whenever the
+	 * queue is over its bound, and the least is served after every fourth
+	 * insert. In the pair, each entry's value is its twin in the other
+	 * heap, so that either end can remove the twin.
+	 *
+	 * @param n the number of entries
+	 */
+	private static void compareMinMax(int n) {
+		final int bound = Math.max(1, n / 10);
+		System.out.println("Bounded queue, n = " + n + ", bound = " + bound + " (ns/op)");
+		for (final String name : new String[] {"MyHeap pair", "MinMaxHeap"}){
+			double time = HeapBenchmark.measure(new Workload(n, 2L * n) {
+				private final Integer[] _boxed = this.boxedKeys();
+
+				void run() {
+					if (name.equals("MinMaxHeap")){
+						MinMaxHeap<Integer, Integer> heap = new MinMaxHeap<Integer, Integer>(new IntegerComparator());
+						for (int i = 0; i < _boxed.length; i++){
+							heap.insert(_boxed[i], _boxed[i]);
+							if (heap.size() > bound){
+								heap.removeMax();
+							}
+							if (i % 4 == 3){
+								heap.removeMin();
+							}
+						}
+					} else {
+						MyHeap<Integer, Object> low = new MyHeap<Integer, Object>(new IntegerComparator());
+						MyHeap<Integer, Object> high = new MyHeap<Integer, Object>(
+								Collections.reverseOrder(new IntegerComparator()));
+						for (int i = 0; i < _boxed.length; i++){
+							Entry<Integer, Object> lowEntry = low.insert(_boxed[i], null);
+							low.replaceValue(lowEntry, high.insert(_boxed[i], lowEntry));
+							if (low.size() > bound){
+								low.remove(HeapBenchmark.<Integer, Object>twin(high.removeMin()));
+							}
+							if (i % 4 == 3){
+								high.remove(HeapBenchmark.<Integer, Object>twin(low.removeMin()));
+							}
+						}
+					}
+				}
+			});
+			System.out.println(String.format("%-16s %10.1f", name, time));
+		}
+	}
+
+	// The other heap's entry for the same item, kept as the entry's value
+	@SuppressWarnings("unchecked")
+	private static <K,V> Entry<K,V> twin(Entry<K,V> entry) {
+		return (Entry<K,V>) entry.getValue();
+	}
+
+	/**
+	 * Measures the cost of a durable insert into a JournaledHeap, with
+	 * one thread and with several threads sharing each fsync through
+	 * group commit. Every insert waits for its record to be on disk, so
+	 * this is bounded by n / 20 inserts to keep the run short.
+	 *
+	 * @param n the entry count the other benchmarks use
+	 */
+	private static void compareJournal(int n) throws IOException {
+		final int inserts = Math.max(1000, n / 20);
+		System.out.println("JournaledHeap, " + inserts + " durable inserts (us/op)");
+		for (int threads : new int[] {1, 4, 16}){
+			File journal = File.createTempFile("bench", ".journal");
+			File snapshot = File.createTempFile("bench", ".snapshot");
+			final JournaledHeap<Integer, Integer> heap = new JournaledHeap<Integer, Integer>(journal, snapshot,
+					new IntegerComparator(), HeapCodec.INTEGER, HeapCodec.INTEGER);
+			final int perThread = inserts / threads;
+			List<Thread> workers = new ArrayList<Thread>();
+			for (int t = 0; t < threads; t++){
+				workers.add(new Thread() {
+					public void run() {
+						for (int i = 0; i < perThread; i++){
+							heap.insert(i, i);
+						}
+					}
+				});
+			}
+			long start = System.nanoTime();
+			for (Thread worker : workers){
+				worker.start();
+			}
+			for (Thread worker : workers){
+				try {
+					worker.join();
+				} catch (InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+			}
+			double micros = (System.nanoTime() - start) / 1e3 / (perThread * threads);
+			heap.close();
+			journal.delete();
+			snapshot.delete();
+			System.out.println(String.format("%2d threads %10.2f", threads, micros));
+		}
+	}
+
+	/**
+	 * Compares a MyHeap holding n entries against an OffHeapHeap holding
+	 * the same entries: how much of the Java heap each one retains, how
+	 * much memory the OffHeapHeap takes outside it, and how long a full
+	 * collection takes while the heap is alive. Every entry gets the same
+	 * value object, so only the heap structure itself is measured.
+	 *
+	 * @param n the number of entries
+	 */
+	private static void compareOffHeap(int n) {
+		System.out.println("Off-heap storage, n = " + n);
+		System.out.println(String.format("%-12s %14s %14s %12s", "", "java heap MB", "off-heap MB", "full GC ms"));
+		Integer value = 0;
+		Random random = new Random(n);
+
+		long baseline = HeapBenchmark.usedMemory();
+		MyHeap<Integer, Integer> myHeap = new MyHeap<Integer, Integer>(new IntegerComparator());
+		for (int i = 0; i < n; i++){
+			myHeap.insert(random.nextInt(Integer.MAX_VALUE / 2), value);
+		}
+		long used = HeapBenchmark.usedMemory() - baseline;
+		System.out.println(String.format("%-12s %14.1f %14.1f %12.1f", "MyHeap",
+				used / 1e6, 0.0, HeapBenchmark.fullCollectionMillis()));
+		myHeap = null;
+
+		baseline = HeapBenchmark.usedMemory();
+		OffHeapHeap<Integer> offHeap = new OffHeapHeap<Integer>();
+		for (int i = 0; i < n; i++){
+			offHeap.insert((long) random.nextInt(Integer.MAX_VALUE / 2), value);
+		}
+		used = HeapBenchmark.usedMemory() - baseline;
+		System.out.println(String.format("%-12s %14.1f %14.1f %12.1f", "OffHeapHeap",
+				used / 1e6, offHeap.getOffHeapBytes() / 1e6, HeapBenchmark.fullCollectionMillis()));
+	}
+
+	// The Java heap in use after a full collection
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++){
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	// The best of a few System.gc() times, as reported by the collectors
+	private static double fullCollectionMillis() {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < MEASURED_ROUNDS; i++){
+			long before = HeapBenchmark.collectionMillis();
+			System.gc();
+			best = Math.min(best, HeapBenchmark.collectionMillis() - before);
+		}
+		return best;
+	}
+
+	private static long collectionMillis() {
+		long total = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()){
+			total += Math.max(0, collector.getCollectionTime());
+		}
+		return total;
+	}
+
+	/**
+	 * Compares the throughput of ConcurrentMyHeap and MultiQueue against a
+	 * MyHeap whose methods are all synchronized, with one thread per
+	 * processor. Each
+	 * thread peeks at min() and, every so often, inserts or removes the
+	 * minimum; the read-heavy mix peeks 18 times per insert/removeMin
+	 * pair, the write-heavy mix twice.
+	 *
+	 * @param n the number of entries the heap starts with
+	 */
+	private static void compareConcurrent(int n) {
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		System.out.println("Concurrent heaps, " + threads + " threads, n = " + n + " (ops/ms)");
+		System.out.println(String.format("%-18s %12s %12s", "", "read-heavy", "write-heavy"));
+
+		for (String name : new String[] {"synchronized", "ConcurrentMyHeap", "MultiQueue"}){
+			double[] throughput = new double[2];
+			int[] periods = {20, 4};
+			for (int mix = 0; mix < 2; mix++){
+				AdaptablePriorityQueue<Integer, Integer> heap;
+				if (name.equals("synchronized")){
+					heap = new SynchronizedHeap<Integer, Integer>(new MyHeap<Integer, Integer>(new IntegerComparator()));
+				} else if (name.equals("ConcurrentMyHeap")){
+					heap = new ConcurrentMyHeap<Integer, Integer>(new IntegerComparator());
+				} else {
+					heap = new MultiQueue<Integer, Integer>(new IntegerComparator(), threads, 2);
+				}
+				Random random = new Random(n);
+				for (int i = 0; i < n; i++){
+					heap.insert(random.nextInt(Integer.MAX_VALUE / 2), i);
+				}
+				HeapBenchmark.runThreads(heap, threads, periods[mix], 200); // Warmup
+				throughput[mix] = HeapBenchmark.runThreads(heap, threads, periods[mix], 1000);
+			}
+			System.out.println(String.format("%-18s %12.0f %12.0f", name, throughput[0], throughput[1]));
+		}
+	}
+
+	/**
+	 * Runs the given number of threads against the heap for the given
+	 * time. Out of every "period" operations, a thread does one insert
+	 * and then one removeMin, and peeks at min() for the rest; since
+	 * each thread inserts before it removes, the heap never runs dry.
+	 *
+	 * @return the total number of operations per millisecond
+	 */
+	private static double runThreads(final AdaptablePriorityQueue<Integer, Integer> heap,
+			int threads, final int period, long millis) {
+		final AtomicLong operations = new AtomicLong();
+		final long deadline = System.currentTimeMillis() + millis;
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++){
+			final Random random = new Random(t);
+			workers.add(new Thread() {
+				public void run() {
+					long count = 0;
+					while (System.currentTimeMillis() < deadline){
+						for (int i = 0; i < period; i++){
+							if (i == 0){
+								heap.insert(random.nextInt(Integer.MAX_VALUE / 2), i);
+							} else if (i == period / 2){
+								heap.removeMin();
+							} else {
+								heap.min();
+							}
+						}
+						count += period;
+					}
+					operations.addAndGet(count);
+				}
+			});
+		}
+		for (Thread worker : workers){
+			worker.start();
+		}
+		for (Thread worker : workers){
+			try {
+				worker.join();
+			} catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+		return (double) operations.get() / millis;
+	}
+
+	/**
+	 * Compares loading n entries into an empty MyHeap with n calls to
+	 * insert against one call to insertAll.
+	 *
+	 * @param n the number of entries to load
+	 */
+	private static void compareBulkLoad(int n) {
+		System.out.println("MyHeap load, n = " + n + " (ns/entry)");
+
+		double inserts = HeapBenchmark.measure(new Workload(n, n) {
+			private final Integer[] _boxed = this.boxedKeys();
+
+			void run() {
+				MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator());
+				for (int i = 0; i < _boxed.length; i++){
+					heap.insert(_boxed[i], _boxed[i]);
+				}
+			}
+		});
+		double insertAll = HeapBenchmark.measure(new Workload(n, n) {
+			private final Integer[] _boxed = this.boxedKeys();
+
+			void run() {
+				MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator());
+				heap.insertAll(_boxed, _boxed);
+			}
+		});
+		System.out.println(String.format("%-10s %10.1f", "insert", inserts));
+		System.out.println(String.format("%-10s %10.1f", "insertAll", insertAll));
+	}
+
+	/**
+	 * Compares d-ary MyHeaps on an insert-heavy mix (four inserts for
+	 * every removeMin), a removeMin-heavy mix (build the heap, then
+	 * empty it) and a decrease-key mix (build the heap, then one
+	 * replaceKey with a smaller key per entry).
+	 *
+	 * @param n the number of entries per workload
+	 */
+	private static void compareArities(int n) {
+		System.out.println("d-ary MyHeap, n = " + n + " (ns/op)");
+		System.out.println(String.format("%-6s %14s %16s %14s",
+				"arity", "insert-heavy", "removeMin-heavy", "decrease-key"));
+
+		int[] arities = {2, 3, 4, 8, 16};
+		for (final int arity : arities){
+			double insertHeavy = HeapBenchmark.measure(new Workload(n, n + n / 4) {
+				void run() {
+					MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator(), arity);
+					for (int i = 0; i < _keys.length; i++){
+						heap.insert(_keys[i], i);
+						if ((i & 3) == 3){
+							heap.removeMin();
+						}
+					}
+				}
+			});
+			double removeMinHeavy = HeapBenchmark.measure(new Workload(n, 2L * n) {
+				void run() {
+					MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator(), arity);
+					for (int i = 0; i < _keys.length; i++){
+						heap.insert(_keys[i], i);
+					}
+					while (!heap.isEmpty()){
+						heap.removeMin();
+					}
+				}
+			});
+			double decreaseKey = HeapBenchmark.measure(new Workload(n, 2L * n) {
+				@SuppressWarnings("unchecked")
+				void run() {
+					MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator(), arity);
+					Entry<Integer, Integer>[] entries = new Entry[_keys.length];
+					for (int i = 0; i < _keys.length; i++){
+						entries[i] = heap.insert(_keys[i], i);
+					}
+					for (int i = 0; i < _keys.length; i++){
+						Entry<Integer, Integer> entry = entries[_keys[i] % _keys.length];
+						heap.replaceKey(entry, entry.getKey() - (_keys[i] & 1023) - 1);
+					}
+				}
+			});
+			System.out.println(String.format("%-6d %14.1f %16.1f %14.1f",
+					arity, insertHeavy, removeMinHeavy, decreaseKey));
+		}
+	}
+
+	/**
+	 * Runs the workload through the warmup and measured rounds and
+	 * returns the best time per operation.
+	 *
+	 * @param workload to be timed
+	 * @return the best round's nanoseconds per operation
+	 */
+	private static double measure(Workload workload) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++){
+			workload.run();
+		}
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < MEASURED_ROUNDS; i++){
+			long start = System.nanoTime();
+			workload.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return (double) best / workload.operations();
+	}
+
+	/**
+	 * The baseline for ConcurrentMyHeap: a MyHeap with every method
+	 * behind the same monitor, readers included.
+	 */
+	private static class SynchronizedHeap<K,V> implements AdaptablePriorityQueue<K,V> {
+
+		private final MyHeap<K,V> _heap;
+
+		SynchronizedHeap(MyHeap<K,V> heap) {
+			_heap = heap;
+		}
+
+		public synchronized int size() {
+			return _heap.size();
+		}
+
+		public synchronized boolean isEmpty() {
+			return _heap.isEmpty();
+		}
+
+		public synchronized Entry<K,V> min() {
+			return _heap.min();
+		}
+
+		public synchronized Entry<K,V> insert(K key, V value) {
+			return _heap.insert(key, value);
+		}
+
+		public synchronized Entry<K,V> removeMin() {
+			return _heap.removeMin();
+		}
+
+		public synchronized Entry<K,V> remove(Entry<K,V> entry) {
+			return _heap.remove(entry);
+		}
+
+		public synchronized K replaceKey(Entry<K,V> entry, K key) {
+			return _heap.replaceKey(entry, key);
+		}
+
+		public synchronized V replaceValue(Entry<K,V> entry, V value) {
+			return _heap.replaceValue(entry, value);
+		}
+	}
+
+	/**
+	 * The grid distance to a target, which never overestimates when every
+	 * edge weighs at least 1.
+	 */
+	private static final class Manhattan implements ShortestPaths.Heuristic {
+
+		private final int _side;
+		private final int _target;
+
+		Manhattan(int side, int target) {
+			_side = side;
+			_target = target;
+		}
+
+		public long estimate(int vertex) {
+			return Math.abs(vertex % _side - _target % _side) + Math.abs(vertex / _side - _target / _side);
+		}
+	}
+
+	/**
+	 * A timed piece of work over a fixed array of random non-negative
+	 * keys, so every round sees the same input.
+	 */
+	private static abstract class Workload {
+
+		protected final int[] _keys;
+		private final long _operations;
+
+		Workload(int n, long operations) {
+			_operations = operations;
+			Random random = new Random(n);
+			_keys = new int[n];
+			for (int i = 0; i < n; i++){
+				_keys[i] = random.nextInt(Integer.MAX_VALUE / 2);
+			}
+		}
+
+		abstract void run();
+
+		// The keys boxed up front, so boxing isn't part of the timing
+		Integer[] boxedKeys() {
+			Integer[] boxed = new Integer[_keys.length];
+			for (int i = 0; i < _keys.length; i++){
+				boxed[i] = _keys[i];
+			}
+			return boxed;
+		}
+
+		// The number of heap operations one run performs
+		long operations() {
+			return _operations;
+		}
+	}
+}
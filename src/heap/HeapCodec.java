@@ -0,0 +1,142 @@
+package heap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Turns keys or values into bytes and back, for the heaps that store
+ * their entries outside of Java objects. encode and decode use the
+ * buffer's position, like the relative get and put methods of
+ * ByteBuffer, and leave it just past the bytes they used.
+ *
+ * A codec is either fixed-width, where every value takes exactly
+ * width() bytes, or variable-width, where width() is VARIABLE and
+ * size(value) gives the number of bytes of each value. Codecs for the
+ * common key types are provided as constants.
+ */
+
+public interface HeapCodec<T> {
+
+	/**
+	 * The width of a codec whose values take different numbers of bytes.
+	 */
+	int VARIABLE = -1;
+
+	/**
+	 * @return the number of bytes every value takes, or VARIABLE
+	 */
+	int width();
+
+	/**
+	 * @param value to be measured
+	 * @return the number of bytes encode will write for the value
+	 */
+	int size(T value);
+
+	/**
+	 * Writes the value at the buffer's position.
+	 *
+	 * @param value to be written
+	 * @param buffer with at least size(value) bytes remaining
+	 */
+	void encode(T value, ByteBuffer buffer);
+
+	/**
+	 * Reads a value at the buffer's position.
+	 *
+	 * @param buffer positioned at an encoded value
+	 * @return the decoded value
+	 */
+	T decode(ByteBuffer buffer);
+
+	/**
+	 * Integers as 4 bytes.
+	 */
+	HeapCodec<Integer> INTEGER = new HeapCodec<Integer>() {
+		public int width() {
+			return 4;
+		}
+
+		public int size(Integer value) {
+			return 4;
+		}
+
+		public void encode(Integer value, ByteBuffer buffer) {
+			buffer.putInt(value);
+		}
+
+		public Integer decode(ByteBuffer buffer) {
+			return buffer.getInt();
+		}
+	};
+
+	/**
+	 * Longs as 8 bytes.
+	 */
+	HeapCodec<Long> LONG = new HeapCodec<Long>() {
+		public int width() {
+			return 8;
+		}
+
+		public int size(Long value) {
+			return 8;
+		}
+
+		public void encode(Long value, ByteBuffer buffer) {
+			buffer.putLong(value);
+		}
+
+		public Long decode(ByteBuffer buffer) {
+			return buffer.getLong();
+		}
+	};
+
+	/**
+	 * Doubles as 8 bytes.
+	 */
+	HeapCodec<Double> DOUBLE = new HeapCodec<Double>() {
+		public int width() {
+			return 8;
+		}
+
+		public int size(Double value) {
+			return 8;
+		}
+
+		public void encode(Double value, ByteBuffer buffer) {
+			buffer.putDouble(value);
+		}
+
+		public Double decode(ByteBuffer buffer) {
+			return buffer.getDouble();
+		}
+	};
+
+	/**
+	 * Strings as a 4 byte length followed by their UTF-8 bytes. This
+	 * codec is variable-width.
+	 */
+	HeapCodec<String> STRING = new HeapCodec<String>() {
+		private final Charset _utf8 = Charset.forName("UTF-8");
+
+		public int width() {
+			return VARIABLE;
+		}
+
+		public int size(String value) {
+			return 4 + value.getBytes(_utf8).length;
+		}
+
+		public void encode(String value, ByteBuffer buffer) {
+			byte[] bytes = value.getBytes(_utf8);
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+		}
+
+		public String decode(ByteBuffer buffer) {
+			byte[] bytes = new byte[buffer.getInt()];
+			buffer.get(bytes);
+			return new String(bytes, _utf8);
+		}
+	};
+}
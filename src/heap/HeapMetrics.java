@@ -0,0 +1,294 @@
+package heap;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Operation counts for one MyHeap, made by MyHeap.enableMetrics(). It
+ * counts comparator calls and entry moves, keeps histograms of how many
+ * levels each upHeap and downHeap moved, tracks the peak size, and keeps
+ * a latency histogram for each of insert, removeMin, remove and
+ * replaceKey. register() publishes it as a JMX MBean.
+ *
+ * A heap without metrics has a null reference and its plain comparator,
+ * so all it pays is one null check per operation. With metrics on, the
+ * comparator is wrapped in one that counts calls, each operation reads
+ * System.nanoTime() twice, and the levels an entry moved are worked out
+ * from where its upHeap or downHeap started and ended, not counted in
+ * the loop.
+ *
+ * Latencies go into log-linear buckets: four per power of two, so a
+ * percentile is reported as the top of its bucket, at most 25% above
+ * the true value.
+ *
+ * Like MyHeap itself, the counts are not synchronized. A JMX client
+ * reading them while the heap is in use may see figures a moment stale,
+ * which is fine for monitoring.
+ */
+
+public class HeapMetrics implements HeapMetricsMBean {
+
+	// The levels a d-ary heap of Integer.MAX_VALUE entries can have
+	private static final int MAX_DEPTH = 32;
+	private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+	private long _comparisons;
+	private long _moves;
+	private int _size;
+	private int _peakSize;
+	private final long[] _upHeapDepths = new long[MAX_DEPTH];
+	private final long[] _downHeapDepths = new long[MAX_DEPTH];
+	private final Latencies _inserts = new Latencies();
+	private final Latencies _removeMins = new Latencies();
+	private final Latencies _removes = new Latencies();
+	private final Latencies _replaceKeys = new Latencies();
+
+	private ObjectName _name;
+
+	HeapMetrics(int size) {
+		_size = size;
+		_peakSize = size;
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server under the
+	 * name "heap:type=MyHeap,name=" followed by the given name.
+	 *
+	 * @param name to tell this heap apart from others
+	 * @return the full object name
+	 * @throws IllegalArgumentException if the name is malformed or
+	 *         already registered
+	 * @throws IllegalStateException if these metrics are already registered
+	 */
+	public synchronized ObjectName register(String name) throws IllegalArgumentException, IllegalStateException {
+		if (_name != null){
+			throw new IllegalStateException("ERROR: Metrics are already registered as " + _name);
+		}
+		try {
+			ObjectName objectName = new ObjectName("heap:type=MyHeap,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			_name = objectName;
+			return objectName;
+		} catch (JMException e){
+			throw new IllegalArgumentException("ERROR: Cannot register metrics as " + name, e);
+		}
+	}
+
+	/**
+	 * Removes these metrics from the platform MBean server, if they were
+	 * registered. MyHeap.disableMetrics() calls this.
+	 */
+	public synchronized void unregister() {
+		if (_name == null){
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(_name)){
+				server.unregisterMBean(_name);
+			}
+		} catch (JMException e){
+			// Someone else unregistered it first
+		}
+		_name = null;
+	}
+
+	public long getComparisonCount() {
+		return _comparisons;
+	}
+
+	public long getMoveCount() {
+		return _moves;
+	}
+
+	public int getPeakSize() {
+		return _peakSize;
+	}
+
+	public long[] getUpHeapDepths() {
+		return HeapMetrics.trim(_upHeapDepths);
+	}
+
+	public long[] getDownHeapDepths() {
+		return HeapMetrics.trim(_downHeapDepths);
+	}
+
+	public long[] getInsertLatencyNanos() {
+		return _inserts.summary();
+	}
+
+	public long[] getRemoveMinLatencyNanos() {
+		return _removeMins.summary();
+	}
+
+	public long[] getRemoveLatencyNanos() {
+		return _removes.summary();
+	}
+
+	public long[] getReplaceKeyLatencyNanos() {
+		return _replaceKeys.summary();
+	}
+
+	public void reset() {
+		_comparisons = 0;
+		_moves = 0;
+		_peakSize = _size;
+		Arrays.fill(_upHeapDepths, 0);
+		Arrays.fill(_downHeapDepths, 0);
+		_inserts.reset();
+		_removeMins.reset();
+		_removes.reset();
+		_replaceKeys.reset();
+	}
+
+	/**
+	 * Wraps a comparator in one that counts its calls here.
+	 *
+	 * @param comparator the heap's comparator
+	 * @return the counting comparator
+	 */
+	<K> Comparator<K> counting(Comparator<K> comparator) {
+		return new CountingComparator<K>(comparator, this);
+	}
+
+	// Records an upHeap or downHeap that moved the entry the given number of levels
+	void recordUpHeap(int levels) {
+		_upHeapDepths[Math.min(levels, MAX_DEPTH - 1)]++;
+		_moves += levels;
+	}
+
+	void recordDownHeap(int levels) {
+		_downHeapDepths[Math.min(levels, MAX_DEPTH - 1)]++;
+		_moves += levels;
+	}
+
+	// Records the end of an operation that began at start (from
+	// System.nanoTime()) and left the heap with size entries
+	void recordInsert(long start, int size) {
+		_inserts.record(System.nanoTime() - start);
+		this.recordSize(size);
+	}
+
+	void recordRemoveMin(long start, int size) {
+		_removeMins.record(System.nanoTime() - start);
+		_size = size;
+	}
+
+	void recordRemove(long start, int size) {
+		_removes.record(System.nanoTime() - start);
+		_size = size;
+	}
+
+	void recordReplaceKey(long start) {
+		_replaceKeys.record(System.nanoTime() - start);
+	}
+
+	void recordSize(int size) {
+		_size = size;
+		if (size > _peakSize){
+			_peakSize = size;
+		}
+	}
+
+	// A copy of the histogram without its trailing zeros
+	private static long[] trim(long[] histogram) {
+		int length = histogram.length;
+		while (length > 0 && histogram[length - 1] == 0){
+			length--;
+		}
+		return Arrays.copyOf(histogram, length);
+	}
+
+	/**
+	 * A log-linear histogram of latencies in nanoseconds. Values below 4
+	 * have a bucket each; above that, each power of two is split into
+	 * four buckets.
+	 */
+	private static final class Latencies {
+
+		private final long[] _buckets = new long[248];
+		private long _count;
+		private long _max;
+
+		void record(long nanos) {
+			_buckets[Latencies.bucket(nanos)]++;
+			_count++;
+			if (nanos > _max){
+				_max = nanos;
+			}
+		}
+
+		void reset() {
+			Arrays.fill(_buckets, 0);
+			_count = 0;
+			_max = 0;
+		}
+
+		// The percentiles (each the top of its bucket, but never above
+		// the maximum) and the maximum, or all zeros if nothing was recorded
+		long[] summary() {
+			long[] summary = new long[PERCENTILES.length + 1];
+			long count = _count;
+			if (count == 0){
+				return summary;
+			}
+			int p = 0;
+			long seen = 0;
+			for (int b = 0; b < _buckets.length && p < PERCENTILES.length; b++){
+				seen += _buckets[b];
+				while (p < PERCENTILES.length && seen >= Math.ceil(PERCENTILES[p] * count)){
+					summary[p++] = Math.min(Latencies.top(b), _max);
+				}
+			}
+			summary[PERCENTILES.length] = _max;
+			return summary;
+		}
+
+		static int bucket(long nanos) {
+			if (nanos < 4){
+				return (int) Math.max(0, nanos);
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+			return (exponent - 1) * 4 + (int) ((nanos >>> (exponent - 2)) & 3);
+		}
+
+		// The largest value that falls in the bucket
+		static long top(int bucket) {
+			if (bucket < 4){
+				return bucket;
+			}
+			int exponent = bucket / 4 + 1;
+			long bottom = (long) (4 + bucket % 4) << (exponent - 2);
+			return bottom + (1L << (exponent - 2)) - 1;
+		}
+	}
+
+	/**
+	 * A comparator that counts its calls in a HeapMetrics and then asks
+	 * the heap's own comparator.
+	 */
+	static final class CountingComparator<K> implements Comparator<K> {
+
+		private final Comparator<K> _base;
+		private final HeapMetrics _metrics;
+
+		private CountingComparator(Comparator<K> base, HeapMetrics metrics) {
+			_base = base;
+			_metrics = metrics;
+		}
+
+		Comparator<K> getBase() {
+			return _base;
+		}
+
+		public int compare(K a, K b) {
+			_metrics._comparisons++;
+			return _base.compare(a, b);
+		}
+	}
+}
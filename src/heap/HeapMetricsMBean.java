@@ -0,0 +1,65 @@
+package heap;
+
+/**
+ * The JMX view of a HeapMetrics: what jconsole or any other JMX client
+ * shows for a MyHeap whose metrics have been registered.
+ *
+ * The latency attributes are arrays of five figures in nanoseconds:
+ * the 50th, 90th, 99th and 99.9th percentiles and the maximum.
+ */
+
+public interface HeapMetricsMBean {
+
+	/**
+	 * @return the number of calls made to the heap's comparator
+	 */
+	long getComparisonCount();
+
+	/**
+	 * @return the number of times upHeap or downHeap moved an entry one
+	 *         level to make room (one swap, in a swapping heap)
+	 */
+	long getMoveCount();
+
+	/**
+	 * @return the most entries the heap has held at once
+	 */
+	int getPeakSize();
+
+	/**
+	 * @return how many upHeaps moved each number of levels (index 0 for
+	 *         an entry that stayed put)
+	 */
+	long[] getUpHeapDepths();
+
+	/**
+	 * @return how many downHeaps moved each number of levels
+	 */
+	long[] getDownHeapDepths();
+
+	/**
+	 * @return insert latency percentiles and maximum, in nanoseconds
+	 */
+	long[] getInsertLatencyNanos();
+
+	/**
+	 * @return removeMin latency percentiles and maximum, in nanoseconds
+	 */
+	long[] getRemoveMinLatencyNanos();
+
+	/**
+	 * @return remove latency percentiles and maximum, in nanoseconds
+	 */
+	long[] getRemoveLatencyNanos();
+
+	/**
+	 * @return replaceKey latency percentiles and maximum, in nanoseconds
+	 */
+	long[] getReplaceKeyLatencyNanos();
+
+	/**
+	 * Sets every count and histogram back to zero (the peak size to the
+	 * current size).
+	 */
+	void reset();
+}
@@ -0,0 +1,168 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import net.datastructures.Entry;
+
+/**
+ * This class is used to test the functionality of HeapMetrics, through
+ * MyHeap.enableMetrics().
+ */
+
+/* The counts are checked exactly on inserts whose cost is known: keys in
+ * increasing order never move (one comparison for checkKey and one
+ * against the parent), and keys in decreasing order always move all the
+ * way to the root (one comparison per level climbed, plus checkKey).
+ */
+
+public class HeapMetricsTest {
+
+	/**
+	 * To check that a heap without metrics has none, and that turning
+	 * them on twice gives the same metrics.
+	 */
+	@Test
+	public void testOffByDefault() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		assertTrue(heap.getMetrics() == null);
+		HeapMetrics metrics = heap.enableMetrics();
+		assertTrue(heap.enableMetrics() == metrics);
+		assertTrue(heap.getMetrics() == metrics);
+	}
+
+	/**
+	 * To check the comparison and move counts and the upHeap histogram
+	 * for increasing and then decreasing keys.
+	 */
+	@Test
+	public void testInsertCounts() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		for (int i = 1; i <= 10; i++){
+			heap.insert(i, "");
+		}
+		assertThat(metrics.getComparisonCount(), is(19L));
+		assertThat(metrics.getMoveCount(), is(0L));
+		assertThat(Arrays.toString(metrics.getUpHeapDepths()), is("[10]"));
+		assertThat(metrics.getPeakSize(), is(10));
+
+		heap = new MyHeap<Integer, String>(new IntegerComparator());
+		metrics = heap.enableMetrics();
+		for (int i = 7; i >= 1; i--){
+			heap.insert(i, "");
+		}
+		// Indexes 0 to 6 are 0, 1, 1, 2, 2, 2 and 2 levels below the root
+		assertThat(Arrays.toString(metrics.getUpHeapDepths()), is("[1, 2, 4]"));
+		assertThat(metrics.getMoveCount(), is(10L));
+		assertThat(metrics.getComparisonCount(), is(17L));
+	}
+
+	/**
+	 * To check the downHeap histogram, the peak size and the latency
+	 * summaries while a heap is filled and emptied.
+	 */
+	@Test
+	public void testRemoveMinAndLatencies() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		for (int i = 0; i < 1000; i++){
+			heap.insert((i * 7919) % 1000, "");
+		}
+		while (!heap.isEmpty()){
+			heap.removeMin();
+		}
+		assertThat(metrics.getPeakSize(), is(1000));
+		long downHeaps = 0;
+		for (long count : metrics.getDownHeapDepths()){
+			downHeaps += count;
+		}
+		// Every removeMin but the last downHeaps from the root
+		assertThat(downHeaps, is(999L));
+		assertTrue(metrics.getDownHeapDepths().length <= 10);
+
+		for (long[] summary : new long[][] {metrics.getInsertLatencyNanos(), metrics.getRemoveMinLatencyNanos()}){
+			assertThat(summary.length, is(5));
+			assertTrue(summary[4] > 0);
+			for (int i = 1; i < summary.length; i++){
+				assertTrue(summary[i - 1] <= summary[i]);
+			}
+		}
+		assertThat(Arrays.toString(metrics.getRemoveLatencyNanos()), is("[0, 0, 0, 0, 0]"));
+
+		metrics.reset();
+		assertThat(metrics.getComparisonCount(), is(0L));
+		assertThat(metrics.getPeakSize(), is(0));
+		assertThat(metrics.getUpHeapDepths().length, is(0));
+	}
+
+	/**
+	 * To check that remove and replaceKey are timed, and that turning
+	 * metrics off leaves the heap working with its own comparator.
+	 */
+	@Test
+	public void testDisable() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		Entry<Integer, String> a = heap.insert(5, "a");
+		Entry<Integer, String> b = heap.insert(6, "b");
+		heap.insert(7, "c");
+		heap.replaceKey(b, 1);
+		heap.remove(a);
+		assertTrue(metrics.getReplaceKeyLatencyNanos()[4] > 0);
+		assertTrue(metrics.getRemoveLatencyNanos()[4] > 0);
+
+		heap.disableMetrics();
+		long comparisons = metrics.getComparisonCount();
+		assertTrue(heap.getMetrics() == null);
+		heap.insert(0, "d");
+		assertThat(metrics.getComparisonCount(), is(comparisons));
+		assertThat(heap.removeMin().getValue(), is("d"));
+		assertThat(heap.removeMin().getValue(), is("b"));
+	}
+
+	/**
+	 * To check that registered metrics can be read over JMX, and that
+	 * turning them off unregisters them.
+	 */
+	@Test
+	public void testJmx() throws Exception {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		ObjectName name = metrics.register("metrics-test");
+		heap.insert(2, "");
+		heap.insert(1, "");
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertThat((Long) server.getAttribute(name, "ComparisonCount"), is(3L));
+		assertThat((Integer) server.getAttribute(name, "PeakSize"), is(2));
+
+		heap.disableMetrics();
+		assertTrue(!server.isRegistered(name));
+	}
+
+	/**
+	 * Here we test that registering the same name twice throws an
+	 * IllegalArgumentException.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateNameThrowsIllegalArgumentException() {
+		HeapMetrics first = new MyHeap<Integer, String>(new IntegerComparator()).enableMetrics();
+		first.register("duplicate");
+		try {
+			new MyHeap<Integer, String>(new IntegerComparator()).enableMetrics().register("duplicate");
+		} finally {
+			first.unregister();
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+package heap;
+
+import java.util.Comparator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for one slow MyHeap operation: insert,
+ * insertAll, removeMin, replaceMin, remove, replaceKey or drainTo. It
+ * records the heap's size afterwards, how many levels the operation's
+ * upHeaps and downHeaps moved, how many comparisons it made and about
+ * how long they took, so a recording shows heap hot spots next to GC
+ * and lock events.
+ *
+ * Only operations that take longer than the threshold are written. It
+ * is 100 us unless the recording says otherwise, for example with
+ * recording.enable("heap.HeapOperation").withThreshold(duration) or a
+ * "heap.HeapOperation#threshold" setting in a .jfc file.
+ *
+ * When no recording has the event enabled, MyHeap pays only for an
+ * event object that the JIT can usually do away with. While it is
+ * enabled, the heap's comparator is wrapped for the length of each
+ * operation in one that counts its calls but only times one call in
+ * SAMPLE_INTERVAL (always including the first), since most operations
+ * are far under the threshold and timing every call would cost more
+ * than the comparisons themselves. The comparator time is worked out
+ * from the sample only for operations that are written.
+ */
+
+@Name("heap.HeapOperation")
+@Label("Heap Operation")
+@Category("Heap")
+@Description("A MyHeap operation that took longer than the threshold")
+@Threshold("100 us")
+@StackTrace(true)
+final class HeapOperationEvent extends jdk.jfr.Event {
+
+	// One comparator call in this many is timed; a power of two
+	static final int SAMPLE_INTERVAL = 16;
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Heap Size")
+	@Description("The number of entries after the operation")
+	int size;
+
+	@Label("Sift Depth")
+	@Description("The levels moved by the operation's upHeaps and downHeaps")
+	int siftDepth;
+
+	@Label("Comparisons")
+	@Description("The number of comparator calls the operation made")
+	long comparisons;
+
+	@Label("Comparator Time")
+	@Description("The time spent in the comparator, estimated from a sample of the calls")
+	@Timespan(Timespan.NANOSECONDS)
+	long comparatorTime;
+
+	/**
+	 * Wraps a comparator in one that counts its calls and times a sample
+	 * of them, for this event.
+	 *
+	 * @param comparator the heap's comparator
+	 * @return the timing comparator
+	 */
+	<K> TimingComparator<K> timing(Comparator<K> comparator) {
+		return new TimingComparator<K>(comparator, this);
+	}
+
+	/**
+	 * A comparator that counts its calls and times every
+	 * SAMPLE_INTERVAL-th one for a HeapOperationEvent, and then hands
+	 * back the heap's own comparator when the operation ends.
+	 */
+	static final class TimingComparator<K> implements Comparator<K> {
+
+		private final Comparator<K> _base;
+		private final HeapOperationEvent _event;
+		private long _calls;
+		private long _sampledTime;
+		private long _firstStart;
+		private long _lastEnd;
+
+		private TimingComparator(Comparator<K> base, HeapOperationEvent event) {
+			_base = base;
+			_event = event;
+		}
+
+		Comparator<K> getBase() {
+			return _base;
+		}
+
+		public int compare(K a, K b) {
+			if ((_calls++ & (SAMPLE_INTERVAL - 1)) != 0){
+				return _base.compare(a, b);
+			}
+			long start = System.nanoTime();
+			if (_calls == 1){
+				_firstStart = start;
+			}
+			int order = _base.compare(a, b);
+			_lastEnd = System.nanoTime();
+			_sampledTime += _lastEnd - start;
+			return order;
+		}
+
+		/**
+		 * Fills in the event's comparison count and comparator time, for
+		 * an event that is about to be written. The time is the average
+		 * of the sampled calls times the number of calls, but never more
+		 * than passed between the first and the last sampled call, which
+		 * both fall inside the event.
+		 */
+		void report() {
+			_event.comparisons = _calls;
+			if (_calls > 0){
+				long sampled = (_calls - 1) / SAMPLE_INTERVAL + 1;
+				double estimate = (double) _sampledTime / sampled * _calls;
+				_event.comparatorTime = (long) Math.min(estimate, _lastEnd - _firstStart);
+			}
+		}
+	}
+}
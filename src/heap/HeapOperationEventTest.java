@@ -0,0 +1,226 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+/**
+ * This class is used to test the HeapOperationEvents that MyHeap writes
+ * to a flight recording.
+ */
+
+/* Each test records into its own Recording, dumps it to a temporary file
+ * and reads the heap events back. Thresholds are either zero (so every
+ * operation is written) or far beyond anything the test does, except in
+ * testSlowComparator, whose comparator sleeps.
+ */
+
+public class HeapOperationEventTest {
+
+	/**
+	 * To check that with a zero threshold every operation is written,
+	 * with its name, the size afterwards and the levels it moved.
+	 */
+	@Test
+	public void testEveryOperation() throws Exception {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		Recording recording = new Recording();
+		recording.enable(HeapOperationEvent.class).withThreshold(Duration.ZERO);
+		recording.start();
+		for (int i = 7; i >= 1; i--){
+			heap.insert(i, "");
+		}
+		heap.removeMin();
+		List<RecordedEvent> events = HeapOperationEventTest.stop(recording);
+
+		assertThat(events.size(), is(8));
+		int depth = 0;
+		for (int i = 0; i < 7; i++){
+			assertThat(events.get(i).getString("operation"), is("insert"));
+			assertThat(events.get(i).getInt("size"), is(i + 1));
+			depth += events.get(i).getInt("siftDepth");
+		}
+		// Indexes 0 to 6 are 0, 1, 1, 2, 2, 2 and 2 levels below the root
+		assertThat(depth, is(10));
+		assertThat(events.get(7).getString("operation"), is("removeMin"));
+		assertThat(events.get(7).getInt("size"), is(6));
+		// The heap is [1, 4, 2, 7, 5, 6, 3], so 3 moves down one level to 2's place
+		assertThat(events.get(7).getInt("siftDepth"), is(1));
+	}
+
+	/**
+	 * To check that every comparison is counted in the events, even
+	 * though only a sample of them is timed: over a few hundred inserts
+	 * and removeMins the events must add up to what the metrics count,
+	 * apart from each insert's key check (made before its event begins),
+	 * with no more comparator time than the operations took.
+	 */
+	@Test
+	public void testComparisonCounts() throws Exception {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		Recording recording = new Recording();
+		recording.enable(HeapOperationEvent.class).withThreshold(Duration.ZERO);
+		recording.start();
+		for (int i = 200; i >= 1; i--){
+			heap.insert(i, "");
+		}
+		for (int i = 0; i < 100; i++){
+			heap.removeMin();
+		}
+		List<RecordedEvent> events = HeapOperationEventTest.stop(recording);
+
+		assertThat(events.size(), is(300));
+		long comparisons = 0;
+		for (RecordedEvent event : events){
+			comparisons += event.getLong("comparisons");
+			assertTrue(event.getDuration().compareTo(event.getDuration("comparatorTime")) >= 0);
+		}
+		assertThat(comparisons, is(metrics.getComparisonCount() - 200));
+	}
+
+	/**
+	 * To check that operations under the threshold are not written, and
+	 * that the comparator is put back afterwards so the metrics still
+	 * count exactly.
+	 */
+	@Test
+	public void testThreshold() throws Exception {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		Recording recording = new Recording();
+		recording.enable(HeapOperationEvent.class).withThreshold(Duration.ofHours(1));
+		recording.start();
+		for (int i = 1; i <= 10; i++){
+			heap.insert(i, "");
+		}
+		assertThat(HeapOperationEventTest.stop(recording).size(), is(0));
+		assertThat(metrics.getComparisonCount(), is(19L));
+
+		heap.disableMetrics();
+		assertThat(heap.removeMin().getKey(), is(1));
+	}
+
+	/**
+	 * To check that a slow comparator makes a removeMin cross a 1 ms
+	 * threshold, with the comparator's time in the event.
+	 */
+	@Test
+	public void testSlowComparator() throws Exception {
+		final boolean[] slow = {false};
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if (slow[0]){
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e){
+						Thread.currentThread().interrupt();
+					}
+				}
+				return a.compareTo(b);
+			}
+		});
+		for (int i = 0; i < 15; i++){
+			heap.insert(i, "");
+		}
+
+		Recording recording = new Recording();
+		recording.enable(HeapOperationEvent.class).withThreshold(Duration.ofMillis(1));
+		recording.start();
+		slow[0] = true;
+		heap.removeMin();
+		slow[0] = false;
+		List<RecordedEvent> events = HeapOperationEventTest.stop(recording);
+
+		assertThat(events.size(), is(1));
+		RecordedEvent event = events.get(0);
+		assertThat(event.getString("operation"), is("removeMin"));
+		assertThat(event.getInt("size"), is(14));
+		assertTrue(event.getInt("siftDepth") > 0);
+		assertTrue(event.getDuration("comparatorTime").toMillis() >= 1);
+		assertTrue(event.getDuration().compareTo(event.getDuration("comparatorTime")) >= 0);
+	}
+
+	/**
+	 * To check that a comparator that throws part-way through a sift
+	 * doesn't leave the timing wrapper behind: afterwards the metrics'
+	 * counting comparator must be back on top, so that disableMetrics can
+	 * take it off, and the next operation must be counted and written.
+	 * (The entry whose insert failed is left where it was appended.)
+	 */
+	@Test
+	public void testThrowingComparator() throws Exception {
+		final boolean[] broken = {false};
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if (broken[0] && !a.equals(b)){
+					throw new IllegalStateException("broken comparator");
+				}
+				return a.compareTo(b);
+			}
+		});
+		HeapMetrics metrics = heap.enableMetrics();
+		for (int i = 1; i <= 7; i++){
+			heap.insert(i, "");
+		}
+
+		Recording recording = new Recording();
+		recording.enable(HeapOperationEvent.class).withThreshold(Duration.ZERO);
+		recording.start();
+		broken[0] = true;
+		try {
+			heap.insert(0, "");
+			fail("The comparator should have thrown");
+		} catch (IllegalStateException e){
+			// Expected, from the first comparison in upHeap
+		}
+		broken[0] = false;
+		long comparisons = metrics.getComparisonCount();
+		heap.replaceKey(heap.min(), 100);
+		assertTrue(metrics.getComparisonCount() > comparisons);
+		List<RecordedEvent> events = HeapOperationEventTest.stop(recording);
+
+		assertThat(events.size(), is(2));
+		assertThat(events.get(1).getString("operation"), is("replaceKey"));
+		heap.disableMetrics(); // Would fail to unwrap a leftover timing comparator
+		assertTrue(heap.getMetrics() == null);
+	}
+
+	/**
+	 * Stops the recording and returns its heap events in the order they
+	 * were written.
+	 */
+	private static List<RecordedEvent> stop(Recording recording) throws Exception {
+		recording.stop();
+		Path file = Files.createTempFile("heap", ".jfr");
+		try {
+			recording.dump(file);
+			List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+			for (RecordedEvent event : RecordingFile.readAllEvents(file)){
+				if (event.getEventType().getName().equals("heap.HeapOperation")){
+					events.add(event);
+				}
+			}
+			events.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+			return events;
+		} finally {
+			recording.close();
+			Files.delete(file);
+		}
+	}
+
+}
@@ -0,0 +1,398 @@
+package heap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import net.datastructures.Entry;
+
+/**
+ * A benchmark suite that runs every operation of MyHeap over a range of
+ * sizes and key distributions, with java.util.PriorityQueue as the
+ * baseline and MyLinkedHeapTree for the operations a tree supports. Run
+ * it with
+ *
+ *     java heap.HeapSuite [max] [operation ...]
+ *
+ * where max is the largest size (10^6 by default; sizes go up from 10^3
+ * by powers of 10, and 10^8 needs a -Xmx of 16g or so) and the optional
+ * operations are any of insert, removeMin, remove, replaceKey, bulk and
+ * mixed (all of them by default).
+ *
+ * Each case is set up afresh before every round (untimed), run a few
+ * times to warm up the JIT and then timed several more times. It reports
+ * the best time in nanoseconds per operation and the bytes allocated per
+ * operation, from the JVM's per-thread allocation counter. The
+ * allocation figure is the same number JMH's gc profiler reports as
+ * gc.alloc.rate.norm.
+ */
+
+/* The operations are:
+ *
+ * - insert: n inserts into an empty queue.
+ * - removeMin: n removeMins, emptying a queue of n.
+ * - remove: 1000 removes of arbitrary entries from a queue of n. For
+ *   MyHeap this is remove(entry) on a handle; PriorityQueue has to search
+ *   for the element, which is O(n), so fewer operations keep it usable:
+ *   it does at most SEARCH_BUDGET / n of them (100 at 10^6, 1 at 10^8),
+ *   so the searches stay around 10^8 element visits per round.
+ * - replaceKey: 1000 key decreases in a queue of n. PriorityQueue has no
+ *   such method, so it does a remove and an add, sampled like remove.
+ * - bulk: loading n keys at once (MyHeap.insertAll against the
+ *   PriorityQueue(Collection) constructor, both bottom-up heapify).
+ * - mixed: n rounds of removeMin and insert on a queue of n (the "hold"
+ *   model).
+ *
+ * MyLinkedHeapTree keeps no key order, so for it insert is add and
+ * removeMin is removing the last node. That is the cost a heap built on
+ * the linked tree pays before any upHeap or downHeap.
+ *
+ * The keys are boxed before timing, so boxing is not counted. MyHeap's
+ * allocation is then its MyHeapEntry handles plus any array growth.
+ */
+
+public class HeapSuite {
+
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int MEASURED_ROUNDS = 5;
+	// The number of remove and replaceKey operations per case
+	private static final int SAMPLED_OPERATIONS = 1000;
+	// The element visits per round allowed to a target whose remove and
+	// replaceKey search the queue
+	private static final long SEARCH_BUDGET = 100000000L;
+
+	/**
+	 * The order the keys of a case arrive in.
+	 */
+	enum Distribution {
+		RANDOM,
+		SORTED,
+		REVERSED,
+		// Only 16 distinct keys
+		DUPLICATES;
+
+		int[] keys(int n, long seed) {
+			Random random = new Random(seed);
+			int[] keys = new int[n];
+			for (int i = 0; i < n; i++){
+				switch (this){
+				case SORTED:
+					keys[i] = i;
+					break;
+				case REVERSED:
+					keys[i] = n - i;
+					break;
+				case DUPLICATES:
+					keys[i] = random.nextInt(16);
+					break;
+				default:
+					keys[i] = random.nextInt(Integer.MAX_VALUE / 2);
+				}
+			}
+			return keys;
+		}
+	}
+
+	/**
+	 * The operations the suite times, by the name used on the command line.
+	 */
+	enum Operation {
+		INSERT("insert"),
+		REMOVE_MIN("removeMin"),
+		REMOVE("remove"),
+		REPLACE_KEY("replaceKey"),
+		BULK("bulk"),
+		MIXED("mixed");
+
+		private final String _name;
+
+		Operation(String name) {
+			_name = name;
+		}
+	}
+
+	public static void main(String[] args) {
+		int max = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		List<String> names = Arrays.asList(args).subList(Math.min(1, args.length), args.length);
+		Target[] targets = {new HeapTarget(), new LinkedTreeTarget(), new QueueTarget()};
+
+		for (Operation operation : Operation.values()){
+			if (!names.isEmpty() && !names.contains(operation._name)){
+				continue;
+			}
+			System.out.println(operation._name + " (ns/op, B/op)");
+			StringBuilder header = new StringBuilder(String.format("%-10s %-10s", "size", "keys"));
+			for (Target target : targets){
+				header.append(String.format(" %22s", target.name()));
+			}
+			System.out.println(header);
+
+			for (int n = 1000; n > 0 && n <= max; n = n <= Integer.MAX_VALUE / 10 ? n * 10 : -1){
+				for (Distribution distribution : Distribution.values()){
+					Integer[] keys = HeapSuite.box(distribution.keys(n, n));
+					StringBuilder row = new StringBuilder(String.format("%-10d %-10s", n,
+							distribution.name().toLowerCase()));
+					for (Target target : targets){
+						if (target.supports(operation)){
+							double[] result = HeapSuite.measure(target, operation, keys);
+							row.append(String.format(" %12.1f %9.1f", result[0], result[1]));
+						} else {
+							row.append(String.format(" %22s", "-"));
+						}
+					}
+					System.out.println(row);
+				}
+			}
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Times one case: the best of several rounds, each set up afresh.
+	 *
+	 * @param target the queue under test
+	 * @param operation the operation to time
+	 * @param keys the keys of the case, in arrival order
+	 * @return the time and the bytes allocated, both per operation
+	 */
+	private static double[] measure(Target target, Operation operation, Integer[] keys) {
+		int n = keys.length;
+		AdaptableTarget adaptable = target instanceof AdaptableTarget ? (AdaptableTarget) target : null;
+		int sampled = adaptable == null ? 0 : adaptable.sampledOperations(n);
+		// The handles sampled for remove and replaceKey, spread evenly, and
+		// the smaller keys they are given
+		int[] picks = new int[sampled];
+		Integer[] lowered = new Integer[sampled];
+		for (int i = 0; i < sampled; i++){
+			picks[i] = (int) ((long) i * n / sampled);
+			lowered[i] = keys[picks[i]] / 2;
+		}
+		long operations = operation == Operation.REMOVE || operation == Operation.REPLACE_KEY ? sampled
+				: operation == Operation.MIXED ? 2L * n : n;
+
+		long best = Long.MAX_VALUE;
+		long allocated = 0;
+		for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++){
+			target.reset(n);
+			if (operation != Operation.INSERT && operation != Operation.BULK){
+				for (int i = 0; i < n; i++){
+					target.insert(keys[i], i);
+				}
+			}
+			long bytes = HeapSuite.allocatedBytes();
+			long start = System.nanoTime();
+			switch (operation){
+			case INSERT:
+				for (int i = 0; i < n; i++){
+					target.insert(keys[i], i);
+				}
+				break;
+			case REMOVE_MIN:
+				for (int i = 0; i < n; i++){
+					target.removeMin();
+				}
+				break;
+			case REMOVE:
+				for (int i = 0; i < sampled; i++){
+					adaptable.remove(picks[i]);
+				}
+				break;
+			case REPLACE_KEY:
+				for (int i = 0; i < sampled; i++){
+					adaptable.replaceKey(picks[i], lowered[i]);
+				}
+				break;
+			case BULK:
+				adaptable.bulkLoad(keys);
+				break;
+			default:
+				for (int i = 0; i < n; i++){
+					target.removeMin();
+					target.insert(keys[i], i);
+				}
+			}
+			long time = System.nanoTime() - start;
+			bytes = HeapSuite.allocatedBytes() - bytes;
+			if (round >= WARMUP_ROUNDS){
+				best = Math.min(best, time);
+				allocated = bytes;
+			}
+		}
+		target.reset(0);
+		return new double[] {(double) best / operations, (double) allocated / operations};
+	}
+
+	// The bytes this thread has allocated so far, or 0 if the JVM can't say
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean){
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+					Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	private static Integer[] box(int[] keys) {
+		Integer[] boxed = new Integer[keys.length];
+		for (int i = 0; i < keys.length; i++){
+			boxed[i] = keys[i];
+		}
+		return boxed;
+	}
+
+	/**
+	 * A queue under test, which supports insert, removeMin and mixed.
+	 * Entries are named by the index of the key they were inserted with.
+	 */
+	private static abstract class Target {
+
+		abstract String name();
+
+		boolean supports(Operation operation) {
+			return operation == Operation.INSERT || operation == Operation.REMOVE_MIN
+					|| operation == Operation.MIXED;
+		}
+
+		// Empties the queue, ready for n entries
+		abstract void reset(int n);
+
+		abstract void insert(Integer key, int index);
+
+		abstract void removeMin();
+	}
+
+	/**
+	 * A queue under test that supports every operation, finding entries
+	 * for remove and replaceKey by their index.
+	 */
+	private static abstract class AdaptableTarget extends Target {
+
+		boolean supports(Operation operation) {
+			return true;
+		}
+
+		// The number of removes or replaceKeys to time in a queue of n
+		int sampledOperations(int n) {
+			return Math.min(n, SAMPLED_OPERATIONS);
+		}
+
+		abstract void remove(int index);
+
+		abstract void replaceKey(int index, Integer key);
+
+		abstract void bulkLoad(Integer[] keys);
+	}
+
+	/**
+	 * MyHeap, with the handle of every entry kept by index.
+	 */
+	private static final class HeapTarget extends AdaptableTarget {
+
+		private MyHeap<Integer, Integer> _heap;
+		private Entry<Integer, Integer>[] _entries;
+
+		String name() {
+			return "MyHeap";
+		}
+
+		@SuppressWarnings("unchecked")
+		void reset(int n) {
+			_heap = new MyHeap<Integer, Integer>(new IntegerComparator());
+			_entries = new Entry[n];
+		}
+
+		void insert(Integer key, int index) {
+			_entries[index] = _heap.insert(key, key);
+		}
+
+		void removeMin() {
+			_heap.removeMin();
+		}
+
+		void remove(int index) {
+			_heap.remove(_entries[index]);
+		}
+
+		void replaceKey(int index, Integer key) {
+			_heap.replaceKey(_entries[index], key);
+		}
+
+		void bulkLoad(Integer[] keys) {
+			_heap.insertAll(keys, keys);
+		}
+	}
+
+	/**
+	 * MyLinkedHeapTree, which only adds and removes the last node.
+	 */
+	private static final class LinkedTreeTarget extends Target {
+
+		private MyLinkedHeapTree<Integer> _tree;
+
+		String name() {
+			return "MyLinkedHeapTree";
+		}
+
+		void reset(int n) {
+			_tree = new MyLinkedHeapTree<Integer>();
+		}
+
+		void insert(Integer key, int index) {
+			_tree.add(key);
+		}
+
+		void removeMin() {
+			_tree.remove();
+		}
+	}
+
+	/**
+	 * The baseline: java.util.PriorityQueue in natural order.
+	 */
+	private static final class QueueTarget extends AdaptableTarget {
+
+		private PriorityQueue<Integer> _queue;
+		// The key each index was inserted with, to find it again
+		private Integer[] _keys;
+
+		String name() {
+			return "PriorityQueue";
+		}
+
+		// Each search is O(n), so fewer of them as the queue grows
+		int sampledOperations(int n) {
+			return (int) Math.max(1, Math.min(super.sampledOperations(n), SEARCH_BUDGET / n));
+		}
+
+		void reset(int n) {
+			_queue = new PriorityQueue<Integer>();
+			_keys = new Integer[n];
+		}
+
+		void insert(Integer key, int index) {
+			_queue.add(key);
+			_keys[index] = key;
+		}
+
+		void removeMin() {
+			_queue.poll();
+		}
+
+		void remove(int index) {
+			_queue.remove(_keys[index]);
+		}
+
+		void replaceKey(int index, Integer key) {
+			_queue.remove(_keys[index]);
+			_queue.add(key);
+			_keys[index] = key;
+		}
+
+		void bulkLoad(Integer[] keys) {
+			_queue = new PriorityQueue<Integer>(Arrays.asList(keys));
+		}
+	}
+}
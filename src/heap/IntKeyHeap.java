@@ -0,0 +1,161 @@
+package heap;
+
+import java.util.Arrays;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.InvalidEntryException;
+
+/**
+ * An adaptable priority queue with int keys. The keys are kept in a
+ * int[] in heap order and compared with the native operators, so
+ * inserting never boxes a key and the sift loops make no Comparator
+ * calls. Entries are referred to by the int handle returned from
+ * insert, which plays the role of a MyHeapEntry for remove(),
+ * replaceKey() and replaceValue().
+ */
+
+public class IntKeyHeap<V> extends PrimitiveKeyHeap<V> {
+
+	private int[] _keys;
+
+	/**
+	 * Creates an empty heap.
+	 */
+	public IntKeyHeap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty heap with room for the given number of entries
+	 * before any of its arrays have to grow.
+	 *
+	 * @param initialCapacity the number of entries to allocate for
+	 */
+	public IntKeyHeap(int initialCapacity) {
+		super(initialCapacity);
+		_keys = new int[_handles.length];
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the handle of the new entry.
+	 * This method runs in O(log n) time.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the handle of the new entry
+	 */
+	public int insert(int key, V value) {
+		int slot = this.addSlot(value);
+		int handle = _handles[slot];
+		_keys[slot] = key;
+		this.siftUp(slot);
+		return handle;
+	}
+
+	/**
+	 * Returns the minimum key in the heap.
+	 *
+	 * @return the key of the minimum entry
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public int minKey() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return _keys[0];
+	}
+
+	/**
+	 * Returns the key stored with the given handle.
+	 *
+	 * @param handle of the entry
+	 * @return the key of the entry
+	 * @throws InvalidEntryException if the handle is not in the heap
+	 */
+	public int getKey(int handle) throws InvalidEntryException {
+		return _keys[this.checkHandle(handle)];
+	}
+
+	/**
+	 * Replaces the key of the entry with the given handle, moving the
+	 * entry up or down as needed. This method runs in O(log n) time.
+	 *
+	 * @param handle of the entry
+	 * @param key to replace the existing key with
+	 * @return the old key of the entry
+	 * @throws InvalidEntryException if the handle is not in the heap
+	 */
+	public int replaceKey(int handle, int key) throws InvalidEntryException {
+		int slot = this.checkHandle(handle);
+		int oldKey = _keys[slot];
+		_keys[slot] = key;
+		if (key < oldKey){
+			this.siftUp(slot);
+		} else {
+			this.siftDown(slot);
+		}
+		return oldKey;
+	}
+
+	protected void resizeKeys(int capacity) {
+		_keys = Arrays.copyOf(_keys, capacity);
+	}
+
+	protected void moveSlot(int from, int to) {
+		_keys[to] = _keys[from];
+		_handles[to] = _handles[from];
+		this.placed(to);
+	}
+
+	/**
+	 * Moves the entry in the given slot up while its key is less than
+	 * its parent's. Parents are shifted down into the hole rather than
+	 * swapped, and the entry itself is written once at the end.
+	 *
+	 * @param slot of the entry to move up
+	 */
+	protected void siftUp(int slot) {
+		int key = _keys[slot];
+		int handle = _handles[slot];
+		while (slot > 0){
+			int parent = (slot - 1) >>> 1;
+			if (key >= _keys[parent]){
+				break;
+			}
+			_keys[slot] = _keys[parent];
+			_handles[slot] = _handles[parent];
+			this.placed(slot);
+			slot = parent;
+		}
+		_keys[slot] = key;
+		_handles[slot] = handle;
+		this.placed(slot);
+	}
+
+	/**
+	 * Moves the entry in the given slot down while one of its children
+	 * has a lesser key, pulling the lesser child up into the hole.
+	 *
+	 * @param slot of the entry to move down
+	 */
+	protected void siftDown(int slot) {
+		int key = _keys[slot];
+		int handle = _handles[slot];
+		int half = _size >>> 1;
+		while (slot < half){
+			int child = (slot << 1) + 1;
+			int right = child + 1;
+			if (right < _size && _keys[right] < _keys[child]){
+				child = right;
+			}
+			if (key <= _keys[child]){
+				break;
+			}
+			_keys[slot] = _keys[child];
+			_handles[slot] = _handles[child];
+			this.placed(slot);
+			slot = child;
+		}
+		_keys[slot] = key;
+		_handles[slot] = handle;
+		this.placed(slot);
+	}
+}
@@ -0,0 +1,693 @@
+package heap;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A durable, thread-safe adaptable priority queue: a MyHeap whose
+ * changes are written to a write-ahead journal, on top of the last
+ * snapshot (see MyHeap.writeSnapshot). Opening the heap loads the
+ * snapshot and replays the journal onto it, so every change that
+ * returned before a crash is still there afterwards.
+ *
+ * Every entry gets an id, so that the journal can say which entry a
+ * remove(), replaceKey() or replaceValue() was for. Each change is
+ * applied to the heap and encoded as a record in an in-memory buffer
+ * under one lock, so the journal order is the order of the changes.
+ * The caller then waits for its record to be on disk. Instead of one
+ * fsync per call, this uses group commit: the first waiting thread
+ * becomes the leader, takes the whole buffer, writes it and forces the
+ * file, while other threads keep adding records to a fresh buffer. One
+ * fsync then makes a whole batch of records durable, so under load the
+ * cost per change is a share of an fsync rather than a whole one.
+ *
+ * Journal records are [length][CRC32][type][entry id][key and/or value],
+ * after a header holding the journal's epoch. A record cut short by a
+ * crash fails its length or checksum and is dropped on replay, along
+ * with anything after it; its caller never returned.
+ *
+ * checkpoint() writes a new snapshot and starts an empty journal. The
+ * snapshot file starts with the epoch it belongs to, so if a crash
+ * happens between replacing the snapshot and resetting the journal, the
+ * stale journal (with an older epoch) is recognized and ignored. The
+ * directory is forced after the snapshot is moved into place, so the
+ * journal is never reset while the move could still be lost; if a file
+ * system loses it anyway, the new snapshot is still in the temporary
+ * file, and opening the heap finishes the move.
+ */
+
+public class JournaledHeap<K,V> implements AdaptablePriorityQueue<K,V>, Closeable {
+
+	private static final int JOURNAL_MAGIC = 0x4d59484a;
+	private static final int JOURNAL_VERSION = 1;
+	private static final int JOURNAL_HEADER = 16;
+
+	// Record types
+	private static final byte INSERT = 1;
+	private static final byte REMOVE = 2;
+	private static final byte REPLACE_KEY = 3;
+	private static final byte REPLACE_VALUE = 4;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final File _journal;
+	private final File _snapshot;
+	private final Comparator<K> _comp;
+	private final HeapCodec<K> _keyCodec;
+	private final HeapCodec<V> _valueCodec;
+
+	private MyHeap<K,V> _heap;
+	private final Map<Long, Entry<K,V>> _entries;
+	private final Map<Entry<K,V>, Long> _ids;
+	private long _nextId;
+	private long _epoch;
+
+	private FileChannel _channel;
+	private final ReentrantLock _lock;
+	private final Condition _flushed;
+	private final CRC32 _crc;
+
+	// Records waiting to be written, and an empty buffer to swap in
+	private ByteBuffer _pending;
+	private ByteBuffer _spare;
+
+	// Records are numbered; all up to _durable are on disk
+	private long _appended;
+	private long _durable;
+	private boolean _flushing;
+	private IOException _failure;
+
+	/**
+	 * Opens the heap kept in the given journal and snapshot files,
+	 * creating them if they don't exist, and replays the journal.
+	 *
+	 * @param journal the file to log changes to
+	 * @param snapshot the file to keep checkpoints in
+	 * @param comparator the comparator to be used for heap keys
+	 * @param keyCodec to encode the keys with
+	 * @param valueCodec to encode the values with
+	 * @throws IOException if the files can't be read or are not a heap
+	 */
+	public JournaledHeap(File journal, File snapshot, Comparator<K> comparator,
+			HeapCodec<K> keyCodec, HeapCodec<V> valueCodec) throws IOException {
+		_journal = journal;
+		_snapshot = snapshot;
+		_comp = comparator;
+		_keyCodec = keyCodec;
+		_valueCodec = valueCodec;
+		_entries = new HashMap<Long, Entry<K,V>>();
+		_ids = new IdentityHashMap<Entry<K,V>, Long>();
+		_lock = new ReentrantLock();
+		_flushed = _lock.newCondition();
+		_crc = new CRC32();
+		_pending = ByteBuffer.allocate(BUFFER_SIZE);
+		_spare = ByteBuffer.allocate(BUFFER_SIZE);
+
+		this.finishCheckpoint();
+		this.loadSnapshot();
+		_channel = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long end = this.replay();
+		if (end < 0){
+			this.resetJournal();
+		} else {
+			_channel.truncate(end);
+			_channel.position(end);
+		}
+	}
+
+	/**
+	 * Returns the number of entries in the heap.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		_lock.lock();
+		try {
+			return _heap.size();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key.
+	 *
+	 * @return the entry with the minimum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> min() throws EmptyPriorityQueueException {
+		_lock.lock();
+		try {
+			return _heap.min();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created, once the
+	 * insert is in the journal on disk.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the entry created using the key/value parameters
+	 * @throws InvalidKeyException if the key is not suitable for this heap
+	 * @throws UncheckedIOException if the journal can't be written
+	 */
+	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
+		Entry<K,V> entry;
+		long record;
+		_lock.lock();
+		try {
+			this.checkUsable();
+			entry = _heap.insert(key, value);
+			long id = _nextId++;
+			this.track(id, entry);
+			record = this.log(INSERT, id, key, value);
+		} finally {
+			_lock.unlock();
+		}
+		this.awaitDurable(record);
+		return entry;
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key, once the removal is
+	 * in the journal on disk.
+	 *
+	 * @return the entry with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 * @throws UncheckedIOException if the journal can't be written
+	 */
+	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
+		Entry<K,V> entry;
+		long record;
+		_lock.lock();
+		try {
+			this.checkUsable();
+			entry = _heap.removeMin();
+			record = this.log(REMOVE, this.untrack(entry), null, null);
+		} finally {
+			_lock.unlock();
+		}
+		this.awaitDurable(record);
+		return entry;
+	}
+
+	/**
+	 * Removes and returns the given entry, once the removal is in the
+	 * journal on disk.
+	 *
+	 * @param entry to be removed from the heap
+	 * @return the entry specified for removal by the parameter
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 * @throws UncheckedIOException if the journal can't be written
+	 */
+	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+		long record;
+		_lock.lock();
+		try {
+			this.checkUsable();
+			this.idOf(entry);
+			_heap.remove(entry);
+			record = this.log(REMOVE, this.untrack(entry), null, null);
+		} finally {
+			_lock.unlock();
+		}
+		this.awaitDurable(record);
+		return entry;
+	}
+
+	/**
+	 * Replaces the key of the given entry, once the change is in the
+	 * journal on disk.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 * @throws InvalidKeyException if the key is invalid
+	 * @throws UncheckedIOException if the journal can't be written
+	 */
+	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		K oldKey;
+		long record;
+		_lock.lock();
+		try {
+			this.checkUsable();
+			long id = this.idOf(entry);
+			oldKey = _heap.replaceKey(entry, key);
+			record = this.log(REPLACE_KEY, id, key, null);
+		} finally {
+			_lock.unlock();
+		}
+		this.awaitDurable(record);
+		return oldKey;
+	}
+
+	/**
+	 * Replaces the value of the given entry, once the change is in the
+	 * journal on disk.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 * @throws UncheckedIOException if the journal can't be written
+	 */
+	public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {
+		V oldValue;
+		long record;
+		_lock.lock();
+		try {
+			this.checkUsable();
+			long id = this.idOf(entry);
+			oldValue = _heap.replaceValue(entry, value);
+			record = this.log(REPLACE_VALUE, id, null, value);
+		} finally {
+			_lock.unlock();
+		}
+		this.awaitDurable(record);
+		return oldValue;
+	}
+
+	/**
+	 * Writes a new snapshot of the heap and starts an empty journal.
+	 * Changes wait while this happens. The snapshot is written to a
+	 * temporary file first and then moved over the old one, so there is
+	 * always a complete snapshot on disk.
+	 *
+	 * @throws IOException if the snapshot or journal can't be written
+	 */
+	public void checkpoint() throws IOException {
+		_lock.lock();
+		try {
+			this.checkUsable();
+			while (_flushing){
+				_flushed.awaitUninterruptibly();
+			}
+			MyHeap.flush(_pending, _channel);
+			_channel.force(false);
+
+			long epoch = _epoch + 1;
+			File temp = this.tempSnapshot();
+			FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				ByteBuffer header = ByteBuffer.allocate(8);
+				header.putLong(epoch);
+				MyHeap.flush(header, out);
+				_heap.writeSnapshot(out, _keyCodec, _valueCodec);
+				out.force(true);
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), _snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			this.syncDirectory(); // The move must be durable before the journal moves on
+
+			_epoch = epoch;
+			this.resetJournal();
+			this.renumber();
+			_durable = _appended;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for outstanding records to be written and closes the
+	 * journal. The heap can't be used after this.
+	 *
+	 * @throws IOException if the journal can't be written
+	 */
+	public void close() throws IOException {
+		_lock.lock();
+		try {
+			if (_channel.isOpen()){
+				while (_flushing){
+					_flushed.awaitUninterruptibly();
+				}
+				MyHeap.flush(_pending, _channel);
+				_channel.force(false);
+				_durable = _appended;
+				_channel.close();
+			}
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until the given record is on disk. If no other thread is
+	 * writing the journal, this thread becomes the leader: it takes every
+	 * record buffered so far, writes and forces them without holding the
+	 * lock, and then wakes up everyone whose record was in the batch.
+	 *
+	 * @param record the number of the record to wait for
+	 * @throws UncheckedIOException if the journal can't be written
+	 */
+	private void awaitDurable(long record) {
+		_lock.lock();
+		try {
+			while (_durable < record){
+				if (_failure != null){
+					throw new UncheckedIOException(_failure);
+				}
+				if (_flushing){
+					_flushed.awaitUninterruptibly();
+					continue;
+				}
+				_flushing = true;
+				ByteBuffer batch = _pending;
+				_pending = _spare;
+				long last = _appended;
+				_lock.unlock();
+				IOException failure = null;
+				try {
+					MyHeap.flush(batch, _channel);
+					_channel.force(false);
+				} catch (IOException e){
+					failure = e;
+				} finally {
+					_lock.lock();
+				}
+				batch.clear();
+				_spare = batch;
+				_flushing = false;
+				if (failure == null){
+					_durable = last;
+				} else {
+					_failure = failure;
+				}
+				_flushed.signalAll();
+			}
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Encodes a record into the pending buffer, growing it if needed, and
+	 * returns its number. Must be called while holding the lock.
+	 *
+	 * @param type of the record
+	 * @param id of the entry it is about
+	 * @param key the new key, for INSERT and REPLACE_KEY
+	 * @param value the new value, for INSERT and REPLACE_VALUE
+	 * @return the number of the record
+	 */
+	private long log(byte type, long id, K key, V value) {
+		boolean hasKey = type == INSERT || type == REPLACE_KEY;
+		boolean hasValue = type == INSERT || type == REPLACE_VALUE;
+		int length = 9 + (hasKey ? _keyCodec.size(key) : 0) + (hasValue ? _valueCodec.size(value) : 0);
+		if (_pending.remaining() < 8 + length){
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * _pending.capacity(), _pending.position() + 8 + length));
+			_pending.flip(); // Copy only the records already queued
+			_pending = grown.put(_pending);
+		}
+		int start = _pending.position();
+		_pending.putInt(length).putInt(0).put(type).putLong(id);
+		if (hasKey){
+			_keyCodec.encode(key, _pending);
+		}
+		if (hasValue){
+			_valueCodec.encode(value, _pending);
+		}
+		_crc.reset();
+		_crc.update(_pending.array(), _pending.arrayOffset() + start + 8, length);
+		_pending.putInt(start + 4, (int) _crc.getValue());
+		return ++_appended;
+	}
+
+	/**
+	 * Finishes a checkpoint whose move of the new snapshot was lost. A
+	 * temporary snapshot with the same epoch as the journal was forced
+	 * before the journal was reset, so it is complete, and it is moved
+	 * into place now. Any other temporary snapshot is from a checkpoint
+	 * that never finished, and is deleted.
+	 *
+	 * @throws IOException if the files can't be read or moved
+	 */
+	private void finishCheckpoint() throws IOException {
+		File temp = this.tempSnapshot();
+		if (!temp.exists()){
+			return;
+		}
+		if (temp.length() >= 8 && _journal.length() >= JOURNAL_HEADER
+				&& this.readLong(temp, 0) == this.readLong(_journal, 8)){
+			Files.move(temp.toPath(), _snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			this.syncDirectory();
+		} else {
+			Files.delete(temp.toPath());
+		}
+	}
+
+	/**
+	 * Loads the snapshot, if there is one, and numbers its entries.
+	 */
+	private void loadSnapshot() throws IOException {
+		if (_snapshot.length() == 0){
+			_heap = new MyHeap<K,V>(_comp);
+			_epoch = 0;
+		} else {
+			FileChannel in = FileChannel.open(_snapshot.toPath(), StandardOpenOption.READ);
+			try {
+				ByteBuffer header = ByteBuffer.allocate(8);
+				while (header.hasRemaining()){
+					if (in.read(header) < 0){
+						throw new EOFException("ERROR: Snapshot ends early");
+					}
+				}
+				_epoch = header.getLong(0);
+				_heap = MyHeap.readSnapshot(in, _comp, _keyCodec, _valueCodec);
+			} finally {
+				in.close();
+			}
+		}
+		this.renumber();
+	}
+
+	/**
+	 * Replays the journal onto the heap. Stops at the first record that
+	 * is incomplete or fails its checksum, which is where a crash cut the
+	 * journal short. A record whose length runs past the end of the file
+	 * is incomplete too, so a torn or garbage length is never used to
+	 * size a buffer.
+	 *
+	 * @return the length of the good part of the journal, or -1 if the
+	 *         journal is empty or older than the snapshot
+	 * @throws IOException if the journal is not a journal for this heap
+	 */
+	private long replay() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.limit(0);
+		_channel.position(0);
+		try {
+			buffer = MyHeap.fill(buffer, _channel, JOURNAL_HEADER);
+		} catch (EOFException e){
+			return -1;
+		}
+		if (buffer.getInt() != JOURNAL_MAGIC || buffer.getInt() != JOURNAL_VERSION){
+			throw new IOException("ERROR: " + _journal + " is not a heap journal");
+		}
+		long epoch = buffer.getLong();
+		if (epoch < _epoch){
+			return -1; // Everything in it is already in the snapshot
+		}
+		if (epoch > _epoch){
+			throw new IOException("ERROR: " + _journal + " is newer than " + _snapshot);
+		}
+
+		long end = JOURNAL_HEADER;
+		while (true){
+			int length;
+			int checksum;
+			try {
+				buffer = MyHeap.fill(buffer, _channel, 8);
+				length = buffer.getInt();
+				checksum = buffer.getInt();
+				if (length < 9 || length > _channel.size() - end - 8){
+					break;
+				}
+				buffer = MyHeap.fill(buffer, _channel, length);
+			} catch (EOFException e){
+				break;
+			}
+			ByteBuffer body = buffer.duplicate();
+			body.limit(body.position() + length);
+			_crc.reset();
+			_crc.update(body);
+			if ((int) _crc.getValue() != checksum){
+				break;
+			}
+			int next = buffer.position() + length;
+			this.apply(buffer);
+			if (buffer.position() != next){
+				throw new IOException("ERROR: Journal record doesn't match the codecs");
+			}
+			end += 8 + length;
+		}
+		return end;
+	}
+
+	/**
+	 * Applies one journal record to the heap, during replay.
+	 *
+	 * @param buffer positioned at the record's type
+	 * @throws IOException if the record doesn't fit the heap
+	 */
+	private void apply(ByteBuffer buffer) throws IOException {
+		byte type = buffer.get();
+		long id = buffer.getLong();
+		if (type == INSERT){
+			K key = _keyCodec.decode(buffer);
+			V value = _valueCodec.decode(buffer);
+			this.track(id, _heap.insert(key, value));
+			_nextId = Math.max(_nextId, id + 1);
+			return;
+		}
+		Entry<K,V> entry = _entries.get(id);
+		if (entry == null){
+			throw new IOException("ERROR: Journal refers to an unknown entry");
+		}
+		if (type == REMOVE){
+			_heap.remove(entry);
+			this.untrack(entry);
+		} else if (type == REPLACE_KEY){
+			_heap.replaceKey(entry, _keyCodec.decode(buffer));
+		} else if (type == REPLACE_VALUE){
+			_heap.replaceValue(entry, _valueCodec.decode(buffer));
+		} else {
+			throw new IOException("ERROR: Unknown journal record type " + type);
+		}
+	}
+
+	/**
+	 * Empties the journal and writes its header, with the current epoch.
+	 */
+	private void resetJournal() throws IOException {
+		_channel.truncate(0);
+		_channel.position(0);
+		ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER);
+		header.putInt(JOURNAL_MAGIC).putInt(JOURNAL_VERSION).putLong(_epoch);
+		MyHeap.flush(header, _channel);
+		_channel.force(true);
+	}
+
+	/**
+	 * Forces the directory holding the snapshot, so that a move into it
+	 * survives a power cut. Some platforms can't open a directory as a
+	 * channel; there the move is as durable as the platform makes it.
+	 */
+	private void syncDirectory() throws IOException {
+		File directory = _snapshot.getAbsoluteFile().getParentFile();
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+		} catch (IOException e){
+			return;
+		}
+		try {
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private File tempSnapshot() {
+		return new File(_snapshot.getPath() + ".tmp");
+	}
+
+	// Reads the long at the given offset of a file
+	private long readLong(File file, long offset) throws IOException {
+		FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(8);
+			in.position(offset);
+			while (buffer.hasRemaining()){
+				if (in.read(buffer) < 0){
+					throw new EOFException("ERROR: " + file + " ends early");
+				}
+			}
+			return buffer.getLong(0);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Gives the entries ids in level order, which is how they will be
+	 * numbered when the snapshot is loaded again.
+	 */
+	private void renumber() {
+		_entries.clear();
+		_ids.clear();
+		_nextId = 0;
+		Iterator<MyHeapEntry<K,V>> entries = _heap.getTree().iterator();
+		while (entries.hasNext()){
+			this.track(_nextId++, entries.next());
+		}
+	}
+
+	private void track(long id, Entry<K,V> entry) {
+		_entries.put(id, entry);
+		_ids.put(entry, id);
+	}
+
+	private long untrack(Entry<K,V> entry) {
+		long id = _ids.remove(entry);
+		_entries.remove(id);
+		return id;
+	}
+
+	private long idOf(Entry<K,V> entry) throws InvalidEntryException {
+		Long id = _ids.get(entry);
+		if (id == null){
+			throw new InvalidEntryException("ERROR: Entry is not in this heap");
+		}
+		return id;
+	}
+
+	private void checkUsable() {
+		if (_failure != null){
+			throw new UncheckedIOException(_failure);
+		}
+		if (!_channel.isOpen()){
+			throw new IllegalStateException("ERROR: Heap is closed");
+		}
+	}
+}
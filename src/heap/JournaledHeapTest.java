@@ -0,0 +1,344 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.datastructures.Entry;
+
+/**
+ * This class is used to test the functionality of JournaledHeap.
+ */
+
+/* Every test gets its own journal and snapshot files. The tests make some
+ * changes, drop or close the heap, open the files again and check that
+ * the replayed heap matches: with and without a checkpoint in between,
+ * with a record torn off the end of the journal, with a stale journal
+ * left behind by a crash during a checkpoint, with the snapshot's move
+ * lost by a crash during a checkpoint, and with several threads
+ * committing at once.
+ */
+
+public class JournaledHeapTest {
+
+	private File _journal;
+	private File _snapshot;
+
+	@Before
+	public void setUp() throws IOException {
+		_journal = File.createTempFile("heap", ".journal");
+		_snapshot = File.createTempFile("heap", ".snapshot");
+	}
+
+	@After
+	public void tearDown() {
+		_journal.delete();
+		_snapshot.delete();
+		new File(_snapshot.getPath() + ".tmp").delete();
+	}
+
+	private JournaledHeap<Integer, String> open() throws IOException {
+		return new JournaledHeap<Integer, String>(_journal, _snapshot, new IntegerComparator(),
+				HeapCodec.INTEGER, HeapCodec.STRING);
+	}
+
+	/**
+	 * To check that every kind of change is replayed from the journal.
+	 */
+	@Test
+	public void testReplay() throws IOException {
+		JournaledHeap<Integer, String> heap = this.open();
+		heap.insert(5, "A");
+		Entry<Integer,String> b = heap.insert(10, "B");
+		Entry<Integer,String> c = heap.insert(15, "C");
+		heap.insert(20, "D");
+		heap.removeMin();
+		heap.replaceKey(c, 1);
+		heap.replaceValue(c, "E");
+		heap.remove(b);
+		heap.close();
+
+		heap = this.open();
+		assertThat(heap.size(), is(2));
+		assertThat(heap.removeMin().getValue(), is("E"));
+		assertThat(heap.removeMin().getKey(), is(20));
+		heap.close();
+	}
+
+	/**
+	 * To check that changes after a checkpoint are replayed onto the
+	 * snapshot, including changes to entries that were in the snapshot.
+	 */
+	@Test
+	public void testReplayOntoSnapshot() throws IOException {
+		JournaledHeap<Integer, String> heap = this.open();
+		List<Entry<Integer,String>> entries = new ArrayList<Entry<Integer,String>>();
+		for (int i = 0; i < 100; i++){
+			entries.add(heap.insert(i, "V" + i));
+		}
+		heap.checkpoint();
+		heap.replaceKey(entries.get(50), -1);
+		heap.remove(entries.get(0));
+		heap.insert(1000, "last");
+		heap.close();
+
+		heap = this.open();
+		assertThat(heap.size(), is(100));
+		assertThat(heap.removeMin().getValue(), is("V50"));
+		for (int i = 1; i < 100; i++){
+			if (i != 50){
+				assertThat(heap.removeMin().getKey(), is(i));
+			}
+		}
+		assertThat(heap.removeMin().getValue(), is("last"));
+		heap.close();
+	}
+
+	/**
+	 * To check that a record torn off the end of the journal is ignored,
+	 * and that the journal keeps working after it.
+	 */
+	@Test
+	public void testTornRecordIsIgnored() throws IOException {
+		JournaledHeap<Integer, String> heap = this.open();
+		heap.insert(1, "A");
+		heap.insert(2, "B");
+		heap.close();
+
+		RandomAccessFile file = new RandomAccessFile(_journal, "rw");
+		file.setLength(file.length() - 2); // The second insert is cut short
+		file.close();
+
+		heap = this.open();
+		assertThat(heap.size(), is(1));
+		heap.insert(3, "C");
+		heap.close();
+
+		heap = this.open();
+		assertThat(heap.removeMin().getValue(), is("A"));
+		assertThat(heap.removeMin().getValue(), is("C"));
+		heap.close();
+	}
+
+	/**
+	 * To check that a garbage length at the end of the journal, far
+	 * larger than the file, is treated as the end of the log rather than
+	 * read into a buffer that size.
+	 */
+	@Test
+	public void testGarbageLengthIsIgnored() throws IOException {
+		JournaledHeap<Integer, String> heap = this.open();
+		heap.insert(1, "A");
+		heap.close();
+
+		RandomAccessFile file = new RandomAccessFile(_journal, "rw");
+		file.seek(file.length());
+		file.writeInt(Integer.MAX_VALUE);
+		file.writeInt(0);
+		file.close();
+
+		heap = this.open();
+		assertThat(heap.size(), is(1));
+		heap.insert(2, "B");
+		heap.close();
+
+		heap = this.open();
+		assertThat(heap.size(), is(2));
+		heap.close();
+	}
+
+	/**
+	 * To check that a journal older than the snapshot is ignored, as it
+	 * would be after a crash between writing a snapshot and resetting
+	 * the journal.
+	 */
+	@Test
+	public void testStaleJournalIsIgnored() throws IOException {
+		JournaledHeap<Integer, String> heap = this.open();
+		heap.insert(1, "A");
+		heap.insert(2, "B");
+		heap.close();
+		File stale = File.createTempFile("heap", ".stale");
+		Files.copy(_journal.toPath(), stale.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		heap = this.open();
+		heap.checkpoint();
+		heap.close();
+		Files.copy(stale.toPath(), _journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		stale.delete();
+
+		heap = this.open();
+		assertThat(heap.size(), is(2)); // Not 4
+		heap.close();
+	}
+
+	/**
+	 * To check that an old snapshot next to a journal from a later
+	 * checkpoint can be recovered, as it would be if the move of the new
+	 * snapshot was lost after the journal was reset: the new snapshot is
+	 * still in the temporary file, and opening the heap moves it into
+	 * place.
+	 */
+	@Test
+	public void testLostSnapshotMoveIsRecovered() throws IOException {
+		JournaledHeap<Integer, String> heap = this.open();
+		heap.insert(1, "A");
+		heap.checkpoint();
+		heap.close();
+		File old = File.createTempFile("heap", ".old");
+		Files.copy(_snapshot.toPath(), old.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		heap = this.open();
+		heap.insert(2, "B");
+		heap.checkpoint();
+		heap.insert(3, "C");
+		heap.replaceValue(heap.min(), "D");
+		heap.close();
+		File temp = new File(_snapshot.getPath() + ".tmp");
+		Files.move(_snapshot.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		Files.move(old.toPath(), _snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		heap = this.open();
+		assertThat(temp.exists(), is(false));
+		assertThat(heap.size(), is(3));
+		assertThat(heap.removeMin().getValue(), is("D"));
+		assertThat(heap.removeMin().getValue(), is("B"));
+		assertThat(heap.removeMin().getValue(), is("C"));
+		heap.close();
+	}
+
+	/**
+	 * To check that a temporary snapshot left by a checkpoint that never
+	 * reset the journal is thrown away, and the journal replayed.
+	 */
+	@Test
+	public void testUnfinishedCheckpointIsDiscarded() throws IOException {
+		JournaledHeap<Integer, String> heap = this.open();
+		heap.insert(1, "A");
+		heap.checkpoint();
+		heap.insert(2, "B");
+		heap.close();
+		File temp = new File(_snapshot.getPath() + ".tmp");
+		RandomAccessFile file = new RandomAccessFile(temp, "rw");
+		file.writeLong(2); // The epoch the unfinished checkpoint was writing
+		file.close();
+
+		heap = this.open();
+		assertThat(temp.exists(), is(false));
+		assertThat(heap.size(), is(2));
+		assertThat(heap.removeMin().getValue(), is("A"));
+		assertThat(heap.removeMin().getValue(), is("B"));
+		heap.close();
+	}
+
+	/**
+	 * To check that inserts committed by several threads at once are all
+	 * in the journal.
+	 */
+	@Test
+	public void testGroupCommit() throws IOException, InterruptedException {
+		final JournaledHeap<Integer, String> heap = this.open();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++){
+			final int offset = t * 250;
+			threads.add(new Thread() {
+				public void run() {
+					for (int i = 0; i < 250; i++){
+						heap.insert(offset + i, "V" + (offset + i));
+					}
+				}
+			});
+		}
+		for (Thread thread : threads){
+			thread.start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+		heap.close();
+
+		JournaledHeap<Integer, String> reopened = this.open();
+		assertThat(reopened.size(), is(1000));
+		for (int i = 0; i < 1000; i++){
+			assertThat(reopened.removeMin().getValue(), is("V" + i));
+		}
+		reopened.close();
+	}
+
+	/**
+	 * To check that records larger than the 64KB pending buffer, which
+	 * make it grow, are written in full and replayed, both alone and
+	 * after smaller records that were already queued.
+	 */
+	@Test
+	public void testLargeRecords() throws IOException {
+		JournaledHeap<Integer, String> heap = this.open();
+		heap.insert(1, "A");
+		heap.insert(2, JournaledHeapTest.repeat('B', 70000));
+		heap.insert(3, JournaledHeapTest.repeat('C', 200000));
+		heap.close();
+
+		heap = this.open();
+		assertThat(heap.size(), is(3));
+		assertThat(heap.removeMin().getValue(), is("A"));
+		assertThat(heap.removeMin().getValue(), is(JournaledHeapTest.repeat('B', 70000)));
+		assertThat(heap.removeMin().getValue(), is(JournaledHeapTest.repeat('C', 200000)));
+		heap.close();
+	}
+
+	/**
+	 * To check that when many threads commit records big enough that the
+	 * pending buffer has to grow while others are queued in it, every
+	 * insert that was acknowledged is in the journal.
+	 */
+	@Test
+	public void testGroupCommitLargeRecords() throws IOException, InterruptedException {
+		final JournaledHeap<Integer, String> heap = this.open();
+		final String value = JournaledHeapTest.repeat('V', 9000);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 32; t++){
+			final int offset = t * 50;
+			threads.add(new Thread() {
+				public void run() {
+					for (int i = 0; i < 50; i++){
+						heap.insert(offset + i, value + (offset + i));
+					}
+				}
+			});
+		}
+		for (Thread thread : threads){
+			thread.start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+		assertThat(heap.size(), is(1600));
+		heap.close();
+
+		JournaledHeap<Integer, String> reopened = this.open();
+		assertThat(reopened.size(), is(1600));
+		for (int i = 0; i < 1600; i++){
+			assertThat(reopened.removeMin().getValue(), is(value + i));
+		}
+		reopened.close();
+	}
+
+	private static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+}
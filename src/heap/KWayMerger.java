@@ -0,0 +1,327 @@
+package heap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges k sorted sources into one sorted sequence with a tournament
+ * tree of losers. Each source is an Iterator (sorted segment files can
+ * be read with readSegment), and the merger is itself an Iterator.
+ *
+ * The tree has a leaf for each source and k - 1 internal nodes, stored as
+ * an int array like MyArrayHeapTree: node i has children 2i and 2i + 1,
+ * and the leaf for source s is node k + s. Each internal node holds the
+ * source that lost the match played there, and node 0 holds the overall
+ * winner, whose head is the next output. After taking it, only the
+ * winner's source has a new head, so only the matches on its path to the
+ * root are replayed, one comparison each: ceil(log2 k) comparisons per
+ * output, where a binary heap's removeMin and insert take about twice
+ * that. An exhausted source loses every match without a comparison.
+ *
+ * Nothing is allocated per output: the tree holds source numbers, and
+ * each source's current head is kept in an array slot that is reused.
+ * Ties go to the source with the lower number, so the merge is stable.
+ */
+
+public class KWayMerger<T> implements Iterator<T> {
+
+	// Records are [int length][value]; a length of -1 ends the segment
+	private static final int END_OF_SEGMENT = -1;
+	private static final int SEGMENT_BUFFER = 1 << 16;
+
+	private final Comparator<? super T> _comp;
+	private final Iterator<? extends T>[] _sources;
+	private final Object[] _heads;
+	private final boolean[] _exhausted;
+	// _tree[0] is the winner; _tree[1] to _tree[k - 1] are the losers
+	private final int[] _tree;
+	private final int _k;
+
+	/**
+	 * Creates a merger over the given sorted sources. The first element
+	 * of each is read straight away, to play the first tournament.
+	 *
+	 * @param comparator the order every source is sorted in
+	 * @param sources the sources to be merged
+	 * @throws IllegalArgumentException if the comparator is null
+	 */
+	@SuppressWarnings("unchecked")
+	public KWayMerger(Comparator<? super T> comparator, List<? extends Iterator<? extends T>> sources) {
+		if (comparator == null){
+			throw new IllegalArgumentException();
+		}
+		_comp = comparator;
+		_k = sources.size();
+		_sources = sources.toArray(new Iterator[_k]);
+		_heads = new Object[_k];
+		_exhausted = new boolean[_k];
+		_tree = new int[Math.max(1, _k)];
+		for (int s = 0; s < _k; s++){
+			this.advance(s);
+		}
+		if (_k > 0){
+			_tree[0] = this.build(1);
+		}
+	}
+
+	/**
+	 * Creates a merger over sorted segments, each read from a channel as
+	 * written by writeSegment.
+	 *
+	 * @param comparator the order every segment is sorted in
+	 * @param channels the segments to be merged
+	 * @param codec to decode the elements with
+	 * @return the merger
+	 * @throws UncheckedIOException if a channel fails or a segment is cut off
+	 */
+	public static <T> KWayMerger<T> ofChannels(Comparator<? super T> comparator,
+			List<? extends ReadableByteChannel> channels, HeapCodec<T> codec) {
+		List<Iterator<T>> sources = new ArrayList<Iterator<T>>(channels.size());
+		for (ReadableByteChannel channel : channels){
+			sources.add(KWayMerger.readSegment(channel, codec));
+		}
+		return new KWayMerger<T>(comparator, sources);
+	}
+
+	/**
+	 * Returns whether any source has elements left.
+	 *
+	 * @return true if next() will return an element
+	 */
+	public boolean hasNext() {
+		return _k > 0 && !_exhausted[_tree[0]];
+	}
+
+	/**
+	 * Returns the least head of all the sources, and replays the matches
+	 * on that source's path with its new head.
+	 *
+	 * @return the next element in merged order
+	 * @throws NoSuchElementException if every source is exhausted
+	 * @throws UncheckedIOException if a segment can't be read
+	 */
+	@SuppressWarnings("unchecked")
+	public T next() {
+		if (!this.hasNext()){
+			throw new NoSuchElementException("ERROR: Every source is exhausted");
+		}
+		int winner = _tree[0];
+		T next = (T) _heads[winner];
+		this.advance(winner);
+
+		for (int node = (winner + _k) >>> 1; node > 0; node >>>= 1){
+			if (this.beats(_tree[node], winner)){
+				int loser = winner;
+				winner = _tree[node];
+				_tree[node] = loser;
+			}
+		}
+		_tree[0] = winner;
+		return next;
+	}
+
+	/**
+	 * Not supported: the merged sequence can't be changed.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Plays the matches of the subtree at the given node for the first
+	 * time, storing each loser, and returns the winner.
+	 *
+	 * @param node the root of the subtree
+	 * @return the source that won the subtree
+	 */
+	private int build(int node) {
+		if (node >= _k){
+			return node - _k;
+		}
+		int left = this.build(2 * node);
+		int right = this.build(2 * node + 1);
+		if (this.beats(right, left)){
+			_tree[node] = left;
+			return right;
+		}
+		_tree[node] = right;
+		return left;
+	}
+
+	/**
+	 * Returns whether source a's head comes before source b's. An
+	 * exhausted source never does, and ties go to the lower source.
+	 *
+	 * @param a one source
+	 * @param b the other source
+	 * @return true if a wins the match
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean beats(int a, int b) {
+		if (_exhausted[a]){
+			return false;
+		}
+		if (_exhausted[b]){
+			return true;
+		}
+		int order = _comp.compare((T) _heads[a], (T) _heads[b]);
+		return order < 0 || (order == 0 && a < b);
+	}
+
+	// Moves a source's head on to its next element, if it has one
+	private void advance(int source) {
+		if (_sources[source].hasNext()){
+			_heads[source] = _sources[source].next();
+		} else {
+			_heads[source] = null;
+			_exhausted[source] = true;
+		}
+	}
+
+	/**
+	 * Writes the elements, which should already be sorted, to the
+	 * channel as a segment: one record per element (its length in bytes
+	 * and then the encoded element), and an end marker.
+	 *
+	 * @param channel to write the segment to
+	 * @param elements to be written, in order
+	 * @param codec to encode the elements with
+	 * @throws IOException if the channel fails
+	 */
+	public static <T> void writeSegment(WritableByteChannel channel, Iterator<? extends T> elements,
+			HeapCodec<T> codec) throws IOException {
+		SegmentWriter<T> writer = new SegmentWriter<T>(channel, codec);
+		while (elements.hasNext()){
+			writer.write(elements.next());
+		}
+		writer.finish();
+	}
+
+	/**
+	 * Returns an Iterator over a segment written by writeSegment. The
+	 * segment is streamed through one buffer, and the channel is left
+	 * open.
+	 *
+	 * @param channel to read the segment from
+	 * @param codec to decode the elements with
+	 * @return the elements of the segment, in order
+	 */
+	public static <T> Iterator<T> readSegment(ReadableByteChannel channel, HeapCodec<T> codec) {
+		return new SegmentReader<T>(channel, codec);
+	}
+
+	/**
+	 * Writes a segment one element at a time, for writers that are
+	 * handed their elements rather than pulling them from an Iterator
+	 * (such as ExternalSorter's runs). Records are gathered in one buffer
+	 * and written when it fills up.
+	 */
+	static final class SegmentWriter<T> {
+
+		private final WritableByteChannel _channel;
+		private final HeapCodec<T> _codec;
+		private ByteBuffer _buffer;
+
+		SegmentWriter(WritableByteChannel channel, HeapCodec<T> codec) {
+			_channel = channel;
+			_codec = codec;
+			_buffer = ByteBuffer.allocateDirect(SEGMENT_BUFFER);
+		}
+
+		// Adds one record: the element's length in bytes, then the element
+		void write(T element) throws IOException {
+			int length = _codec.size(element);
+			if (length > MyHeap.MAX_RECORD){
+				throw new IOException("ERROR: Element is too big for a segment");
+			}
+			if (_buffer.remaining() < 4 + length){
+				MyHeap.flush(_buffer, _channel);
+				if (_buffer.capacity() < 4 + length){
+					_buffer = ByteBuffer.allocateDirect(4 + length); // An element bigger than the buffer
+				}
+			}
+			_buffer.putInt(length);
+			_codec.encode(element, _buffer);
+		}
+
+		// Adds the end marker and writes out whatever is left
+		void finish() throws IOException {
+			if (_buffer.remaining() < 4){
+				MyHeap.flush(_buffer, _channel);
+			}
+			_buffer.putInt(END_OF_SEGMENT);
+			MyHeap.flush(_buffer, _channel);
+		}
+	}
+
+	/**
+	 * Reads a segment one record ahead, so hasNext() knows whether the
+	 * end marker has been reached. I/O errors, including a segment that
+	 * ends without its marker, are thrown as UncheckedIOException since
+	 * Iterator methods can't throw IOException.
+	 */
+	private static final class SegmentReader<T> implements Iterator<T> {
+
+		private final ReadableByteChannel _channel;
+		private final HeapCodec<T> _codec;
+		private ByteBuffer _buffer;
+		private T _next;
+		private boolean _ended;
+
+		private SegmentReader(ReadableByteChannel channel, HeapCodec<T> codec) {
+			_channel = channel;
+			_codec = codec;
+			_buffer = ByteBuffer.allocateDirect(SEGMENT_BUFFER);
+			_buffer.flip(); // Empty, ready to be read from
+			this.readAhead();
+		}
+
+		public boolean hasNext() {
+			return !_ended;
+		}
+
+		public T next() {
+			if (_ended){
+				throw new NoSuchElementException("ERROR: End of segment");
+			}
+			T next = _next;
+			this.readAhead();
+			return next;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private void readAhead() {
+			try {
+				_buffer = MyHeap.fill(_buffer, _channel, 4);
+				int length = _buffer.getInt();
+				if (length == END_OF_SEGMENT){
+					_next = null;
+					_ended = true;
+					return;
+				}
+				MyHeap.checkLength(length, _buffer, _channel);
+				_buffer = MyHeap.fill(_buffer, _channel, length);
+				int end = _buffer.position() + length;
+				_next = _codec.decode(_buffer);
+				if (_buffer.position() != end){
+					throw new IOException("ERROR: Record length doesn't match its element");
+				}
+			} catch (IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
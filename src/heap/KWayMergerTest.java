@@ -0,0 +1,197 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * This class is used to test the functionality of KWayMerger.
+ */
+
+/* The merged output is checked against sorting everything at once, with
+ * a comparator that counts its calls so we can check the bound of one
+ * comparison per level of the tree.
+ */
+
+public class KWayMergerTest {
+
+	/**
+	 * To check that many sorted sources of different lengths (some
+	 * empty) merge into sorted order, with at most ceil(log2 k)
+	 * comparisons per output after the first tournament.
+	 */
+	@Test
+	public void testMergeOrderAndComparisons() {
+		int k = 37;
+		List<List<Integer>> lists = this.sortedLists(k, 500, 20);
+		List<Integer> expected = new ArrayList<Integer>();
+		List<Iterator<Integer>> sources = new ArrayList<Iterator<Integer>>();
+		for (List<Integer> list : lists){
+			expected.addAll(list);
+			sources.add(list.iterator());
+		}
+		Collections.sort(expected);
+
+		CountingComparator comparator = new CountingComparator();
+		KWayMerger<Integer> merger = new KWayMerger<Integer>(comparator, sources);
+		comparator._count = 0;
+		List<Integer> merged = new ArrayList<Integer>();
+		while (merger.hasNext()){
+			merged.add(merger.next());
+		}
+		assertThat(merged, is(expected));
+		assertTrue(comparator._count <= 6 * expected.size()); // ceil(log2 37) = 6
+	}
+
+	/**
+	 * To check that equal elements come out in order of their sources,
+	 * and that one source or none at all work.
+	 */
+	@Test
+	public void testStableAndSmallMerges() {
+		Comparator<String> byLength = new Comparator<String>() {
+			public int compare(String a, String b) {
+				return a.length() - b.length();
+			}
+		};
+		List<Iterator<String>> sources = new ArrayList<Iterator<String>>();
+		sources.add(Arrays.asList("a", "cc", "ddd").iterator());
+		sources.add(Arrays.asList("b", "xx").iterator());
+		sources.add(Arrays.asList("y", "zzz").iterator());
+		KWayMerger<String> merger = new KWayMerger<String>(byLength, sources);
+		List<String> merged = new ArrayList<String>();
+		while (merger.hasNext()){
+			merged.add(merger.next());
+		}
+		assertThat(merged, is(Arrays.asList("a", "b", "y", "cc", "xx", "ddd", "zzz")));
+
+		List<Iterator<String>> one = new ArrayList<Iterator<String>>();
+		one.add(Arrays.asList("p", "q").iterator());
+		KWayMerger<String> single = new KWayMerger<String>(byLength, one);
+		assertThat(single.next(), is("p"));
+		assertThat(single.next(), is("q"));
+		assertThat(single.hasNext(), is(false));
+		assertThat(new KWayMerger<String>(byLength, new ArrayList<Iterator<String>>()).hasNext(), is(false));
+	}
+
+	/**
+	 * To check merging segments written to and read from channels, with
+	 * a variable-width codec.
+	 */
+	@Test
+	public void testMergeSegments() throws IOException {
+		List<List<Integer>> lists = this.sortedLists(5, 3000, 21);
+		List<String> expected = new ArrayList<String>();
+		List<ReadableByteChannel> channels = new ArrayList<ReadableByteChannel>();
+		for (List<Integer> list : lists){
+			List<String> strings = new ArrayList<String>();
+			for (int value : list){
+				strings.add(String.format("key %08d", value));
+			}
+			expected.addAll(strings);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			KWayMerger.writeSegment(Channels.newChannel(out), strings.iterator(), HeapCodec.STRING);
+			channels.add(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+		}
+		Collections.sort(expected);
+
+		KWayMerger<String> merger = KWayMerger.ofChannels(new Comparator<String>() {
+			public int compare(String a, String b) {
+				return a.compareTo(b);
+			}
+		}, channels, HeapCodec.STRING);
+		List<String> merged = new ArrayList<String>();
+		while (merger.hasNext()){
+			merged.add(merger.next());
+		}
+		assertThat(merged, is(expected));
+	}
+
+	/**
+	 * Here we test that a segment without its end marker throws an
+	 * UncheckedIOException.
+	 */
+	@Test(expected = UncheckedIOException.class)
+	public void testTruncatedSegmentThrowsUncheckedIOException() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		KWayMerger.writeSegment(Channels.newChannel(out), Arrays.asList(1, 2, 3).iterator(), HeapCodec.INTEGER);
+		byte[] bytes = Arrays.copyOf(out.toByteArray(), out.size() - 4);
+		Iterator<Integer> segment = KWayMerger.readSegment(
+				Channels.newChannel(new ByteArrayInputStream(bytes)), HeapCodec.INTEGER);
+		while (segment.hasNext()){
+			segment.next();
+		}
+	}
+
+	/**
+	 * Here we test that a record length of 2^31 - 1 throws an
+	 * UncheckedIOException rather than allocating a 2GB buffer for it.
+	 */
+	@Test(expected = UncheckedIOException.class)
+	public void testHugeRecordLengthThrowsUncheckedIOException() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		KWayMerger.writeSegment(Channels.newChannel(out), Arrays.asList(1, 2, 3).iterator(), HeapCodec.INTEGER);
+		byte[] bytes = out.toByteArray();
+		ByteBuffer.wrap(bytes).putInt(0, Integer.MAX_VALUE);
+		KWayMerger.readSegment(Channels.newChannel(new ByteArrayInputStream(bytes)), HeapCodec.INTEGER);
+	}
+
+	/**
+	 * Here we test that next() after the end throws a
+	 * NoSuchElementException.
+	 */
+	@Test(expected = NoSuchElementException.class)
+	public void testNextAfterEndThrowsNoSuchElementException() {
+		List<Iterator<Integer>> sources = new ArrayList<Iterator<Integer>>();
+		sources.add(Arrays.asList(1).iterator());
+		sources.add(new ArrayList<Integer>().iterator());
+		KWayMerger<Integer> merger = new KWayMerger<Integer>(new IntegerComparator(), sources);
+		merger.next();
+		merger.next();
+	}
+
+	// k sorted lists of random lengths up to max, some of them empty
+	private List<List<Integer>> sortedLists(int k, int max, long seed) {
+		Random random = new Random(seed);
+		List<List<Integer>> lists = new ArrayList<List<Integer>>();
+		for (int s = 0; s < k; s++){
+			List<Integer> list = new ArrayList<Integer>();
+			int length = s % 7 == 0 ? 0 : random.nextInt(max);
+			for (int i = 0; i < length; i++){
+				list.add(random.nextInt(100000));
+			}
+			Collections.sort(list);
+			lists.add(list);
+		}
+		return lists;
+	}
+
+	private static class CountingComparator extends IntegerComparator {
+		private int _count = 0;
+
+		@Override
+		public int compare(Integer o1, Integer o2) {
+			_count++;
+			return super.compare(o1, o2);
+		}
+	}
+
+}
@@ -0,0 +1,634 @@
+package heap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * An adaptable priority queue stored in a memory-mapped file, so that it
+ * survives the process. Opening an existing file maps it and is ready
+ * right away, in O(1) time, instead of inserting every entry again.
+ *
+ * Keys and values are written with fixed-width HeapCodecs and ordered by
+ * the Comparator given to the constructor, as in MyHeap; the sifts are
+ * MyHeap's hole-based ones, moving int handles around a slot array. The
+ * file is a 64 byte header followed by one record per index i:
+ *
+ *     [handle in slot i: int][slot of handle i: int][generation of handle i: int]
+ *     [key of handle i][value of handle i]
+ *
+ * The records are mapped in chunks, so the file grows by mapping one
+ * more chunk. A handle whose slot is negative is free; free handles form
+ * a list threaded through their slot fields. The generation is bumped
+ * when a handle is freed, so old entries can't touch its next owner.
+ *
+ * Every change that sifts sets a dirty flag in the header first and
+ * clears it when the heap is consistent again. If the process dies in
+ * between, the next open finds the flag set and repairs the heap: the
+ * handle records (which are written before the sift starts) say which
+ * entries are live, and the slot array is rebuilt from them in O(n).
+ * Changes reach the file when the operating system writes the pages
+ * back, which survives the process crashing but not the machine; call
+ * sync() to force them to the disk.
+ *
+ * Like MyHeap, this class is not thread-safe.
+ */
+
+public class MappedHeap<K,V> implements AdaptablePriorityQueue<K,V>, Closeable {
+
+	private static final long MAGIC = 0x4d7948656170314cL;
+	private static final int VERSION = 1;
+
+	// Header layout, in bytes
+	private static final int HEADER_BYTES = 64;
+	private static final int H_MAGIC = 0;
+	private static final int H_VERSION = 8;
+	private static final int H_KEY_WIDTH = 12;
+	private static final int H_VALUE_WIDTH = 16;
+	private static final int H_SIZE = 20;
+	private static final int H_HANDLE_COUNT = 24;
+	private static final int H_FREE_HEAD = 28;
+	private static final int H_DIRTY = 32;
+
+	// Record layout, in bytes
+	private static final int R_SLOT_HANDLE = 0;
+	private static final int R_HANDLE_SLOT = 4;
+	private static final int R_GENERATION = 8;
+	private static final int R_KEY = 12;
+
+	// Records per mapped chunk
+	private static final int CHUNK_SHIFT = 12;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final Comparator<K> _comp;
+	private final HeapCodec<K> _keyCodec;
+	private final HeapCodec<V> _valueCodec;
+	private final int _recordBytes;
+	private final int _valueOffset;
+
+	private final RandomAccessFile _file;
+	private final FileChannel _channel;
+	private final MappedByteBuffer _header;
+	private MappedByteBuffer[] _chunks;
+	private int _chunkCount;
+	private final boolean _repaired;
+
+	/**
+	 * Opens the heap stored in the given file, creating the file if it
+	 * does not exist yet, and repairs it if a change was interrupted.
+	 *
+	 * @param file to store the heap in
+	 * @param comparator the comparator to be used for heap keys
+	 * @param keyCodec a fixed-width codec for the keys
+	 * @param valueCodec a fixed-width codec for the values
+	 * @throws IOException if the file can't be opened or mapped
+	 * @throws IllegalArgumentException if a codec is variable-width, or
+	 *         the file is not a heap written with codecs of these widths
+	 */
+	public MappedHeap(File file, Comparator<K> comparator, HeapCodec<K> keyCodec,
+			HeapCodec<V> valueCodec) throws IOException {
+		if (comparator == null || keyCodec.width() < 0 || valueCodec.width() < 0){
+			throw new IllegalArgumentException("ERROR: MappedHeap needs a comparator and fixed-width codecs");
+		}
+		_comp = comparator;
+		_keyCodec = keyCodec;
+		_valueCodec = valueCodec;
+		_valueOffset = R_KEY + keyCodec.width();
+		_recordBytes = _valueOffset + valueCodec.width();
+
+		boolean exists = file.length() > 0;
+		_file = new RandomAccessFile(file, "rw");
+		_channel = _file.getChannel();
+		_header = _channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+		_chunks = new MappedByteBuffer[1];
+		_chunkCount = 0;
+
+		if (!exists){
+			_header.putLong(H_MAGIC, MAGIC);
+			_header.putInt(H_VERSION, VERSION);
+			_header.putInt(H_KEY_WIDTH, keyCodec.width());
+			_header.putInt(H_VALUE_WIDTH, valueCodec.width());
+			_header.putInt(H_SIZE, 0);
+			_header.putInt(H_HANDLE_COUNT, 0);
+			_header.putInt(H_FREE_HEAD, -1);
+			_header.putInt(H_DIRTY, 0);
+		} else if (_header.getLong(H_MAGIC) != MAGIC || _header.getInt(H_VERSION) != VERSION
+				|| _header.getInt(H_KEY_WIDTH) != keyCodec.width()
+				|| _header.getInt(H_VALUE_WIDTH) != valueCodec.width()){
+			_channel.close();
+			_file.close();
+			throw new IllegalArgumentException("ERROR: " + file + " is not a heap with these codecs");
+		}
+		while (_chunkCount * CHUNK_SIZE < Math.max(this.handleCount(), 1)){
+			this.addChunk();
+		}
+
+		_repaired = _header.getInt(H_DIRTY) != 0;
+		if (_repaired){
+			this.repair();
+		}
+	}
+
+	/**
+	 * Returns whether opening the heap found an interrupted change and
+	 * had to repair the heap.
+	 *
+	 * @return true if the heap was repaired when it was opened
+	 */
+	public boolean wasRepaired() {
+		return _repaired;
+	}
+
+	/**
+	 * Returns the number of entries in the heap.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return _header.getInt(H_SIZE);
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key.
+	 *
+	 * @return an entry with the minimum key
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> min() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return this.entryOf(this.slotHandle(0));
+	}
+
+	/**
+	 * Returns entries for everything in the heap, in no particular order.
+	 * This is how a reopened heap's entries can be found again for
+	 * remove(), replaceKey() and replaceValue().
+	 *
+	 * @return a list of the heap's entries
+	 */
+	public List<Entry<K,V>> entries() {
+		int size = this.size();
+		List<Entry<K,V>> entries = new ArrayList<Entry<K,V>>(size);
+		for (int slot = 0; slot < size; slot++){
+			entries.add(this.entryOf(this.slotHandle(slot)));
+		}
+		return entries;
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created. This
+	 * method runs in O(log n) time.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the entry created using the key/value parameters
+	 * @throws InvalidKeyException if the key is not suitable for this heap
+	 */
+
+	/* The new handle's key and value are written before its slot field
+	 * becomes non-negative, so a repair either sees a complete entry or
+	 * no entry at all.
+	 */
+
+	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
+		this.checkKey(key);
+		this.setDirty(true);
+		int handle = this.takeHandle();
+		ByteBuffer chunk = this.chunkOf(handle);
+		int offset = this.offsetOf(handle);
+		chunk.position(offset + R_KEY);
+		_keyCodec.encode(key, chunk);
+		chunk.position(offset + _valueOffset);
+		_valueCodec.encode(value, chunk);
+		int size = this.size();
+		chunk.putInt(offset + R_HANDLE_SLOT, size);
+		_header.putInt(H_SIZE, size + 1);
+		this.siftUp(size, key, handle);
+		this.setDirty(false);
+		return new MappedEntry<K,V>(this, handle, this.generation(handle), key, value);
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key. This method runs in
+	 * O(log n) time.
+	 *
+	 * @return the entry with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return this.removeSlot(0);
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap. This method
+	 * runs in O(log n) time.
+	 *
+	 * @param entry to be removed from the heap
+	 * @return the entry specified for removal by the parameter
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+		MappedEntry<K,V> mappedEntry = this.checkEntry(entry);
+		Entry<K,V> removed = this.removeSlot(this.handleSlot(mappedEntry._handle));
+		mappedEntry._key = removed.getKey();
+		mappedEntry._value = removed.getValue();
+		return mappedEntry;
+	}
+
+	/**
+	 * Replaces the key of the given entry, moving it up or down as
+	 * needed. This method runs in O(log n) time.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 * @throws InvalidKeyException if the key is not suitable for this heap
+	 */
+	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		MappedEntry<K,V> mappedEntry = this.checkEntry(entry);
+		this.checkKey(key);
+		int handle = mappedEntry._handle;
+		K oldKey = this.keyOf(handle);
+		this.setDirty(true);
+		ByteBuffer chunk = this.chunkOf(handle);
+		chunk.position(this.offsetOf(handle) + R_KEY);
+		_keyCodec.encode(key, chunk);
+		int slot = this.handleSlot(handle);
+		if (_comp.compare(key, oldKey) < 0){
+			this.siftUp(slot, key, handle);
+		} else {
+			this.siftDown(slot, key, handle);
+		}
+		this.setDirty(false);
+		mappedEntry._key = key;
+		return oldKey;
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1)
+	 * time.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {
+		MappedEntry<K,V> mappedEntry = this.checkEntry(entry);
+		int handle = mappedEntry._handle;
+		V old = this.valueOf(handle);
+		ByteBuffer chunk = this.chunkOf(handle);
+		chunk.position(this.offsetOf(handle) + _valueOffset);
+		_valueCodec.encode(value, chunk);
+		mappedEntry._value = value;
+		return old;
+	}
+
+	/**
+	 * Forces every change made so far onto the disk.
+	 */
+	public void sync() {
+		_header.force();
+		for (int i = 0; i < _chunkCount; i++){
+			_chunks[i].force();
+		}
+	}
+
+	/**
+	 * Syncs the heap and closes the file. The heap can't be used after
+	 * this, but the file can be opened again.
+	 *
+	 * @throws IOException if the file can't be closed
+	 */
+	public void close() throws IOException {
+		this.sync();
+		_channel.close();
+		_file.close();
+	}
+
+	/**
+	 * Called before every slot write. It does nothing here; the tests
+	 * override it in a subclass to simulate a crash partway through a
+	 * sift. As long as no subclass that overrides it is loaded, the JIT
+	 * inlines the empty call away.
+	 */
+	void beforeSlotWrite() {
+	}
+
+	/**
+	 * Removes the entry in the given slot by sifting the last entry into
+	 * its place, frees its handle and returns it.
+	 *
+	 * @param slot of the entry to be removed
+	 * @return the removed entry, detached from the heap
+	 */
+	private Entry<K,V> removeSlot(int slot) {
+		int handle = this.slotHandle(slot);
+		MappedEntry<K,V> removed = new MappedEntry<K,V>(this, handle, this.generation(handle),
+				this.keyOf(handle), this.valueOf(handle));
+		this.setDirty(true);
+		this.releaseHandle(handle);
+		int last = this.size() - 1;
+		_header.putInt(H_SIZE, last);
+		if (slot != last){
+			int lastHandle = this.slotHandle(last);
+			K key = this.keyOf(lastHandle);
+			if (slot > 0 && _comp.compare(key, this.keyOf(this.slotHandle((slot - 1) >>> 1))) < 0){
+				this.siftUp(slot, key, lastHandle);
+			} else {
+				this.siftDown(slot, key, lastHandle);
+			}
+		}
+		this.setDirty(false);
+		return removed;
+	}
+
+	/**
+	 * Moves the hole at the given slot up while the key is less than the
+	 * parent's, and then puts the handle into the hole.
+	 */
+	private void siftUp(int slot, K key, int handle) {
+		while (slot > 0){
+			int parent = (slot - 1) >>> 1;
+			int parentHandle = this.slotHandle(parent);
+			if (_comp.compare(key, this.keyOf(parentHandle)) >= 0){
+				break;
+			}
+			this.place(slot, parentHandle);
+			slot = parent;
+		}
+		this.place(slot, handle);
+	}
+
+	/**
+	 * Moves the hole at the given slot down while a child's key is less
+	 * than the given key, and then puts the handle into the hole.
+	 */
+	private void siftDown(int slot, K key, int handle) {
+		int size = this.size();
+		int half = size >>> 1;
+		while (slot < half){
+			int child = (slot << 1) + 1;
+			int childHandle = this.slotHandle(child);
+			K childKey = this.keyOf(childHandle);
+			int right = child + 1;
+			if (right < size){
+				int rightHandle = this.slotHandle(right);
+				K rightKey = this.keyOf(rightHandle);
+				if (_comp.compare(rightKey, childKey) < 0){
+					child = right;
+					childHandle = rightHandle;
+					childKey = rightKey;
+				}
+			}
+			if (_comp.compare(key, childKey) <= 0){
+				break;
+			}
+			this.place(slot, childHandle);
+			slot = child;
+		}
+		this.place(slot, handle);
+	}
+
+	/**
+	 * Rebuilds the slot array from the handle records after an
+	 * interrupted change: every handle with a non-negative slot is live.
+	 * The live handles are laid out in any order and then heapified
+	 * bottom-up, and the free list and size are worked out again.
+	 */
+	private void repair() {
+		int handleCount = this.handleCount();
+		int size = 0;
+		int freeHead = -1;
+		for (int handle = handleCount - 1; handle >= 0; handle--){
+			if (this.handleSlot(handle) >= 0){
+				this.place(size++, handle);
+			} else {
+				this.setHandleSlot(handle, -2 - freeHead);
+				freeHead = handle;
+			}
+		}
+		_header.putInt(H_SIZE, size);
+		_header.putInt(H_FREE_HEAD, freeHead);
+		for (int slot = (size - 2) >>> 1; size > 1 && slot >= 0; slot--){
+			int handle = this.slotHandle(slot);
+			this.siftDown(slot, this.keyOf(handle), handle);
+		}
+		this.setDirty(false);
+		this.sync();
+	}
+
+	/*
+	 * Reading and writing the records.
+	 */
+
+	private ByteBuffer chunkOf(int index) {
+		return _chunks[index >>> CHUNK_SHIFT];
+	}
+
+	private int offsetOf(int index) {
+		return (index & CHUNK_MASK) * _recordBytes;
+	}
+
+	private int slotHandle(int slot) {
+		return this.chunkOf(slot).getInt(this.offsetOf(slot) + R_SLOT_HANDLE);
+	}
+
+	private int handleSlot(int handle) {
+		return this.chunkOf(handle).getInt(this.offsetOf(handle) + R_HANDLE_SLOT);
+	}
+
+	private void setHandleSlot(int handle, int slot) {
+		this.chunkOf(handle).putInt(this.offsetOf(handle) + R_HANDLE_SLOT, slot);
+	}
+
+	private int generation(int handle) {
+		return this.chunkOf(handle).getInt(this.offsetOf(handle) + R_GENERATION);
+	}
+
+	private K keyOf(int handle) {
+		ByteBuffer chunk = this.chunkOf(handle);
+		chunk.position(this.offsetOf(handle) + R_KEY);
+		return _keyCodec.decode(chunk);
+	}
+
+	private V valueOf(int handle) {
+		ByteBuffer chunk = this.chunkOf(handle);
+		chunk.position(this.offsetOf(handle) + _valueOffset);
+		return _valueCodec.decode(chunk);
+	}
+
+	private int handleCount() {
+		return _header.getInt(H_HANDLE_COUNT);
+	}
+
+	private void setDirty(boolean dirty) {
+		_header.putInt(H_DIRTY, dirty ? 1 : 0);
+	}
+
+	// Puts a handle into a slot and points the handle at it
+	private void place(int slot, int handle) {
+		this.beforeSlotWrite();
+		this.chunkOf(slot).putInt(this.offsetOf(slot) + R_SLOT_HANDLE, handle);
+		this.setHandleSlot(handle, slot);
+	}
+
+	/**
+	 * Returns a free handle, mapping another chunk if none is left. A
+	 * brand new handle is marked free (slot -1) before it is counted, so
+	 * a repair never mistakes it for a live entry.
+	 */
+	private int takeHandle() {
+		int handle = _header.getInt(H_FREE_HEAD);
+		if (handle >= 0){
+			_header.putInt(H_FREE_HEAD, -2 - this.handleSlot(handle));
+			return handle;
+		}
+		handle = this.handleCount();
+		if (handle == _chunkCount * CHUNK_SIZE){
+			this.addChunk();
+		}
+		this.setHandleSlot(handle, -1);
+		_header.putInt(H_HANDLE_COUNT, handle + 1);
+		return handle;
+	}
+
+	/**
+	 * Puts the handle on the free list and bumps its generation, so that
+	 * entries holding the old generation are no longer valid.
+	 */
+	private void releaseHandle(int handle) {
+		ByteBuffer chunk = this.chunkOf(handle);
+		int offset = this.offsetOf(handle);
+		chunk.putInt(offset + R_HANDLE_SLOT, -2 - _header.getInt(H_FREE_HEAD));
+		chunk.putInt(offset + R_GENERATION, chunk.getInt(offset + R_GENERATION) + 1);
+		_header.putInt(H_FREE_HEAD, handle);
+	}
+
+	// Maps the next chunk of records, growing the file
+	private void addChunk() {
+		if (_chunkCount == _chunks.length){
+			_chunks = Arrays.copyOf(_chunks, 2 * _chunkCount);
+		}
+		long position = HEADER_BYTES + (long) _chunkCount * CHUNK_SIZE * _recordBytes;
+		try {
+			_chunks[_chunkCount] = _channel.map(FileChannel.MapMode.READ_WRITE, position,
+					(long) CHUNK_SIZE * _recordBytes);
+		} catch (IOException e){
+			throw new UncheckedIOException(e);
+		}
+		_chunkCount++;
+	}
+
+	/**
+	 * Returns whether the entry is currently in this heap.
+	 */
+	private boolean contains(MappedEntry<K,V> entry) {
+		return entry._heap == this && this.handleSlot(entry._handle) >= 0
+				&& this.generation(entry._handle) == entry._generation;
+	}
+
+	/**
+	 * Checks that the entry is currently in this heap.
+	 *
+	 * @param entry to be checked
+	 * @return the entry cast as a MappedEntry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	@SuppressWarnings("unchecked")
+	private MappedEntry<K,V> checkEntry(Entry<K,V> entry) throws InvalidEntryException {
+		if (!(entry instanceof MappedEntry)){
+			throw new InvalidEntryException("Invalid entry");
+		}
+		MappedEntry<K,V> mappedEntry = (MappedEntry<K,V>) entry;
+		if (!this.contains(mappedEntry)){
+			throw new InvalidEntryException("ERROR: Entry is not in this heap");
+		}
+		return mappedEntry;
+	}
+
+	private void checkKey(K key) {
+		if (key == null){
+			throw new InvalidKeyException("ERROR: Key is null");
+		}
+		try {
+			_comp.compare(key, key); // If invalid key, ClassCastException thrown here
+		} catch (ClassCastException e){
+			throw new InvalidKeyException("ERROR: Key is invalid");
+		}
+	}
+
+	private void checkNotEmpty() throws EmptyPriorityQueueException {
+		if (this.isEmpty()){
+			throw new EmptyPriorityQueueException("ERROR: Heap is empty");
+		}
+	}
+
+	// A new Entry for the given live handle
+	private Entry<K,V> entryOf(int handle) {
+		return new MappedEntry<K,V>(this, handle, this.generation(handle), this.keyOf(handle), this.valueOf(handle));
+	}
+
+	/**
+	 * The Entry handed out by a MappedHeap: a handle into the file, plus
+	 * the key and value as of the last time the entry went through the
+	 * heap.
+	 */
+	private static final class MappedEntry<K,V> implements Entry<K,V> {
+
+		private final MappedHeap<K,V> _heap;
+		private final int _handle;
+		private final int _generation;
+		private K _key;
+		private V _value;
+
+		private MappedEntry(MappedHeap<K,V> heap, int handle, int generation, K key, V value) {
+			_heap = heap;
+			_handle = handle;
+			_generation = generation;
+			_key = key;
+			_value = value;
+		}
+
+		public K getKey() {
+			if (_heap.contains(this)){
+				_key = _heap.keyOf(_handle);
+			}
+			return _key;
+		}
+
+		public V getValue() {
+			if (_heap.contains(this)){
+				_value = _heap.valueOf(_handle);
+			}
+			return _value;
+		}
+	}
+}
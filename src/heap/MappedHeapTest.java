@@ -0,0 +1,236 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+
+/**
+ * This class is used to test the functionality of MappedHeap.
+ */
+
+/* Every test works on a fresh temporary file. Besides heap order, we
+ * check that a heap closed (or just abandoned) and opened again has the
+ * same entries, and that a heap "crashed" in the middle of a sift, using
+ * a CrashingHeap that throws from a slot write, is detected and repaired
+ * on the next open without losing or duplicating entries.
+ */
+
+public class MappedHeapTest {
+
+	private File _file;
+
+	@Before
+	public void setUp() throws IOException {
+		_file = File.createTempFile("heap", ".map");
+	}
+
+	@After
+	public void tearDown() {
+		_file.delete();
+	}
+
+	private MappedHeap<Long, Integer> open() throws IOException {
+		return new MappedHeap<Long, Integer>(_file, new LongComparator(), HeapCodec.LONG, HeapCodec.INTEGER);
+	}
+
+	/**
+	 * To check that removeMin() returns entries in order of their keys,
+	 * across several chunks of the file.
+	 */
+	@Test
+	public void testHeapOrder() throws IOException {
+		MappedHeap<Long, Integer> heap = this.open();
+		List<Long> keys = new ArrayList<Long>();
+		for (long i = 0; i < 10000; i++){
+			keys.add(i);
+		}
+		Collections.shuffle(keys, new Random(9));
+		for (long key : keys){
+			heap.insert(key, (int) key);
+		}
+		for (long i = 0; i < 10000; i++){
+			Entry<Long,Integer> min = heap.removeMin();
+			assertThat(min.getKey(), is(i));
+			assertThat(min.getValue(), is((int) i));
+		}
+		assertTrue(heap.isEmpty());
+		heap.close();
+	}
+
+	/**
+	 * To check that a reopened heap has the same entries, and that its
+	 * entries can be found again and changed.
+	 */
+	@Test
+	public void testReopen() throws IOException {
+		MappedHeap<Long, Integer> heap = this.open();
+		for (long i = 0; i < 100; i++){
+			heap.insert(i * 7 % 100, (int) i);
+		}
+		heap.removeMin();
+		heap.close();
+
+		heap = this.open();
+		assertFalse(heap.wasRepaired());
+		assertThat(heap.size(), is(99));
+		for (Entry<Long,Integer> entry : heap.entries()){
+			if (entry.getKey() == 50){
+				heap.replaceKey(entry, -1L);
+				heap.replaceValue(entry, 1000);
+			}
+		}
+		assertThat(heap.removeMin().getValue(), is(1000));
+		for (long i = 1; i < 100; i++){
+			if (i != 50){
+				assertThat(heap.removeMin().getKey(), is(i));
+			}
+		}
+		heap.close();
+	}
+
+	private CrashingHeap<Long, Integer> openCrashing() throws IOException {
+		return new CrashingHeap<Long, Integer>(_file, new LongComparator(), HeapCodec.LONG, HeapCodec.INTEGER);
+	}
+
+	/**
+	 * To check that a heap that crashed in the middle of sifts is repaired
+	 * when it is opened again: every entry that was in the heap before
+	 * the interrupted change is still there, exactly once, in order.
+	 */
+	@Test
+	public void testRepairAfterCrash() throws IOException {
+		CrashingHeap<Long, Integer> crashing = this.openCrashing();
+		for (long i = 0; i < 1000; i++){
+			crashing.insert(1000 - i, (int) i);
+		}
+		crashing.crashAfterWrites(3);
+		try {
+			crashing.removeMin(); // Dies partway down the heap
+		} catch (IllegalStateException e){
+			// Expected, the crash
+		}
+		// The process "restarts" without closing the crashed heap
+
+		MappedHeap<Long, Integer> heap = this.open();
+		assertTrue(heap.wasRepaired());
+		assertThat(heap.size(), is(999));
+		for (long i = 2; i <= 1000; i++){
+			assertThat(heap.removeMin().getKey(), is(i));
+		}
+		heap.close();
+	}
+
+	/**
+	 * To check that an insert that crashed before its sift finished is
+	 * either kept or dropped, but never breaks the heap.
+	 */
+	@Test
+	public void testRepairAfterCrashedInsert() throws IOException {
+		CrashingHeap<Long, Integer> crashing = this.openCrashing();
+		for (long i = 10; i < 1000; i++){
+			crashing.insert(i, (int) i);
+		}
+		crashing.crashAfterWrites(2);
+		try {
+			crashing.insert(1L, 1);
+		} catch (IllegalStateException e){
+			// Expected, the crash
+		}
+
+		MappedHeap<Long, Integer> heap = this.open();
+		assertTrue(heap.wasRepaired());
+		assertThat(heap.size(), is(991));
+		assertThat(heap.removeMin().getKey(), is(1L));
+		for (long i = 10; i < 1000; i++){
+			assertThat(heap.removeMin().getKey(), is(i));
+		}
+		heap.close();
+	}
+
+	/**
+	 * Here we test that an entry is rejected once it has been removed.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testRemovedEntryThrowsInvalidEntryException() throws IOException {
+		MappedHeap<Long, Integer> heap = this.open();
+		Entry<Long,Integer> entry = heap.insert(1L, 1);
+		heap.remove(entry);
+		heap.insert(2L, 2);
+		try {
+			heap.remove(entry);
+		} finally {
+			heap.close();
+		}
+	}
+
+	/**
+	 * Here we test that opening a heap with codecs of other widths than
+	 * it was written with throws an IllegalArgumentException.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongCodecThrowsIllegalArgumentException() throws IOException {
+		this.open().close();
+		new MappedHeap<Long, Long>(_file, new LongComparator(), HeapCodec.LONG, HeapCodec.LONG);
+	}
+
+	/**
+	 * Here we test that a variable-width codec is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testVariableWidthCodecThrowsIllegalArgumentException() throws IOException {
+		new MappedHeap<Long, String>(_file, new LongComparator(), HeapCodec.LONG, HeapCodec.STRING);
+	}
+
+	/**
+	 * A MappedHeap that, once crashAfterWrites is called, lets the given
+	 * number of slot writes succeed and then throws an
+	 * IllegalStateException from the next one, leaving the file the way
+	 * a crash at that point would.
+	 */
+	private static class CrashingHeap<K,V> extends MappedHeap<K,V> {
+		private boolean _armed;
+		private int _writesBeforeCrash;
+
+		CrashingHeap(File file, java.util.Comparator<K> comparator, HeapCodec<K> keyCodec,
+				HeapCodec<V> valueCodec) throws IOException {
+			super(file, comparator, keyCodec, valueCodec);
+		}
+
+		void crashAfterWrites(int writes) {
+			_armed = true;
+			_writesBeforeCrash = writes;
+		}
+
+		@Override
+		void beforeSlotWrite() {
+			if (_armed && _writesBeforeCrash-- == 0){
+				throw new IllegalStateException("Simulated crash");
+			}
+		}
+	}
+
+	/**
+	 * Orders Longs by their natural order.
+	 */
+	private static class LongComparator implements java.util.Comparator<Long> {
+		public int compare(Long o1, Long o2) {
+			return o1.compareTo(o2);
+		}
+	}
+
+}
@@ -0,0 +1,440 @@
+package heap;
+
+import java.util.Comparator;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.CompleteBinaryTree;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+import support.heap.HeapWrapper;
+
+/**
+ * A double-ended adaptable priority queue implemented as a min-max heap:
+ * a binary heap whose levels alternate between min levels (the root's,
+ * then every other one) and max levels. An entry on a min level has the
+ * least key in its subtree, and one on a max level the greatest. So the
+ * minimum is at the root and the maximum is one of its children, and
+ * both min() and max() run in O(1) time, while insert, removeMin,
+ * removeMax, remove and replaceKey run in O(log n) time.
+ *
+ * This does the job of a MyHeap and a second MyHeap with the reverse
+ * comparator, cross-linked, with one array and one entry per item, e.g.
+ * for a bounded queue that serves its least key and evicts its greatest
+ * when it is full.
+ *
+ * As in MyHeap, the entries are MyHeapEntry objects that remember their
+ * index in the array, so an entry keeps working for remove(),
+ * replaceKey() and replaceValue() until it is removed.
+ */
+
+public class MinMaxHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V> {
+
+	private final MyArrayHeapTree<MyHeapEntry<K,V>> _tree;
+	private final Comparator<K> _comp;
+
+	/**
+	 * Creates an empty heap with the given comparator.
+	 *
+	 * @param comparator the comparator to be used for heap keys
+	 * @throws IllegalArgumentException if the comparator is null
+	 */
+	public MinMaxHeap(Comparator<K> comparator) {
+		if (comparator == null){
+			throw new IllegalArgumentException();
+		}
+		_comp = comparator;
+		_tree = new MyArrayHeapTree<MyHeapEntry<K,V>>();
+	}
+
+	/**
+	 * Returns the tree the entries are stored in, for the visualizer.
+	 * The picture is not in plain heap order, since the levels alternate
+	 * between least and greatest keys.
+	 *
+	 * @return the underlying binary tree
+	 */
+	public CompleteBinaryTree<MyHeapEntry<K,V>> getTree() {
+		return _tree;
+	}
+
+	/**
+	 * Returns the number of entries in the heap.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return _tree.size();
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return _tree.isEmpty();
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key. This method
+	 * runs in O(1) time.
+	 *
+	 * @return the entry with the minimum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> min() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return _tree.get(0);
+	}
+
+	/**
+	 * Returns but does not remove an entry with maximum key. This method
+	 * runs in O(1) time.
+	 *
+	 * @return the entry with the maximum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> max() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return _tree.get(this.maxIndex());
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created. This
+	 * method runs in O(log n) time.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the entry created using the key/value parameters
+	 * @throws InvalidKeyException if the key is not suitable for this heap
+	 */
+	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
+		this.checkKey(key);
+		MyHeapEntry<K,V> entry = new MyHeapEntry<K,V>(key, value);
+		this.sift(_tree.append(entry), entry);
+		return entry;
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key. This method runs in
+	 * O(log n) time.
+	 *
+	 * @return the entry with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return this.removeAt(0);
+	}
+
+	/**
+	 * Removes and returns an entry with maximum key. This method runs in
+	 * O(log n) time.
+	 *
+	 * @return the entry with the maximum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> removeMax() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return this.removeAt(this.maxIndex());
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap. This method runs
+	 * in O(log n) time.
+	 *
+	 * @param entry to be removed from the heap
+	 * @return the entry specified for removal by the parameter
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+		MyHeapEntry<K,V> checkedEntry = this.checkEntry(entry);
+		if (!this.contains(checkedEntry)){
+			throw new InvalidEntryException("ERROR: Entry is not in this heap");
+		}
+		return this.removeAt(checkedEntry.getIndex());
+	}
+
+	/**
+	 * Replaces the key of the given entry and moves the entry to where
+	 * the new key belongs. This method runs in O(log n) time.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 * @throws InvalidKeyException if the key is invalid
+	 */
+	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		MyHeapEntry<K,V> checkedEntry = this.checkEntry(entry);
+		if (!this.contains(checkedEntry)){
+			throw new InvalidEntryException("ERROR: Entry is not in this heap");
+		}
+		this.checkKey(key);
+
+		K oldKey = checkedEntry.getKey();
+		checkedEntry.setKey(key);
+		this.sift(checkedEntry.getIndex(), checkedEntry);
+		return oldKey;
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1)
+	 * time.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is invalid
+	 */
+	public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {
+		MyHeapEntry<K,V> checkedEntry = this.checkEntry(entry);
+		V oldValue = checkedEntry.getValue();
+		checkedEntry.setValue(value);
+		return oldValue;
+	}
+
+	/**
+	 * Takes the entry at the given index out of the tree and returns it.
+	 * The entry from the last node fills the hole and is moved to where
+	 * it belongs.
+	 *
+	 * @param index of the entry to be removed
+	 * @return the entry
+	 */
+	private MyHeapEntry<K,V> removeAt(int index) {
+		MyHeapEntry<K,V> entry = _tree.get(index);
+		MyHeapEntry<K,V> last = _tree.remove();
+		if (last != entry){
+			this.sift(index, last);
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns the index of the entry with the greatest key: the greater
+	 * of the root's children, or the root itself if it has none.
+	 *
+	 * @return the index of the maximum
+	 */
+	private int maxIndex() {
+		int size = _tree.size();
+		if (size < 3){
+			return size - 1;
+		}
+		return _comp.compare(_tree.get(2).getKey(), _tree.get(1).getKey()) > 0 ? 2 : 1;
+	}
+
+	/**
+	 * Moves the given entry from the hole at the given index to wherever
+	 * it belongs. If it belongs on the other kind of level than the hole's
+	 * (a key greater than its max-level parent's, say, for a min-level
+	 * hole), the parent's entry comes down into the hole and is sent down
+	 * from there, while the entry goes up from the parent's index.
+	 * Otherwise the entry goes up past grandparents on its own kind of
+	 * level, and if it doesn't move at all, it is sent down.
+	 *
+	 * @param hole the index the entry is to fill
+	 * @param entry to be placed
+	 */
+	private void sift(int hole, MyHeapEntry<K,V> entry) {
+		boolean minLevel = this.isMinLevel(hole);
+		K key = entry.getKey();
+		if (hole > 0){
+			int parent = (hole - 1) / 2;
+			MyHeapEntry<K,V> parentEntry = _tree.get(parent);
+			if (this.before(parentEntry.getKey(), key, minLevel)){
+				this.place(this.upHeap(parent, key, !minLevel), entry);
+				this.downHeap(hole, parentEntry, minLevel);
+				return;
+			}
+		}
+		int index = this.upHeap(hole, key, minLevel);
+		if (index == hole){
+			this.downHeap(hole, entry, minLevel);
+		} else {
+			this.place(index, entry);
+		}
+	}
+
+	/**
+	 * Moves the hole at the given index up past its grandparents for as
+	 * long as the key comes before theirs, each grandparent moving down
+	 * into the hole, and returns where the hole ended up.
+	 *
+	 * @param hole the index to start from
+	 * @param key of the entry that is to fill the hole
+	 * @param minLevel whether the hole is on a min level
+	 * @return the index where that entry belongs
+	 */
+	private int upHeap(int hole, K key, boolean minLevel) {
+		while (hole > 2){
+			int grandparent = (hole - 3) / 4;
+			MyHeapEntry<K,V> grandparentEntry = _tree.get(grandparent);
+			if (!this.before(key, grandparentEntry.getKey(), minLevel)){
+				break;
+			}
+			this.place(hole, grandparentEntry);
+			hole = grandparent;
+		}
+		return hole;
+	}
+
+	/**
+	 * Sends the entry down from the hole at the given index and places
+	 * it. At each step the hole's children and grandchildren are looked
+	 * at together, and the one whose key comes first (least on a min
+	 * level, greatest on a max level) moves up into the hole if it comes
+	 * before the entry's key. If that was a child, the entry belongs in
+	 * the child's place. If it was a grandchild, the hole moves there,
+	 * and should the entry come after the grandchild's parent (which is
+	 * on the other kind of level), the two trade places first.
+	 *
+	 * @param hole the index to start from
+	 * @param entry to be placed
+	 * @param minLevel whether the hole is on a min level
+	 */
+	private void downHeap(int hole, MyHeapEntry<K,V> entry, boolean minLevel) {
+		int size = _tree.size();
+		K key = entry.getKey();
+		while (2 * hole + 1 < size){
+			int child = 2 * hole + 1;
+			int first = this.first(child, Math.min(child + 2, size), minLevel);
+			int grandchild = 2 * child + 1;
+			if (grandchild < size){
+				first = this.first(first, grandchild, Math.min(grandchild + 4, size), minLevel);
+			}
+			MyHeapEntry<K,V> firstEntry = _tree.get(first);
+			if (!this.before(firstEntry.getKey(), key, minLevel)){
+				break;
+			}
+			this.place(hole, firstEntry);
+			hole = first;
+			if (first < grandchild){
+				break;
+			}
+
+			// The entry is now a grandchild's, and must not come after
+			// the parent there, which is on the other kind of level
+			int parent = (first - 1) / 2;
+			MyHeapEntry<K,V> parentEntry = _tree.get(parent);
+			if (this.before(parentEntry.getKey(), key, minLevel)){
+				this.place(parent, entry);
+				entry = parentEntry;
+				key = entry.getKey();
+			}
+		}
+		this.place(hole, entry);
+	}
+
+	/**
+	 * Returns the index, from "from" up to (not including) "end", whose
+	 * key comes first.
+	 *
+	 * @param from the first index to look at
+	 * @param end the index after the last one
+	 * @param minLevel whether the keys are compared for a min level
+	 * @return the index of the first key
+	 */
+	private int first(int from, int end, boolean minLevel) {
+		return this.first(from, from + 1, end, minLevel);
+	}
+
+	/**
+	 * Returns whichever of the given index and the indexes from "from"
+	 * up to (not including) "end" has the key that comes first.
+	 *
+	 * @param best the index to start with
+	 * @param from the first index to look at
+	 * @param end the index after the last one
+	 * @param minLevel whether the keys are compared for a min level
+	 * @return the index of the first key
+	 */
+	private int first(int best, int from, int end, boolean minLevel) {
+		K bestKey = _tree.get(best).getKey();
+		for (int i = from; i < end; i++){
+			K key = _tree.get(i).getKey();
+			if (this.before(key, bestKey, minLevel)){
+				best = i;
+				bestKey = key;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns whether key a comes strictly before key b: on a min level
+	 * that means a is less, and on a max level that it is greater.
+	 *
+	 * @param a the first key
+	 * @param b the second key
+	 * @param minLevel whether the comparison is for a min level
+	 * @return true if a comes first
+	 */
+	private boolean before(K a, K b, boolean minLevel) {
+		int order = _comp.compare(a, b);
+		return minLevel ? order < 0 : order > 0;
+	}
+
+	/**
+	 * Returns whether the given index is on a min level, i.e. its depth
+	 * (the root's being 0) is even.
+	 *
+	 * @param index in level order
+	 * @return true if it is on a min level
+	 */
+	private boolean isMinLevel(int index) {
+		return (31 - Integer.numberOfLeadingZeros(index + 1)) % 2 == 0;
+	}
+
+	/**
+	 * Stores the entry at the given index and records the index in the
+	 * entry itself.
+	 *
+	 * @param index where the entry goes
+	 * @param entry to be stored
+	 */
+	private void place(int index, MyHeapEntry<K,V> entry) {
+		_tree.set(index, entry);
+		entry.setIndex(index);
+	}
+
+	/**
+	 * Checks whether the entry is currently stored in this heap, i.e.
+	 * whether the slot at its index holds that very entry.
+	 *
+	 * @param entry to look for
+	 * @return true if the entry is in the heap
+	 */
+	private boolean contains(MyHeapEntry<K,V> entry) {
+		int index = entry.getIndex();
+		return index >= 0 && index < _tree.size() && _tree.get(index) == entry;
+	}
+
+	@SuppressWarnings("unchecked")
+	private MyHeapEntry<K,V> checkEntry(Entry<K,V> entry) throws InvalidEntryException {
+		if (!(entry instanceof MyHeapEntry)){
+			throw new InvalidEntryException("Invalid entry");
+		}
+		return (MyHeapEntry<K,V>) entry;
+	}
+
+	private void checkKey(K key) throws InvalidKeyException {
+		if (key == null){
+			throw new InvalidKeyException("ERROR: Key is null");
+		}
+		try {
+			_comp.compare(key, key); // If invalid key, ClassCastException thrown here
+		} catch (ClassCastException e){
+			throw new InvalidKeyException("ERROR: Key is invalid");
+		}
+	}
+
+	private void checkNotEmpty() throws EmptyPriorityQueueException {
+		if (_tree.isEmpty()){
+			throw new EmptyPriorityQueueException("ERROR: Heap is empty");
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * This class is used to test the functionality of MinMaxHeap.
+ */
+
+/* Besides the usual order and exception tests, we run a long random mix of
+ * inserts, removeMins, removeMaxes, removes and key changes against a plain
+ * list of the expected keys, and check after every step that each entry on
+ * a min level is no greater than anything below it, and each entry on a
+ * max level no less.
+ */
+
+public class MinMaxHeapTest {
+
+	/**
+	 * To check that removeMin() and removeMax(), taken in turns, return
+	 * entries from both ends in order of their keys.
+	 */
+	@Test
+	public void testHeapOrder() {
+		MinMaxHeap<Integer, String> heap = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++){
+			keys.add(i);
+		}
+		Collections.shuffle(keys, new Random(25));
+		for (int key : keys){
+			heap.insert(key, "v" + key);
+		}
+		assertThat(heap.size(), is(1000));
+		for (int i = 0; i < 500; i++){
+			assertThat(heap.min().getKey(), is(i));
+			assertThat(heap.max().getKey(), is(999 - i));
+			assertThat(heap.removeMin().getValue(), is("v" + i));
+			assertThat(heap.removeMax().getValue(), is("v" + (999 - i)));
+		}
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * To check min() and max() on the smallest heaps, where the maximum
+	 * is the root or its only child.
+	 */
+	@Test
+	public void testSmallHeaps() {
+		MinMaxHeap<Integer, String> heap = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		heap.insert(5, "A");
+		assertThat(heap.max().getValue(), is("A"));
+		assertThat(heap.min().getValue(), is("A"));
+		heap.insert(3, "B");
+		assertThat(heap.max().getValue(), is("A"));
+		assertThat(heap.min().getValue(), is("B"));
+		assertThat(heap.removeMax().getValue(), is("A"));
+		assertThat(heap.removeMax().getValue(), is("B"));
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * To check that replaceKey() moves entries across to the other kind
+	 * of level, up and down, and returns the old key.
+	 */
+	@Test
+	public void testReplaceKey() {
+		MinMaxHeap<Integer, String> heap = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		List<Entry<Integer, String>> entries = new ArrayList<Entry<Integer, String>>();
+		for (int i = 0; i < 15; i++){
+			entries.add(heap.insert(10 * i, "v" + i));
+		}
+
+		assertThat(heap.replaceKey(entries.get(0), 1000), is(0));
+		assertThat(heap.max().getValue(), is("v0"));
+		assertThat(heap.min().getKey(), is(10));
+		heap.replaceKey(entries.get(0), 75);
+		heap.replaceKey(entries.get(14), -1);
+		assertThat(heap.min().getValue(), is("v14"));
+		assertThat(heap.max().getKey(), is(130));
+		assertThat(heap.replaceValue(entries.get(14), "w"), is("v14"));
+
+		int previous = Integer.MIN_VALUE;
+		while (!heap.isEmpty()){
+			int key = heap.removeMin().getKey();
+			assertTrue(key >= previous);
+			previous = key;
+		}
+	}
+
+	/**
+	 * To check a long random mix of operations against a list of the keys
+	 * that should be in the heap, and the min-max order of the tree after
+	 * every step.
+	 */
+	@Test
+	public void testRandomOperations() {
+		MinMaxHeap<Integer, Integer> heap = new MinMaxHeap<Integer, Integer>(new IntegerComparator());
+		List<Entry<Integer,Integer>> entries = new ArrayList<Entry<Integer,Integer>>();
+		List<Integer> expected = new ArrayList<Integer>();
+		Random random = new Random(2);
+		for (int step = 0; step < 20000; step++){
+			int op = random.nextInt(10);
+			if (op < 4 || entries.isEmpty()){
+				int key = random.nextInt(1000);
+				entries.add(heap.insert(key, key));
+				expected.add(key);
+			} else if (op < 5){
+				Entry<Integer,Integer> min = heap.removeMin();
+				assertThat(min.getKey(), is(Collections.min(expected)));
+				entries.remove(min);
+				expected.remove(min.getKey());
+			} else if (op < 6){
+				Entry<Integer,Integer> max = heap.removeMax();
+				assertThat(max.getKey(), is(Collections.max(expected)));
+				entries.remove(max);
+				expected.remove(max.getKey());
+			} else if (op < 7){
+				Entry<Integer,Integer> entry = entries.remove(random.nextInt(entries.size()));
+				heap.remove(entry);
+				expected.remove(entry.getKey());
+			} else {
+				Entry<Integer,Integer> entry = entries.get(random.nextInt(entries.size()));
+				int key = random.nextInt(1000);
+				expected.remove(entry.getKey());
+				heap.replaceKey(entry, key);
+				expected.add(key);
+			}
+			assertThat(heap.size(), is(expected.size()));
+			MinMaxHeapTest.checkOrder(heap);
+		}
+		Collections.sort(expected);
+		for (int key : expected){
+			assertThat(heap.removeMin().getKey(), is(key));
+		}
+	}
+
+	/**
+	 * Here we test that an entry can't be removed twice.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testRemovedEntryThrowsInvalidEntryException() {
+		MinMaxHeap<Integer, String> heap = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer,String> entry = heap.insert(1, "A");
+		heap.insert(2, "B");
+		heap.remove(entry);
+		heap.remove(entry);
+	}
+
+	/**
+	 * Here we test that replaceKey() rejects a removed entry, and an
+	 * entry stored in another MinMaxHeap, without changing either key.
+	 */
+	@Test
+	public void testReplaceKeyOutsideEntryThrowsInvalidEntryException() {
+		MinMaxHeap<Integer, String> heap = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		MinMaxHeap<Integer, String> other = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer,String> removed = heap.insert(1, "A");
+		heap.insert(2, "B");
+		heap.remove(removed);
+		Entry<Integer,String> foreign = other.insert(5, "X"); // Index 0, as in heap
+		for (Entry<Integer,String> entry : Arrays.asList(removed, foreign)){
+			Integer key = entry.getKey();
+			try {
+				heap.replaceKey(entry, 100);
+				fail("Expected an InvalidEntryException");
+			} catch (InvalidEntryException e){
+				assertThat(entry.getKey(), is(key));
+			}
+		}
+		assertThat(other.max().getValue(), is("X"));
+		assertThat(heap.min().getValue(), is("B"));
+	}
+
+	/**
+	 * Here we test that an entry from a PairingHeap is rejected.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testForeignEntryThrowsInvalidEntryException() {
+		MinMaxHeap<Integer, String> heap = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		PairingHeap<Integer, String> other = new PairingHeap<Integer, String>(new IntegerComparator());
+		heap.insert(1, "A");
+		heap.remove(other.insert(1, "B"));
+	}
+
+	/**
+	 * Here we test that a null key throws an InvalidKeyException.
+	 */
+	@Test(expected = InvalidKeyException.class)
+	public void testInsertThrowsInvalidKeyException() {
+		MinMaxHeap<Integer, String> heap = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		heap.insert(null, "A");
+	}
+
+	/**
+	 * Here we test that removeMax() on an empty heap throws an
+	 * EmptyPriorityQueueException.
+	 */
+	@Test(expected = EmptyPriorityQueueException.class)
+	public void testRemoveMaxThrowsEmptyPriorityQueueException() {
+		MinMaxHeap<Integer, String> heap = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		heap.removeMax();
+	}
+
+	/**
+	 * Checks that every entry knows its index, and that each entry's key
+	 * is no greater than its descendants' on a min level (even depth) and
+	 * no less on a max level. Comparing against children and grandchildren
+	 * is enough, as the order is transitive.
+	 */
+	private static void checkOrder(MinMaxHeap<Integer, Integer> heap) {
+		List<MyHeapEntry<Integer, Integer>> tree = new ArrayList<MyHeapEntry<Integer, Integer>>();
+		for (MyHeapEntry<Integer, Integer> entry : heap.getTree()){
+			assertThat(entry.getIndex(), is(tree.size()));
+			tree.add(entry);
+		}
+		for (int i = 0; i < tree.size(); i++){
+			boolean minLevel = (31 - Integer.numberOfLeadingZeros(i + 1)) % 2 == 0;
+			for (int j : new int[] {2 * i + 1, 2 * i + 2, 4 * i + 3, 4 * i + 4, 4 * i + 5, 4 * i + 6}){
+				if (j < tree.size()){
+					int order = tree.get(i).getKey().compareTo(tree.get(j).getKey());
+					assertTrue(minLevel ? order <= 0 : order >= 0);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,433 @@
+package heap;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A relaxed concurrent priority queue made of several MyHeap shards,
+ * each behind its own lock (a "MultiQueue"). An insert goes to a random
+ * shard. removeMin looks at the minimums of two random shards and takes
+ * the lesser one. Threads rarely want the same shard at the same time,
+ * so throughput grows with the number of cores, at the price of
+ * removeMin only returning an entry close to the minimum rather than
+ * the minimum itself. With c*p shards for p threads, the expected rank
+ * of the returned entry is O(c*p).
+ *
+ * How far the results are from strict order can be measured with
+ * setRankErrorSampling: every so often, removeMin counts how many
+ * entries left in the queue have a lesser key than the one it returned.
+ *
+ * Entries remember their shard, so remove(), replaceKey() and
+ * replaceValue() go straight to the shard that owns the entry.
+ */
+
+public class MultiQueue<K,V> implements AdaptablePriorityQueue<K,V> {
+
+	private final Shard<K,V>[] _shards;
+	private final Comparator<K> _comp;
+	private final AtomicInteger _size;
+
+	// Rank error sampling (0 means off)
+	private volatile int _samplingPeriod;
+	private final AtomicLong _removals;
+	private final AtomicLong _samples;
+	private final AtomicLong _rankErrorSum;
+	private final AtomicLong _rankErrorMax;
+
+	/**
+	 * Creates an empty queue with two shards per available processor.
+	 *
+	 * @param comparator the comparator to be used for keys
+	 */
+	public MultiQueue(Comparator<K> comparator) {
+		this(comparator, Runtime.getRuntime().availableProcessors(), 2);
+	}
+
+	/**
+	 * Creates an empty queue with shardsPerThread * threads shards.
+	 *
+	 * @param comparator the comparator to be used for keys
+	 * @param threads the number of threads expected to use the queue
+	 * @param shardsPerThread the number of shards per thread (c)
+	 * @throws IllegalArgumentException if the comparator is null or there
+	 *         would be fewer than two shards
+	 */
+	@SuppressWarnings("unchecked")
+	public MultiQueue(Comparator<K> comparator, int threads, int shardsPerThread) {
+		if (comparator == null){
+			throw new IllegalArgumentException();
+		}
+		if (threads < 1 || shardsPerThread < 1 || threads * shardsPerThread < 2){
+			throw new IllegalArgumentException("ERROR: A MultiQueue needs at least two shards");
+		}
+		_comp = comparator;
+		_shards = new Shard[threads * shardsPerThread];
+		for (int i = 0; i < _shards.length; i++){
+			_shards[i] = new Shard<K,V>(new MyHeap<K,V>(comparator));
+		}
+		_size = new AtomicInteger();
+		_samplingPeriod = 0;
+		_removals = new AtomicLong();
+		_samples = new AtomicLong();
+		_rankErrorSum = new AtomicLong();
+		_rankErrorMax = new AtomicLong();
+	}
+
+	/**
+	 * Returns the number of shards.
+	 *
+	 * @return the number of MyHeaps the entries are spread over
+	 */
+	public int getShardCount() {
+		return _shards.length;
+	}
+
+	/**
+	 * Returns the number of entries in the queue.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return _size.get();
+	}
+
+	/**
+	 * Returns whether the queue is empty.
+	 *
+	 * @return true if the queue is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return _size.get() == 0;
+	}
+
+	/**
+	 * Returns the entry with the least key among the shards' minimums.
+	 * Without other threads changing the queue this is the minimum.
+	 *
+	 * @return an entry with (close to) the minimum key
+	 * @throws EmptyPriorityQueueException if the queue is empty
+	 */
+	public Entry<K,V> min() throws EmptyPriorityQueueException {
+		MyHeapEntry<K,V> min = null;
+		K minKey = null;
+		for (Shard<K,V> shard : _shards){
+			MyHeapEntry<K,V> top = shard._top;
+			if (top != null){
+				K key = shard._topKey;
+				if (min == null || _comp.compare(key, minKey) < 0){
+					min = top;
+					minKey = key;
+				}
+			}
+		}
+		if (min == null){
+			throw new EmptyPriorityQueueException("ERROR: Heap is empty");
+		}
+		return min;
+	}
+
+	/**
+	 * Inserts a key-value pair into a random shard and returns the
+	 * entry created.
+	 *
+	 * @param key to be used as the key the queue is sorting with
+	 * @param value stored with the associated key in the queue
+	 * @return the entry created using the key/value parameters
+	 * @throws InvalidKeyException if the key is not suitable for this queue
+	 */
+
+	/* If the random shard is locked by another thread, we just try
+	 * another one rather than wait for it.
+	 */
+
+	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (true){
+			Shard<K,V> shard = _shards[random.nextInt(_shards.length)];
+			if (shard._lock.tryLock()){
+				try {
+					ShardEntry<K,V> entry = new ShardEntry<K,V>(key, value, shard);
+					shard._heap.insert(entry);
+					_size.incrementAndGet();
+					shard.refresh();
+					return entry;
+				} finally {
+					shard._lock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes and returns an entry with a key close to the minimum: the
+	 * lesser of the minimums of two random shards.
+	 *
+	 * @return the removed entry
+	 * @throws EmptyPriorityQueueException if the queue is empty
+	 */
+
+	/* We compare the two shards' cached minimums without locking and then
+	 * lock the better shard. If it's busy, or it was emptied in between,
+	 * we start over with two new shards. If both shards are empty, we
+	 * look through all of them before deciding the queue is empty.
+	 */
+
+	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (true){
+			Shard<K,V> shard = this.lesserOf(_shards[random.nextInt(_shards.length)],
+					_shards[random.nextInt(_shards.length)]);
+			if (shard == null){
+				shard = this.anyNonEmpty(random.nextInt(_shards.length));
+				if (shard == null){
+					throw new EmptyPriorityQueueException("ERROR: Heap is empty");
+				}
+			}
+			if (shard._lock.tryLock()){
+				MyHeapEntry<K,V> min = null;
+				try {
+					if (!shard._heap.isEmpty()){
+						min = (MyHeapEntry<K,V>) shard._heap.removeMin();
+						_size.decrementAndGet();
+						shard.refresh();
+					}
+				} finally {
+					shard._lock.unlock();
+				}
+				if (min != null){
+					this.sampleRankError(min.getKey());
+					return min;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes and returns the given entry from its shard.
+	 *
+	 * @param entry to be removed from the queue
+	 * @return the entry specified for removal by the parameter
+	 * @throws InvalidEntryException if the entry is not from this queue
+	 */
+	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+		Shard<K,V> shard = this.checkEntry(entry)._shard;
+		shard._lock.lock();
+		try {
+			Entry<K,V> removed = shard._heap.remove(entry);
+			_size.decrementAndGet();
+			shard.refresh();
+			return removed;
+		} finally {
+			shard._lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the key of the given entry within its shard.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not from this queue
+	 * @throws InvalidKeyException if the key is invalid
+	 */
+	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		Shard<K,V> shard = this.checkEntry(entry)._shard;
+		shard._lock.lock();
+		try {
+			K oldKey = shard._heap.replaceKey(entry, key);
+			shard.refresh();
+			return oldKey;
+		} finally {
+			shard._lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the value of the given entry.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not from this queue
+	 */
+	public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {
+		Shard<K,V> shard = this.checkEntry(entry)._shard;
+		shard._lock.lock();
+		try {
+			return shard._heap.replaceValue(entry, value);
+		} finally {
+			shard._lock.unlock();
+		}
+	}
+
+	/**
+	 * Turns rank error sampling on or off. When on, one in every period
+	 * removeMin calls counts the entries left in the queue whose keys are
+	 * less than the key it returned (0 would mean strict order). This
+	 * locks each shard in turn, so it is O(n) per sample.
+	 *
+	 * @param period how many removeMin calls per sample, or 0 for off
+	 * @throws IllegalArgumentException if period is negative
+	 */
+	public void setRankErrorSampling(int period) {
+		if (period < 0){
+			throw new IllegalArgumentException("ERROR: Negative sampling period");
+		}
+		_samplingPeriod = period;
+	}
+
+	/**
+	 * @return the number of rank error samples taken so far
+	 */
+	public long getRankErrorSamples() {
+		return _samples.get();
+	}
+
+	/**
+	 * @return the average rank error of the sampled removeMin calls
+	 */
+	public double getMeanRankError() {
+		long samples = _samples.get();
+		return samples == 0 ? 0 : (double) _rankErrorSum.get() / samples;
+	}
+
+	/**
+	 * @return the largest rank error of the sampled removeMin calls
+	 */
+	public long getMaxRankError() {
+		return _rankErrorMax.get();
+	}
+
+	/**
+	 * Returns the shard whose cached minimum is less, or null if both
+	 * are empty.
+	 */
+	private Shard<K,V> lesserOf(Shard<K,V> a, Shard<K,V> b) {
+		K aKey = a._topKey;
+		K bKey = b._topKey;
+		if (aKey == null){
+			return bKey == null ? null : b;
+		}
+		if (bKey == null){
+			return a;
+		}
+		return _comp.compare(bKey, aKey) < 0 ? b : a;
+	}
+
+	/**
+	 * Looks through all the shards, starting at the given one, for one
+	 * that isn't empty. Returns null if they all are.
+	 */
+	private Shard<K,V> anyNonEmpty(int start) {
+		for (int i = 0; i < _shards.length; i++){
+			Shard<K,V> shard = _shards[(start + i) % _shards.length];
+			if (shard._topKey != null){
+				return shard;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks that the entry was created by this queue.
+	 *
+	 * @param entry to be checked
+	 * @return the entry cast as a ShardEntry
+	 * @throws InvalidEntryException if the entry is not from this queue
+	 */
+	@SuppressWarnings("unchecked")
+	private ShardEntry<K,V> checkEntry(Entry<K,V> entry) throws InvalidEntryException {
+		if (!(entry instanceof ShardEntry)){
+			throw new InvalidEntryException("Invalid entry");
+		}
+		ShardEntry<K,V> shardEntry = (ShardEntry<K,V>) entry;
+		for (Shard<K,V> shard : _shards){
+			if (shard == shardEntry._shard){
+				return shardEntry;
+			}
+		}
+		throw new InvalidEntryException("ERROR: Entry is not from this queue");
+	}
+
+	/**
+	 * Counts the entries with keys less than the given one, if this
+	 * removeMin is due for a sample, and records the count.
+	 *
+	 * @param key the key that removeMin returned
+	 */
+	private void sampleRankError(K key) {
+		int period = _samplingPeriod;
+		if (period == 0 || _removals.incrementAndGet() % period != 0){
+			return;
+		}
+		long rank = 0;
+		for (Shard<K,V> shard : _shards){
+			shard._lock.lock();
+			try {
+				Iterator<MyHeapEntry<K,V>> entries = shard._heap.getTree().iterator();
+				while (entries.hasNext()){
+					if (_comp.compare(entries.next().getKey(), key) < 0){
+						rank++;
+					}
+				}
+			} finally {
+				shard._lock.unlock();
+			}
+		}
+		_samples.incrementAndGet();
+		_rankErrorSum.addAndGet(rank);
+		long max;
+		while (rank > (max = _rankErrorMax.get()) && !_rankErrorMax.compareAndSet(max, rank)){
+			// Another sample raised the max in between; try again
+		}
+	}
+
+	/**
+	 * One MyHeap and its lock. The shard's minimum entry and its key are
+	 * cached in volatile fields after every change, so that removeMin can
+	 * pick between two shards without locking either.
+	 */
+	private static final class Shard<K,V> {
+
+		private final MyHeap<K,V> _heap;
+		private final ReentrantLock _lock;
+		private volatile MyHeapEntry<K,V> _top;
+		private volatile K _topKey;
+
+		private Shard(MyHeap<K,V> heap) {
+			_heap = heap;
+			_lock = new ReentrantLock();
+		}
+
+		// Re-reads the minimum; must be called while holding the lock
+		private void refresh() {
+			MyHeapEntry<K,V> top = _heap.peek();
+			_topKey = top == null ? null : top.getKey();
+			_top = top;
+		}
+	}
+
+	/**
+	 * A MyHeapEntry that remembers which shard it was inserted into.
+	 */
+	private static final class ShardEntry<K,V> extends MyHeapEntry<K,V> {
+
+		private final Shard<K,V> _shard;
+
+		private ShardEntry(K key, V value, Shard<K,V> shard) {
+			super(key, value);
+			_shard = shard;
+		}
+	}
+}
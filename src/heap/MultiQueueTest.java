@@ -0,0 +1,183 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+
+/**
+ * This class is used to test the functionality of MultiQueue.
+ */
+
+/* MultiQueue only promises an entry close to the minimum, so apart from
+ * the small cases we don't check exact order. Instead we check that every
+ * entry comes out exactly once, that the sampled rank error stays within
+ * a few times the number of shards, and that entries are routed back to
+ * their own shard by remove() and replaceKey().
+ */
+
+public class MultiQueueTest {
+
+	private static final int THREADS = 4;
+	private static final int PER_THREAD = 5000;
+
+	/**
+	 * To check the basic operations on a queue with just one entry per
+	 * shard at most, where the results can be predicted.
+	 */
+	@Test
+	public void testSingleEntry() {
+		MultiQueue<Integer, String> queue = new MultiQueue<Integer, String>(new IntegerComparator(), 1, 2);
+		assertThat(queue.getShardCount(), is(2));
+		assertThat(queue.isEmpty(), is(true));
+
+		Entry<Integer,String> entry = queue.insert(11, "A");
+		assertThat(queue.size(), is(1));
+		assertThat(queue.min().getKey(), is(11));
+		assertThat(queue.replaceKey(entry, 5), is(11));
+		assertThat(queue.replaceValue(entry, "B"), is("A"));
+		assertThat(queue.min().getKey(), is(5));
+		assertThat(queue.removeMin().getValue(), is("B"));
+		assertThat(queue.isEmpty(), is(true));
+	}
+
+	/**
+	 * To check that draining the queue returns every entry exactly once,
+	 * and that the rank error stays small next to the number of entries.
+	 */
+	@Test
+	public void testDrainWithRankError() {
+		MultiQueue<Integer, Integer> queue = new MultiQueue<Integer, Integer>(new IntegerComparator(), 4, 2);
+		queue.setRankErrorSampling(50);
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < 2000; i++){
+			keys.add(i);
+		}
+		Collections.shuffle(keys);
+		for (int key : keys){
+			queue.insert(key, key);
+		}
+
+		List<Integer> drained = new ArrayList<Integer>();
+		while (!queue.isEmpty()){
+			drained.add(queue.removeMin().getKey());
+		}
+		Collections.sort(drained);
+		assertThat(drained.size(), is(2000));
+		for (int i = 0; i < drained.size(); i++){
+			assertThat(drained.get(i), is(i));
+		}
+
+		// The expected rank error is a small multiple of the 8 shards
+		assertThat(queue.getRankErrorSamples(), is(40L));
+		assertTrue(queue.getMeanRankError() < 4 * queue.getShardCount());
+	}
+
+	/**
+	 * To check that remove() and replaceKey() work on entries wherever
+	 * they ended up, and that the queue still drains to what's left.
+	 */
+	@Test
+	public void testRemoveAndReplaceKey() {
+		MultiQueue<Integer, Integer> queue = new MultiQueue<Integer, Integer>(new IntegerComparator(), 2, 2);
+		List<Entry<Integer,Integer>> entries = new ArrayList<Entry<Integer,Integer>>();
+		for (int i = 0; i < 100; i++){
+			entries.add(queue.insert(i, i));
+		}
+		for (int i = 0; i < 100; i += 2){
+			assertThat(queue.remove(entries.get(i)).getValue(), is(i));
+		}
+		queue.replaceKey(entries.get(99), -1);
+		assertThat(queue.size(), is(50));
+
+		// min() looks at every shard, so it has to find the new key
+		assertThat(queue.min().getValue(), is(99));
+
+		List<Integer> drained = new ArrayList<Integer>();
+		while (!queue.isEmpty()){
+			drained.add(queue.removeMin().getValue());
+		}
+		Collections.sort(drained);
+		for (int i = 0; i < 50; i++){
+			assertThat(drained.get(i), is(2 * i + 1));
+		}
+	}
+
+	/**
+	 * To check that threads draining the queue together get every entry
+	 * exactly once.
+	 */
+	@Test
+	public void testConcurrentDrain() throws InterruptedException {
+		final MultiQueue<Integer, Integer> queue = new MultiQueue<Integer, Integer>(new IntegerComparator(), THREADS, 2);
+		for (int i = 0; i < THREADS * PER_THREAD; i++){
+			queue.insert(i, i);
+		}
+
+		final List<List<Integer>> drained = new ArrayList<List<Integer>>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++){
+			final List<Integer> mine = new ArrayList<Integer>();
+			drained.add(mine);
+			threads.add(new Thread() {
+				public void run() {
+					try {
+						while (true){
+							mine.add(queue.removeMin().getKey());
+						}
+					} catch (EmptyPriorityQueueException e){
+						// Done
+					}
+				}
+			});
+		}
+		for (Thread thread : threads){
+			thread.start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+
+		List<Integer> all = new ArrayList<Integer>();
+		for (List<Integer> mine : drained){
+			all.addAll(mine);
+		}
+		Collections.sort(all);
+		assertThat(all.size(), is(THREADS * PER_THREAD));
+		for (int i = 0; i < all.size(); i++){
+			assertThat(all.get(i), is(i));
+		}
+	}
+
+	/**
+	 * Here we test that an entry from another queue is rejected with an
+	 * InvalidEntryException.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testForeignEntryThrowsInvalidEntryException() {
+		MultiQueue<Integer, String> queue = new MultiQueue<Integer, String>(new IntegerComparator(), 1, 2);
+		MultiQueue<Integer, String> other = new MultiQueue<Integer, String>(new IntegerComparator(), 1, 2);
+		queue.insert(1, "A");
+		queue.remove(other.insert(1, "B"));
+	}
+
+	/**
+	 * Here we test that removeMin() on an empty queue throws an
+	 * EmptyPriorityQueueException.
+	 */
+	@Test(expected = EmptyPriorityQueueException.class)
+	public void testRemoveMinThrowsEmptyPriorityQueueException() {
+		MultiQueue<Integer, String> queue = new MultiQueue<Integer, String>(new IntegerComparator());
+		queue.removeMin();
+	}
+
+}
@@ -0,0 +1,412 @@
+package heap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import net.datastructures.BoundaryViolationException;
+import net.datastructures.CompleteBinaryTree;
+import net.datastructures.EmptyTreeException;
+import net.datastructures.InvalidPositionException;
+import net.datastructures.Position;
+
+/**
+ * An implementation of a complete binary tree by means
+ * of a contiguous array. The element at index i has its parent
+ * at index (i - 1) / 2 and its children at indices 2i + 1 and
+ * 2i + 2, so no node objects or links are needed.
+ */
+
+public class MyArrayHeapTree<E> implements CompleteBinaryTree<E> {
+
+	// The smallest capacity the array ever shrinks to
+	private static final int MIN_CAPACITY = 16;
+
+	// The elements of the tree, stored in level order
+	private Object[] _elements;
+	private int _size;
+
+	// Positions are only handed out through the CompleteBinaryTree
+	// interface (e.g. to the visualizer), so they are created lazily
+	private IndexPosition<E>[] _positions;
+
+	/**
+	 * Default constructor. The tree begins empty.
+	 */
+	public MyArrayHeapTree() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty tree with room for the given number of elements
+	 * before the array has to grow.
+	 *
+	 * @param initialCapacity the number of slots to allocate up front
+	 * @throws IllegalArgumentException if the capacity is negative
+	 */
+	public MyArrayHeapTree(int initialCapacity) {
+		if (initialCapacity < 0){
+			throw new IllegalArgumentException("ERROR: Negative capacity");
+		}
+		_elements = new Object[Math.max(initialCapacity, MIN_CAPACITY)];
+		_size = 0;
+		_positions = null;
+	}
+
+	/*
+	 * Index-based accessors. These are what MyHeap uses on its hot paths;
+	 * none of them allocate.
+	 */
+
+	/**
+	 * Returns the element stored at the given index. This method runs
+	 * in O(1) time.
+	 *
+	 * @param index of the element in level order
+	 * @return the element at that index
+	 */
+	@SuppressWarnings("unchecked")
+	public E get(int index) {
+		return (E) _elements[index];
+	}
+
+	/**
+	 * Stores an element at the given index, which must already be
+	 * occupied. This method runs in O(1) time.
+	 *
+	 * @param index of the slot in level order
+	 * @param element to store there
+	 * @return the element formerly stored at that index
+	 */
+	@SuppressWarnings("unchecked")
+	public E set(int index, E element) {
+		E old = (E) _elements[index];
+		_elements[index] = element;
+		return old;
+	}
+
+	/**
+	 * Swaps the elements stored at the two indices.
+	 *
+	 * @param i index of the first element
+	 * @param j index of the second element
+	 */
+	public void swapElements(int i, int j) {
+		Object temp = _elements[i];
+		_elements[i] = _elements[j];
+		_elements[j] = temp;
+	}
+
+	/**
+	 * Adds an element just after the last node and returns its index.
+	 * This method runs in amortized O(1) time.
+	 *
+	 * @param element to be added to the tree as the new last node
+	 * @return the index of the newly inserted element
+	 */
+	public int append(E element) {
+		if (_size == _elements.length){
+			this.resize(_elements.length * 2);
+		}
+		_elements[_size] = element;
+		return _size++;
+	}
+
+	/**
+	 * Makes sure the array can hold the given number of elements
+	 * without growing again, e.g. before a bulk load.
+	 *
+	 * @param capacity the number of elements the tree should have room for
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > _elements.length){
+			this.resize(Math.max(capacity, _elements.length * 2));
+		}
+	}
+
+	/**
+	 * Removes every element but keeps the array, so a tree that is
+	 * emptied and refilled over and over doesn't reallocate. This
+	 * method runs in O(n) time.
+	 */
+	public void clear() {
+		Arrays.fill(_elements, 0, _size, null);
+		_size = 0;
+	}
+
+	/**
+	 * Removes every element from the given index on, so that the tree
+	 * keeps only its first size elements. As with remove(), the array is
+	 * halved (possibly several times) if the tree drops to a quarter of
+	 * its capacity. This method runs in amortized O(k) time for k elements
+	 * removed.
+	 *
+	 * @param size the number of elements to keep
+	 * @throws IllegalArgumentException if size is negative or larger than the tree
+	 */
+	public void truncate(int size) {
+		if (size < 0 || size > _size){
+			throw new IllegalArgumentException("ERROR: Cannot truncate to " + size);
+		}
+		Arrays.fill(_elements, size, _size, null);
+		_size = size;
+
+		int capacity = _elements.length;
+		while (capacity > MIN_CAPACITY && _size <= capacity / 4){
+			capacity /= 2;
+		}
+		if (capacity != _elements.length){
+			this.resize(capacity);
+		}
+	}
+
+	// Returns the index of the last node, or -1 if the tree is empty
+	public int lastIndex() {
+		return _size - 1;
+	}
+
+	// Index arithmetic for moving around the tree
+	public int parentIndex(int index) {
+		return (index - 1) >>> 1;
+	}
+
+	public int leftIndex(int index) {
+		return (index << 1) + 1;
+	}
+
+	public int rightIndex(int index) {
+		return (index << 1) + 2;
+	}
+
+	/*
+	 * CompleteBinaryTree methods.
+	 */
+
+	/**
+	 * Adds an element to the tree just after the last node. Returns the newly
+	 * created position for the element.
+	 *
+	 * This method runs in amortized O(1) time.
+	 *
+	 * @param element to be added to the tree as the new last node
+	 * @return the Position of the newly inserted element
+	 */
+	public Position<E> add(E element) {
+		return this.position(this.append(element));
+	}
+
+	/**
+	 * Removes and returns the element stored in the last node of the tree.
+	 * When the tree drops to a quarter of its capacity, the array is halved
+	 * so that a heap that shrinks after a burst gives its memory back.
+	 *
+	 * This method runs in amortized O(1) time.
+	 *
+	 * @return the element formerly stored in the last node (prior to its removal)
+	 * @throws EmptyTreeException if the tree is empty and no last node exists
+	 */
+	public E remove() throws EmptyTreeException {
+		if (_size == 0){
+			throw new EmptyTreeException("ERROR: Empty Tree");
+		}
+		E element = this.get(--_size);
+		_elements[_size] = null; // Let the garbage collector have it
+
+		if (_elements.length > MIN_CAPACITY && _size <= _elements.length / 4){
+			this.resize(_elements.length / 2);
+		}
+		return element;
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	public Iterator<E> iterator() {
+		List<E> elements = new ArrayList<E>(_size);
+		for (int i = 0; i < _size; i++){
+			elements.add(this.get(i));
+		}
+		return elements.iterator();
+	}
+
+	public Iterable<Position<E>> positions() {
+		List<Position<E>> positions = new ArrayList<Position<E>>(_size);
+		for (int i = 0; i < _size; i++){
+			positions.add(this.position(i));
+		}
+		return positions;
+	}
+
+	public E replace(Position<E> v, E e) throws InvalidPositionException {
+		return this.set(this.checkPosition(v), e);
+	}
+
+	public Position<E> root() throws EmptyTreeException {
+		if (_size == 0){
+			throw new EmptyTreeException("ERROR: Empty Tree");
+		}
+		return this.position(0);
+	}
+
+	public Position<E> parent(Position<E> v)
+			throws InvalidPositionException, BoundaryViolationException {
+		int index = this.checkPosition(v);
+		if (index == 0){
+			throw new BoundaryViolationException("ERROR: Root has no parent");
+		}
+		return this.position(this.parentIndex(index));
+	}
+
+	public Iterable<Position<E>> children(Position<E> v) throws InvalidPositionException {
+		int index = this.checkPosition(v);
+		List<Position<E>> children = new ArrayList<Position<E>>(2);
+		if (this.leftIndex(index) < _size){
+			children.add(this.position(this.leftIndex(index)));
+		}
+		if (this.rightIndex(index) < _size){
+			children.add(this.position(this.rightIndex(index)));
+		}
+		return children;
+	}
+
+	public boolean isInternal(Position<E> v) throws InvalidPositionException {
+		return this.leftIndex(this.checkPosition(v)) < _size;
+	}
+
+	public boolean isExternal(Position<E> v) throws InvalidPositionException {
+		return !this.isInternal(v);
+	}
+
+	public boolean isRoot(Position<E> v) throws InvalidPositionException {
+		return this.checkPosition(v) == 0;
+	}
+
+	public Position<E> left(Position<E> v)
+			throws InvalidPositionException, BoundaryViolationException {
+		if (!this.hasLeft(v)){
+			throw new BoundaryViolationException("ERROR: No left child");
+		}
+		return this.position(this.leftIndex(this.checkPosition(v)));
+	}
+
+	public Position<E> right(Position<E> v)
+			throws InvalidPositionException, BoundaryViolationException {
+		if (!this.hasRight(v)){
+			throw new BoundaryViolationException("ERROR: No right child");
+		}
+		return this.position(this.rightIndex(this.checkPosition(v)));
+	}
+
+	public boolean hasLeft(Position<E> v) throws InvalidPositionException {
+		return this.leftIndex(this.checkPosition(v)) < _size;
+	}
+
+	public boolean hasRight(Position<E> v) throws InvalidPositionException {
+		return this.rightIndex(this.checkPosition(v)) < _size;
+	}
+
+	/**
+	 * This accessor returns the position of the last node, in the same
+	 * manner as MyLinkedHeapTree.
+	 *
+	 * @return the position of the last node
+	 * @throws EmptyTreeException if the tree is empty
+	 */
+	public Position<E> getLast() throws EmptyTreeException {
+		if (_size == 0){
+			throw new EmptyTreeException("ERROR: Empty Tree");
+		}
+		return this.position(_size - 1);
+	}
+
+	/**
+	 * Returns the element located at the given position.
+	 *
+	 * @param a position in the tree
+	 */
+	public E getElement(Position<E> position) {
+		return this.get(this.checkPosition(position));
+	}
+
+	/**
+	 * This helper copies the elements (and any positions handed out so
+	 * far) into an array of the given capacity.
+	 *
+	 * @param capacity the new length of the backing array
+	 */
+	@SuppressWarnings("unchecked")
+	private void resize(int capacity) {
+		Object[] elements = new Object[capacity];
+		System.arraycopy(_elements, 0, elements, 0, _size);
+		_elements = elements;
+
+		if (_positions != null){
+			IndexPosition<E>[] positions = new IndexPosition[capacity];
+			System.arraycopy(_positions, 0, positions, 0, Math.min(_positions.length, capacity));
+			_positions = positions;
+		}
+	}
+
+	/**
+	 * Returns the (cached) position for the given index. A position
+	 * always refers to the same slot, so elements that are swapped
+	 * move between positions rather than taking them along.
+	 *
+	 * @param index of an occupied slot
+	 * @return the position for that slot
+	 */
+	@SuppressWarnings("unchecked")
+	private Position<E> position(int index) {
+		if (_positions == null){
+			_positions = new IndexPosition[_elements.length];
+		}
+		if (_positions[index] == null){
+			_positions[index] = new IndexPosition<E>(this, index);
+		}
+		return _positions[index];
+	}
+
+	/**
+	 * Checks that the position belongs to this tree and refers to an
+	 * occupied slot, and returns the slot's index.
+	 *
+	 * @param v the position to check
+	 * @return the index that the position refers to
+	 * @throws InvalidPositionException if the position is not valid
+	 */
+	@SuppressWarnings("unchecked")
+	private int checkPosition(Position<E> v) throws InvalidPositionException {
+		if (v == null || !(v instanceof IndexPosition)){
+			throw new InvalidPositionException("ERROR: Invalid position");
+		}
+		IndexPosition<E> position = (IndexPosition<E>) v;
+		if (position._tree != this || position._index >= _size){
+			throw new InvalidPositionException("ERROR: Invalid position");
+		}
+		return position._index;
+	}
+
+	/**
+	 * A position is just a view of one slot of the array.
+	 */
+	private static class IndexPosition<E> implements Position<E> {
+
+		private final MyArrayHeapTree<E> _tree;
+		private final int _index;
+
+		private IndexPosition(MyArrayHeapTree<E> tree, int index) {
+			_tree = tree;
+			_index = index;
+		}
+
+		public E element() {
+			return _tree.get(_index);
+		}
+	}
+}
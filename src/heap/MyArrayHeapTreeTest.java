@@ -0,0 +1,207 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyTreeException;
+import net.datastructures.InvalidPositionException;
+import net.datastructures.Position;
+
+
+/**
+ * This class is used to test the functionality of my MyArrayHeapTree implementation.
+ */
+
+/* In testing the implementation of MyArrayHeapTree, we cover both the index-based
+ * methods that MyHeap uses (append, get, set, swapElements and the index arithmetic)
+ * and the Position-based methods of the CompleteBinaryTree interface. Since the tree
+ * grows and shrinks its array, we also add and remove enough elements to force both
+ * resizes and check that nothing is lost along the way.
+ */
+
+public class MyArrayHeapTreeTest {
+
+	/**
+	 * To check that the first element added becomes the root, both through
+	 * add() and through the index-based get().
+	 */
+	@Test
+	public void testAddOneElement() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		Position<Integer> root = tree.add(1);
+
+		assertThat(tree.size(), is(1));
+		assertTrue(root == tree.root());
+		assertThat(tree.getElement(tree.root()), is(1));
+		assertThat(tree.get(0), is(1));
+	}
+
+	/**
+	 * To check that append() returns the index of the new last node, and that
+	 * elements are stored in level order.
+	 */
+	@Test
+	public void testAppendReturnsIndex() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		assertThat(tree.append(10), is(0));
+		assertThat(tree.append(20), is(1));
+		assertThat(tree.append(30), is(2));
+
+		assertThat(tree.lastIndex(), is(2));
+		assertThat(tree.getElement(tree.getLast()), is(30));
+	}
+
+	/**
+	 * To check the index arithmetic against the Position-based methods: the
+	 * parent of each node should be the node at parentIndex, and the left and
+	 * right children should be at leftIndex and rightIndex.
+	 */
+	@Test
+	public void testIndexArithmeticMatchesPositions() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		for (int i = 0; i < 10; i++){
+			tree.append(i);
+		}
+
+		// Each element is its own index, so we can read the arithmetic straight off
+		assertThat(tree.getElement(tree.left(tree.root())), is(tree.leftIndex(0)));
+		assertThat(tree.getElement(tree.right(tree.root())), is(tree.rightIndex(0)));
+		for (Position<Integer> position : tree.positions()){
+			if (!tree.isRoot(position)){
+				int index = tree.getElement(position);
+				assertThat(tree.getElement(tree.parent(position)), is(tree.parentIndex(index)));
+			}
+		}
+
+		// Node 4 has only a left child (9), and node 5 is a leaf
+		Position<Integer> four = tree.parent(tree.getLast());
+		assertTrue(tree.hasLeft(four));
+		assertFalse(tree.hasRight(four));
+		assertTrue(tree.isExternal(tree.left(tree.right(tree.root()))));
+	}
+
+	/**
+	 * To check that remove() takes elements off the end, in reverse order of
+	 * being added, and empties the tree.
+	 */
+	@Test
+	public void testRemoveReturnsElement() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		tree.add(7);
+		tree.add(0);
+		tree.add(678);
+
+		assertThat(tree.remove(), is(678));
+		assertThat(tree.remove(), is(0));
+		assertThat(tree.remove(), is(7));
+		assertTrue(tree.isEmpty());
+	}
+
+	/**
+	 * To check that the array grows past its initial capacity and shrinks
+	 * back down again without losing or reordering any elements.
+	 */
+	@Test
+	public void testGrowAndShrink() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>(1);
+		for (int i = 0; i < 1000; i++){
+			tree.append(i);
+		}
+		assertThat(tree.size(), is(1000));
+		assertThat(tree.get(999), is(999));
+
+		for (int i = 999; i >= 3; i--){
+			assertThat(tree.remove(), is(i));
+		}
+		assertThat(tree.size(), is(3));
+		assertThat(tree.get(0), is(0));
+		assertThat(tree.get(2), is(2));
+	}
+
+	/**
+	 * To check that truncate keeps the first elements, shrinks the array
+	 * and still lets the tree grow again.
+	 */
+	@Test
+	public void testTruncate() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		for (int i = 0; i < 1000; i++){
+			tree.append(i);
+		}
+		tree.truncate(5);
+		assertThat(tree.size(), is(5));
+		assertThat(tree.get(4), is(4));
+		assertThat(tree.append(5), is(5));
+		tree.truncate(6);
+		assertThat(tree.size(), is(6));
+		tree.truncate(0);
+		assertTrue(tree.isEmpty());
+	}
+
+	/**
+	 * To test that an exception is thrown if we try to truncate a tree
+	 * to more elements than it has.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncateThrowsIllegalArgumentException() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		tree.append(0);
+		tree.truncate(2);
+	}
+
+	/**
+	 * To check that swapping moves elements between slots while positions
+	 * stay with their slots.
+	 */
+	@Test
+	public void testSwapElements() {
+		MyArrayHeapTree<String> tree = new MyArrayHeapTree<String>();
+		tree.add("A");
+		Position<String> last = tree.add("B");
+
+		tree.swapElements(0, 1);
+		assertThat(tree.getElement(tree.root()), is("B"));
+		assertThat(last.element(), is("A"));
+
+		assertThat(tree.set(1, "C"), is("A"));
+		assertThat(tree.replace(tree.root(), "D"), is("B"));
+		assertThat(tree.get(0), is("D"));
+		assertThat(tree.get(1), is("C"));
+	}
+
+	/**
+	 * To test that a position for a slot that has been removed is no longer
+	 * accepted by the tree.
+	 */
+	@Test(expected = InvalidPositionException.class)
+	public void testRemovedPositionIsInvalid() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		tree.add(1);
+		Position<Integer> last = tree.add(2);
+		tree.remove();
+		tree.getElement(last);
+	}
+
+	/**
+	 * To test that an exception is thrown if we try to call getLast() on an
+	 * empty MyArrayHeapTree.
+	 */
+	@Test(expected = EmptyTreeException.class)
+	public void testGetLastThrowsEmptyTreeException() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		tree.getLast();
+	}
+
+	/**
+	 * To test that an exception is thrown if we try to call remove() on an
+	 * empty MyArrayHeapTree.
+	 */
+	@Test(expected = EmptyTreeException.class)
+	public void testRemoveThrowsEmptyTreeException() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		tree.remove();
+	}
+
+}
@@ -1,16 +1,23 @@
 package heap;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
 import net.datastructures.CompleteBinaryTree;
 import net.datastructures.DefaultComparator;
 import net.datastructures.EmptyPriorityQueueException;
 import net.datastructures.Entry;
 import net.datastructures.InvalidEntryException;
 import net.datastructures.InvalidKeyException;
-import net.datastructures.Position;
 import net.datastructures.AdaptablePriorityQueue;
 import support.heap.HeapWrapper;
-import net.datastructures.Position;
 
 
 /**
@@ -20,17 +27,76 @@ import net.datastructures.Position;
 
 public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V> {
 
-	// This the underlying data structure of your heap
-	private MyLinkedHeapTree<MyHeapEntry<K,V>> _tree;
+	// This the underlying data structure of your heap; entries live in
+	// one contiguous array and remember their own index in it
+	private MyArrayHeapTree<MyHeapEntry<K,V>> _tree;
 	private Comparator<K> _comp;
 
+	// The number of children each node has (2 for a binary heap)
+	private final int _arity;
+
+	// Operation counts, or null (the default) when metrics are off
+	private HeapMetrics _metrics;
+
+	// The JFR event for the operation in progress, or null when there is
+	// none or no recording has HeapOperationEvent enabled
+	private HeapOperationEvent _event;
+
+	// The fraction of dead entries at which a lazy heap is compacted, or
+	// 0 (the default) when remove() takes entries out straight away
+	private double _maxDead;
+
+	// The number of entries that remove() has marked dead but that are
+	// still in the tree, waiting to surface at the root or be compacted
+	private int _dead;
+
+	// Snapshot format: "MYHP", the version, and the buffer size for streaming
+	private static final int SNAPSHOT_MAGIC = 0x4d594850;
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final int SNAPSHOT_BUFFER = 1 << 16;
+
+	// The largest record a snapshot (or KWayMerger segment) may hold, so a
+	// corrupt length can't make a reader allocate a huge buffer
+	static final int MAX_RECORD = 1 << 26;
+
 	/**
-	 * Creates an empty heap with the given comparator.
+	 * Creates an empty (binary) heap with the given comparator.
 	 *
 	 * @param the comparator to be used for heap keys
 	 */
 	public MyHeap(Comparator<K> comparator) {
-		_tree = new MyLinkedHeapTree<MyHeapEntry<K,V>>();
+		this(comparator, 2);
+	}
+
+	/**
+	 * Creates an empty d-ary heap with the given comparator. Each node
+	 * has up to arity children, so the heap is only log_arity(n) levels
+	 * deep: upHeap gets cheaper, while downHeap compares more children
+	 * per level.
+	 *
+	 * @param comparator the comparator to be used for heap keys
+	 * @param arity the number of children per node
+	 * @throws IllegalArgumentException if arity is less than 2
+	 */
+	public MyHeap(Comparator<K> comparator, int arity) {
+		this(comparator, arity, new MyArrayHeapTree<MyHeapEntry<K,V>>());
+	}
+
+	/**
+	 * Creates an empty d-ary heap on top of the given (empty) tree. This
+	 * lets the tests look at how the heap uses its tree.
+	 *
+	 * @param comparator the comparator to be used for heap keys
+	 * @param arity the number of children per node
+	 * @param tree the tree to store the entries in
+	 * @throws IllegalArgumentException if arity is less than 2
+	 */
+	MyHeap(Comparator<K> comparator, int arity, MyArrayHeapTree<MyHeapEntry<K,V>> tree) {
+		if (arity < 2){
+			throw new IllegalArgumentException("ERROR: Arity must be at least 2");
+		}
+		_arity = arity;
+		_tree = tree;
 		this.setComparator(comparator);
 	}
 
@@ -52,8 +118,85 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 		if (comparator == null){
 			throw new IllegalArgumentException();
 		}
+		// Dead entries were put in order by the old comparator
+		if (_dead > 0){
+			MyHeap.this.clear();
+		}
 		// Otherwise we set the comparator used to the comparator passed in
-		_comp = comparator;
+		_comp = _metrics == null ? comparator : _metrics.counting(comparator);
+	}
+
+	/**
+	 * Turns on operation counts for this heap (see HeapMetrics) and
+	 * returns them. If they are already on, the same metrics are
+	 * returned. Heaps without metrics pay nothing for them but a null
+	 * check per operation.
+	 *
+	 * @return the heap's metrics
+	 */
+	public HeapMetrics enableMetrics() {
+		if (_metrics == null){
+			_metrics = new HeapMetrics(MyHeap.this.size());
+			_comp = _metrics.counting(_comp);
+		}
+		return _metrics;
+	}
+
+	/**
+	 * Turns operation counts off again, unregistering them from JMX if
+	 * they were registered.
+	 */
+	public void disableMetrics() {
+		if (_metrics != null){
+			_metrics.unregister();
+			_comp = ((HeapMetrics.CountingComparator<K>) _comp).getBase();
+			_metrics = null;
+		}
+	}
+
+	/**
+	 * Returns this heap's metrics.
+	 *
+	 * @return the metrics, or null if they are off
+	 */
+	public HeapMetrics getMetrics() {
+		return _metrics;
+	}
+
+	/**
+	 * Turns on lazy removal. From then on remove() only marks the entry
+	 * dead, in O(1) time, and leaves it where it is in the tree. A dead
+	 * entry is dropped when it reaches the root, the next time min(),
+	 * removeMin() or replaceMin() looks there, or when drainTo takes it.
+	 * Once dead entries make up the given fraction of the tree or more,
+	 * all of them are compacted away in one O(n) pass. size() counts
+	 * only the live entries.
+	 *
+	 * This suits heaps where most entries are removed before they ever
+	 * reach the root, such as timeouts that are usually cancelled. Until
+	 * they are compacted, dead entries still take up memory and make the
+	 * tree deeper.
+	 *
+	 * @param maxDeadFraction the dead fraction of the tree at which it is
+	 *        compacted, more than 0 and at most 1
+	 * @throws IllegalArgumentException if the fraction is out of range
+	 */
+	public void enableLazyRemoval(double maxDeadFraction) throws IllegalArgumentException {
+		if (!(maxDeadFraction > 0 && maxDeadFraction <= 1)){
+			throw new IllegalArgumentException("ERROR: Dead fraction must be in (0, 1]");
+		}
+		_maxDead = maxDeadFraction;
+	}
+
+	/**
+	 * Turns lazy removal off again, compacting away any dead entries, so
+	 * that remove() takes entries out straight away.
+	 */
+	public void disableLazyRemoval() {
+		if (_dead > 0){
+			MyHeap.this.compact();
+		}
+		_maxDead = 0;
 	}
 
 	/**
@@ -65,12 +208,25 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 	 * Do not modify or call this method. It is solely
 	 * necessary for the visualizer to work properly.
 	 *
+	 * Note that the tree's left/right links are binary, so the
+	 * picture is only a faithful heap when the arity is 2. With lazy
+	 * removal on, the tree also holds the dead entries.
+	 *
 	 * @return the underlying binary tree on which the heap is based
 	 */
 	public CompleteBinaryTree<MyHeapEntry<K,V>> getTree() {
 		return _tree;
 	}
 
+	/**
+	 * Returns the number of children each node of the heap can have.
+	 *
+	 * @return the arity of the heap
+	 */
+	public int getArity() {
+		return _arity;
+	}
+
 	/**
 	 * Returns the size of the heap.
 	 * This method must run in O(1) time.
@@ -78,7 +234,7 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 	 * @return an int representing the number of entries stored
 	 */
 	public int size() {
-		return _tree.size();
+		return _tree.size() - _dead;
 	}
 
 	/**
@@ -88,12 +244,13 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 	 * @return true if the heap is empty; false otherwise
 	 */
 	public boolean isEmpty() {
-		return _tree.isEmpty();
+		return MyHeap.this.size() == 0;
 	}
 
 	/**
 	 * Returns but does not remove an entry with minimum key.
-	 * This method must run in O(1) time.
+	 * This method must run in O(1) time (amortized, with lazy removal,
+	 * since dead entries at the root are dropped first).
 	 *
 	 * @return the entry with the minimum key in the heap
 	 * @throws EmptyPriorityQueueException if the heap is empty
@@ -104,7 +261,21 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 		if (MyHeap.this.isEmpty()){
 			throw new EmptyPriorityQueueException("ERROR: Heap is empty");
 		}
-		return _tree.getElement(_tree.root());
+		MyHeap.this.dropDeadRoots();
+		return _tree.get(0);
+	}
+
+	/**
+	 * Returns the entry at the root, or null if the heap is empty. Unlike
+	 * min() this never throws, so ConcurrentMyHeap can call it during an
+	 * optimistic read that may see the heap half-way through a change.
+	 * It doesn't skip dead entries, as ConcurrentMyHeap never turns on
+	 * lazy removal.
+	 *
+	 * @return the entry with the minimum key, or null
+	 */
+	MyHeapEntry<K,V> peek() {
+		return _tree.isEmpty() ? null : _tree.get(0);
 	}
 
 	/**
@@ -118,24 +289,101 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 	 */
 
 	/* This method inserts the given key and value pair as an entry into
-	 * the heap. Using the MyLinkedHeapTree add method, the entry is
+	 * the heap. Using the MyArrayHeapTree append method, the entry is
 	 * inserted into the "last" node in order to keep the tree left-
-	 * complete. And then we call the helper method upHeap to re-organize
-	 * the tree if need be, so that the priority order is maintained
-	 * according to the keys. Finally, we return the newly created entry.
+	 * complete. And then we call the helper method upHeap to find where
+	 * the entry belongs so that the priority order is maintained
+	 * according to the keys, and place it there. Finally, we return the
+	 * newly created entry.
 	 */
 
 	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
 
-		MyHeap.this.checkKey(key); // Checking validity of the key
+		return MyHeap.this.insert(new MyHeapEntry<K,V>(key,value));
 
-		MyHeapEntry<K,V> newEntry = new MyHeapEntry<K,V>(key,value);
-		Position<MyHeapEntry<K,V>> position = _tree.add(newEntry);
-		newEntry.setPosition(position); // Set the position of the entry (just in case)
-		MyHeap.this.upHeap(position);
+	}
 
+	/**
+	 * Inserts an entry that was created outside the heap, such as a
+	 * subclass of MyHeapEntry that carries extra information. The entry
+	 * must not be in any heap already, unless it is a dead entry of this
+	 * one, which just comes back to life.
+	 *
+	 * @param newEntry the entry to be inserted
+	 * @return the entry
+	 * @throws InvalidKeyException if the entry's key is not suitable for this heap
+	 */
+	MyHeapEntry<K,V> insert(MyHeapEntry<K,V> newEntry) throws InvalidKeyException {
+		long start = _metrics == null ? 0 : System.nanoTime();
+		K key = newEntry.getKey();
+		MyHeap.this.checkKey(key); // Checking validity of the key
+		MyHeap.this.beginEvent();
+		try {
+			if (newEntry.isDead() && MyHeap.this.isStored(newEntry)){
+				newEntry.setDead(false);
+				_dead--;
+				MyHeap.this.sift(newEntry.getIndex(), newEntry);
+			} else {
+				int index = _tree.append(newEntry);
+				MyHeap.this.place(MyHeap.this.upHeap(index, key), newEntry);
+			}
+		} finally {
+			MyHeap.this.endEvent("insert");
+		}
+		if (_metrics != null){
+			_metrics.recordInsert(start, MyHeap.this.size());
+		}
 		return newEntry;
+	}
 
+	/**
+	 * Removes the entry with minimum key and inserts the given entry in
+	 * its place, with a single downHeap from the root. This does the
+	 * work of removeMin and insert for about half the cost, and is what
+	 * TopK uses to swap out its worst entry.
+	 *
+	 * @param newEntry the entry to be inserted; it must not be in any heap
+	 * @return the entry with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 * @throws InvalidKeyException if the entry's key is not suitable for this heap
+	 */
+	MyHeapEntry<K,V> replaceMin(MyHeapEntry<K,V> newEntry) throws EmptyPriorityQueueException, InvalidKeyException {
+		if (MyHeap.this.isEmpty()){
+			throw new EmptyPriorityQueueException("ERROR: Heap is empty");
+		}
+		K key = newEntry.getKey();
+		MyHeap.this.checkKey(key);
+		MyHeapEntry<K,V> min;
+		MyHeap.this.beginEvent();
+		try {
+			MyHeap.this.dropDeadRoots();
+
+			// The root is now a hole for the new entry to fill
+			min = _tree.get(0);
+			MyHeap.this.place(MyHeap.this.downHeap(0, key), newEntry);
+		} finally {
+			MyHeap.this.endEvent("replaceMin");
+		}
+		return min;
+	}
+
+	/**
+	 * Removes every entry, keeping the tree's array so that a heap that
+	 * is reused (as by ShortestPaths between queries) doesn't reallocate.
+	 * The entries removed can be inserted again with insert(MyHeapEntry).
+	 * This method runs in O(n) time.
+	 */
+	void clear() {
+		for (int i = 0; _dead > 0; i++){
+			if (_tree.get(i).isDead()){
+				_tree.get(i).setDead(false);
+				_dead--;
+			}
+		}
+		_tree.clear();
+		if (_metrics != null){
+			_metrics.recordSize(0);
+		}
 	}
 
 	/**
@@ -148,12 +396,11 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 
 	/* This method removes and returns the entry with the minimum key
 	 * which will always be located at the top. Since we must remove
-	 * from the bottom of the tree, we must first swap elements with
-	 * the "last" node. Then we can remove the "last" node along with
-	 * the entry with the minimum key. After, we call the helper method
-	 * downHeap to re-organize the tree if need be, so that the priority
-	 * order is maintained according to the keys. Finally, we return
-	 * the entry with the minimum key.
+	 * from the bottom of the tree, we take the entry out of the "last"
+	 * node and treat the root as a hole that it has to fill. We call
+	 * the helper method downHeap to find where that entry belongs, so
+	 * that the priority order is maintained according to the keys, and
+	 * place it there. Finally, we return the entry with the minimum key.
 	 */
 
 	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
@@ -162,21 +409,99 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 		if (MyHeap.this.isEmpty()){
 			throw new EmptyPriorityQueueException("ERROR: Heap is empty");
 		}
+		long start = _metrics == null ? 0 : System.nanoTime();
+		MyHeapEntry<K,V> min;
+		MyHeap.this.beginEvent();
+		try {
+			MyHeap.this.dropDeadRoots();
+			min = MyHeap.this.removeRoot();
+		} finally {
+			MyHeap.this.endEvent("removeMin");
+		}
+		if (_metrics != null){
+			_metrics.recordRemoveMin(start, MyHeap.this.size());
+		}
+		return min;
+	}
 
-		// If there's only one element in the heap, we just return this root
-		// (no need to swap or downheap or anything else )
+	/**
+	 * Removes and returns up to k entries with the least keys, least key
+	 * first. If the heap has fewer than k entries, all of them are
+	 * removed. This does the work of k calls to removeMin() in one
+	 * pass; see drainTo.
+	 *
+	 * @param k the most entries to remove
+	 * @return the entries removed, in order of their keys
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public List<Entry<K,V>> removeMin(int k) throws IllegalArgumentException {
+		List<Entry<K,V>> entries = new ArrayList<Entry<K,V>>(Math.max(0, Math.min(k, MyHeap.this.size())));
+		MyHeap.this.drainTo(entries, k);
+		return entries;
+	}
 
-		if (MyHeap.this.size() == 1){
-			return _tree.remove();
-		}
+	/**
+	 * Removes up to max entries with the least keys and adds them to the
+	 * collection, least key first. If the heap has fewer than max
+	 * entries, all of them are removed. This method runs in
+	 * O(k log n) time for k entries removed.
+	 *
+	 * @param collection to add the removed entries to
+	 * @param max the most entries to remove
+	 * @return the number of entries removed
+	 * @throws IllegalArgumentException if max is negative
+	 */
 
-		_tree.swapElements(_tree.root(), _tree.getLast());
-		MyHeapEntry<K,V> min = _tree.remove();
-		// Set the position of the entry (although we'll reset when we downheap)
-		_tree.getElement(_tree.root()).setPosition(_tree.root());
-		MyHeap.this.downHeap(_tree.root());
+	/* Rather than k removeMins, each of which sends the last entry all the
+	 * way down from the root, we first find the k least entries with a
+	 * small binary heap of indexes, the "frontier". It starts with just
+	 * the root; each time the least index is taken out of it, that
+	 * index's children go in. A child only becomes a candidate once its
+	 * parent has been taken, so the taken indexes form a connected top
+	 * part of the tree, and the frontier never holds more than
+	 * (k - 1)(arity - 1) + 1 indexes. Then the tree is repaired once (see
+	 * fillHoles): the holes are filled from the end of the tree and each
+	 * filler is sent down from its own hole, not from the root. The
+	 * entries are only handed to the collection after that, so the heap
+	 * is whole again if the collection throws.
+	 *
+	 * With lazy removal, dead entries are taken along with the live ones
+	 * but not handed on, so another round may be needed to make up the
+	 * number. Every round takes at least one entry out of the tree.
+	 */
 
-		return min;
+	public int drainTo(Collection<? super Entry<K,V>> collection, int max) throws IllegalArgumentException {
+		if (max < 0){
+			throw new IllegalArgumentException("ERROR: Cannot remove a negative number of entries");
+		}
+		int k = Math.min(max, MyHeap.this.size());
+		if (k == 0){
+			return 0;
+		}
+		List<MyHeapEntry<K,V>> removed = new ArrayList<MyHeapEntry<K,V>>(k);
+		MyHeap.this.beginEvent();
+		try {
+			while (removed.size() < k){
+				int[] taken = MyHeap.this.smallest(k - removed.size());
+				for (int index : taken){
+					MyHeapEntry<K,V> entry = _tree.get(index);
+					if (entry.isDead()){
+						entry.setDead(false);
+						_dead--;
+					} else {
+						removed.add(entry);
+					}
+				}
+				MyHeap.this.fillHoles(taken);
+			}
+		} finally {
+			MyHeap.this.endEvent("drainTo");
+		}
+		if (_metrics != null){
+			_metrics.recordSize(MyHeap.this.size());
+		}
+		collection.addAll(removed);
+		return k;
 	}
 
 	/**
@@ -189,34 +514,57 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 	 */
 
 	/* This method removes and returns an entry given that entry. We do this
-	 * by accessing the position stored in the entry, then swapping elements
-	 * with the last node so that the entry we want to remove is now in the
-	 * last node position. After removing this last node, we then we simply
-	 * downHeap/upHeap at its previous position (since the element that was
-	 * previously at the last node is now at that position). Although not
-	 * likely, it is possible that the parent of a node on the same level has
-	 * a key greater than the key of this most recently added entry which is
-	 * why we need to upHeap as well. Finally, we just return the entry that
-	 * we removed.
-	 *
-	 * NOTE: Since we must switch the positions of the last node (or most
-	 * recently added entry) and the entry to be removed before we upheap
-	 * or downheap, the heap will not look the same as before- in other
+	 * by accessing the index stored in the entry, which becomes a hole once
+	 * we take the last node out of the tree. The entry from the last node
+	 * then has to fill that hole, so we upHeap/downHeap from there. Although
+	 * not likely, it is possible that the parent of a node on the same level
+	 * has a key greater than the key of this most recently added entry which
+	 * is why we need to try upHeap as well; we only downHeap if it didn't
+	 * move up. Finally, we just return the entry that we removed.
+	 *
+	 * NOTE: Since the last node (or most recently added entry) fills the
+	 * hole left by the entry to be removed before we upheap or downheap,
+	 * the heap will not look the same as before- in other
 	 * words, the most recently added entry may not necessarily be in the
 	 * same subtree as before. However, the priority order is maintained.
+	 *
+	 * With lazy removal on, none of that happens: the entry is marked
+	 * dead and stays where it is, unless that makes the heap due for
+	 * compaction.
 	 */
 
 	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+		long start = _metrics == null ? 0 : System.nanoTime();
 		MyHeapEntry<K,V> checkedEntry = this.checkAndConvertEntry(entry);
 
-		Position<MyHeapEntry<K,V>> position = checkedEntry.getPosition();
-
-		_tree.swapElements(position,_tree.getLast());
-		MyHeapEntry<K,V> oldEntry = _tree.remove();
-		MyHeap.this.upHeap(position);
-		MyHeap.this.downHeap(position);
+		if (!MyHeap.this.contains(checkedEntry)){
+			throw new InvalidEntryException("ERROR: Entry is not in this heap");
+		}
+		MyHeap.this.beginEvent();
+		try {
+			if (_maxDead > 0){
+				checkedEntry.setDead(true);
+				_dead++;
+				if (_dead >= _maxDead * _tree.size()){
+					MyHeap.this.compact();
+				}
+			} else {
+				int index = checkedEntry.getIndex();
+				MyHeapEntry<K,V> last = _tree.remove();
 
-		return oldEntry;
+				// If the entry was not itself the last node, the last entry has
+				// to fill the hole and be moved to where it belongs
+				if (last != checkedEntry){
+					MyHeap.this.sift(index, last);
+				}
+			}
+		} finally {
+			MyHeap.this.endEvent("remove");
+		}
+		if (_metrics != null){
+			_metrics.recordRemove(start, MyHeap.this.size());
+		}
+		return checkedEntry;
 	}
 
 	/**
@@ -226,7 +574,7 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 	 * @param entry within which the key will be replaced
 	 * @param key to replace the existing key in the entry
 	 * @return the old key formerly associated with the entry
-	 * @throws InvalidEntryException if the entry is invalid
+	 * @throws InvalidEntryException if the entry is invalid or not in this heap
 	 * @throws InvalidKeyException if the key is invalid
 	 */
 
@@ -237,19 +585,33 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 	 * MyHeapEntry in the process so that we can call the setKey method
 	 * we made). Afterwards, we upheap if the key is less than the parent
 	 * key or downheap if the key is greater than either child key- we
-	 * only perform one of these. Thus, runtime is O(log n).
+	 * only perform one of these, and we only try to downheap if the
+	 * entry didn't move up. Thus, runtime is O(log n). As in remove(),
+	 * an entry that is not in this heap (already removed, dead, or from
+	 * another heap) is rejected before its key is touched, since it may
+	 * be in the order of some other heap.
 	 */
 
 	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		long start = _metrics == null ? 0 : System.nanoTime();
 		MyHeapEntry<K,V> checkedEntry = this.checkAndConvertEntry(entry);
 
+		if (!MyHeap.this.contains(checkedEntry)){
+			throw new InvalidEntryException("ERROR: Entry is not in this heap");
+		}
 		MyHeap.this.checkKey(key); // Checking the validity of the key
-
 		K oldKey = checkedEntry.getKey();
 		checkedEntry.setKey(key);
-		MyHeap.this.upHeap(checkedEntry.getPosition());
-		MyHeap.this.downHeap(checkedEntry.getPosition());
 
+		MyHeap.this.beginEvent();
+		try {
+			MyHeap.this.sift(checkedEntry.getIndex(), checkedEntry);
+		} finally {
+			MyHeap.this.endEvent("replaceKey");
+		}
+		if (_metrics != null){
+			_metrics.recordReplaceKey(start);
+		}
 		return oldKey;
 	}
 
@@ -279,6 +641,197 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 		return oldValue;
 	}
 
+	/**
+	 * Creates a heap holding the given key-value pairs, built bottom-up
+	 * in O(n) time. Use insertAll on an empty heap instead if the
+	 * entries are needed for remove() or replaceKey().
+	 *
+	 * @param comparator the comparator to be used for heap keys
+	 * @param pairs the key-value pairs to be stored
+	 * @return the new heap
+	 * @throws InvalidKeyException if any key is not suitable for this heap
+	 */
+	public static <K,V> MyHeap<K,V> fromEntries(Comparator<K> comparator,
+			Collection<? extends Entry<K,V>> pairs) throws InvalidKeyException {
+		MyHeap<K,V> heap = new MyHeap<K,V>(comparator);
+		heap.insertAll(pairs);
+		return heap;
+	}
+
+	/**
+	 * Inserts all of the given key-value pairs and returns the entries
+	 * created, in the same order as the pairs. If the heap is small
+	 * compared to the number of pairs, the whole heap is rebuilt
+	 * bottom-up, which runs in O(n + m) time rather than O(m log n).
+	 *
+	 * @param pairs the key-value pairs to be inserted
+	 * @return the entries created, in input order
+	 * @throws InvalidKeyException if any key is not suitable for this heap;
+	 *         in that case nothing is inserted
+	 */
+	public List<Entry<K,V>> insertAll(Collection<? extends Entry<K,V>> pairs)
+			throws InvalidKeyException {
+		for (Entry<K,V> pair : pairs){
+			MyHeap.this.checkKey(pair.getKey());
+		}
+
+		List<Entry<K,V>> entries = new ArrayList<Entry<K,V>>(pairs.size());
+		int oldSize = _tree.size();
+		MyHeap.this.beginEvent();
+		try {
+			_tree.ensureCapacity(oldSize + pairs.size());
+			for (Entry<K,V> pair : pairs){
+				entries.add(MyHeap.this.append(pair.getKey(), pair.getValue()));
+			}
+			MyHeap.this.restoreOrder(oldSize);
+		} finally {
+			MyHeap.this.endEvent("insertAll");
+		}
+
+		if (_metrics != null){
+			_metrics.recordSize(MyHeap.this.size());
+		}
+		return entries;
+	}
+
+	/**
+	 * Inserts keys[i] with values[i] for every i and returns the entries
+	 * created, in the same order. This works like the Collection version
+	 * but doesn't need a pair object per entry.
+	 *
+	 * @param keys the keys to be inserted
+	 * @param values the values to go with the keys
+	 * @return the entries created, in input order
+	 * @throws IllegalArgumentException if the arrays differ in length
+	 * @throws InvalidKeyException if any key is not suitable for this heap;
+	 *         in that case nothing is inserted
+	 */
+	public List<Entry<K,V>> insertAll(K[] keys, V[] values)
+			throws IllegalArgumentException, InvalidKeyException {
+		if (keys.length != values.length){
+			throw new IllegalArgumentException("ERROR: Keys and values differ in length");
+		}
+		for (K key : keys){
+			MyHeap.this.checkKey(key);
+		}
+
+		List<Entry<K,V>> entries = new ArrayList<Entry<K,V>>(keys.length);
+		int oldSize = _tree.size();
+		MyHeap.this.beginEvent();
+		try {
+			_tree.ensureCapacity(oldSize + keys.length);
+			for (int i = 0; i < keys.length; i++){
+				entries.add(MyHeap.this.append(keys[i], values[i]));
+			}
+			MyHeap.this.restoreOrder(oldSize);
+		} finally {
+			MyHeap.this.endEvent("insertAll");
+		}
+
+		if (_metrics != null){
+			_metrics.recordSize(MyHeap.this.size());
+		}
+		return entries;
+	}
+
+	/**
+	 * Writes the heap to the channel in a compact binary format: a
+	 * header (magic number, version, arity, size) and then one record
+	 * per entry, in level order (the order of the heap's array). Each
+	 * record is its length in bytes followed by the encoded key and
+	 * value. The entries are streamed through one buffer, so no copy of
+	 * the heap is built in memory. Any dead entries are compacted away
+	 * first. This method runs in O(n) time.
+	 *
+	 * @param channel to write the snapshot to
+	 * @param keyCodec to encode the keys with
+	 * @param valueCodec to encode the values with
+	 * @throws IOException if the channel fails, or an entry encodes to
+	 *         more than MAX_RECORD bytes
+	 */
+	public void writeSnapshot(WritableByteChannel channel, HeapCodec<K> keyCodec,
+			HeapCodec<V> valueCodec) throws IOException {
+		if (_dead > 0){
+			MyHeap.this.compact();
+		}
+		int size = _tree.size();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(SNAPSHOT_BUFFER);
+		buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(_arity).putInt(size);
+		for (int i = 0; i < size; i++){
+			MyHeapEntry<K,V> entry = _tree.get(i);
+			int length = keyCodec.size(entry.getKey()) + valueCodec.size(entry.getValue());
+			if (length > MAX_RECORD){
+				throw new IOException("ERROR: Entry is too big for a snapshot");
+			}
+			if (buffer.remaining() < 4 + length){
+				MyHeap.flush(buffer, channel);
+				if (buffer.capacity() < 4 + length){
+					buffer = ByteBuffer.allocateDirect(4 + length); // An entry bigger than the buffer
+				}
+			}
+			buffer.putInt(length);
+			keyCodec.encode(entry.getKey(), buffer);
+			valueCodec.encode(entry.getValue(), buffer);
+		}
+		MyHeap.flush(buffer, channel);
+	}
+
+	/**
+	 * Reads a heap written by writeSnapshot. Since the entries come in
+	 * level order, each one is simply appended with its index restored;
+	 * there is no sifting at all. The only comparisons are one per entry
+	 * against its parent, to make sure the snapshot really is in heap
+	 * order. A size or record length that can't be right (more than a
+	 * file has left, or a record over MAX_RECORD bytes) is rejected
+	 * before anything is allocated for it. This method runs in O(n) time.
+	 *
+	 * @param channel to read the snapshot from
+	 * @param comparator the comparator to be used for heap keys; it must
+	 *        order the keys the same way as the heap that was written
+	 * @param keyCodec to decode the keys with
+	 * @param valueCodec to decode the values with
+	 * @return the heap, with the same arity and entries in the same places
+	 * @throws IOException if the channel fails or the snapshot is invalid
+	 */
+	public static <K,V> MyHeap<K,V> readSnapshot(ReadableByteChannel channel, Comparator<K> comparator,
+			HeapCodec<K> keyCodec, HeapCodec<V> valueCodec) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(SNAPSHOT_BUFFER);
+		buffer.limit(0);
+		buffer = MyHeap.fill(buffer, channel, 16);
+		if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION){
+			throw new IOException("ERROR: Not a heap snapshot");
+		}
+		int arity = buffer.getInt();
+		int size = buffer.getInt();
+		if (arity < 2 || size < 0){
+			throw new IOException("ERROR: Corrupt heap snapshot");
+		}
+
+		// Every record takes at least 4 bytes, so a file bounds the size;
+		// from a stream, the tree grows as the records arrive instead
+		long left = MyHeap.bytesLeft(buffer, channel);
+		if (size > left / 4){
+			throw new EOFException("ERROR: Heap snapshot is truncated");
+		}
+		MyHeap<K,V> heap = new MyHeap<K,V>(comparator, arity);
+		heap._tree.ensureCapacity(left == Long.MAX_VALUE ? Math.min(size, SNAPSHOT_BUFFER) : size);
+		for (int i = 0; i < size; i++){
+			buffer = MyHeap.fill(buffer, channel, 4);
+			int length = MyHeap.checkLength(buffer.getInt(), buffer, channel);
+			buffer = MyHeap.fill(buffer, channel, length);
+			int end = buffer.position() + length;
+			K key = keyCodec.decode(buffer);
+			V value = valueCodec.decode(buffer);
+			if (buffer.position() != end || key == null){
+				throw new IOException("ERROR: Corrupt heap snapshot");
+			}
+			if (i > 0 && comparator.compare(key, heap._tree.get((i - 1) / arity).getKey()) < 0){
+				throw new IOException("ERROR: Heap snapshot is not in heap order");
+			}
+			heap.append(key, value);
+		}
+		return heap;
+	}
 
 	/**
 	 * Determines whether a given entry is valid and converts it to a
@@ -330,183 +883,593 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 	}
 
 	/**
-	 * This method performs the "upHeap" that occurs in maintaining
-	 * the order of the keys in the tree. Given the position of the
-	 * recently inserted entry, we compare the key to the key of
-	 * the parent entry, then swaps the entries if the key is less
-	 * than that of the parent. We continue to recursively upheap
-	 * until the position we pass in the root or a swap doesn't occur.
+	 * This method checks whether the entry is in this heap, i.e. stored
+	 * in it and not dead.
 	 *
-	 * @param the position of the recently inserted entry
+	 * @param entry to look for
+	 * @return true if the entry is in the heap
 	 */
 
-	private void upHeap(Position<MyHeapEntry<K,V>> pos){
+	private boolean contains(MyHeapEntry<K,V> entry){
+		return MyHeap.this.isStored(entry) && !entry.isDead();
+	}
 
-		// If we're not at the root
-		if (!_tree.isRoot(pos)){
+	/**
+	 * This method checks whether the entry is currently stored in this
+	 * heap's tree, i.e. whether the slot at its index holds that very
+	 * entry. A dead entry may still be stored.
+	 *
+	 * @param entry to look for
+	 * @return true if the entry is in the tree
+	 */
 
-			// If the key of the current entry is less than the key
-			// of the parent entry, swap entries- or else, stop
+	private boolean isStored(MyHeapEntry<K,V> entry){
+		int index = entry.getIndex();
+		return index >= 0 && index < _tree.size() && _tree.get(index) == entry;
+	}
 
-			if (_comp.compare(_tree.getElement(pos).getKey(),
-					_tree.getElement(_tree.parent(pos)).getKey()) < 0){
-				_tree.swapElements(pos, _tree.parent(pos));
+	/**
+	 * This method takes the entry at the root out of the tree and
+	 * returns it. The entry from the "last" node fills the hole at the
+	 * root and is sent down to where it belongs; if there was only one
+	 * entry, the root was also the last node and nothing has to move.
+	 *
+	 * @return the entry that was at the root
+	 */
 
-				// After swapping, we make sure to reset the position that
-				// are stored in the entries themselves
+	private MyHeapEntry<K,V> removeRoot(){
+		MyHeapEntry<K,V> root = _tree.get(0);
+		MyHeapEntry<K,V> last = _tree.remove();
+		if (last != root){
+			MyHeap.this.place(MyHeap.this.downHeap(0, last.getKey()), last);
+		}
+		return root;
+	}
 
-				_tree.getElement(pos).setPosition(pos);
-				_tree.getElement(_tree.parent(pos)).setPosition(_tree.parent(pos));
+	/**
+	 * This method drops dead entries from the root until a live one is
+	 * there, for the methods that look at the minimum. The heap must
+	 * not be empty (of live entries).
+	 */
 
-				MyHeap.this.upHeap(_tree.parent(pos)); // Then recursively upheap again
+	private void dropDeadRoots(){
+		while (_dead > 0 && _tree.get(0).isDead()){
+			MyHeap.this.removeRoot().setDead(false);
+			_dead--;
+		}
+	}
+
+	/**
+	 * This method takes every dead entry out of the tree in one pass:
+	 * the live entries slide down to the front, keeping their order,
+	 * and then the heap order is restored bottom-up, as in Floyd's
+	 * construction. This runs in O(n) time, which the removals that
+	 * made the entries dead pay for.
+	 */
 
+	private void compact(){
+		int size = _tree.size();
+		int live = 0;
+		for (int i = 0; i < size; i++){
+			MyHeapEntry<K,V> entry = _tree.get(i);
+			if (entry.isDead()){
+				entry.setDead(false);
 			} else {
-				return;
+				MyHeap.this.place(live++, entry);
 			}
-
-		} else {
-			return;
 		}
+		_dead = 0;
+		_tree.truncate(live);
+		MyHeap.this.restoreOrder(0);
+		if (_metrics != null){
+			_metrics.recordSize(live);
+		}
+	}
 
+	/**
+	 * This method adds a new entry at the "last" node without
+	 * upheaping it, for the bulk inserts.
+	 *
+	 * @param key of the new entry
+	 * @param value of the new entry
+	 * @return the new entry
+	 */
+
+	private MyHeapEntry<K,V> append(K key, V value){
+		MyHeapEntry<K,V> newEntry = new MyHeapEntry<K,V>(key, value);
+		newEntry.setIndex(_tree.append(newEntry));
+		return newEntry;
 	}
 
 	/**
-	 * This method performs the "downHeap" that occurs in maintaining
-	 * the order of the keys in the tree. Given the position of the
-	 * recently inserted entry, we compare the key to the key of
-	 * whichever child entry has the lesser key. Or if there's only
-	 * one child, we know that it must be the left child since the
-	 * heap structure is a left-complete tree- so we compare the key
-	 * to the key of the left child. In the case that there are both
-	 * children and they're equal, we randomly pick either the left or
-	 * right child to compare keys (so as to not create a vastly uneven
-	 * tree if there are a lot of such cases). If the current key is
-	 * less greater than the key to which we're comparing it to, we swap
-	 * entries, bringing the current entry down a level. We continue
-	 * to recursively downheap until we've reached a leaf or a swap
-	 * doesn't occur.
+	 * This method restores the heap order after entries have been
+	 * appended from index "from" onwards. If at least as many entries
+	 * were appended as were already there, we use Floyd's bottom-up
+	 * construction: downHeap every internal node, from the last one
+	 * back to the root. Most nodes are near the bottom and can only
+	 * move a level or two, so this is O(n) overall. Otherwise it's
+	 * cheaper to just upHeap each new entry.
 	 *
-	 * @param the position of the recently inserted entry
+	 * @param from the index of the first appended entry
 	 */
 
-	private void downHeap(Position<MyHeapEntry<K,V>> pos){
+	private void restoreOrder(int from){
+		int size = _tree.size();
+		if (from < size - from){
+			for (int i = (size - 2) / _arity; i >= 0; i--){
+				MyHeapEntry<K,V> entry = _tree.get(i);
+				MyHeap.this.place(MyHeap.this.downHeap(i, entry.getKey()), entry);
+			}
+		} else {
+			for (int i = from; i < size; i++){
+				MyHeapEntry<K,V> entry = _tree.get(i);
+				MyHeap.this.place(MyHeap.this.upHeap(i, entry.getKey()), entry);
+			}
+		}
+	}
 
-		// If we're not at an external node
-		if (_tree.isInternal(pos)){
+	/**
+	 * This method finds the indexes of the k entries with the least keys,
+	 * in order, for drainTo. The frontier is a binary heap of indexes,
+	 * with each index's key kept next to it so that comparing two
+	 * candidates doesn't have to look up their entries. When an index is
+	 * taken, its first child (if it has one) goes straight into its place
+	 * at the top of the frontier and is sent down, and the other children
+	 * are added at the bottom and sent up; a leaf's place is filled by
+	 * the frontier's last index instead. The children of the last index
+	 * taken are never needed, so they are not added.
+	 *
+	 * @param k the number of indexes to find, at least 1 and at most the size
+	 * @return the indexes, least key first
+	 */
 
-			// We check if the node has a right child- if not, this
-			// tells us the tree only has a left child, because it
-			// must have at least one child (since internal)
+	private int[] smallest(int k){
+		int size = _tree.size();
+		int[] taken = new int[k];
+		int capacity = (int) Math.min(size, 1 + (long) (k - 1) * (_arity - 1));
+		int[] frontier = new int[capacity];
+		Object[] keys = new Object[capacity];
+		keys[0] = _tree.get(0).getKey(); // The root, at frontier[0]
+		int candidates = 1;
+
+		for (int i = 0; i < k; i++){
+			int index = frontier[0];
+			taken[i] = index;
+			if (i == k - 1){
+				break;
+			}
+			int first = _arity * index + 1;
+			int end = Math.min(first + _arity, size);
+			if (first < end){
+				MyHeap.this.frontierDown(frontier, keys, candidates, first, _tree.get(first).getKey());
+				for (int child = first + 1; child < end; child++){
+					MyHeap.this.frontierUp(frontier, keys, candidates++, child, _tree.get(child).getKey());
+				}
+			} else {
+				candidates--;
+				MyHeap.this.frontierDown(frontier, keys, candidates, frontier[candidates], MyHeap.this.<K>cast(keys[candidates]));
+			}
+		}
+		return taken;
+	}
+
+	/**
+	 * This method puts an index at the top of the frontier and sends it
+	 * down to where its key belongs, as downHeap does for the heap itself.
+	 *
+	 * @param frontier the frontier's indexes
+	 * @param keys the key of each index in the frontier
+	 * @param count the number of indexes in the frontier
+	 * @param index the index to be placed
+	 * @param key the key of the entry at that index
+	 */
 
-			if (!_tree.hasRight(pos)){
+	private void frontierDown(int[] frontier, Object[] keys, int count, int index, K key){
+		int hole = 0;
+		int child = 1;
+		while (child < count){
+			K childKey = MyHeap.this.<K>cast(keys[child]);
+			if (child + 1 < count){
+				K otherKey = MyHeap.this.<K>cast(keys[child + 1]);
+				if (_comp.compare(otherKey, childKey) < 0){
+					child++;
+					childKey = otherKey;
+				}
+			}
+			if (_comp.compare(key, childKey) <= 0){
+				break;
+			}
+			frontier[hole] = frontier[child];
+			keys[hole] = childKey;
+			hole = child;
+			child = 2 * hole + 1;
+		}
+		frontier[hole] = index;
+		keys[hole] = key;
+	}
 
-				// If no right child, we compare keys with left child only
-				if (_comp.compare(_tree.getElement(pos).getKey(),
-						_tree.getElement(_tree.left(pos)).getKey()) > 0){
+	/**
+	 * This method adds an index at the bottom of the frontier and sends
+	 * it up to where its key belongs, as upHeap does.
+	 *
+	 * @param frontier the frontier's indexes
+	 * @param keys the key of each index in the frontier
+	 * @param hole the first free slot, i.e. the number of indexes in the frontier
+	 * @param index the index to be added
+	 * @param key the key of the entry at that index
+	 */
 
-					// And if the left entry's key is indeed less; we swap
-					// then recursively call downHeap on the left key
+	private void frontierUp(int[] frontier, Object[] keys, int hole, int index, K key){
+		while (hole > 0){
+			int parent = (hole - 1) / 2;
+			if (_comp.compare(key, MyHeap.this.<K>cast(keys[parent])) >= 0){
+				break;
+			}
+			frontier[hole] = frontier[parent];
+			keys[hole] = keys[parent];
+			hole = parent;
+		}
+		frontier[hole] = index;
+		keys[hole] = key;
+	}
 
-					_tree.swapElements(pos, _tree.left(pos));
+	/**
+	 * This method repairs the tree after drainTo has taken the entries at
+	 * the given indexes. The tree shrinks by that many entries, and the
+	 * entries past its new end that weren't taken fill the holes before
+	 * it. Since an index was only taken after its parent, every hole's
+	 * parent is a hole too, so nothing needs to move up. Going through
+	 * the holes in the reverse of the order they were taken, every hole
+	 * comes after the holes below it, so its children's subtrees are
+	 * already heaps when it is sent down, just as in Floyd's
+	 * construction. If there are so many holes that this would cost more
+	 * than rebuilding, the holes are just filled and the whole heap is
+	 * rebuilt bottom-up instead.
+	 *
+	 * @param taken the indexes that were taken, in the order they were taken
+	 */
 
-					// After swapping, we make sure to reset the position that
-					// are stored in the entries themselves
+	private void fillHoles(int[] taken){
+		int size = _tree.size();
+		int newSize = size - taken.length;
 
-					_tree.getElement(pos).setPosition(pos);
-					_tree.getElement(_tree.left(pos)).setPosition(_tree.left(pos));
+		// The fillers are the entries past the new end that weren't taken
+		boolean[] tailTaken = new boolean[taken.length];
+		for (int index : taken){
+			if (index >= newSize){
+				tailTaken[index - newSize] = true;
+			}
+		}
+		List<MyHeapEntry<K,V>> fillers = new ArrayList<MyHeapEntry<K,V>>(taken.length);
+		for (int i = newSize; i < size; i++){
+			if (!tailTaken[i - newSize]){
+				fillers.add(_tree.get(i));
+			}
+		}
+		_tree.truncate(newSize);
 
-					MyHeap.this.downHeap(_tree.left(pos));
+		int filler = 0;
+		if ((long) fillers.size() * MyHeap.this.levels(0, newSize - 1) >= newSize){
+			for (int index : taken){
+				if (index < newSize){
+					MyHeap.this.place(index, fillers.get(filler++));
 				}
-			} else {
-				// Otherwise, the node has two children and we do the following
+			}
+			MyHeap.this.restoreOrder(0);
+		} else {
+			for (int i = taken.length - 1; i >= 0; i--){
+				if (taken[i] < newSize){
+					MyHeapEntry<K,V> entry = fillers.get(filler++);
+					MyHeap.this.place(MyHeap.this.downHeap(taken[i], entry.getKey()), entry);
+				}
+			}
+		}
+	}
 
-				// If the left child contains an entry with a lesser key,
-				// then we compare the current entry's key with that key
+	/**
+	 * Casts a key kept in the frontier's Object[] back to the key type.
+	 *
+	 * @param key the key
+	 * @return the same key
+	 */
 
-				if (_comp.compare(_tree.getElement(_tree.left(pos)).getKey(),
-						_tree.getElement(_tree.right(pos)).getKey()) < 0){
-					if (_comp.compare(_tree.getElement(pos).getKey(),
-							_tree.getElement(_tree.left(pos)).getKey()) > 0){
+	@SuppressWarnings("unchecked")
+	private <T> T cast(Object key){
+		return (T) key;
+	}
 
-						// If the left entry's key is indeed less, we swap and
-						// then recursively call downHeap again on the left child
+	/**
+	 * This method moves the given entry from the hole at the given
+	 * index to wherever it belongs: up if its key is less than its
+	 * parent's, or else down if it is greater than a child's.
+	 *
+	 * @param hole the index the entry is to fill
+	 * @param entry to be placed
+	 */
 
-						_tree.swapElements(pos, _tree.left(pos));
+	private void sift(int hole, MyHeapEntry<K,V> entry){
+		K key = entry.getKey();
+		int index = MyHeap.this.upHeap(hole, key);
+		if (index == hole){
+			index = MyHeap.this.downHeap(hole, key);
+		}
+		MyHeap.this.place(index, entry);
+	}
 
-						// After swapping, we make sure to reset the position that
-						// are stored in the entries themselves
+	/**
+	 * This method performs the "upHeap" that occurs in maintaining
+	 * the order of the keys in the tree. Rather than swapping entries
+	 * level by level, we treat the given index as a hole: while the
+	 * key is less than the key of the parent entry, the parent is
+	 * moved down into the hole and the hole moves up to the parent.
+	 * We stop at the root or once the parent's key is not greater,
+	 * and return where the hole ended up. The caller then places its
+	 * entry there, so each entry that moves is written exactly once.
+	 * Each parent's key is read once and nothing is allocated.
+	 *
+	 * @param hole the index to start from
+	 * @param key the key of the entry that is to fill the hole
+	 * @return the index where that entry belongs
+	 */
 
-						_tree.getElement(pos).setPosition(pos);
-						_tree.getElement(_tree.left(pos)).setPosition(_tree.left(pos));
+	private int upHeap(int hole, K key){
+		int start = hole;
+		while (hole > 0){
+			int parent = (hole - 1) / _arity;
+			MyHeapEntry<K,V> parentEntry = _tree.get(parent);
 
-						MyHeap.this.downHeap(_tree.left(pos)); // Then recursively downheap again
+			// If the key is not less than the key of the parent entry,
+			// the hole is where it belongs
+			if (_comp.compare(key, parentEntry.getKey()) >= 0){
+				break;
+			}
+			MyHeap.this.place(hole, parentEntry);
+			hole = parent;
+		}
+		if (_metrics != null){
+			_metrics.recordUpHeap(MyHeap.this.levels(hole, start));
+		}
+		if (_event != null){
+			_event.siftDepth += MyHeap.this.levels(hole, start);
+		}
+		return hole;
+	}
 
-					} else {
-						return; // Otherwise, we stop
+	/**
+	 * This method performs the "downHeap" that occurs in maintaining
+	 * the order of the keys in the tree. As in upHeap, the given index
+	 * is a hole: we find whichever child entry has the lesser key, and
+	 * if that key is less than the given key, the child is moved up
+	 * into the hole and the hole moves down to the child. The children
+	 * of index i are the (up to) arity entries starting at arity*i + 1;
+	 * since the heap is left-complete, only the last internal node can
+	 * have fewer. In the case that several children tie for the least
+	 * key, we randomly pick one of them (so as to not create a vastly
+	 * uneven tree if there are a lot of such cases), each with equal
+	 * probability. We stop at a leaf or once no child has a lesser
+	 * key, and return where the hole ended up.
+	 *
+	 * @param hole the index to start from
+	 * @param key the key of the entry that is to fill the hole
+	 * @return the index where that entry belongs
+	 */
+
+	private int downHeap(int hole, K key){
+		int start = hole;
+		int size = _tree.size();
+		int first = _arity * hole + 1;
+
+		while (first < size){
+
+			// Pick the least of the children, with ties broken randomly
+			// (the k-th tied child replaces the current pick with
+			// probability 1/k). Each child's key is read once.
+
+			int end = Math.min(first + _arity, size);
+			int child = first;
+			MyHeapEntry<K,V> childEntry = _tree.get(first);
+			K childKey = childEntry.getKey();
+			int ties = 1;
+			for (int i = first + 1; i < end; i++){
+				MyHeapEntry<K,V> other = _tree.get(i);
+				K otherKey = other.getKey();
+				int order = _comp.compare(otherKey, childKey);
+				if (order < 0 || (order == 0 && Math.random() * ++ties < 1)){
+					if (order < 0){
+						ties = 1;
 					}
-				// Same goes for the right child
-				} else if (_comp.compare(_tree.getElement(_tree.left(pos)).getKey(),
-						_tree.getElement(_tree.right(pos)).getKey()) > 0){
-					if (_comp.compare(_tree.getElement(pos).getKey(),
-							_tree.getElement(_tree.right(pos)).getKey()) > 0){
+					child = i;
+					childEntry = other;
+					childKey = otherKey;
+				}
+			}
 
-						_tree.swapElements(pos, _tree.right(pos));
+			// If the key is not greater than the child's, the hole is
+			// where it belongs
+			if (_comp.compare(key, childKey) <= 0){
+				break;
+			}
+			MyHeap.this.place(hole, childEntry);
+			hole = child;
+			first = _arity * hole + 1;
+		}
+		if (_metrics != null){
+			_metrics.recordDownHeap(MyHeap.this.levels(start, hole));
+		}
+		if (_event != null){
+			_event.siftDepth += MyHeap.this.levels(start, hole);
+		}
+		return hole;
+	}
 
-						_tree.getElement(pos).setPosition(pos);
-						_tree.getElement(_tree.right(pos)).setPosition(_tree.right(pos));
+	/**
+	 * Starts a HeapOperationEvent for the operation about to run, if a
+	 * flight recording has the event enabled. Until endEvent, the
+	 * comparator is wrapped so that its calls are counted and a sample of
+	 * them timed, and upHeap and downHeap add the levels they move. Every caller ends
+	 * the event in a finally block, so the plain comparator is put back
+	 * even if the user's comparator throws part-way through a sift.
+	 */
 
-						MyHeap.this.downHeap(_tree.right(pos));
+	private void beginEvent(){
+		HeapOperationEvent event = new HeapOperationEvent();
+		if (event.isEnabled()){
+			event.begin();
+			_comp = event.timing(_comp);
+			_event = event;
+		}
+	}
 
-					} else {
-						return;
-					}
+	/**
+	 * Ends the event started by beginEvent, if any, and puts the plain
+	 * comparator back. The event is only written if the operation took
+	 * longer than the recording's threshold for it.
+	 *
+	 * @param operation the name of the method that is finishing
+	 */
 
-				// In the special case that both children contain entries with
-				// equal keys, we randomize which one we compare keys with
+	private void endEvent(String operation){
+		HeapOperationEvent event = _event;
+		if (event == null){
+			return;
+		}
+		event.end();
+		HeapOperationEvent.TimingComparator<K> timing = (HeapOperationEvent.TimingComparator<K>) _comp;
+		_comp = timing.getBase();
+		_event = null;
+		if (event.shouldCommit()){
+			timing.report();
+			event.operation = operation;
+			event.size = MyHeap.this.size();
+			event.commit();
+		}
+	}
 
-				} else {
+	/**
+	 * Counts the levels between an index and one of its descendants, for
+	 * the metrics and for HeapOperationEvent. Working this out afterwards,
+	 * only when one of them is on, keeps the upHeap and downHeap loops the
+	 * same as without them.
+	 *
+	 * @param ancestor the upper index
+	 * @param descendant an index in its subtree
+	 * @return the number of levels between them
+	 */
 
-					// Theoretically compares with the left entry's key 50% of the time
-					if (Math.random() < 0.5){
-						if (_comp.compare(_tree.getElement(pos).getKey(),
-								_tree.getElement(_tree.left(pos)).getKey()) > 0){
+	private int levels(int ancestor, int descendant){
+		int levels = 0;
+		while (descendant > ancestor){
+			descendant = (descendant - 1) / _arity;
+			levels++;
+		}
+		return levels;
+	}
 
-							_tree.swapElements(pos, _tree.left(pos));
+	/**
+	 * Stores the entry at the given index and records the index in
+	 * the entry itself.
+	 *
+	 * @param index where the entry goes
+	 * @param entry to be stored
+	 */
 
-							// After swapping, we make sure to reset the position that
-							// are stored in the entries themselves
+	private void place(int index, MyHeapEntry<K,V> entry){
+		_tree.set(index, entry);
+		entry.setIndex(index);
+	}
 
-							_tree.getElement(pos).setPosition(pos);
-							_tree.getElement(_tree.left(pos)).setPosition(_tree.left(pos));
+	/**
+	 * This method writes out everything in the buffer and clears it,
+	 * for writeSnapshot (and JournaledHeap's log).
+	 *
+	 * @param buffer holding the bytes to be written
+	 * @param channel to write them to
+	 */
 
-							MyHeap.this.downHeap(_tree.left(pos));
+	static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
 
-						} else {
-							return;
-						}
-					} else {
-						if (_comp.compare(_tree.getElement(pos).getKey(),
-								_tree.getElement(_tree.right(pos)).getKey()) > 0){
+	/**
+	 * This method makes sure the buffer has at least "needed" bytes
+	 * ready to be read, for readSnapshot (and JournaledHeap's replay).
+	 * It moves what's left to the front and reads more from the
+	 * channel, growing the buffer if a record is bigger than it.
+	 *
+	 * @param buffer ready to be read from
+	 * @param channel to read more bytes from
+	 * @param needed the number of bytes the caller is about to read
+	 * @return the buffer (maybe a new one), with needed bytes remaining
+	 * @throws EOFException if the channel ends first
+	 */
 
-							_tree.swapElements(pos, _tree.right(pos));
+	static ByteBuffer fill(ByteBuffer buffer, ReadableByteChannel channel, int needed)
+			throws IOException {
+		if (needed < 0){
+			throw new IOException("ERROR: Corrupt record length");
+		}
+		if (buffer.remaining() >= needed){
+			return buffer;
+		}
+		if (buffer.capacity() < needed){
+			buffer = ByteBuffer.allocateDirect(needed).put(buffer);
+		} else {
+			buffer.compact();
+		}
+		while (buffer.position() < needed){
+			if (channel.read(buffer) < 0){
+				throw new EOFException("ERROR: Stream ends early");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
 
-							// After swapping, we make sure to reset the position that
-							// are stored in the entries themselves
+	/**
+	 * This method checks a record length read from a stream before a
+	 * buffer is sized for it, for readSnapshot (and KWayMerger's
+	 * segments). It must not be negative or more than MAX_RECORD, and if
+	 * the channel is a file, the record must fit in what is left of it.
+	 *
+	 * @param length the length that was read
+	 * @param buffer ready to be read from, positioned after the length
+	 * @param channel the rest of the stream
+	 * @return the length, if it is sane
+	 * @throws IOException if the length can't be right
+	 */
 
-							_tree.getElement(pos).setPosition(pos);
-							_tree.getElement(_tree.right(pos)).setPosition(_tree.right(pos));
+	static int checkLength(int length, ByteBuffer buffer, ReadableByteChannel channel)
+			throws IOException {
+		if (length < 0 || length > MAX_RECORD){
+			throw new IOException("ERROR: Corrupt record length " + length);
+		}
+		if (length > MyHeap.bytesLeft(buffer, channel)){
+			throw new EOFException("ERROR: Stream ends early");
+		}
+		return length;
+	}
 
-							MyHeap.this.downHeap(_tree.right(pos));
+	/**
+	 * This method returns how many bytes are left to be read: what is in
+	 * the buffer plus, if the channel is a file, the rest of the file.
+	 * For any other channel it can't be known, and Long.MAX_VALUE is
+	 * returned.
+	 *
+	 * @param buffer ready to be read from
+	 * @param channel the rest of the stream
+	 * @return the number of bytes left, or Long.MAX_VALUE if unknown
+	 */
 
-						} else {
-							return;
-						}
-					}
-				}
-			}
-		} else {
-			return; // If we're at an external node, we stop
+	static long bytesLeft(ByteBuffer buffer, ReadableByteChannel channel) throws IOException {
+		if (!(channel instanceof SeekableByteChannel)){
+			return Long.MAX_VALUE;
 		}
+		SeekableByteChannel file = (SeekableByteChannel) channel;
+		return buffer.remaining() + Math.max(file.size() - file.position(), 0);
 	}
 
 }
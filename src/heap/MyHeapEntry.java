@@ -1,7 +1,6 @@
 package heap;
 
 import net.datastructures.Entry;
-import net.datastructures.Position;
 
 /**
  * Represents a key/value pair to be stored in a data
@@ -12,12 +11,13 @@ public class MyHeapEntry<K,V> implements Entry<K,V> {
 
 	private K _key;
 	private V _value;
-	private Position<MyHeapEntry<K,V>> _position;
+	private int _index;
+	private boolean _dead;
 
 	public MyHeapEntry(K key, V value) {
 		_key = key;
 		_value = value;
-		_position = null;
+		_index = -1;
 	}
 
 	/**
@@ -55,21 +55,41 @@ public class MyHeapEntry<K,V> implements Entry<K,V> {
 	}
 
 	/**
-	 * Gets the position of this entry
+	 * Gets the index of this entry in the heap's array, or -1 if
+	 * the entry has not been inserted yet
 	 *
-	 * @return the position of this entry
+	 * @return the index of this entry
 	 */
-	public Position<MyHeapEntry<K,V>> getPosition() {
-		return _position;
+	public int getIndex() {
+		return _index;
 	}
 
 	/**
-	 * Resets the variable that stores the position of this entry
+	 * Resets the variable that stores the index of this entry
 	 *
-	 * @param the value to reset the position to
+	 * @param the value to reset the index to
 	 */
-	public void setPosition(Position<MyHeapEntry<K,V>> position) {
-		_position = position;
+	public void setIndex(int index) {
+		_index = index;
+	}
+
+	/**
+	 * Gets whether a heap in lazy removal mode has removed this entry
+	 * but not yet taken it out of its array
+	 *
+	 * @return true if the entry is dead
+	 */
+	boolean isDead() {
+		return _dead;
+	}
+
+	/**
+	 * Marks this entry as dead, or as alive again
+	 *
+	 * @param whether the entry is dead
+	 */
+	void setDead(boolean dead) {
+		_dead = dead;
 	}
 
 }
@@ -3,10 +3,23 @@ package heap;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
-
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -295,7 +308,12 @@ public class MyHeapTest {
 
 		assertThat(heap.removeMin().getKey(), is(13)); // 13 should now be the min key
 
-		heap.replaceKey(nextMinimum, 99); // This entry should no longer be the min
+		try {
+			heap.replaceKey(nextMinimum, 99); // Already removed, so it's rejected
+			fail("Expected an InvalidEntryException");
+		} catch (InvalidEntryException e){
+			assertThat(nextMinimum.getKey(), is(13)); // And its key is left alone
+		}
 		assertThat(heap.removeMin().getValue(), is("D")); // 16 should now be the min key
 	}
 
@@ -435,6 +453,709 @@ public class MyHeapTest {
 		assertThat(heap.removeMin().getKey(), is(27));
 	}
 
+	/**
+	 * To test that a d-ary heap keeps the heap order for several arities. We
+	 * insert shuffled keys, move some entries with replaceKey() and take some
+	 * out with remove(), and then check that removeMin() returns what's left
+	 * in sorted order. Lots of duplicate keys exercise the tie-breaking in
+	 * downHeap.
+	 */
+	@Test
+	public void testDaryHeapOrder() {
+		int[] arities = {2, 3, 4, 8};
+		for (int arity : arities){
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), arity);
+			assertThat(heap.getArity(), is(arity));
+
+			Random random = new Random(arity);
+			List<Entry<Integer,String>> entries = new ArrayList<Entry<Integer,String>>();
+			for (int i = 0; i < 300; i++){
+				entries.add(heap.insert(random.nextInt(50), "V" + i));
+			}
+			for (int i = 0; i < 300; i += 3){
+				heap.replaceKey(entries.get(i), random.nextInt(100) - 25);
+			}
+			for (int i = 1; i < 300; i += 5){
+				heap.remove(entries.get(i));
+			}
+
+			List<Integer> expectedKeys = new ArrayList<Integer>();
+			for (int i = 0; i < 300; i++){
+				if (i % 5 != 1){
+					expectedKeys.add(entries.get(i).getKey());
+				}
+			}
+			Collections.sort(expectedKeys);
+
+			List<Integer> actualKeys = new ArrayList<Integer>();
+			while (!heap.isEmpty()){
+				actualKeys.add(heap.removeMin().getKey());
+			}
+			assertThat(actualKeys, is(expectedKeys));
+		}
+	}
+
+	/**
+	 * To test that insertAll() builds a valid heap and returns the entries in
+	 * the order the pairs were given, and that those entries still work with
+	 * remove() and replaceKey(). We also insert a few more pairs into the now
+	 * large heap, which upheaps them one by one instead of rebuilding.
+	 */
+	@Test
+	public void testInsertAll() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		Random random = new Random(4);
+		List<Entry<Integer,String>> pairs = new ArrayList<Entry<Integer,String>>();
+		for (int i = 0; i < 200; i++){
+			pairs.add(new MyHeapEntry<Integer,String>(random.nextInt(1000), "V" + i));
+		}
+
+		List<Entry<Integer,String>> entries = heap.insertAll(pairs);
+		assertThat(heap.size(), is(200));
+		for (int i = 0; i < 200; i++){
+			assertThat(entries.get(i).getKey(), is(pairs.get(i).getKey()));
+			assertThat(entries.get(i).getValue(), is("V" + i));
+		}
+
+		heap.replaceKey(entries.get(7), -1); // Should now be the minimum
+		assertThat(heap.min().getValue(), is("V7"));
+		heap.remove(entries.get(7));
+
+		Integer[] keys = {5000, -7, 300};
+		String[] values = {"X", "Y", "Z"};
+		heap.insertAll(keys, values);
+		assertThat(heap.min().getValue(), is("Y"));
+
+		int previous = Integer.MIN_VALUE;
+		while (!heap.isEmpty()){
+			int key = heap.removeMin().getKey();
+			assertTrue(key >= previous);
+			previous = key;
+		}
+		assertThat(previous, is(5000));
+	}
+
+	/**
+	 * To test that fromEntries() builds a heap out of the given pairs, and
+	 * that the bottom-up build also works for a d-ary heap.
+	 */
+	@Test
+	public void testFromEntries() {
+		List<Entry<Integer,String>> pairs = new ArrayList<Entry<Integer,String>>();
+		pairs.add(new MyHeapEntry<Integer,String>(64, "C"));
+		pairs.add(new MyHeapEntry<Integer,String>(11, "A"));
+		pairs.add(new MyHeapEntry<Integer,String>(44, "B"));
+
+		MyHeap<Integer, String> heap = MyHeap.fromEntries(new IntegerComparator(), pairs);
+		assertThat(heap.removeMin().getValue(), is("A"));
+		assertThat(heap.removeMin().getValue(), is("B"));
+		assertThat(heap.removeMin().getValue(), is("C"));
+
+		MyHeap<Integer, Integer> dary = new MyHeap<Integer, Integer>(new IntegerComparator(), 4);
+		Integer[] keys = new Integer[100];
+		for (int i = 0; i < 100; i++){
+			keys[i] = 99 - i;
+		}
+		dary.insertAll(keys, keys);
+		for (int i = 0; i < 100; i++){
+			assertThat(dary.removeMin().getKey(), is(i));
+		}
+	}
+
+	/**
+	 * Here we test that insertAll() throws an InvalidKeyException for a null
+	 * key without inserting any of the other pairs.
+	 */
+	@Test
+	public void testInsertAllThrowsInvalidKeyException() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		Integer[] keys = {1, null, 3};
+		String[] values = {"A", "B", "C"};
+		try {
+			heap.insertAll(keys, values);
+		} catch (InvalidKeyException e){
+			assertThat(heap.size(), is(0));
+			return;
+		}
+		fail("Expected an InvalidKeyException");
+	}
+
+	/**
+	 * To test that removeMin() sifts the last entry down with fewer comparisons
+	 * and writes than the old swap-based downHeap. The keys are inserted in an
+	 * order that is already a heap in which every right child is less than its
+	 * sibling: 0 | 2 1 | 6 5 4 3 | 14 13 12 11 10 9 8 7. The last entry (7) has
+	 * to fill the hole at the root and ends up two levels down.
+	 *
+	 * The hole-based engine compares each pair of children once and the key
+	 * once per level (5 in all) and writes the 2 entries that move up plus the
+	 * last entry's final slot (3 in all). We also replay the old swap-based
+	 * removeMin on a second copy of the heap with the same counters: it made
+	 * the same 5 comparisons (the d-ary scan already compared each pair of
+	 * children once) but swapped 3 times, writing 6 slots.
+	 */
+	@Test
+	public void testRemoveMinComparisonsAndWrites() {
+		CountingComparator comparator = new CountingComparator();
+		CountingTree tree = new CountingTree();
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(comparator, 2, tree);
+		CountingComparator oldComparator = new CountingComparator();
+		CountingTree oldTree = new CountingTree();
+		MyHeap<Integer, String> oldHeap = new MyHeap<Integer, String>(oldComparator, 2, oldTree);
+		int[] keys = {0, 2, 1, 6, 5, 4, 3, 14, 13, 12, 11, 10, 9, 8, 7};
+		for (int key : keys){
+			heap.insert(key, "V" + key);
+			oldHeap.insert(key, "V" + key);
+		}
+		comparator._count = 0;
+		tree._writes = 0;
+		oldComparator._count = 0;
+		oldTree._writes = 0;
+
+		assertThat(heap.removeMin().getKey(), is(0));
+		assertThat(comparator._count, is(5));
+		assertThat(tree._writes, is(3));
+
+		// The old removeMin: swap the last node into the root, drop it, downheap
+		oldTree.swapElements(0, oldTree.lastIndex());
+		assertThat(oldTree.remove().getKey(), is(0));
+		oldTree.get(0).setIndex(0);
+		oldDownHeap(oldTree, oldComparator, 0);
+		assertThat(oldComparator._count, is(5));
+		assertThat(oldTree._writes, is(6));
+		assertTrue(comparator._count <= oldComparator._count);
+		assertTrue(tree._writes < oldTree._writes);
+
+		// And the heap is still in order afterwards
+		for (int expected = 1; expected <= 14; expected++){
+			assertThat(heap.removeMin().getKey(), is(expected));
+		}
+	}
+
+	/**
+	 * To test that replaceKey() moves an entry up with fewer comparisons and
+	 * writes than the old code. Keys 0 to 14 inserted in order form a heap
+	 * without any moves; we then give the last entry a new minimum key.
+	 *
+	 * The new code only tries downHeap if the entry didn't move up, so it needs
+	 * the 1 key check plus the 3 upHeap comparisons, and it writes the 3
+	 * parents that move down plus the entry's final slot. We also replay the
+	 * old replaceKey (key check, swap-based upheap, then an unconditional
+	 * downheap) on a second copy of the heap: it made 6 comparisons, 2 of
+	 * them in the downheap from the root, and wrote 6 slots.
+	 */
+	@Test
+	public void testReplaceKeyComparisonsAndWrites() {
+		CountingComparator comparator = new CountingComparator();
+		CountingTree tree = new CountingTree();
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(comparator, 2, tree);
+		CountingComparator oldComparator = new CountingComparator();
+		CountingTree oldTree = new CountingTree();
+		MyHeap<Integer, String> oldHeap = new MyHeap<Integer, String>(oldComparator, 2, oldTree);
+		Entry<Integer,String> last = null;
+		for (int key = 0; key < 15; key++){
+			last = heap.insert(key, "V" + key);
+			oldHeap.insert(key, "V" + key);
+		}
+		comparator._count = 0;
+		tree._writes = 0;
+		oldComparator._count = 0;
+		oldTree._writes = 0;
+
+		heap.replaceKey(last, -1);
+		assertThat(comparator._count, is(4));
+		assertThat(tree._writes, is(4));
+		assertThat(heap.min().getValue(), is("V14"));
+
+		// The old replaceKey: check the key, upheap, then always downheap
+		MyHeapEntry<Integer,String> oldLast = oldTree.get(oldTree.lastIndex());
+		oldComparator.compare(-1, -1);
+		oldLast.setKey(-1);
+		oldUpHeap(oldTree, oldComparator, oldLast.getIndex());
+		oldDownHeap(oldTree, oldComparator, oldLast.getIndex());
+		assertThat(oldTree.get(0).getValue(), is("V14"));
+		assertThat(oldComparator._count, is(6));
+		assertThat(oldTree._writes, is(6));
+		assertTrue(comparator._count < oldComparator._count);
+		assertTrue(tree._writes < oldTree._writes);
+	}
+
+	/**
+	 * Here we test that replaceKey() rejects an entry that is stored in
+	 * another heap, without changing its key or that heap's order.
+	 */
+	@Test
+	public void testReplaceKeyForeignEntryThrowsInvalidEntryException() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		MyHeap<Integer, String> other = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(1, "A");
+		heap.insert(2, "B");
+		other.insert(5, "X");
+		Entry<Integer,String> foreign = other.insert(6, "Y"); // Index 1, as in heap
+		try {
+			heap.replaceKey(foreign, 0);
+			fail("Expected an InvalidEntryException");
+		} catch (InvalidEntryException e){
+			assertThat(foreign.getKey(), is(6));
+		}
+		assertThat(other.removeMin().getValue(), is("X"));
+		assertThat(heap.removeMin().getValue(), is("A"));
+	}
+
+	/**
+	 * Here we test that removing an entry that has already been removed
+	 * throws an InvalidEntryException rather than disturbing the heap.
+	 */
+	@Test(expected=InvalidEntryException.class)
+	public void testRemoveTwiceThrowsInvalidEntryException() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer,String> entry = heap.insert(1, "A");
+		heap.insert(2, "B");
+		heap.remove(entry);
+		heap.remove(entry);
+	}
+
+	/**
+	 * To test that replaceMin() swaps out the root for the new entry, leaves
+	 * the heap in order, and makes the old root unusable.
+	 */
+	@Test
+	public void testReplaceMin() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer,String> min = heap.insert(1, "A");
+		heap.insert(5, "B");
+		heap.insert(3, "C");
+		heap.insert(8, "D");
+		MyHeapEntry<Integer,String> newEntry = new MyHeapEntry<Integer,String>(6, "E");
+		assertThat(heap.replaceMin(newEntry), is(min));
+		assertThat(heap.size(), is(4));
+		heap.replaceKey(newEntry, 2);
+		assertThat(heap.removeMin().getValue(), is("E"));
+		assertThat(heap.removeMin().getValue(), is("C"));
+		assertThat(heap.removeMin().getValue(), is("B"));
+		assertThat(heap.removeMin().getValue(), is("D"));
+		try {
+			heap.remove(min);
+			fail("Expected an InvalidEntryException");
+		} catch (InvalidEntryException e){
+			// The old root is no longer in the heap
+		}
+	}
+
+	/**
+	 * To test that removeMin(k) returns the k least entries in order for
+	 * several arities and batch sizes (including ones that make drainTo
+	 * rebuild the heap), and that the entries left behind are still in
+	 * heap order and still work with replaceKey and remove.
+	 */
+	@Test
+	public void testRemoveMinBatch() {
+		Random random = new Random(23);
+		for (int arity : new int[] {2, 3, 4}){
+			for (int k : new int[] {1, 2, 7, 64, 300, 499, 500}){
+				MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator(), arity);
+				List<Integer> keys = new ArrayList<Integer>();
+				List<Entry<Integer, Integer>> entries = new ArrayList<Entry<Integer, Integer>>();
+				for (int i = 0; i < 500; i++){
+					int key = random.nextInt(200);
+					keys.add(key);
+					entries.add(heap.insert(key, i));
+				}
+				Collections.sort(keys);
+
+				List<Entry<Integer, Integer>> batch = heap.removeMin(k);
+				assertThat(batch.size(), is(k));
+				assertThat(heap.size(), is(500 - k));
+				for (int i = 0; i < k; i++){
+					assertThat(batch.get(i).getKey(), is(keys.get(i)));
+				}
+
+				// Move one entry that is still in the heap to the front
+				// and remove another, then check what's left
+				List<Integer> rest = new ArrayList<Integer>(keys.subList(k, keys.size()));
+				List<Entry<Integer, Integer>> left = new ArrayList<Entry<Integer, Integer>>(entries);
+				left.removeAll(batch);
+				if (left.size() >= 2){
+					rest.remove(left.get(0).getKey());
+					heap.replaceKey(left.get(0), -1);
+					rest.add(0, -1);
+					rest.remove(left.get(1).getKey());
+					heap.remove(left.get(1));
+				}
+				for (int key : rest){
+					assertThat(heap.removeMin().getKey(), is(key));
+				}
+				assertTrue(heap.isEmpty());
+			}
+		}
+	}
+
+	/**
+	 * To test that drainTo adds the entries to the end of the collection,
+	 * stops at the size of the heap, and does nothing on an empty heap.
+	 */
+	@Test
+	public void testDrainTo() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(3, "C");
+		heap.insert(1, "A");
+		heap.insert(2, "B");
+		List<Entry<Integer, String>> drained = new ArrayList<Entry<Integer, String>>();
+		drained.add(new MyHeapEntry<Integer, String>(0, "Z"));
+
+		assertThat(heap.drainTo(drained, 10), is(3));
+		assertThat(drained.size(), is(4));
+		assertThat(drained.get(1).getValue(), is("A"));
+		assertThat(drained.get(3).getValue(), is("C"));
+		assertTrue(heap.isEmpty());
+		assertThat(heap.drainTo(drained, 10), is(0));
+		assertThat(heap.removeMin(0).size(), is(0));
+	}
+
+	/**
+	 * To test that an exception is thrown if we try to remove a negative
+	 * number of entries.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testRemoveMinBatchThrowsIllegalArgumentException() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(1, "A");
+		heap.removeMin(-1);
+	}
+
+	/**
+	 * To test lazy removal: removed entries stay in the tree but don't
+	 * count towards the size, can't be removed twice, and are skipped by
+	 * min() and removeMin() once they reach the root.
+	 */
+	@Test
+	public void testLazyRemove() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.enableLazyRemoval(0.9);
+		Entry<Integer, String> a = heap.insert(1, "A");
+		Entry<Integer, String> b = heap.insert(2, "B");
+		heap.insert(3, "C");
+		Entry<Integer, String> d = heap.insert(4, "D");
+
+		assertThat(heap.remove(a), is(a));
+		assertThat(heap.remove(d), is(d));
+		assertThat(heap.size(), is(2));
+		assertThat(heap.getTree().size(), is(4));
+		try {
+			heap.remove(a);
+			fail("A dead entry was removed twice");
+		} catch (InvalidEntryException e){
+			// Expected
+		}
+
+		assertThat(heap.min().getValue(), is("B"));
+		assertThat(heap.getTree().size(), is(3));
+		heap.remove(b);
+		assertThat(heap.removeMin().getValue(), is("C"));
+		assertTrue(heap.isEmpty());
+		assertThat(heap.getTree().size(), is(1));
+	}
+
+	/**
+	 * To test that a lazy heap is compacted once the dead fraction is
+	 * reached, that dead entries whose keys change still keep the heap in
+	 * order, and that drainTo and removeMin hand back only live entries in
+	 * order, over random operations at a few arities.
+	 */
+	@Test
+	public void testLazyCompaction() {
+		Random random = new Random(24);
+		for (int arity : new int[] {2, 3, 4}){
+			MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator(), arity);
+			heap.enableLazyRemoval(0.25);
+			List<Entry<Integer, Integer>> live = new ArrayList<Entry<Integer, Integer>>();
+			List<Entry<Integer, Integer>> dead = new ArrayList<Entry<Integer, Integer>>();
+			for (int i = 0; i < 1000; i++){
+				live.add(heap.insert(random.nextInt(500), i));
+			}
+			for (int i = 0; i < 600; i++){
+				Entry<Integer, Integer> entry = live.remove(random.nextInt(live.size()));
+				heap.remove(entry);
+				dead.add(entry);
+				heap.replaceKey(live.get(random.nextInt(live.size())), random.nextInt(500));
+				assertThat(heap.size(), is(live.size()));
+				assertTrue(heap.getTree().size() - heap.size() < 0.25 * heap.getTree().size());
+			}
+
+			List<Integer> keys = new ArrayList<Integer>();
+			for (Entry<Integer, Integer> entry : live){
+				keys.add(entry.getKey());
+			}
+			Collections.sort(keys);
+			List<Entry<Integer, Integer>> batch = heap.removeMin(100);
+			for (int i = 0; i < keys.size(); i++){
+				Entry<Integer, Integer> entry = i < 100 ? batch.get(i) : heap.removeMin();
+				assertThat(entry.getKey(), is(keys.get(i)));
+				assertTrue(live.contains(entry));
+			}
+			assertTrue(heap.isEmpty());
+		}
+	}
+
+	/**
+	 * To test that turning lazy removal off compacts the heap, and that a
+	 * dead entry inserted again comes back to life in the right place.
+	 */
+	@Test
+	public void testDisableLazyRemoval() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.enableLazyRemoval(1);
+		MyHeapEntry<Integer, String> a = heap.insert(new MyHeapEntry<Integer, String>(1, "A"));
+		Entry<Integer, String> b = heap.insert(2, "B");
+		heap.insert(3, "C");
+		heap.remove(a);
+		heap.remove(b);
+		try {
+			heap.replaceKey(a, 5);
+			fail("Expected an InvalidEntryException for a dead entry");
+		} catch (InvalidEntryException e){
+			// Expected
+		}
+		assertThat(heap.insert(a), is(a));
+		heap.replaceKey(a, 5);
+		assertThat(heap.size(), is(2));
+
+		heap.disableLazyRemoval();
+		assertThat(heap.getTree().size(), is(2));
+		assertThat(heap.removeMin().getValue(), is("C"));
+		assertThat(heap.removeMin().getValue(), is("A"));
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * To test that an exception is thrown if we try to turn on lazy
+	 * removal with a dead fraction outside (0, 1].
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testEnableLazyRemovalThrowsIllegalArgumentException() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.enableLazyRemoval(0);
+	}
+
+	/**
+	 * To test that a heap read back from a snapshot has every entry in the
+	 * same place, with its index restored, and that reading it only makes
+	 * the one comparison per entry that checks the order (no sifting). The
+	 * values are long enough strings that records cross the 64KB buffer.
+	 */
+	@Test
+	public void testSnapshotRoundTrip() throws IOException {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), 3);
+		Random random = new Random(10);
+		for (int i = 0; i < 5000; i++){
+			heap.insert(random.nextInt(100000), "value number " + i);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		heap.writeSnapshot(Channels.newChannel(out), HeapCodec.INTEGER, HeapCodec.STRING);
+
+		CountingComparator comparator = new CountingComparator();
+		MyHeap<Integer, String> copy = MyHeap.readSnapshot(Channels.newChannel(
+				new ByteArrayInputStream(out.toByteArray())), comparator, HeapCodec.INTEGER, HeapCodec.STRING);
+		assertThat(comparator._count, is(4999));
+		assertThat(copy.getArity(), is(3));
+		assertThat(copy.size(), is(5000));
+
+		Iterator<MyHeapEntry<Integer,String>> original = heap.getTree().iterator();
+		Iterator<MyHeapEntry<Integer,String>> restored = copy.getTree().iterator();
+		int index = 0;
+		while (original.hasNext()){
+			MyHeapEntry<Integer,String> entry = original.next();
+			MyHeapEntry<Integer,String> copied = restored.next();
+			assertThat(copied.getKey(), is(entry.getKey()));
+			assertThat(copied.getValue(), is(entry.getValue()));
+			assertThat(copied.getIndex(), is(index++));
+		}
+
+		// And the restored entries work like any others
+		copy.replaceKey(copy.getTree().iterator().next(), 200000);
+		int previous = -1;
+		while (!copy.isEmpty()){
+			int key = copy.removeMin().getKey();
+			assertTrue(key >= previous);
+			previous = key;
+		}
+		assertThat(previous, is(200000));
+	}
+
+	/**
+	 * Here we test that reading a snapshot whose entries are not in heap
+	 * order throws an IOException, by reading it with the reverse order.
+	 */
+	@Test(expected=IOException.class)
+	public void testSnapshotOutOfOrderThrowsIOException() throws IOException {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(1, "A");
+		heap.insert(2, "B");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		heap.writeSnapshot(Channels.newChannel(out), HeapCodec.INTEGER, HeapCodec.STRING);
+
+		MyHeap.readSnapshot(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())),
+				Collections.reverseOrder(new IntegerComparator()), HeapCodec.INTEGER, HeapCodec.STRING);
+	}
+
+	/**
+	 * Here we test that a cut-off snapshot throws an IOException.
+	 */
+	@Test(expected=IOException.class)
+	public void testTruncatedSnapshotThrowsIOException() throws IOException {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(1, "A");
+		heap.insert(2, "B");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		heap.writeSnapshot(Channels.newChannel(out), HeapCodec.INTEGER, HeapCodec.STRING);
+
+		byte[] bytes = Arrays.copyOf(out.toByteArray(), out.size() - 3);
+		MyHeap.readSnapshot(Channels.newChannel(new ByteArrayInputStream(bytes)),
+				new IntegerComparator(), HeapCodec.INTEGER, HeapCodec.STRING);
+	}
+
+	/**
+	 * Here we test that a snapshot whose header claims 2^31 - 1 entries
+	 * throws an IOException when it runs out, rather than sizing the tree
+	 * for that many up front. From a stream the tree grows as the records
+	 * arrive; from a file the size is checked against the file's length.
+	 */
+	@Test
+	public void testSnapshotHugeSizeThrowsIOException() throws IOException {
+		byte[] bytes = this.snapshotBytes();
+		ByteBuffer.wrap(bytes).putInt(12, Integer.MAX_VALUE); // The size
+		try {
+			MyHeap.readSnapshot(Channels.newChannel(new ByteArrayInputStream(bytes)),
+					new IntegerComparator(), HeapCodec.INTEGER, HeapCodec.STRING);
+			fail("Expected an IOException from the stream");
+		} catch (IOException e){
+			// Expected
+		}
+
+		File file = File.createTempFile("heap", ".snapshot");
+		try {
+			Files.write(file.toPath(), bytes);
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			try {
+				MyHeap.readSnapshot(channel, new IntegerComparator(), HeapCodec.INTEGER, HeapCodec.STRING);
+				fail("Expected an IOException from the file");
+			} catch (IOException e){
+				// Expected
+			} finally {
+				channel.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Here we test that a record length of 2^31 - 1 throws an IOException
+	 * rather than allocating a 2GB buffer for the record.
+	 */
+	@Test(expected=IOException.class)
+	public void testSnapshotHugeLengthThrowsIOException() throws IOException {
+		byte[] bytes = this.snapshotBytes();
+		ByteBuffer.wrap(bytes).putInt(16, Integer.MAX_VALUE); // The first record's length
+		MyHeap.readSnapshot(Channels.newChannel(new ByteArrayInputStream(bytes)),
+				new IntegerComparator(), HeapCodec.INTEGER, HeapCodec.STRING);
+	}
+
+	// A snapshot of a small heap
+	private byte[] snapshotBytes() throws IOException {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(1, "A");
+		heap.insert(2, "B");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		heap.writeSnapshot(Channels.newChannel(out), HeapCodec.INTEGER, HeapCodec.STRING);
+		return out.toByteArray();
+	}
+
+	/**
+	 * An IntegerComparator that counts how many times it is called.
+	 */
+	private static class CountingComparator extends IntegerComparator {
+		private int _count = 0;
+
+		@Override
+		public int compare(Integer o1, Integer o2) {
+			_count++;
+			return super.compare(o1, o2);
+		}
+	}
+
+	/**
+	 * A MyArrayHeapTree that counts how many slots are written (not
+	 * counting the append that adds a new last node).
+	 */
+	private static class CountingTree extends MyArrayHeapTree<MyHeapEntry<Integer,String>> {
+		private int _writes = 0;
+
+		@Override
+		public MyHeapEntry<Integer,String> set(int index, MyHeapEntry<Integer,String> element) {
+			_writes++;
+			return super.set(index, element);
+		}
+
+		@Override
+		public void swapElements(int i, int j) {
+			_writes += 2;
+			super.swapElements(i, j);
+		}
+	}
+
+	/**
+	 * The swap-based upHeap that MyHeap used before the hole-based engine,
+	 * kept here so the tests above can measure its counts on the same input.
+	 */
+	private static void oldUpHeap(CountingTree tree, CountingComparator comp, int index){
+		while (index > 0){
+			int parent = (index - 1) / 2;
+			if (comp.compare(tree.get(index).getKey(), tree.get(parent).getKey()) >= 0){
+				return;
+			}
+			oldSwap(tree, index, parent);
+			index = parent;
+		}
+	}
+
+	/**
+	 * The old swap-based downHeap for a binary heap: it picks the lesser child
+	 * with one comparison (the tests above have no ties, so the random
+	 * tie-break is left out), then compares it to the key.
+	 */
+	private static void oldDownHeap(CountingTree tree, CountingComparator comp, int index){
+		int first = 2 * index + 1;
+		while (first < tree.size()){
+			int child = first;
+			if (first + 1 < tree.size()
+					&& comp.compare(tree.get(first + 1).getKey(), tree.get(first).getKey()) < 0){
+				child = first + 1;
+			}
+			if (comp.compare(tree.get(index).getKey(), tree.get(child).getKey()) <= 0){
+				return;
+			}
+			oldSwap(tree, index, child);
+			index = child;
+			first = 2 * index + 1;
+		}
+	}
+
+	private static void oldSwap(CountingTree tree, int i, int j){
+		tree.swapElements(i, j);
+		tree.get(i).setIndex(i);
+		tree.get(j).setIndex(j);
+	}
+
+	/**
+	 * Here we test that an IllegalArgumentException is thrown when we try to
+	 * make a heap whose nodes would have fewer than two children.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testConstructorThrowsIllegalArgumentException() {
+		new MyHeap<Integer, String>(new IntegerComparator(), 1);
+	}
+
 	/**
 	 * This is an example of how to test whether an exception you expect to be thrown on a certain line of code
 	 * is actually thrown. As shown, you'd simply add the expected exception right after the @Test annotation.
@@ -0,0 +1,455 @@
+package heap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * An adaptable priority queue with long keys whose heap lives outside
+ * the Java heap, in direct ByteBuffers. A MyHeap of n entries is n
+ * MyHeapEntry objects (plus n boxed keys) that the garbage collector has
+ * to trace on every full collection; here the keys, the heap order and
+ * the handle bookkeeping are plain bytes the collector never looks at.
+ * The only per-entry reference left on the Java heap is the value
+ * itself, kept in Object[] pages of the same size as the buffer pages
+ * and indexed by handle, so growing never copies the values either.
+ *
+ * The layout is two arrays of fixed-size pages (direct buffers):
+ *
+ *     slots:   [key: long][handle: int]      one record per heap slot
+ *     handles: [slot: int][generation: int]  one record per handle
+ *
+ * Growing adds pages rather than copying, and keeps each buffer well
+ * under the 2GB limit of a ByteBuffer, so the heap can hold as many
+ * entries as an int can count.
+ *
+ * A handle whose slot is negative is free; the free handles form a list
+ * threaded through their slot fields. The generation is bumped every
+ * time a handle is released, so an Entry from before the release can be
+ * told apart from the new entry that reuses the handle.
+ *
+ * insert returns an Entry that remembers its handle and generation, but
+ * the queue keeps no reference to it, so entries cost nothing once the
+ * caller drops them. getKey() and getValue() read through to the queue
+ * while the entry is in it, and return what they last saw otherwise.
+ */
+
+public class OffHeapHeap<V> implements AdaptablePriorityQueue<Long,V> {
+
+	// Records per page
+	private static final int PAGE_SHIFT = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	// Record layouts, in bytes
+	private static final int SLOT_BYTES = 12;
+	private static final int KEY = 0;
+	private static final int HANDLE = 8;
+	private static final int HANDLE_BYTES = 8;
+	private static final int SLOT = 0;
+	private static final int GENERATION = 4;
+
+	private ByteBuffer[] _slotPages;
+	private ByteBuffer[] _handlePages;
+	private int _pageCount;
+	private Object[][] _valuePages;
+	private int _size;
+
+	// The number of handles ever handed out, and the first free one (or -1)
+	private int _handleCount;
+	private int _freeHead;
+
+	/**
+	 * Creates an empty heap.
+	 */
+	public OffHeapHeap() {
+		this(PAGE_SIZE);
+	}
+
+	/**
+	 * Creates an empty heap with room for the given number of entries
+	 * before any pages have to be added.
+	 *
+	 * @param initialCapacity the number of entries to allocate for
+	 * @throws IllegalArgumentException if initialCapacity is negative
+	 */
+	public OffHeapHeap(int initialCapacity) {
+		if (initialCapacity < 0){
+			throw new IllegalArgumentException("ERROR: Negative capacity");
+		}
+		_slotPages = new ByteBuffer[1];
+		_handlePages = new ByteBuffer[1];
+		_valuePages = new Object[1][];
+		_pageCount = 0;
+		while (_pageCount * PAGE_SIZE < Math.max(initialCapacity, 1)){
+			this.addPage();
+		}
+		_size = 0;
+		_handleCount = 0;
+		_freeHead = -1;
+	}
+
+	/**
+	 * Returns the number of entries in the heap.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns the number of bytes allocated outside the Java heap.
+	 *
+	 * @return the combined capacity of the pages
+	 */
+	public long getOffHeapBytes() {
+		return (long) _pageCount * PAGE_SIZE * (SLOT_BYTES + HANDLE_BYTES);
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key.
+	 *
+	 * @return an entry with the minimum key
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<Long,V> min() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return this.entryAt(0);
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created. This
+	 * method runs in O(log n) time.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the entry created using the key/value parameters
+	 * @throws InvalidKeyException if the key is null
+	 */
+	public Entry<Long,V> insert(Long key, V value) throws InvalidKeyException {
+		if (key == null){
+			throw new InvalidKeyException("Invalid key");
+		}
+		int handle = this.takeHandle();
+		this.setValue(handle, value);
+		this.siftUp(_size++, key, handle);
+		return new OffHeapEntry<V>(this, handle, this.generation(handle), key, value);
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key. This method runs in
+	 * O(log n) time.
+	 *
+	 * @return the entry with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<Long,V> removeMin() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return this.removeSlot(0);
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap. This method runs
+	 * in O(log n) time.
+	 *
+	 * @param entry to be removed from the heap
+	 * @return the entry specified for removal by the parameter
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	public Entry<Long,V> remove(Entry<Long,V> entry) throws InvalidEntryException {
+		OffHeapEntry<V> offHeapEntry = this.checkEntry(entry);
+		Entry<Long,V> removed = this.removeSlot(this.slotOf(offHeapEntry._handle));
+		offHeapEntry._key = removed.getKey();
+		offHeapEntry._value = removed.getValue();
+		return offHeapEntry;
+	}
+
+	/**
+	 * Replaces the key of the given entry, moving it up or down as needed.
+	 * This method runs in O(log n) time.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 * @throws InvalidKeyException if the key is null
+	 */
+	public Long replaceKey(Entry<Long,V> entry, Long key) throws InvalidEntryException, InvalidKeyException {
+		OffHeapEntry<V> offHeapEntry = this.checkEntry(entry);
+		if (key == null){
+			throw new InvalidKeyException("Invalid key");
+		}
+		int slot = this.slotOf(offHeapEntry._handle);
+		long oldKey = this.keyAt(slot);
+		if (key < oldKey){
+			this.siftUp(slot, key, offHeapEntry._handle);
+		} else {
+			this.siftDown(slot, key, offHeapEntry._handle);
+		}
+		offHeapEntry._key = key;
+		return oldKey;
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1)
+	 * time.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	@SuppressWarnings("unchecked")
+	public V replaceValue(Entry<Long,V> entry, V value) throws InvalidEntryException {
+		OffHeapEntry<V> offHeapEntry = this.checkEntry(entry);
+		V old = (V) this.valueOf(offHeapEntry._handle);
+		this.setValue(offHeapEntry._handle, value);
+		offHeapEntry._value = value;
+		return old;
+	}
+
+	/**
+	 * Removes the entry in the given slot by sifting the last entry into
+	 * its place, releases its handle and returns it.
+	 *
+	 * @param slot of the entry to be removed
+	 * @return the removed entry, detached from the heap
+	 */
+	@SuppressWarnings("unchecked")
+	private Entry<Long,V> removeSlot(int slot) {
+		int handle = this.handleAt(slot);
+		OffHeapEntry<V> removed = new OffHeapEntry<V>(this, handle, this.generation(handle),
+				this.keyAt(slot), (V) this.valueOf(handle));
+		this.setValue(handle, null);
+		this.releaseHandle(handle);
+
+		int last = --_size;
+		if (slot != last){
+			long key = this.keyAt(last);
+			int lastHandle = this.handleAt(last);
+			if (slot > 0 && key < this.keyAt((slot - 1) >>> 1)){
+				this.siftUp(slot, key, lastHandle);
+			} else {
+				this.siftDown(slot, key, lastHandle);
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Moves the hole at the given slot up while the key is less than the
+	 * parent's, and then writes the key and handle into the hole.
+	 */
+	private void siftUp(int slot, long key, int handle) {
+		while (slot > 0){
+			int parent = (slot - 1) >>> 1;
+			if (key >= this.keyAt(parent)){
+				break;
+			}
+			this.place(slot, this.keyAt(parent), this.handleAt(parent));
+			slot = parent;
+		}
+		this.place(slot, key, handle);
+	}
+
+	/**
+	 * Moves the hole at the given slot down while a child's key is less
+	 * than the given key, and then writes the key and handle into it.
+	 */
+	private void siftDown(int slot, long key, int handle) {
+		int half = _size >>> 1;
+		while (slot < half){
+			int child = (slot << 1) + 1;
+			long childKey = this.keyAt(child);
+			int right = child + 1;
+			if (right < _size){
+				long rightKey = this.keyAt(right);
+				if (rightKey < childKey){
+					child = right;
+					childKey = rightKey;
+				}
+			}
+			if (key <= childKey){
+				break;
+			}
+			this.place(slot, childKey, this.handleAt(child));
+			slot = child;
+		}
+		this.place(slot, key, handle);
+	}
+
+	/*
+	 * Reading and writing the records.
+	 */
+
+	private long keyAt(int slot) {
+		return _slotPages[slot >>> PAGE_SHIFT].getLong((slot & PAGE_MASK) * SLOT_BYTES + KEY);
+	}
+
+	private int handleAt(int slot) {
+		return _slotPages[slot >>> PAGE_SHIFT].getInt((slot & PAGE_MASK) * SLOT_BYTES + HANDLE);
+	}
+
+	private int slotOf(int handle) {
+		return _handlePages[handle >>> PAGE_SHIFT].getInt((handle & PAGE_MASK) * HANDLE_BYTES + SLOT);
+	}
+
+	private int generation(int handle) {
+		return _handlePages[handle >>> PAGE_SHIFT].getInt((handle & PAGE_MASK) * HANDLE_BYTES + GENERATION);
+	}
+
+	private Object valueOf(int handle) {
+		return _valuePages[handle >>> PAGE_SHIFT][handle & PAGE_MASK];
+	}
+
+	private void setValue(int handle, Object value) {
+		_valuePages[handle >>> PAGE_SHIFT][handle & PAGE_MASK] = value;
+	}
+
+	// Writes a key and handle into a slot and points the handle at it
+	private void place(int slot, long key, int handle) {
+		ByteBuffer page = _slotPages[slot >>> PAGE_SHIFT];
+		int offset = (slot & PAGE_MASK) * SLOT_BYTES;
+		page.putLong(offset + KEY, key);
+		page.putInt(offset + HANDLE, handle);
+		_handlePages[handle >>> PAGE_SHIFT].putInt((handle & PAGE_MASK) * HANDLE_BYTES + SLOT, slot);
+	}
+
+	/**
+	 * Returns a free handle, adding a page if none is left. There are
+	 * never more handles than entries, so the slot pages always have
+	 * room for the new entry too.
+	 */
+	private int takeHandle() {
+		if (_freeHead >= 0){
+			int handle = _freeHead;
+			_freeHead = -2 - this.slotOf(handle);
+			return handle;
+		}
+		if (_handleCount == _pageCount * PAGE_SIZE){
+			this.addPage();
+		}
+		return _handleCount++;
+	}
+
+	/**
+	 * Puts the handle on the free list and bumps its generation, so that
+	 * entries holding the old generation are no longer valid.
+	 */
+	private void releaseHandle(int handle) {
+		ByteBuffer page = _handlePages[handle >>> PAGE_SHIFT];
+		int offset = (handle & PAGE_MASK) * HANDLE_BYTES;
+		page.putInt(offset + SLOT, -2 - _freeHead);
+		page.putInt(offset + GENERATION, page.getInt(offset + GENERATION) + 1);
+		_freeHead = handle;
+	}
+
+	// Adds one page each of slots, handles and values
+	private void addPage() {
+		if (_pageCount == _slotPages.length){
+			_slotPages = Arrays.copyOf(_slotPages, 2 * _pageCount);
+			_handlePages = Arrays.copyOf(_handlePages, 2 * _pageCount);
+			_valuePages = Arrays.copyOf(_valuePages, 2 * _pageCount);
+		}
+		_slotPages[_pageCount] = ByteBuffer.allocateDirect(PAGE_SIZE * SLOT_BYTES).order(ByteOrder.nativeOrder());
+		_handlePages[_pageCount] = ByteBuffer.allocateDirect(PAGE_SIZE * HANDLE_BYTES).order(ByteOrder.nativeOrder());
+		_valuePages[_pageCount] = new Object[PAGE_SIZE];
+		_pageCount++;
+	}
+
+	/**
+	 * Returns whether the entry is currently in this heap.
+	 *
+	 * @param entry to look up
+	 * @return true if the entry was inserted here and not removed since
+	 */
+	private boolean contains(OffHeapEntry<V> entry) {
+		return entry._heap == this && this.slotOf(entry._handle) >= 0
+				&& this.generation(entry._handle) == entry._generation;
+	}
+
+	/**
+	 * Checks that the entry is currently in this heap.
+	 *
+	 * @param entry to be checked
+	 * @return the entry cast as an OffHeapEntry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	@SuppressWarnings("unchecked")
+	private OffHeapEntry<V> checkEntry(Entry<Long,V> entry) throws InvalidEntryException {
+		if (!(entry instanceof OffHeapEntry)){
+			throw new InvalidEntryException("Invalid entry");
+		}
+		OffHeapEntry<V> offHeapEntry = (OffHeapEntry<V>) entry;
+		if (!this.contains(offHeapEntry)){
+			throw new InvalidEntryException("ERROR: Entry is not in this heap");
+		}
+		return offHeapEntry;
+	}
+
+	private void checkNotEmpty() throws EmptyPriorityQueueException {
+		if (_size == 0){
+			throw new EmptyPriorityQueueException("ERROR: Heap is empty");
+		}
+	}
+
+	// A new Entry for the entry in the given slot
+	@SuppressWarnings("unchecked")
+	private Entry<Long,V> entryAt(int slot) {
+		int handle = this.handleAt(slot);
+		return new OffHeapEntry<V>(this, handle, this.generation(handle), this.keyAt(slot), (V) this.valueOf(handle));
+	}
+
+	/**
+	 * The Entry handed out by an OffHeapHeap: a handle into the heap's
+	 * buffers, plus the key and value as of the last time the entry went
+	 * through the heap.
+	 */
+	private static final class OffHeapEntry<V> implements Entry<Long,V> {
+
+		private final OffHeapHeap<V> _heap;
+		private final int _handle;
+		private final int _generation;
+		private long _key;
+		private V _value;
+
+		private OffHeapEntry(OffHeapHeap<V> heap, int handle, int generation, long key, V value) {
+			_heap = heap;
+			_handle = handle;
+			_generation = generation;
+			_key = key;
+			_value = value;
+		}
+
+		public Long getKey() {
+			if (_heap.contains(this)){
+				_key = _heap.keyAt(_heap.slotOf(_handle));
+			}
+			return _key;
+		}
+
+		@SuppressWarnings("unchecked")
+		public V getValue() {
+			if (_heap.contains(this)){
+				_value = (V) _heap.valueOf(_handle);
+			}
+			return _value;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * This class is used to test the functionality of OffHeapHeap.
+ */
+
+/* We check heap order over enough entries to need several pages, that
+ * entries keep working for remove(), replaceKey() and replaceValue() as
+ * they move around, and that an entry stays invalid after its handle has
+ * been reused by a later insert. The rest of the tests check that the
+ * appropriate exceptions are thrown.
+ */
+
+public class OffHeapHeapTest {
+
+	/**
+	 * To check that removeMin() returns entries in order of their keys,
+	 * across several pages.
+	 */
+	@Test
+	public void testHeapOrder() {
+		OffHeapHeap<String> heap = new OffHeapHeap<String>(0);
+		List<Long> keys = new ArrayList<Long>();
+		for (long i = 0; i < 10000; i++){
+			keys.add(i * 1000000000L);
+		}
+		Collections.shuffle(keys, new Random(8));
+		for (long key : keys){
+			heap.insert(key, "v" + key);
+		}
+
+		assertThat(heap.size(), is(10000));
+		assertTrue(heap.getOffHeapBytes() >= 10000 * 20);
+		for (long i = 0; i < 10000; i++){
+			assertThat(heap.min().getKey(), is(i * 1000000000L));
+			Entry<Long,String> min = heap.removeMin();
+			assertThat(min.getValue(), is("v" + i * 1000000000L));
+		}
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * To check that replaceKey() moves entries up and down, and that the
+	 * entries returned by insert() follow along.
+	 */
+	@Test
+	public void testReplaceKey() {
+		OffHeapHeap<String> heap = new OffHeapHeap<String>();
+		Entry<Long,String> min = heap.insert(11L, "A");
+		heap.insert(13L, "B");
+		heap.insert(64L, "C");
+		Entry<Long,String> last = heap.insert(77L, "D");
+
+		assertThat(heap.replaceKey(last, 1L), is(77L));
+		assertThat(heap.min().getValue(), is("D"));
+		assertThat(last.getKey(), is(1L));
+
+		heap.replaceKey(last, 100L);
+		heap.replaceKey(min, 99L);
+		assertThat(heap.replaceValue(min, "E"), is("A"));
+		assertThat(heap.removeMin().getValue(), is("B"));
+		assertThat(heap.removeMin().getValue(), is("C"));
+		assertThat(heap.removeMin().getValue(), is("E"));
+		assertThat(heap.removeMin().getKey(), is(100L));
+	}
+
+	/**
+	 * To check that remove() takes out exactly the given entry, which
+	 * keeps its key and value afterwards.
+	 */
+	@Test
+	public void testRemove() {
+		OffHeapHeap<String> heap = new OffHeapHeap<String>();
+		heap.insert(7L, "A");
+		Entry<Long,String> toRemove = heap.insert(10L, "B");
+		heap.insert(13L, "C");
+		heap.insert(16L, "D");
+		heap.insert(19L, "E");
+
+		assertThat(heap.remove(toRemove).getValue(), is("B"));
+		assertThat(toRemove.getKey(), is(10L));
+		assertThat(heap.size(), is(4));
+
+		long[] expected = {7, 13, 16, 19};
+		for (long key : expected){
+			assertThat(heap.removeMin().getKey(), is(key));
+		}
+	}
+
+	/**
+	 * Here we test that an entry is still rejected after its handle has
+	 * been reused by a new entry.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testReusedHandleThrowsInvalidEntryException() {
+		OffHeapHeap<String> heap = new OffHeapHeap<String>();
+		Entry<Long,String> old = heap.insert(1L, "A");
+		heap.removeMin();
+		heap.insert(2L, "B");
+		assertThat(old.getKey(), is(1L));
+		heap.remove(old);
+	}
+
+	/**
+	 * Here we test that an entry from another heap throws an
+	 * InvalidEntryException.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testForeignEntryThrowsInvalidEntryException() {
+		OffHeapHeap<String> heap = new OffHeapHeap<String>();
+		OffHeapHeap<String> other = new OffHeapHeap<String>();
+		heap.insert(1L, "A");
+		heap.replaceKey(other.insert(1L, "B"), 2L);
+	}
+
+	/**
+	 * Here we test that a null key throws an InvalidKeyException.
+	 */
+	@Test(expected = InvalidKeyException.class)
+	public void testInsertThrowsInvalidKeyException() {
+		OffHeapHeap<String> heap = new OffHeapHeap<String>();
+		heap.insert(null, "A");
+	}
+
+	/**
+	 * Here we test that removeMin() on an empty heap throws an
+	 * EmptyPriorityQueueException.
+	 */
+	@Test(expected = EmptyPriorityQueueException.class)
+	public void testRemoveMinThrowsEmptyPriorityQueueException() {
+		OffHeapHeap<String> heap = new OffHeapHeap<String>();
+		heap.removeMin();
+	}
+
+}
@@ -0,0 +1,356 @@
+package heap;
+
+import java.util.Comparator;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * An adaptable priority queue implemented as a pairing heap: a
+ * heap-ordered tree where each node has any number of children, kept as
+ * a linked list. Two trees are merged ("linked") by making the root with
+ * the larger key the first child of the other, in O(1) time.
+ *
+ * insert links a one-node tree with the root, and decreasing a key cuts
+ * the entry's subtree out and links it with the root, so both take O(1)
+ * time. All the real work is deferred to removeMin, which merges the
+ * root's children in two passes (pairs left to right, then the results
+ * right to left) in O(log n) amortized time. This suits workloads such
+ * as Dijkstra's algorithm, which decrease keys far more often than they
+ * remove the minimum.
+ *
+ * The entries handed out are the tree nodes themselves, so, as with
+ * MyHeapEntry, an entry keeps working for remove(), replaceKey() and
+ * replaceValue() until it is removed.
+ */
+
+public class PairingHeap<K,V> implements AdaptablePriorityQueue<K,V> {
+
+	private Node<K,V> _root;
+	private int _size;
+	private Comparator<K> _comp;
+
+	/**
+	 * Creates an empty heap with the given comparator.
+	 *
+	 * @param comparator the comparator to be used for heap keys
+	 * @throws IllegalArgumentException if the comparator is null
+	 */
+	public PairingHeap(Comparator<K> comparator) {
+		if (comparator == null){
+			throw new IllegalArgumentException();
+		}
+		_comp = comparator;
+		_root = null;
+		_size = 0;
+	}
+
+	/**
+	 * Returns the number of entries in the heap.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key.
+	 *
+	 * @return the entry with the minimum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> min() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return _root;
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created. This
+	 * method runs in O(1) time.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the entry created using the key/value parameters
+	 * @throws InvalidKeyException if the key is not suitable for this heap
+	 */
+	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
+		this.checkKey(key);
+		Node<K,V> node = new Node<K,V>(this, key, value);
+		_root = _root == null ? node : this.link(_root, node);
+		_size++;
+		return node;
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key. This method runs in
+	 * O(log n) amortized time.
+	 *
+	 * @return the entry with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		Node<K,V> min = _root;
+		_root = this.mergeChildren(min);
+		this.detach(min);
+		return min;
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap. This method runs
+	 * in O(log n) amortized time.
+	 *
+	 * @param entry to be removed from the heap
+	 * @return the entry specified for removal by the parameter
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+		Node<K,V> node = this.checkEntry(entry);
+		if (node == _root){
+			return this.removeMin();
+		}
+		this.cut(node);
+		Node<K,V> children = this.mergeChildren(node);
+		if (children != null){
+			_root = this.link(_root, children);
+		}
+		this.detach(node);
+		return node;
+	}
+
+	/**
+	 * Replaces the key of the given entry. Decreasing a key runs in O(1)
+	 * time; increasing one works like a remove and an insert, in
+	 * O(log n) amortized time.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 * @throws InvalidKeyException if the key is not suitable for this heap
+	 */
+	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		Node<K,V> node = this.checkEntry(entry);
+		this.checkKey(key);
+		K oldKey = node._key;
+		node._key = key;
+		if (_comp.compare(key, oldKey) <= 0){
+			// Decrease: the subtree is still in order, so just move it up
+			if (node != _root){
+				this.cut(node);
+				_root = this.link(_root, node);
+			}
+		} else {
+			// Increase: the children may now be out of order, so merge
+			// them back in and put the node in on its own
+			Node<K,V> children = this.mergeChildren(node);
+			if (node == _root){
+				_root = children;
+			} else {
+				this.cut(node);
+				if (children != null){
+					_root = this.link(_root, children);
+				}
+			}
+			_root = _root == null ? node : this.link(_root, node);
+		}
+		return oldKey;
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1)
+	 * time.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {
+		Node<K,V> node = this.checkEntry(entry);
+		V oldValue = node._value;
+		node._value = value;
+		return oldValue;
+	}
+
+	/**
+	 * Links two roots: the one with the larger key becomes the first
+	 * child of the other, which is returned.
+	 *
+	 * @param a the root of one tree
+	 * @param b the root of the other tree
+	 * @return the root of the linked tree
+	 */
+	private Node<K,V> link(Node<K,V> a, Node<K,V> b) {
+		if (_comp.compare(b._key, a._key) < 0){
+			Node<K,V> swap = a;
+			a = b;
+			b = swap;
+		}
+		b._prev = a;
+		b._next = a._child;
+		if (a._child != null){
+			a._child._prev = b;
+		}
+		a._child = b;
+		return a;
+	}
+
+	/**
+	 * Takes a (non-root) node and its subtree out of its parent's list of
+	 * children. A node's _prev is its left sibling, or its parent if it
+	 * is the first child.
+	 *
+	 * @param node to be cut out
+	 */
+	private void cut(Node<K,V> node) {
+		if (node._prev._child == node){
+			node._prev._child = node._next;
+		} else {
+			node._prev._next = node._next;
+		}
+		if (node._next != null){
+			node._next._prev = node._prev;
+		}
+		node._prev = null;
+		node._next = null;
+	}
+
+	/**
+	 * Merges the children of the given node into one tree with the
+	 * two-pass method, and returns its root (or null if there were none).
+	 * The first pass links the children in pairs from left to right; the
+	 * second links the pairs from right to left. Both passes are loops,
+	 * so a long list of children can't overflow the stack.
+	 *
+	 * @param node whose children are merged; it is left without children
+	 * @return the root of the merged tree
+	 */
+	private Node<K,V> mergeChildren(Node<K,V> node) {
+		Node<K,V> first = node._child;
+		node._child = null;
+		if (first == null){
+			return null;
+		}
+
+		// First pass: link pairs, chaining the results through _prev so
+		// the second pass can walk them back from the last one
+		Node<K,V> last = null;
+		while (first != null){
+			Node<K,V> a = first;
+			Node<K,V> b = a._next;
+			if (b == null){
+				a._next = null;
+				a._prev = last;
+				last = a;
+				break;
+			}
+			first = b._next;
+			a._next = null;
+			b._next = null;
+			Node<K,V> pair = this.link(a, b);
+			pair._prev = last;
+			last = pair;
+		}
+
+		// Second pass: link each pair into the tree built so far
+		Node<K,V> root = last;
+		Node<K,V> previous = root._prev;
+		root._prev = null;
+		while (previous != null){
+			Node<K,V> next = previous._prev;
+			previous._prev = null;
+			root = this.link(previous, root);
+			previous = next;
+		}
+		return root;
+	}
+
+	// Marks a removed node as no longer in the heap
+	private void detach(Node<K,V> node) {
+		node._heap = null;
+		node._child = null;
+		node._next = null;
+		node._prev = null;
+		_size--;
+	}
+
+	/**
+	 * Checks that the entry is a node currently in this heap.
+	 *
+	 * @param entry to be checked
+	 * @return the entry cast as a Node
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	@SuppressWarnings("unchecked")
+	private Node<K,V> checkEntry(Entry<K,V> entry) throws InvalidEntryException {
+		if (!(entry instanceof Node)){
+			throw new InvalidEntryException("Invalid entry");
+		}
+		Node<K,V> node = (Node<K,V>) entry;
+		if (node._heap != this){
+			throw new InvalidEntryException("ERROR: Entry is not in this heap");
+		}
+		return node;
+	}
+
+	private void checkKey(K key) throws InvalidKeyException {
+		if (key == null){
+			throw new InvalidKeyException("ERROR: Key is null");
+		}
+		try {
+			_comp.compare(key, key); // If invalid key, ClassCastException thrown here
+		} catch (ClassCastException e){
+			throw new InvalidKeyException("ERROR: Key is invalid");
+		}
+	}
+
+	private void checkNotEmpty() throws EmptyPriorityQueueException {
+		if (_size == 0){
+			throw new EmptyPriorityQueueException("ERROR: Heap is empty");
+		}
+	}
+
+	/**
+	 * A node of the pairing heap, which is also the entry handed out for
+	 * it. Children are a doubly linked list: _child is the first child,
+	 * _next the right sibling, and _prev the left sibling (or the parent,
+	 * for a first child).
+	 */
+	private static final class Node<K,V> implements Entry<K,V> {
+
+		private PairingHeap<K,V> _heap;
+		private K _key;
+		private V _value;
+		private Node<K,V> _child;
+		private Node<K,V> _next;
+		private Node<K,V> _prev;
+
+		private Node(PairingHeap<K,V> heap, K key, V value) {
+			_heap = heap;
+			_key = key;
+			_value = value;
+		}
+
+		public K getKey() {
+			return _key;
+		}
+
+		public V getValue() {
+			return _value;
+		}
+	}
+}
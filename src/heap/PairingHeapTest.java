@@ -0,0 +1,162 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * This class is used to test the functionality of PairingHeap.
+ */
+
+/* Besides the usual order and exception tests, we run a long random mix of
+ * inserts, removeMins, removes and key changes (up and down) against a
+ * plain list of the expected keys, since the trees a pairing heap builds
+ * are hard to predict by hand.
+ */
+
+public class PairingHeapTest {
+
+	/**
+	 * To check that removeMin() returns entries in order of their keys.
+	 */
+	@Test
+	public void testHeapOrder() {
+		PairingHeap<Integer, String> heap = new PairingHeap<Integer, String>(new IntegerComparator());
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++){
+			keys.add(i);
+		}
+		Collections.shuffle(keys, new Random(12));
+		for (int key : keys){
+			heap.insert(key, "v" + key);
+		}
+		assertThat(heap.size(), is(1000));
+		for (int i = 0; i < 1000; i++){
+			assertThat(heap.min().getKey(), is(i));
+			assertThat(heap.removeMin().getValue(), is("v" + i));
+		}
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * To check that replaceKey() moves entries both up and down, whether
+	 * or not they are the root, and returns the old key.
+	 */
+	@Test
+	public void testReplaceKey() {
+		PairingHeap<Integer, String> heap = new PairingHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer,String> min = heap.insert(11, "A");
+		heap.insert(13, "B");
+		heap.insert(64, "C");
+		Entry<Integer,String> last = heap.insert(77, "D");
+		heap.removeMin();
+		heap.insert(11, "A");
+
+		assertThat(heap.replaceKey(last, 1), is(77));
+		assertThat(heap.min().getValue(), is("D"));
+		heap.replaceKey(last, 100); // The root goes back down
+		assertThat(heap.replaceValue(last, "E"), is("D"));
+		heap.replaceKey(heap.min(), 99);
+
+		assertThat(heap.removeMin().getValue(), is("B"));
+		assertThat(heap.removeMin().getValue(), is("C"));
+		assertThat(heap.removeMin().getValue(), is("A"));
+		assertThat(heap.removeMin().getValue(), is("E"));
+		assertThat(min.getKey(), is(11));
+	}
+
+	/**
+	 * To check a long random mix of operations against a sorted list of
+	 * the keys that should be in the heap.
+	 */
+	@Test
+	public void testRandomOperations() {
+		PairingHeap<Integer, Integer> heap = new PairingHeap<Integer, Integer>(new IntegerComparator());
+		List<Entry<Integer,Integer>> entries = new ArrayList<Entry<Integer,Integer>>();
+		List<Integer> expected = new ArrayList<Integer>();
+		Random random = new Random(1);
+		for (int step = 0; step < 20000; step++){
+			int op = random.nextInt(10);
+			if (op < 4 || entries.isEmpty()){
+				int key = random.nextInt(10000);
+				entries.add(heap.insert(key, key));
+				expected.add(key);
+			} else if (op < 6){
+				Entry<Integer,Integer> min = heap.removeMin();
+				assertThat(min.getKey(), is(Collections.min(expected)));
+				entries.remove(min);
+				expected.remove(min.getKey());
+			} else if (op < 7){
+				Entry<Integer,Integer> entry = entries.remove(random.nextInt(entries.size()));
+				heap.remove(entry);
+				expected.remove(entry.getKey());
+			} else {
+				Entry<Integer,Integer> entry = entries.get(random.nextInt(entries.size()));
+				int key = random.nextInt(10000);
+				expected.remove(entry.getKey());
+				heap.replaceKey(entry, key);
+				expected.add(key);
+			}
+			assertThat(heap.size(), is(expected.size()));
+		}
+		Collections.sort(expected);
+		for (int key : expected){
+			assertThat(heap.removeMin().getKey(), is(key));
+		}
+	}
+
+	/**
+	 * Here we test that an entry can't be used once it has been removed.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testRemovedEntryThrowsInvalidEntryException() {
+		PairingHeap<Integer, String> heap = new PairingHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer,String> entry = heap.insert(1, "A");
+		heap.insert(2, "B");
+		heap.remove(entry);
+		heap.replaceKey(entry, 0);
+	}
+
+	/**
+	 * Here we test that an entry from a MyHeap is rejected.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testForeignEntryThrowsInvalidEntryException() {
+		PairingHeap<Integer, String> heap = new PairingHeap<Integer, String>(new IntegerComparator());
+		MyHeap<Integer, String> other = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(1, "A");
+		heap.remove(other.insert(1, "B"));
+	}
+
+	/**
+	 * Here we test that a null key throws an InvalidKeyException.
+	 */
+	@Test(expected = InvalidKeyException.class)
+	public void testInsertThrowsInvalidKeyException() {
+		PairingHeap<Integer, String> heap = new PairingHeap<Integer, String>(new IntegerComparator());
+		heap.insert(null, "A");
+	}
+
+	/**
+	 * Here we test that removeMin() on an empty heap throws an
+	 * EmptyPriorityQueueException.
+	 */
+	@Test(expected = EmptyPriorityQueueException.class)
+	public void testRemoveMinThrowsEmptyPriorityQueueException() {
+		PairingHeap<Integer, String> heap = new PairingHeap<Integer, String>(new IntegerComparator());
+		heap.removeMin();
+	}
+
+}
@@ -0,0 +1,272 @@
+package heap;
+
+import java.util.Arrays;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.InvalidEntryException;
+
+/**
+ * The bookkeeping shared by IntKeyHeap, LongKeyHeap and DoubleKeyHeap.
+ * Instead of MyHeapEntry objects, these heaps hand out int handles. A
+ * handle stays valid until its entry is removed, after which it may be
+ * reused by a later insert.
+ *
+ * The subclasses own the primitive key array (indexed by heap slot) and
+ * the sift loops, so that comparisons are native operators rather than
+ * Comparator calls. This class keeps the handle of each slot, the slot
+ * of each handle, and the values (indexed by handle, so they never move
+ * while sifting).
+ */
+
+abstract class PrimitiveKeyHeap<V> {
+
+	protected static final int DEFAULT_CAPACITY = 16;
+
+	// The handle stored in each heap slot
+	protected int[] _handles;
+	protected int _size;
+
+	// The heap slot of each handle, or -1 if the handle is not in use
+	private int[] _slots;
+	private Object[] _values;
+
+	// Handles that have been released and can be handed out again
+	private int[] _free;
+	private int _freeCount;
+	private int _nextHandle;
+
+	protected PrimitiveKeyHeap(int initialCapacity) {
+		if (initialCapacity < 0){
+			throw new IllegalArgumentException("ERROR: Negative capacity");
+		}
+		int capacity = Math.max(initialCapacity, DEFAULT_CAPACITY);
+		_handles = new int[capacity];
+		_slots = new int[capacity];
+		_values = new Object[capacity];
+		_free = new int[capacity];
+		_size = 0;
+		_freeCount = 0;
+		_nextHandle = 0;
+	}
+
+	/*
+	 * Hooks for the subclasses, which know the type of the keys.
+	 */
+
+	// Resizes the key array to the given capacity
+	protected abstract void resizeKeys(int capacity);
+
+	// Moves the key and handle in slot "from" into slot "to"
+	protected abstract void moveSlot(int from, int to);
+
+	// Restores heap order for the entry in the given slot
+	protected abstract void siftUp(int slot);
+	protected abstract void siftDown(int slot);
+
+	/**
+	 * Returns the number of entries in the heap.
+	 *
+	 * @return the number of entries stored
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns the handle of an entry with minimum key.
+	 *
+	 * @return the handle of the minimum entry
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public int minHandle() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return _handles[0];
+	}
+
+	/**
+	 * Returns the value of an entry with minimum key.
+	 *
+	 * @return the value of the minimum entry
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public V minValue() throws EmptyPriorityQueueException {
+		return this.getValue(this.minHandle());
+	}
+
+	/**
+	 * Removes an entry with minimum key and returns its value. Read
+	 * the key first with minKey() if it is needed.
+	 *
+	 * @return the value of the entry that was removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public V removeMin() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		return this.removeSlot(0);
+	}
+
+	/**
+	 * Removes the entry with the given handle and returns its value.
+	 *
+	 * @param handle of the entry to be removed
+	 * @return the value of the entry that was removed
+	 * @throws InvalidEntryException if the handle is not in the heap
+	 */
+	public V remove(int handle) throws InvalidEntryException {
+		return this.removeSlot(this.checkHandle(handle));
+	}
+
+	/**
+	 * Returns whether the handle refers to an entry in the heap.
+	 *
+	 * @param handle to look up
+	 * @return true if the handle is in use
+	 */
+	public boolean contains(int handle) {
+		return handle >= 0 && handle < _nextHandle && _slots[handle] >= 0;
+	}
+
+	/**
+	 * Returns the value stored with the given handle.
+	 *
+	 * @param handle of the entry
+	 * @return the value of the entry
+	 * @throws InvalidEntryException if the handle is not in the heap
+	 */
+	@SuppressWarnings("unchecked")
+	public V getValue(int handle) throws InvalidEntryException {
+		this.checkHandle(handle);
+		return (V) _values[handle];
+	}
+
+	/**
+	 * Replaces the value stored with the given handle. Runs in O(1)
+	 * time since the order of the heap does not change.
+	 *
+	 * @param handle of the entry
+	 * @param value to replace the existing value with
+	 * @return the old value of the entry
+	 * @throws InvalidEntryException if the handle is not in the heap
+	 */
+	@SuppressWarnings("unchecked")
+	public V replaceValue(int handle, V value) throws InvalidEntryException {
+		this.checkHandle(handle);
+		V old = (V) _values[handle];
+		_values[handle] = value;
+		return old;
+	}
+
+	/**
+	 * Removes every entry. All handles become invalid.
+	 */
+	public void clear() {
+		Arrays.fill(_values, 0, _nextHandle, null);
+		_size = 0;
+		_freeCount = 0;
+		_nextHandle = 0;
+	}
+
+	/**
+	 * Reserves a new slot at the end of the heap for the given value and
+	 * returns it. The subclass stores the key there and sifts it up.
+	 *
+	 * @param value to be stored with the new entry
+	 * @return the slot of the new entry
+	 */
+	protected int addSlot(V value) {
+		if (_size == _handles.length){
+			this.resizeSlots(_handles.length * 2);
+		}
+		int handle;
+		if (_freeCount > 0){
+			handle = _free[--_freeCount];
+		} else {
+			if (_nextHandle == _slots.length){
+				this.resizeHandles(_slots.length * 2);
+			}
+			handle = _nextHandle++;
+		}
+		int slot = _size++;
+		_handles[slot] = handle;
+		_slots[handle] = slot;
+		_values[handle] = value;
+		return slot;
+	}
+
+	/**
+	 * Records that the handle in the given slot now lives there. The
+	 * sift loops call this once per entry they move.
+	 *
+	 * @param slot that was just written
+	 */
+	protected final void placed(int slot) {
+		_slots[_handles[slot]] = slot;
+	}
+
+	/**
+	 * Checks that the handle is in use and returns its slot.
+	 *
+	 * @param handle to check
+	 * @return the slot of the handle
+	 * @throws InvalidEntryException if the handle is not in the heap
+	 */
+	protected final int checkHandle(int handle) throws InvalidEntryException {
+		if (!this.contains(handle)){
+			throw new InvalidEntryException("Invalid entry");
+		}
+		return _slots[handle];
+	}
+
+	protected final void checkNotEmpty() throws EmptyPriorityQueueException {
+		if (_size == 0){
+			throw new EmptyPriorityQueueException("ERROR: Heap is empty");
+		}
+	}
+
+	/**
+	 * Removes the entry in the given slot by moving the last entry into
+	 * its place and sifting that entry whichever way it needs to go.
+	 *
+	 * @param slot of the entry to be removed
+	 * @return the value of the removed entry
+	 */
+	@SuppressWarnings("unchecked")
+	private V removeSlot(int slot) {
+		int handle = _handles[slot];
+		V value = (V) _values[handle];
+		_values[handle] = null;
+		_slots[handle] = -1;
+		_free[_freeCount++] = handle;
+
+		int last = --_size;
+		if (slot != last){
+			this.moveSlot(last, slot);
+			int moved = _handles[slot];
+			this.siftUp(slot);
+			this.siftDown(_slots[moved]);
+		}
+		return value;
+	}
+
+	// Grows the arrays indexed by heap slot
+	private void resizeSlots(int capacity) {
+		_handles = Arrays.copyOf(_handles, capacity);
+		this.resizeKeys(capacity);
+	}
+
+	// Grows the arrays indexed by handle
+	private void resizeHandles(int capacity) {
+		_slots = Arrays.copyOf(_slots, capacity);
+		_values = Arrays.copyOf(_values, capacity);
+		_free = Arrays.copyOf(_free, capacity);
+	}
+}
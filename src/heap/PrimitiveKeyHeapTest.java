@@ -0,0 +1,201 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * This class is used to test the functionality of IntKeyHeap, LongKeyHeap
+ * and DoubleKeyHeap.
+ */
+
+/* The three heaps share their handle bookkeeping (PrimitiveKeyHeap) and only
+ * differ in the type of their keys, so most of the tests run against IntKeyHeap
+ * and the other two get a heap order test each. We test that handles keep
+ * working for remove(), replaceKey() and replaceValue() as entries move around,
+ * that removed handles are rejected, and that the appropriate exceptions are
+ * thrown.
+ */
+
+public class PrimitiveKeyHeapTest {
+
+	/**
+	 * To check that removeMin() returns values in order of their keys, for
+	 * a shuffled set of keys large enough to make the arrays grow.
+	 */
+	@Test
+	public void testIntHeapOrder() {
+		IntKeyHeap<String> heap = new IntKeyHeap<String>();
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < 500; i++){
+			keys.add(i);
+		}
+		Collections.shuffle(keys, new Random(16));
+		for (int key : keys){
+			heap.insert(key, "v" + key);
+		}
+
+		assertThat(heap.size(), is(500));
+		for (int i = 0; i < 500; i++){
+			assertThat(heap.minKey(), is(i));
+			assertThat(heap.removeMin(), is("v" + i));
+		}
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * To check that the handle returned by insert() can be used to read the
+	 * entry back, and that replaceValue() returns the old value.
+	 */
+	@Test
+	public void testHandles() {
+		IntKeyHeap<String> heap = new IntKeyHeap<String>();
+		int a = heap.insert(11, "A");
+		int b = heap.insert(7, "B");
+
+		assertThat(heap.getKey(a), is(11));
+		assertThat(heap.getValue(b), is("B"));
+		assertThat(heap.minHandle(), is(b));
+		assertThat(heap.replaceValue(a, "C"), is("A"));
+		assertThat(heap.getValue(a), is("C"));
+	}
+
+	/**
+	 * To check that replaceKey() moves entries both up and down the heap and
+	 * returns the old key.
+	 */
+	@Test
+	public void testReplaceKey() {
+		IntKeyHeap<String> heap = new IntKeyHeap<String>();
+		int min = heap.insert(11, "A");
+		heap.insert(13, "B");
+		heap.insert(64, "C");
+		int last = heap.insert(77, "D");
+
+		assertThat(heap.replaceKey(last, 1), is(77)); // Should upheap to the root
+		assertThat(heap.minValue(), is("D"));
+
+		heap.replaceKey(last, 100); // And back down again
+		heap.replaceKey(min, 99);
+		assertThat(heap.removeMin(), is("B"));
+		assertThat(heap.removeMin(), is("C"));
+		assertThat(heap.removeMin(), is("A"));
+		assertThat(heap.removeMin(), is("D"));
+	}
+
+	/**
+	 * To check that remove() takes out exactly the given entry wherever it
+	 * is, and that the remaining entries are still in heap order.
+	 */
+	@Test
+	public void testRemoveHandle() {
+		IntKeyHeap<String> heap = new IntKeyHeap<String>();
+		heap.insert(7, "A");
+		int toRemove = heap.insert(10, "B");
+		heap.insert(13, "C");
+		heap.insert(16, "D");
+		heap.insert(19, "E");
+		heap.insert(22, "F");
+
+		assertThat(heap.remove(toRemove), is("B"));
+		assertFalse(heap.contains(toRemove));
+		assertThat(heap.size(), is(5));
+
+		int[] expected = {7, 13, 16, 19, 22};
+		for (int key : expected){
+			assertThat(heap.minKey(), is(key));
+			heap.removeMin();
+		}
+	}
+
+	/**
+	 * To check that handles are recycled after their entry is removed.
+	 */
+	@Test
+	public void testHandlesAreReused() {
+		IntKeyHeap<String> heap = new IntKeyHeap<String>();
+		int a = heap.insert(1, "A");
+		heap.removeMin();
+		int b = heap.insert(2, "B");
+
+		assertThat(b, is(a));
+		assertThat(heap.getValue(b), is("B"));
+	}
+
+	/**
+	 * To check heap order with long keys beyond the range of an int.
+	 */
+	@Test
+	public void testLongHeapOrder() {
+		LongKeyHeap<String> heap = new LongKeyHeap<String>();
+		heap.insert(Long.MAX_VALUE, "C");
+		heap.insert(5000000000L, "B");
+		int a = heap.insert(-5000000000L, "A");
+
+		assertThat(heap.minKey(), is(-5000000000L));
+		heap.replaceKey(a, 6000000000L);
+		assertThat(heap.removeMin(), is("B"));
+		assertThat(heap.removeMin(), is("A"));
+		assertThat(heap.removeMin(), is("C"));
+	}
+
+	/**
+	 * To check heap order with double keys.
+	 */
+	@Test
+	public void testDoubleHeapOrder() {
+		DoubleKeyHeap<String> heap = new DoubleKeyHeap<String>();
+		heap.insert(0.75, "B");
+		heap.insert(9.90909, "C");
+		heap.insert(-7.7, "A");
+
+		assertThat(heap.removeMin(), is("A"));
+		assertThat(heap.removeMin(), is("B"));
+		assertThat(heap.removeMin(), is("C"));
+	}
+
+	/**
+	 * Here we test that a NaN key is rejected, since it can't be ordered.
+	 */
+	@Test(expected = InvalidKeyException.class)
+	public void testDoubleInsertThrowsInvalidKeyException() {
+		DoubleKeyHeap<String> heap = new DoubleKeyHeap<String>();
+		heap.insert(Double.NaN, "A");
+	}
+
+	/**
+	 * Here we test that using a handle after its entry was removed throws an
+	 * InvalidEntryException.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testRemovedHandleThrowsInvalidEntryException() {
+		IntKeyHeap<String> heap = new IntKeyHeap<String>();
+		int a = heap.insert(1, "A");
+		heap.insert(2, "B");
+		heap.remove(a);
+		heap.replaceKey(a, 3);
+	}
+
+	/**
+	 * Here we test that removeMin() on an empty heap throws an
+	 * EmptyPriorityQueueException.
+	 */
+	@Test(expected = EmptyPriorityQueueException.class)
+	public void testRemoveMinThrowsEmptyPriorityQueueException() {
+		LongKeyHeap<String> heap = new LongKeyHeap<String>();
+		heap.removeMin();
+	}
+
+}
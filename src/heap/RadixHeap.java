@@ -0,0 +1,336 @@
+package heap;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A radix heap: an adaptable priority queue for non-negative long keys
+ * that are monotone, meaning no key is ever less than the last minimum
+ * removed (as with timestamps in an event queue). It makes no key
+ * comparisons beyond that check.
+ *
+ * Entries are kept in 65 buckets according to the highest bit in which
+ * their key differs from the last minimum removed ("last"): bucket 0
+ * holds keys equal to last, and bucket i holds keys whose highest
+ * differing bit is i - 1. removeMin takes from bucket 0 if it can.
+ * Otherwise it finds the first non-empty bucket, makes its least key
+ * the new last and redistributes the bucket; every entry in it moves to
+ * a lower bucket. An entry can only move down 64 times, so removeMin is
+ * O(log C) amortized for keys below C, and insert and replaceKey are
+ * O(1).
+ *
+ * Keys less than last are rejected with an InvalidKeyException, which
+ * costs one comparison. The entries handed out are the bucket list nodes
+ * themselves, and keep working until they are removed.
+ */
+
+public class RadixHeap<V> implements AdaptablePriorityQueue<Long,V> {
+
+	private static final int BUCKETS = 65;
+
+	private final Node<V>[] _buckets;
+	// Bit i - 1 is set if bucket i (for i >= 1) is not empty
+	private long _occupied;
+	private long _last;
+	private int _size;
+
+	/**
+	 * Creates an empty heap.
+	 */
+	@SuppressWarnings("unchecked")
+	public RadixHeap() {
+		_buckets = new Node[BUCKETS];
+		_occupied = 0;
+		_last = 0;
+		_size = 0;
+	}
+
+	/**
+	 * Returns the number of entries in the heap.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns the key of the last minimum removed. No key less than this
+	 * can be inserted.
+	 *
+	 * @return the lower bound on keys
+	 */
+	public long getLast() {
+		return _last;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key. This scans
+	 * the first non-empty bucket if bucket 0 is empty, but does not move
+	 * anything, so the lower bound on keys stays where it was.
+	 *
+	 * @return the entry with the minimum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<Long,V> min() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		if (_buckets[0] != null){
+			return _buckets[0];
+		}
+		return this.least(_buckets[this.firstOccupied()]);
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created. This
+	 * method runs in O(1) time.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the entry created using the key/value parameters
+	 * @throws InvalidKeyException if the key is null or less than getLast()
+	 */
+	public Entry<Long,V> insert(Long key, V value) throws InvalidKeyException {
+		long k = this.checkKey(key);
+		Node<V> node = new Node<V>(this, k, value);
+		this.add(node);
+		_size++;
+		return node;
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key. This method runs in
+	 * O(log C) amortized time, for keys below C.
+	 *
+	 * @return the entry with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<Long,V> removeMin() throws EmptyPriorityQueueException {
+		this.checkNotEmpty();
+		if (_buckets[0] == null){
+			this.redistribute(this.firstOccupied());
+		}
+		Node<V> min = _buckets[0];
+		this.unlink(min);
+		this.detach(min);
+		return min;
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap. This method
+	 * runs in O(1) time.
+	 *
+	 * @param entry to be removed from the heap
+	 * @return the entry specified for removal by the parameter
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	public Entry<Long,V> remove(Entry<Long,V> entry) throws InvalidEntryException {
+		Node<V> node = this.checkEntry(entry);
+		this.unlink(node);
+		this.detach(node);
+		return node;
+	}
+
+	/**
+	 * Replaces the key of the given entry, which only has to move it to
+	 * the right bucket. Both decreasing and increasing a key run in O(1)
+	 * time, as long as the new key is not less than getLast().
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 * @throws InvalidKeyException if the key is null or less than getLast()
+	 */
+	public Long replaceKey(Entry<Long,V> entry, Long key) throws InvalidEntryException, InvalidKeyException {
+		Node<V> node = this.checkEntry(entry);
+		long k = this.checkKey(key);
+		long oldKey = node._key;
+		node._key = k;
+		if (this.bucketOf(k) != node._bucket){
+			this.unlink(node);
+			this.add(node);
+		}
+		return oldKey;
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1)
+	 * time.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	public V replaceValue(Entry<Long,V> entry, V value) throws InvalidEntryException {
+		Node<V> node = this.checkEntry(entry);
+		V oldValue = node._value;
+		node._value = value;
+		return oldValue;
+	}
+
+	/**
+	 * Makes the least key in the given bucket the new last, and moves
+	 * every entry of the bucket to its bucket for that last. The least
+	 * entry ends up in bucket 0; all the others end up below the bucket
+	 * they came from, since they agree with the new last on every bit
+	 * above bucket - 1.
+	 *
+	 * @param bucket a non-empty bucket, with every lower bucket empty
+	 */
+	private void redistribute(int bucket) {
+		Node<V> node = _buckets[bucket];
+		_last = this.least(node)._key;
+		_buckets[bucket] = null;
+		_occupied &= ~(1L << (bucket - 1));
+		while (node != null){
+			Node<V> next = node._next;
+			this.add(node);
+			node = next;
+		}
+	}
+
+	// The entry with the least key in a bucket's list
+	private Node<V> least(Node<V> node) {
+		Node<V> least = node;
+		for (node = node._next; node != null; node = node._next){
+			if (node._key < least._key){
+				least = node;
+			}
+		}
+		return least;
+	}
+
+	// The bucket for a key, given the current last
+	private int bucketOf(long key) {
+		return 64 - Long.numberOfLeadingZeros(key ^ _last);
+	}
+
+	// The first non-empty bucket above bucket 0
+	private int firstOccupied() {
+		return Long.numberOfTrailingZeros(_occupied) + 1;
+	}
+
+	// Puts a node at the front of the list of its bucket
+	private void add(Node<V> node) {
+		int bucket = this.bucketOf(node._key);
+		node._bucket = bucket;
+		node._prev = null;
+		node._next = _buckets[bucket];
+		if (node._next != null){
+			node._next._prev = node;
+		}
+		_buckets[bucket] = node;
+		if (bucket > 0){
+			_occupied |= 1L << (bucket - 1);
+		}
+	}
+
+	// Takes a node out of the list of its bucket
+	private void unlink(Node<V> node) {
+		int bucket = node._bucket;
+		if (node._prev == null){
+			_buckets[bucket] = node._next;
+			if (node._next == null && bucket > 0){
+				_occupied &= ~(1L << (bucket - 1));
+			}
+		} else {
+			node._prev._next = node._next;
+		}
+		if (node._next != null){
+			node._next._prev = node._prev;
+		}
+		node._prev = null;
+		node._next = null;
+	}
+
+	// Marks a removed node as no longer in the heap
+	private void detach(Node<V> node) {
+		node._heap = null;
+		_size--;
+	}
+
+	/**
+	 * Checks that the key is present and not less than the last minimum
+	 * removed, and unboxes it.
+	 *
+	 * @param key to be checked
+	 * @return the key as a long
+	 * @throws InvalidKeyException if the key is null or less than last
+	 */
+	private long checkKey(Long key) throws InvalidKeyException {
+		if (key == null){
+			throw new InvalidKeyException("ERROR: Key is null");
+		}
+		long k = key;
+		if (k < _last){
+			throw new InvalidKeyException("ERROR: Key " + k + " is less than the last minimum, " + _last);
+		}
+		return k;
+	}
+
+	/**
+	 * Checks that the entry is a node currently in this heap.
+	 *
+	 * @param entry to be checked
+	 * @return the entry cast as a Node
+	 * @throws InvalidEntryException if the entry is not in this heap
+	 */
+	@SuppressWarnings("unchecked")
+	private Node<V> checkEntry(Entry<Long,V> entry) throws InvalidEntryException {
+		if (!(entry instanceof Node)){
+			throw new InvalidEntryException("Invalid entry");
+		}
+		Node<V> node = (Node<V>) entry;
+		if (node._heap != this){
+			throw new InvalidEntryException("ERROR: Entry is not in this heap");
+		}
+		return node;
+	}
+
+	private void checkNotEmpty() throws EmptyPriorityQueueException {
+		if (_size == 0){
+			throw new EmptyPriorityQueueException("ERROR: Heap is empty");
+		}
+	}
+
+	/**
+	 * An entry of the heap, which is also a node in its bucket's doubly
+	 * linked list.
+	 */
+	private static final class Node<V> implements Entry<Long,V> {
+
+		private RadixHeap<V> _heap;
+		private long _key;
+		private V _value;
+		private int _bucket;
+		private Node<V> _prev;
+		private Node<V> _next;
+
+		private Node(RadixHeap<V> heap, long key, V value) {
+			_heap = heap;
+			_key = key;
+			_value = value;
+		}
+
+		public Long getKey() {
+			return _key;
+		}
+
+		public V getValue() {
+			return _value;
+		}
+	}
+}
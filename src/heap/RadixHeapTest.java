@@ -0,0 +1,147 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * This class is used to test the functionality of RadixHeap.
+ */
+
+/* Most of the tests run an event-queue style simulation: take out the
+ * earliest event and schedule new ones at or after its time, with some
+ * events moved earlier (but not before the current time) or cancelled,
+ * checked against a plain list. The rest check the monotone precondition
+ * and the usual exceptions.
+ */
+
+public class RadixHeapTest {
+
+	/**
+	 * To check that removeMin() returns keys in order, including keys
+	 * that only differ in their high bits and duplicates.
+	 */
+	@Test
+	public void testHeapOrder() {
+		RadixHeap<String> heap = new RadixHeap<String>();
+		long[] keys = {Long.MAX_VALUE, 5, 1L << 40, 0, 5, (1L << 40) + 1, 7};
+		for (long key : keys){
+			heap.insert(key, "v" + key);
+		}
+		long[] sorted = {0, 5, 5, 7, 1L << 40, (1L << 40) + 1, Long.MAX_VALUE};
+		for (long key : sorted){
+			assertThat(heap.min().getKey(), is(key));
+			assertThat(heap.removeMin().getKey(), is(key));
+			assertThat(heap.getLast(), is(key));
+		}
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * To check a simulation of an event queue against a plain list of the
+	 * keys that should be in the heap.
+	 */
+	@Test
+	public void testEventSimulation() {
+		RadixHeap<Integer> heap = new RadixHeap<Integer>();
+		List<Entry<Long,Integer>> entries = new ArrayList<Entry<Long,Integer>>();
+		List<Long> expected = new ArrayList<Long>();
+		Random random = new Random(13);
+		for (int i = 0; i < 100; i++){
+			long key = random.nextInt(1000);
+			entries.add(heap.insert(key, i));
+			expected.add(key);
+		}
+		for (int step = 0; step < 20000 && !expected.isEmpty(); step++){
+			int op = random.nextInt(10);
+			long now = heap.getLast();
+			if (op < 4){
+				Entry<Long,Integer> min = heap.removeMin();
+				assertThat(min.getKey(), is(Collections.min(expected)));
+				entries.remove(min);
+				expected.remove(min.getKey());
+			} else if (op < 7){
+				long key = now + random.nextInt(1 << random.nextInt(30));
+				entries.add(heap.insert(key, step));
+				expected.add(key);
+			} else if (op < 9){
+				Entry<Long,Integer> entry = entries.get(random.nextInt(entries.size()));
+				long oldKey = entry.getKey();
+				long key = random.nextBoolean()
+					? now + (oldKey - now) / 2 // Moved earlier
+					: oldKey + random.nextInt(1000); // Moved later
+				expected.remove(oldKey);
+				assertThat(heap.replaceKey(entry, key), is(oldKey));
+				expected.add(key);
+			} else {
+				Entry<Long,Integer> entry = entries.remove(random.nextInt(entries.size()));
+				heap.remove(entry);
+				expected.remove(entry.getKey());
+			}
+			assertThat(heap.size(), is(expected.size()));
+		}
+		Collections.sort(expected);
+		for (long key : expected){
+			assertThat(heap.removeMin().getKey(), is(key));
+		}
+	}
+
+	/**
+	 * Here we test that a key less than the last minimum removed is
+	 * rejected with an InvalidKeyException.
+	 */
+	@Test(expected = InvalidKeyException.class)
+	public void testInsertBelowLastThrowsInvalidKeyException() {
+		RadixHeap<String> heap = new RadixHeap<String>();
+		heap.insert(10L, "A");
+		heap.insert(20L, "B");
+		heap.removeMin();
+		heap.insert(9L, "C");
+	}
+
+	/**
+	 * Here we test that replaceKey() also enforces the lower bound.
+	 */
+	@Test(expected = InvalidKeyException.class)
+	public void testReplaceKeyBelowLastThrowsInvalidKeyException() {
+		RadixHeap<String> heap = new RadixHeap<String>();
+		heap.insert(10L, "A");
+		Entry<Long,String> entry = heap.insert(20L, "B");
+		heap.removeMin();
+		heap.replaceKey(entry, 5L);
+	}
+
+	/**
+	 * Here we test that an entry can't be used once it has been removed.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testRemovedEntryThrowsInvalidEntryException() {
+		RadixHeap<String> heap = new RadixHeap<String>();
+		Entry<Long,String> entry = heap.insert(1L, "A");
+		heap.removeMin();
+		heap.remove(entry);
+	}
+
+	/**
+	 * Here we test that removeMin() on an empty heap throws an
+	 * EmptyPriorityQueueException.
+	 */
+	@Test(expected = EmptyPriorityQueueException.class)
+	public void testRemoveMinThrowsEmptyPriorityQueueException() {
+		RadixHeap<String> heap = new RadixHeap<String>();
+		heap.removeMin();
+	}
+
+}
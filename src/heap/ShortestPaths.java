@@ -0,0 +1,302 @@
+package heap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Single-source shortest paths over a CsrGraph, by Dijkstra's algorithm
+ * or A*, with a MyHeap as the priority queue. One engine answers any
+ * number of queries on its graph, and keeps everything it allocates
+ * between them.
+ *
+ * There are two ways to handle finding a shorter path to a vertex that
+ * is already in the queue:
+ *
+ * - DECREASE_KEY keeps one MyHeapEntry per vertex, in an array indexed
+ *   by vertex, and calls replaceKey on it. Each vertex's entry is made
+ *   the first time any query reaches it and is reused by every later
+ *   query, so the heap never holds more than one entry per vertex.
+ * - LAZY_REINSERT just inserts another entry, and removeMin skips the
+ *   stale ones when they come out (the vertex is already settled). Inserts
+ *   are cheaper than replaceKey but the heap grows with the edge count.
+ *
+ * Per-vertex state (distance, parent, entry) lives in arrays indexed by
+ * vertex that are not cleared between queries. Instead each query gets a
+ * new number, and a vertex's state only counts if it was stamped with the
+ * current one, so starting a query is O(1) apart from clearing the heap.
+ *
+ * A* needs a consistent heuristic (never more than the edge weight plus
+ * the estimate at the edge's target, and 0 at the target), which makes
+ * every settled distance final just as in Dijkstra's algorithm.
+ */
+
+public class ShortestPaths {
+
+	/**
+	 * The distance returned for a target that can't be reached.
+	 */
+	public static final long UNREACHABLE = Long.MAX_VALUE;
+
+	/**
+	 * How a shorter path to a vertex already in the queue is handled.
+	 */
+	public enum Strategy {
+		DECREASE_KEY,
+		LAZY_REINSERT
+	}
+
+	/**
+	 * An estimate of the distance from each vertex to the target of an A*
+	 * search. It must be consistent for the distances to be right.
+	 */
+	public interface Heuristic {
+
+		/**
+		 * @param vertex a vertex of the graph
+		 * @return a lower bound on its distance to the target
+		 */
+		long estimate(int vertex);
+	}
+
+	private final CsrGraph _graph;
+	private final Strategy _strategy;
+	private final MyHeap<Long, Integer> _heap;
+
+	// Per-vertex state, which only counts for vertices stamped with the
+	// current query's number
+	private final MyHeapEntry<Long, Integer>[] _entries;
+	private final long[] _distances;
+	private final int[] _parents;
+	private final int[] _reached;
+	private final int[] _settled;
+	private int _query;
+
+	// Counts for the last query
+	private int _source;
+	private int _settledCount;
+	private int _staleCount;
+
+	/**
+	 * Creates an engine for the given graph.
+	 *
+	 * @param graph the graph to search
+	 * @param strategy how shorter paths to queued vertices are handled
+	 * @throws IllegalArgumentException if the graph or strategy is null
+	 */
+	@SuppressWarnings("unchecked")
+	public ShortestPaths(CsrGraph graph, Strategy strategy) {
+		if (graph == null || strategy == null){
+			throw new IllegalArgumentException();
+		}
+		_graph = graph;
+		_strategy = strategy;
+		_heap = new MyHeap<Long, Integer>(new LongComparator());
+		int vertices = graph.vertexCount();
+		_entries = new MyHeapEntry[strategy == Strategy.DECREASE_KEY ? vertices : 0];
+		_distances = new long[vertices];
+		_parents = new int[vertices];
+		_reached = new int[vertices];
+		_settled = new int[vertices];
+		_query = 0;
+		_source = -1;
+	}
+
+	/**
+	 * Returns the length of a shortest path from source to target by
+	 * Dijkstra's algorithm, which stops as soon as the target is settled.
+	 *
+	 * @param source the vertex to start from
+	 * @param target the vertex to find
+	 * @return the distance, or UNREACHABLE
+	 * @throws IllegalArgumentException if a vertex is out of range
+	 */
+	public long distance(int source, int target) {
+		this.checkVertex(target);
+		return this.search(source, target, null);
+	}
+
+	/**
+	 * Returns the length of a shortest path from source to target by A*
+	 * with the given heuristic, which stops as soon as the target is
+	 * settled.
+	 *
+	 * @param source the vertex to start from
+	 * @param target the vertex to find
+	 * @param heuristic a consistent estimate of each vertex's distance to target
+	 * @return the distance, or UNREACHABLE
+	 * @throws IllegalArgumentException if a vertex is out of range or the heuristic is null
+	 */
+	public long distance(int source, int target, Heuristic heuristic) {
+		this.checkVertex(target);
+		if (heuristic == null){
+			throw new IllegalArgumentException();
+		}
+		return this.search(source, target, heuristic);
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm from the source until every vertex it can
+	 * reach is settled. Use distanceTo and path for the results.
+	 *
+	 * @param source the vertex to start from
+	 * @throws IllegalArgumentException if the vertex is out of range
+	 */
+	public void searchAll(int source) {
+		this.search(source, -1, null);
+	}
+
+	/**
+	 * Returns the distance the last query settled for the vertex.
+	 *
+	 * @param vertex a vertex of the graph
+	 * @return its distance from the last query's source, or UNREACHABLE
+	 *         if that query didn't settle it
+	 * @throws IllegalArgumentException if the vertex is out of range
+	 */
+	public long distanceTo(int vertex) {
+		this.checkVertex(vertex);
+		return _settled[vertex] == _query && _query > 0 ? _distances[vertex] : UNREACHABLE;
+	}
+
+	/**
+	 * Returns a shortest path found by the last query, from its source to
+	 * the given vertex.
+	 *
+	 * @param vertex a vertex the last query settled
+	 * @return the vertices on the path, source first, or null if the last
+	 *         query didn't settle the vertex
+	 * @throws IllegalArgumentException if the vertex is out of range
+	 */
+	public int[] path(int vertex) {
+		if (this.distanceTo(vertex) == UNREACHABLE){
+			return null;
+		}
+		int length = 1;
+		for (int v = vertex; v != _source; v = _parents[v]){
+			length++;
+		}
+		int[] path = new int[length];
+		for (int v = vertex, i = length - 1; i >= 0; v = _parents[v], i--){
+			path[i] = v;
+		}
+		return path;
+	}
+
+	/**
+	 * @return the number of vertices the last query settled
+	 */
+	public int getSettledCount() {
+		return _settledCount;
+	}
+
+	/**
+	 * @return the number of stale entries the last query skipped (always
+	 *         0 with DECREASE_KEY)
+	 */
+	public int getStaleCount() {
+		return _staleCount;
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm, or A* if there is a heuristic, from the
+	 * source until the target (or, for -1, every reachable vertex) is
+	 * settled.
+	 *
+	 * @param source the vertex to start from
+	 * @param target the vertex to stop at, or -1
+	 * @param heuristic the A* estimate, or null for Dijkstra
+	 * @return the target's distance, or UNREACHABLE
+	 */
+	private long search(int source, int target, Heuristic heuristic) {
+		this.checkVertex(source);
+		this.startQuery(source);
+		this.reach(source, 0, source, heuristic);
+
+		while (!_heap.isEmpty()){
+			int v = _heap.removeMin().getValue();
+			if (_settled[v] == _query){
+				_staleCount++; // An old entry of a lazily reinserted vertex
+				continue;
+			}
+			_settled[v] = _query;
+			_settledCount++;
+			if (v == target){
+				return _distances[v];
+			}
+
+			long distance = _distances[v];
+			int end = _graph.offset(v + 1);
+			for (int e = _graph.offset(v); e < end; e++){
+				int w = _graph.target(e);
+				if (_settled[w] == _query){
+					continue;
+				}
+				long candidate = distance + _graph.weight(e);
+				if (_reached[w] != _query || candidate < _distances[w]){
+					this.reach(w, candidate, v, heuristic);
+				}
+			}
+		}
+		return UNREACHABLE;
+	}
+
+	/**
+	 * Records a new (or shorter) tentative distance for a vertex and
+	 * queues it, by inserting it, decreasing its entry's key, or
+	 * inserting another entry, depending on the strategy.
+	 *
+	 * @param vertex the vertex reached
+	 * @param distance its tentative distance
+	 * @param parent the vertex it was reached from
+	 * @param heuristic the A* estimate, or null for Dijkstra
+	 */
+	private void reach(int vertex, long distance, int parent, Heuristic heuristic) {
+		boolean queued = _reached[vertex] == _query;
+		_reached[vertex] = _query;
+		_distances[vertex] = distance;
+		_parents[vertex] = parent;
+		Long key = heuristic == null ? distance : distance + heuristic.estimate(vertex);
+
+		if (_strategy == Strategy.LAZY_REINSERT){
+			_heap.insert(key, vertex);
+		} else if (queued){
+			_heap.replaceKey(_entries[vertex], key);
+		} else {
+			MyHeapEntry<Long, Integer> entry = _entries[vertex];
+			if (entry == null){
+				entry = new MyHeapEntry<Long, Integer>(key, vertex);
+				_entries[vertex] = entry;
+			} else {
+				entry.setKey(key);
+			}
+			_heap.insert(entry);
+		}
+	}
+
+	// Empties the heap and gives the new query a number of its own
+	private void startQuery(int source) {
+		_heap.clear();
+		if (_query == Integer.MAX_VALUE){
+			// Numbers have run out: forget every stamp and start over
+			Arrays.fill(_reached, 0);
+			Arrays.fill(_settled, 0);
+			_query = 0;
+		}
+		_query++;
+		_source = source;
+		_settledCount = 0;
+		_staleCount = 0;
+	}
+
+	private void checkVertex(int vertex) {
+		if (vertex < 0 || vertex >= _graph.vertexCount()){
+			throw new IllegalArgumentException("ERROR: Vertex " + vertex + " is out of range");
+		}
+	}
+
+	private static final class LongComparator implements Comparator<Long> {
+		public int compare(Long o1, Long o2) {
+			return o1.compareTo(o2);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * This class is used to test the functionality of ShortestPaths (and the
+ * CsrGraph it runs on).
+ */
+
+/* Distances are checked against Bellman-Ford, which is slow but too
+ * simple to get wrong, on random graphs. A* is checked on a grid with the
+ * Manhattan distance as its heuristic (consistent, since every edge
+ * weighs at least 1).
+ */
+
+public class ShortestPathsTest {
+
+	/**
+	 * To check that the edges out of each vertex are grouped together in
+	 * the order they were given.
+	 */
+	@Test
+	public void testCsrGraph() {
+		CsrGraph graph = CsrGraph.fromEdges(4, new int[] {2, 0, 2, 1}, new int[] {3, 1, 0, 2},
+				new int[] {5, 6, 7, 8});
+		assertThat(graph.vertexCount(), is(4));
+		assertThat(graph.edgeCount(), is(4));
+		assertThat(graph.offset(0), is(0));
+		assertThat(graph.offset(2), is(2));
+		assertThat(graph.offset(3), is(4));
+		assertThat(graph.offset(4), is(4));
+		assertThat(graph.target(2), is(3));
+		assertThat(graph.weight(2), is(5));
+		assertThat(graph.target(3), is(0));
+		assertThat(graph.weight(3), is(7));
+	}
+
+	/**
+	 * To check a small graph by hand: distances, early exit, paths and an
+	 * unreachable vertex.
+	 */
+	@Test
+	public void testSmallGraph() {
+		// 0 -> 1 (4), 0 -> 2 (1), 2 -> 1 (2), 1 -> 3 (5); 4 is isolated
+		CsrGraph graph = CsrGraph.fromEdges(5, new int[] {0, 0, 2, 1}, new int[] {1, 2, 1, 3},
+				new int[] {4, 1, 2, 5});
+		for (ShortestPaths.Strategy strategy : ShortestPaths.Strategy.values()){
+			ShortestPaths paths = new ShortestPaths(graph, strategy);
+			assertThat(paths.distance(0, 3), is(8L));
+			assertThat(Arrays.toString(paths.path(3)), is("[0, 2, 1, 3]"));
+			assertThat(paths.distance(0, 4), is(ShortestPaths.UNREACHABLE));
+			assertTrue(paths.path(4) == null);
+			assertThat(paths.distance(3, 0), is(ShortestPaths.UNREACHABLE));
+			assertThat(paths.distance(2, 2), is(0L));
+			assertThat(Arrays.toString(paths.path(2)), is("[2]"));
+		}
+	}
+
+	/**
+	 * To check both strategies against Bellman-Ford on random graphs,
+	 * from several sources in a row so that the engine's reuse between
+	 * queries is exercised.
+	 */
+	@Test
+	public void testAgainstBellmanFord() {
+		Random random = new Random(19);
+		int vertices = 300;
+		int edges = 1500;
+		int[] from = new int[edges];
+		int[] to = new int[edges];
+		int[] weights = new int[edges];
+		for (int e = 0; e < edges; e++){
+			from[e] = random.nextInt(vertices);
+			to[e] = random.nextInt(vertices);
+			weights[e] = random.nextInt(100);
+		}
+		CsrGraph graph = CsrGraph.fromEdges(vertices, from, to, weights);
+		ShortestPaths decrease = new ShortestPaths(graph, ShortestPaths.Strategy.DECREASE_KEY);
+		ShortestPaths lazy = new ShortestPaths(graph, ShortestPaths.Strategy.LAZY_REINSERT);
+		for (int source = 0; source < 20; source++){
+			long[] expected = this.bellmanFord(vertices, from, to, weights, source);
+			decrease.searchAll(source);
+			lazy.searchAll(source);
+			for (int v = 0; v < vertices; v++){
+				assertThat(decrease.distanceTo(v), is(expected[v]));
+				assertThat(lazy.distanceTo(v), is(expected[v]));
+				if (expected[v] != ShortestPaths.UNREACHABLE){
+					assertThat(this.pathLength(graph, decrease.path(v)), is(expected[v]));
+				}
+			}
+			assertThat(decrease.getStaleCount(), is(0));
+			// Early exit to a far vertex, which leaves entries in the heap
+			// for the next query to clear
+			assertThat(decrease.distance(source, vertices - 1), is(expected[vertices - 1]));
+		}
+	}
+
+	/**
+	 * To check that A* finds the same distances as Dijkstra's algorithm on
+	 * a grid, while settling fewer vertices.
+	 */
+	@Test
+	public void testAStarOnGrid() {
+		final int side = 40;
+		Random random = new Random(20);
+		int[] from = new int[4 * side * side];
+		int[] to = new int[from.length];
+		int[] weights = new int[from.length];
+		int edges = 0;
+		for (int y = 0; y < side; y++){
+			for (int x = 0; x < side; x++){
+				int[][] neighbours = {{x + 1, y}, {x - 1, y}, {x, y + 1}, {x, y - 1}};
+				for (int[] n : neighbours){
+					if (n[0] >= 0 && n[0] < side && n[1] >= 0 && n[1] < side){
+						from[edges] = y * side + x;
+						to[edges] = n[1] * side + n[0];
+						weights[edges] = 1 + random.nextInt(3);
+						edges++;
+					}
+				}
+			}
+		}
+		CsrGraph graph = CsrGraph.fromEdges(side * side, Arrays.copyOf(from, edges),
+				Arrays.copyOf(to, edges), Arrays.copyOf(weights, edges));
+		ShortestPaths dijkstra = new ShortestPaths(graph, ShortestPaths.Strategy.DECREASE_KEY);
+		ShortestPaths aStar = new ShortestPaths(graph, ShortestPaths.Strategy.DECREASE_KEY);
+		for (int query = 0; query < 20; query++){
+			int source = random.nextInt(side * side);
+			final int target = random.nextInt(side * side);
+			ShortestPaths.Heuristic manhattan = new ShortestPaths.Heuristic() {
+				public long estimate(int vertex) {
+					return Math.abs(vertex % side - target % side) + Math.abs(vertex / side - target / side);
+				}
+			};
+			assertThat(aStar.distance(source, target, manhattan), is(dijkstra.distance(source, target)));
+			assertTrue(aStar.getSettledCount() <= dijkstra.getSettledCount());
+		}
+	}
+
+	/**
+	 * Here we test that a vertex out of range throws an
+	 * IllegalArgumentException.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testVertexOutOfRangeThrowsIllegalArgumentException() {
+		CsrGraph graph = CsrGraph.fromEdges(2, new int[] {0}, new int[] {1}, new int[] {1});
+		new ShortestPaths(graph, ShortestPaths.Strategy.DECREASE_KEY).distance(0, 2);
+	}
+
+	/**
+	 * Here we test that a negative edge weight is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeWeightThrowsIllegalArgumentException() {
+		CsrGraph.fromEdges(2, new int[] {0}, new int[] {1}, new int[] {-1});
+	}
+
+	private long[] bellmanFord(int vertices, int[] from, int[] to, int[] weights, int source) {
+		long[] distances = new long[vertices];
+		Arrays.fill(distances, ShortestPaths.UNREACHABLE);
+		distances[source] = 0;
+		for (int round = 1; round < vertices; round++){
+			boolean changed = false;
+			for (int e = 0; e < from.length; e++){
+				if (distances[from[e]] != ShortestPaths.UNREACHABLE
+						&& distances[from[e]] + weights[e] < distances[to[e]]){
+					distances[to[e]] = distances[from[e]] + weights[e];
+					changed = true;
+				}
+			}
+			if (!changed){
+				break;
+			}
+		}
+		return distances;
+	}
+
+	// The length of a path, using the lightest edge between each pair
+	private long pathLength(CsrGraph graph, int[] path) {
+		long length = 0;
+		for (int i = 1; i < path.length; i++){
+			long lightest = Long.MAX_VALUE;
+			for (int e = graph.offset(path[i - 1]); e < graph.offset(path[i - 1] + 1); e++){
+				if (graph.target(e) == path[i]){
+					lightest = Math.min(lightest, graph.weight(e));
+				}
+			}
+			length += lightest;
+		}
+		return length;
+	}
+
+}
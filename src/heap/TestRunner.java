@@ -6,7 +6,14 @@ import org.junit.runner.notification.Failure;
 
 public class TestRunner {
    public static void main(String[] args) {
-      Result result = JUnitCore.runClasses(MyLinkedHeapTreeTest.class, MyHeapTest.class);
+      Result result = JUnitCore.runClasses(MyLinkedHeapTreeTest.class, MyArrayHeapTreeTest.class,
+            MyHeapTest.class, PrimitiveKeyHeapTest.class, ConcurrentMyHeapTest.class,
+            MultiQueueTest.class, OffHeapHeapTest.class, MappedHeapTest.class,
+            JournaledHeapTest.class, PairingHeapTest.class, MinMaxHeapTest.class,
+            RadixHeapTest.class, BucketQueueTest.class, TimingWheelTest.class,
+            TopKTest.class, KWayMergerTest.class, ExternalSorterTest.class,
+            ShortestPathsTest.class, HeapMetricsTest.class,
+            HeapOperationEventTest.class);
       for (Failure failure : result.getFailures()) {
          System.out.println(failure.toString());
       }
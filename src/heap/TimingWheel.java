@@ -0,0 +1,320 @@
+package heap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A timer facility for timeouts, most of which are cancelled before they
+ * fire. Time is counted in ticks; a timer is scheduled for a deadline
+ * tick, and tick() moves the clock forward one tick and returns the batch
+ * of timers due at it.
+ *
+ * Near deadlines go into a hierarchical timing wheel: a number of levels
+ * (4 by default) of 64 slots each, where a slot at level l covers 64^l
+ * ticks. A timer goes to the level of the highest 6-bit group in which
+ * its deadline differs from the current tick, into the slot for that
+ * group of its deadline, so with 4 levels the wheel holds deadlines up to
+ * 2^24 ticks out. Each slot is a doubly linked list, so schedule and
+ * cancel are O(1). Whenever the clock's low groups wrap around to zero,
+ * the slot it has reached on the next level up is emptied and its timers
+ * placed again, which moves each of them down at least one level
+ * ("cascading"); a timer is placed at most once per level.
+ *
+ * Deadlines beyond the wheel go to a backing MyHeap keyed by deadline.
+ * Each time the whole wheel wraps around, the timers whose deadlines now
+ * fit are taken out of the MyHeap and placed on the wheel. Only those far
+ * timers pay O(log n) to schedule and cancel.
+ *
+ * The entries handed out are the timers, with the deadline as the key.
+ * Cancelling a timer that has fired or was already cancelled just returns
+ * false, since timeouts and cancellations race as a matter of course.
+ */
+
+public class TimingWheel<V> {
+
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int DEFAULT_LEVELS = 4;
+
+	// Slot s of level l is _slots[l * SLOTS + s]
+	private final Node<V>[] _slots;
+	private final int _levels;
+	private final MyHeap<Long, Node<V>> _overflow;
+	private long _now;
+	private int _size;
+
+	/**
+	 * Creates an empty timing wheel with 4 levels, at tick 0.
+	 */
+	public TimingWheel() {
+		this(0, DEFAULT_LEVELS);
+	}
+
+	/**
+	 * Creates an empty timing wheel with the given number of levels,
+	 * starting at the given tick.
+	 *
+	 * @param now the starting tick
+	 * @param levels the number of wheel levels, from 1 to 10
+	 * @throws IllegalArgumentException if now is negative or levels is out of range
+	 */
+	@SuppressWarnings("unchecked")
+	public TimingWheel(long now, int levels) {
+		if (now < 0 || levels < 1 || levels * SLOT_BITS >= 63){
+			throw new IllegalArgumentException("ERROR: Invalid start tick or number of levels");
+		}
+		_slots = new Node[levels * SLOTS];
+		_levels = levels;
+		_overflow = new MyHeap<Long, Node<V>>(new LongComparator());
+		_now = now;
+		_size = 0;
+	}
+
+	/**
+	 * Returns the number of pending timers.
+	 *
+	 * @return an int representing the number of timers that have not fired or been cancelled
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns whether there are no pending timers.
+	 *
+	 * @return true if no timers are pending; false otherwise
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns the current tick.
+	 *
+	 * @return the tick the clock is at
+	 */
+	public long getTime() {
+		return _now;
+	}
+
+	/**
+	 * Returns the number of pending timers kept in the backing MyHeap
+	 * because their deadlines are beyond the wheel.
+	 *
+	 * @return the number of far timers
+	 */
+	public int getOverflowSize() {
+		return _overflow.size();
+	}
+
+	/**
+	 * Schedules a timer to fire at the given tick, and returns it. This
+	 * runs in O(1) time if the deadline is within the wheel, or O(log n)
+	 * if it goes to the backing MyHeap.
+	 *
+	 * @param deadline the tick at which the timer fires
+	 * @param value stored with the timer
+	 * @return the timer, whose key is its deadline
+	 * @throws InvalidKeyException if the deadline is null or not after the current tick
+	 */
+	public Entry<Long,V> schedule(Long deadline, V value) throws InvalidKeyException {
+		if (deadline == null){
+			throw new InvalidKeyException("ERROR: Deadline is null");
+		}
+		if (deadline <= _now){
+			throw new InvalidKeyException("ERROR: Deadline " + deadline + " is not after the current tick, " + _now);
+		}
+		Node<V> node = new Node<V>(this, deadline, value);
+		this.place(node);
+		_size++;
+		return node;
+	}
+
+	/**
+	 * Cancels a pending timer, so that it won't fire. This runs in O(1)
+	 * time for a timer on the wheel, or O(log n) for one in the backing
+	 * MyHeap.
+	 *
+	 * @param timer the entry returned when it was scheduled
+	 * @return true if the timer was pending; false if it had already fired or been cancelled
+	 * @throws InvalidEntryException if the entry was not scheduled on this wheel
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean cancel(Entry<Long,V> timer) throws InvalidEntryException {
+		if (!(timer instanceof Node) || ((Node<V>) timer)._owner != this){
+			throw new InvalidEntryException("ERROR: Timer was not scheduled on this wheel");
+		}
+		Node<V> node = (Node<V>) timer;
+		if (!node._pending){
+			return false;
+		}
+		if (node._heapEntry != null){
+			_overflow.remove(node._heapEntry);
+			node._heapEntry = null;
+		} else {
+			this.unlink(node);
+		}
+		node._pending = false;
+		_size--;
+		return true;
+	}
+
+	/**
+	 * Moves the clock forward one tick and returns the timers due at it,
+	 * which are no longer pending. Cascading runs first, from the top
+	 * level down, so every timer due at the new tick is in the batch.
+	 *
+	 * @return the batch of timers whose deadline is the new tick, possibly empty
+	 */
+	public List<Entry<Long,V>> tick() {
+		_now++;
+		int wheelBits = _levels * SLOT_BITS;
+		if ((_now & ((1L << wheelBits) - 1)) == 0){
+			// The whole wheel wrapped: bring in timers that now fit
+			while (!_overflow.isEmpty() && (_overflow.min().getKey() >>> wheelBits) == (_now >>> wheelBits)){
+				Node<V> node = _overflow.removeMin().getValue();
+				node._heapEntry = null;
+				this.place(node);
+			}
+		}
+		for (int level = _levels - 1; level > 0; level--){
+			int shift = level * SLOT_BITS;
+			if ((_now & ((1L << shift) - 1)) == 0){
+				this.cascade(level * SLOTS + (int) ((_now >>> shift) & (SLOTS - 1)));
+			}
+		}
+
+		int slot = (int) (_now & (SLOTS - 1));
+		List<Entry<Long,V>> expired = new ArrayList<Entry<Long,V>>();
+		Node<V> node = _slots[slot];
+		_slots[slot] = null;
+		while (node != null){
+			Node<V> next = node._next;
+			node._prev = null;
+			node._next = null;
+			node._pending = false;
+			expired.add(node);
+			node = next;
+		}
+		_size -= expired.size();
+		return expired;
+	}
+
+	/**
+	 * Ticks until the clock reaches the given tick, and returns every
+	 * timer that fired on the way, in order of deadline. If no timers are
+	 * pending the clock jumps straight there.
+	 *
+	 * @param time the tick to move the clock to
+	 * @return the timers that fired
+	 * @throws IllegalArgumentException if time is before the current tick
+	 */
+	public List<Entry<Long,V>> advanceTo(long time) {
+		if (time < _now){
+			throw new IllegalArgumentException("ERROR: Time " + time + " is before the current tick, " + _now);
+		}
+		List<Entry<Long,V>> expired = new ArrayList<Entry<Long,V>>();
+		while (_now < time){
+			if (_size == 0){
+				_now = time;
+				break;
+			}
+			expired.addAll(this.tick());
+		}
+		return expired;
+	}
+
+	/**
+	 * Puts a pending timer where it belongs for the current tick: in the
+	 * slot for its highest differing group, or in the backing MyHeap if
+	 * that group is beyond the wheel. A timer due at the current tick
+	 * (only possible while cascading) goes to the level 0 slot that is
+	 * about to expire.
+	 *
+	 * @param node the timer to be placed
+	 */
+	private void place(Node<V> node) {
+		long deadline = node._key;
+		long diff = deadline ^ _now;
+		int level = diff == 0 ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / SLOT_BITS;
+		if (level >= _levels){
+			node._heapEntry = _overflow.insert(deadline, node);
+			return;
+		}
+		int slot = level * SLOTS + (int) ((deadline >>> (level * SLOT_BITS)) & (SLOTS - 1));
+		node._slot = slot;
+		node._prev = null;
+		node._next = _slots[slot];
+		if (node._next != null){
+			node._next._prev = node;
+		}
+		_slots[slot] = node;
+	}
+
+	// Empties a slot and places each of its timers again, one level down or more
+	private void cascade(int slot) {
+		Node<V> node = _slots[slot];
+		_slots[slot] = null;
+		while (node != null){
+			Node<V> next = node._next;
+			this.place(node);
+			node = next;
+		}
+	}
+
+	// Takes a timer out of the list of its slot
+	private void unlink(Node<V> node) {
+		if (node._prev == null){
+			_slots[node._slot] = node._next;
+		} else {
+			node._prev._next = node._next;
+		}
+		if (node._next != null){
+			node._next._prev = node._prev;
+		}
+		node._prev = null;
+		node._next = null;
+	}
+
+	/**
+	 * A timer, which is also a node in its slot's doubly linked list, or
+	 * the value of its entry in the backing MyHeap.
+	 */
+	private static final class Node<V> implements Entry<Long,V> {
+
+		private final TimingWheel<V> _owner;
+		private final long _key;
+		private final V _value;
+		private boolean _pending;
+		private int _slot;
+		private Node<V> _prev;
+		private Node<V> _next;
+		private Entry<Long, Node<V>> _heapEntry;
+
+		private Node(TimingWheel<V> owner, long key, V value) {
+			_owner = owner;
+			_key = key;
+			_value = value;
+			_pending = true;
+		}
+
+		public Long getKey() {
+			return _key;
+		}
+
+		public V getValue() {
+			return _value;
+		}
+	}
+
+	private static final class LongComparator implements Comparator<Long> {
+		public int compare(Long o1, Long o2) {
+			return o1.compareTo(o2);
+		}
+	}
+}
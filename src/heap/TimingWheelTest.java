@@ -0,0 +1,142 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * This class is used to test the functionality of TimingWheel.
+ */
+
+/* Most tests use a wheel with only 2 levels (4096 ticks) so that timers
+ * cascade between levels and go through the backing MyHeap within a
+ * short run.
+ */
+
+public class TimingWheelTest {
+
+	/**
+	 * To check that each tick returns exactly the timers due at it, at
+	 * every level and from the backing MyHeap.
+	 */
+	@Test
+	public void testBatchesPerTick() {
+		TimingWheel<String> wheel = new TimingWheel<String>(0, 2);
+		long[] deadlines = {1, 1, 63, 64, 65, 4095, 4096, 4097, 10000, 10000};
+		for (long deadline : deadlines){
+			wheel.schedule(deadline, "t" + deadline);
+		}
+		assertThat(wheel.getOverflowSize(), is(4));
+		int fired = 0;
+		while (!wheel.isEmpty()){
+			List<Entry<Long,String>> batch = wheel.tick();
+			for (Entry<Long,String> timer : batch){
+				assertThat(timer.getKey(), is(wheel.getTime()));
+				assertThat(timer.getKey(), is(deadlines[fired++]));
+			}
+		}
+		assertThat(fired, is(deadlines.length));
+		assertThat(wheel.getTime(), is(10000L));
+	}
+
+	/**
+	 * To check a random mix of schedules, cancels and ticks against a set
+	 * of the timers that should still be pending.
+	 */
+	@Test
+	public void testRandomScheduleAndCancel() {
+		TimingWheel<Integer> wheel = new TimingWheel<Integer>(100, 2);
+		List<Entry<Long,Integer>> timers = new ArrayList<Entry<Long,Integer>>();
+		Set<Entry<Long,Integer>> pending = new HashSet<Entry<Long,Integer>>();
+		Random random = new Random(15);
+		for (int step = 0; step < 50000; step++){
+			int op = random.nextInt(10);
+			if (op < 4){
+				long delay = 1 + random.nextInt(1 << random.nextInt(16));
+				Entry<Long,Integer> timer = wheel.schedule(wheel.getTime() + delay, step);
+				timers.add(timer);
+				pending.add(timer);
+			} else if (op < 6 && !timers.isEmpty()){
+				Entry<Long,Integer> timer = timers.get(random.nextInt(timers.size()));
+				assertThat(wheel.cancel(timer), is(pending.remove(timer)));
+			} else {
+				for (Entry<Long,Integer> timer : wheel.tick()){
+					assertThat(timer.getKey(), is(wheel.getTime()));
+					assertTrue(pending.remove(timer));
+				}
+				for (Entry<Long,Integer> timer : pending){
+					assertTrue(timer.getKey() > wheel.getTime());
+				}
+			}
+			assertThat(wheel.size(), is(pending.size()));
+		}
+		for (Entry<Long,Integer> timer : wheel.advanceTo(wheel.getTime() + (1 << 16))){
+			assertTrue(pending.remove(timer));
+		}
+		assertTrue(pending.isEmpty());
+	}
+
+	/**
+	 * To check that advanceTo() returns timers in order of deadline and
+	 * jumps straight to the target once nothing is pending.
+	 */
+	@Test
+	public void testAdvanceTo() {
+		TimingWheel<String> wheel = new TimingWheel<String>();
+		Entry<Long,String> late = wheel.schedule(1L << 30, "C");
+		wheel.schedule(7L, "B");
+		wheel.schedule(3L, "A");
+		List<Entry<Long,String>> fired = wheel.advanceTo(10);
+		assertThat(fired.size(), is(2));
+		assertThat(fired.get(0).getValue(), is("A"));
+		assertThat(fired.get(1).getValue(), is("B"));
+		assertThat(wheel.cancel(late), is(true));
+		assertThat(wheel.cancel(late), is(false));
+		assertTrue(wheel.advanceTo(1L << 40).isEmpty());
+		assertThat(wheel.getTime(), is(1L << 40));
+	}
+
+	/**
+	 * Here we test that a fired timer can't be cancelled.
+	 */
+	@Test
+	public void testCancelFiredTimerReturnsFalse() {
+		TimingWheel<String> wheel = new TimingWheel<String>();
+		Entry<Long,String> timer = wheel.schedule(1L, "A");
+		assertThat(wheel.tick().size(), is(1));
+		assertThat(wheel.cancel(timer), is(false));
+	}
+
+	/**
+	 * Here we test that a deadline at the current tick throws an
+	 * InvalidKeyException.
+	 */
+	@Test(expected = InvalidKeyException.class)
+	public void testScheduleNowThrowsInvalidKeyException() {
+		TimingWheel<String> wheel = new TimingWheel<String>(50, 4);
+		wheel.schedule(50L, "A");
+	}
+
+	/**
+	 * Here we test that a timer from another wheel is rejected.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testForeignTimerThrowsInvalidEntryException() {
+		TimingWheel<String> wheel = new TimingWheel<String>();
+		TimingWheel<String> other = new TimingWheel<String>();
+		wheel.cancel(other.schedule(5L, "A"));
+	}
+
+}
@@ -0,0 +1,196 @@
+package heap;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A bounded collector of the k entries with the greatest keys seen in a
+ * stream, in O(k) memory however long the stream is. (For the k least
+ * keys, pass a reversed comparator.)
+ *
+ * The entries kept are in a MyHeap, so the root is the worst of them: the
+ * threshold a candidate has to beat. Once k entries are kept, a candidate
+ * that is not greater than the threshold is rejected after that one
+ * comparison, which is the common case for a long stream. One that is
+ * greater replaces the root in place with a single downHeap, rather than
+ * a removeMin followed by an insert.
+ *
+ * Collectors are mergeable: the top k of a union of streams is the top k
+ * of the union of their top k's, so partitions can each collect their
+ * own and then be combined with merge(). A collector can also be written
+ * to and read from a channel as a MyHeap snapshot, to be merged in
+ * another process.
+ */
+
+public class TopK<K,V> {
+
+	private final MyHeap<K,V> _heap;
+	private final Comparator<K> _comp;
+	private final int _k;
+
+	/**
+	 * Creates an empty collector for the k greatest keys.
+	 *
+	 * @param comparator the comparator to be used for keys
+	 * @param k the number of entries to keep
+	 * @throws IllegalArgumentException if the comparator is null or k is not positive
+	 */
+	public TopK(Comparator<K> comparator, int k) {
+		this(new MyHeap<K,V>(comparator), comparator, k);
+	}
+
+	/**
+	 * Wraps a heap already holding at most k entries, for readSnapshot.
+	 *
+	 * @param heap the entries kept
+	 * @param comparator the heap's comparator
+	 * @param k the number of entries to keep
+	 * @throws IllegalArgumentException if k is not positive
+	 */
+	private TopK(MyHeap<K,V> heap, Comparator<K> comparator, int k) {
+		if (k < 1){
+			throw new IllegalArgumentException("ERROR: k must be at least 1");
+		}
+		_heap = heap;
+		_comp = comparator;
+		_k = k;
+	}
+
+	/**
+	 * Returns the number of entries kept, which is at most k.
+	 *
+	 * @return an int representing the number of entries kept
+	 */
+	public int size() {
+		return _heap.size();
+	}
+
+	/**
+	 * Returns the number of entries this collector keeps once it is full.
+	 *
+	 * @return k
+	 */
+	public int getK() {
+		return _k;
+	}
+
+	/**
+	 * Returns but does not remove the worst entry kept: once k entries
+	 * are kept, a candidate has to have a greater key to get in.
+	 *
+	 * @return the entry kept with the least key
+	 * @throws EmptyPriorityQueueException if nothing has been kept
+	 */
+	public Entry<K,V> threshold() throws EmptyPriorityQueueException {
+		return _heap.min();
+	}
+
+	/**
+	 * Offers a candidate to the collector. It is kept if fewer than k
+	 * entries are kept, or if its key is greater than the threshold, in
+	 * which case it replaces the threshold entry. A rejected candidate
+	 * costs one comparison; an accepted one O(log k).
+	 *
+	 * @param key of the candidate
+	 * @param value of the candidate
+	 * @return true if the candidate was kept
+	 * @throws InvalidKeyException if the key is not suitable for the comparator
+	 */
+	public boolean offer(K key, V value) throws InvalidKeyException {
+		if (_heap.size() < _k){
+			_heap.insert(key, value);
+			return true;
+		}
+		if (key == null){
+			throw new InvalidKeyException("ERROR: Key is null");
+		}
+		if (_comp.compare(key, _heap.min().getKey()) <= 0){
+			return false;
+		}
+		_heap.replaceMin(new MyHeapEntry<K,V>(key, value));
+		return true;
+	}
+
+	/**
+	 * Offers every entry kept by another collector to this one, so that
+	 * this one ends up with the top k of both streams. The other
+	 * collector is not changed.
+	 *
+	 * @param other a collector using the same ordering
+	 */
+	public void merge(TopK<K,V> other) {
+		if (other == this){
+			return;
+		}
+		Iterator<MyHeapEntry<K,V>> entries = other._heap.getTree().iterator();
+		while (entries.hasNext()){
+			MyHeapEntry<K,V> entry = entries.next();
+			this.offer(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Returns the entries kept, best first. The collector is not
+	 * changed. This method runs in O(k log k) time.
+	 *
+	 * @return a new list of the entries kept, greatest key first
+	 */
+	public List<Entry<K,V>> toSortedList() {
+		List<Entry<K,V>> sorted = new ArrayList<Entry<K,V>>(_heap.size());
+		Iterator<MyHeapEntry<K,V>> entries = _heap.getTree().iterator();
+		while (entries.hasNext()){
+			sorted.add(entries.next());
+		}
+		Collections.sort(sorted, new Comparator<Entry<K,V>>() {
+			public int compare(Entry<K,V> a, Entry<K,V> b) {
+				return _comp.compare(b.getKey(), a.getKey());
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * Writes the entries kept to the channel as a MyHeap snapshot, so
+	 * that another process can read them back and merge them.
+	 *
+	 * @param channel to write to
+	 * @param keyCodec to encode the keys with
+	 * @param valueCodec to encode the values with
+	 * @throws IOException if the channel fails
+	 */
+	public void writeSnapshot(WritableByteChannel channel, HeapCodec<K> keyCodec,
+			HeapCodec<V> valueCodec) throws IOException {
+		_heap.writeSnapshot(channel, keyCodec, valueCodec);
+	}
+
+	/**
+	 * Reads a collector written by writeSnapshot.
+	 *
+	 * @param channel to read from
+	 * @param comparator the comparator the collector was using
+	 * @param k the number of entries to keep
+	 * @param keyCodec to decode the keys with
+	 * @param valueCodec to decode the values with
+	 * @return the collector
+	 * @throws IOException if the channel fails, the snapshot is corrupt,
+	 *         or it holds more than k entries
+	 */
+	public static <K,V> TopK<K,V> readSnapshot(ReadableByteChannel channel, Comparator<K> comparator,
+			int k, HeapCodec<K> keyCodec, HeapCodec<V> valueCodec) throws IOException {
+		MyHeap<K,V> heap = MyHeap.readSnapshot(channel, comparator, keyCodec, valueCodec);
+		if (heap.size() > k){
+			throw new IOException("ERROR: Snapshot holds " + heap.size() + " entries, more than k = " + k);
+		}
+		return new TopK<K,V>(heap, comparator, k);
+	}
+}
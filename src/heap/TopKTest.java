@@ -0,0 +1,162 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.Entry;
+
+/**
+ * This class is used to test the functionality of TopK.
+ */
+
+/* The tests feed a shuffled stream of distinct keys, so the expected top
+ * k is just the k largest, and count comparisons to check that a
+ * rejected candidate only costs one.
+ */
+
+public class TopKTest {
+
+	/**
+	 * To check that a collector keeps the k greatest keys of a stream,
+	 * and returns them best first.
+	 */
+	@Test
+	public void testKeepsGreatest() {
+		TopK<Integer, String> top = new TopK<Integer, String>(new IntegerComparator(), 100);
+		for (int key : this.stream(100000, 16)){
+			top.offer(key, "v" + key);
+		}
+		assertThat(top.size(), is(100));
+		assertThat(top.threshold().getKey(), is(99900));
+		List<Entry<Integer,String>> sorted = top.toSortedList();
+		for (int i = 0; i < 100; i++){
+			assertThat(sorted.get(i).getKey(), is(99999 - i));
+			assertThat(sorted.get(i).getValue(), is("v" + (99999 - i)));
+		}
+	}
+
+	/**
+	 * To check that a candidate no better than the threshold is rejected
+	 * after a single comparison, and that ties with it are rejected.
+	 */
+	@Test
+	public void testRejectCostsOneComparison() {
+		CountingComparator comparator = new CountingComparator();
+		TopK<Integer, String> top = new TopK<Integer, String>(comparator, 3);
+		top.offer(10, "A");
+		top.offer(20, "B");
+		top.offer(30, "C");
+		comparator._count = 0;
+		assertThat(top.offer(5, "D"), is(false));
+		assertThat(top.offer(10, "E"), is(false));
+		assertThat(comparator._count, is(2));
+		assertThat(top.offer(25, "F"), is(true));
+		assertThat(top.threshold().getValue(), is("B"));
+	}
+
+	/**
+	 * To check that merging the collectors of several partitions gives
+	 * the top k of the whole stream, and that a reversed comparator
+	 * keeps the least keys.
+	 */
+	@Test
+	public void testMergePartitions() {
+		Comparator<Integer> least = Collections.reverseOrder(new IntegerComparator());
+		List<Integer> stream = this.stream(20000, 17);
+		List<TopK<Integer, Integer>> partitions = new ArrayList<TopK<Integer, Integer>>();
+		for (int p = 0; p < 4; p++){
+			TopK<Integer, Integer> partition = new TopK<Integer, Integer>(least, 50);
+			for (int key : stream.subList(p * 5000, (p + 1) * 5000)){
+				partition.offer(key, key);
+			}
+			partitions.add(partition);
+		}
+		TopK<Integer, Integer> merged = new TopK<Integer, Integer>(least, 50);
+		for (TopK<Integer, Integer> partition : partitions){
+			merged.merge(partition);
+		}
+		merged.merge(merged);
+		List<Entry<Integer,Integer>> sorted = merged.toSortedList();
+		assertThat(sorted.size(), is(50));
+		for (int i = 0; i < 50; i++){
+			assertThat(sorted.get(i).getKey(), is(i));
+		}
+	}
+
+	/**
+	 * To check that a collector survives a snapshot round trip and keeps
+	 * working afterwards.
+	 */
+	@Test
+	public void testSnapshotRoundTrip() throws IOException {
+		TopK<Integer, String> top = new TopK<Integer, String>(new IntegerComparator(), 10);
+		for (int key : this.stream(1000, 18)){
+			top.offer(key, "v" + key);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		top.writeSnapshot(Channels.newChannel(out), HeapCodec.INTEGER, HeapCodec.STRING);
+		TopK<Integer, String> copy = TopK.readSnapshot(Channels.newChannel(
+				new ByteArrayInputStream(out.toByteArray())), new IntegerComparator(), 10,
+				HeapCodec.INTEGER, HeapCodec.STRING);
+		assertThat(copy.size(), is(10));
+		assertThat(copy.offer(5000, "new"), is(true));
+		assertThat(copy.toSortedList().get(0).getValue(), is("new"));
+		assertThat(copy.threshold().getKey(), is(991));
+	}
+
+	/**
+	 * Here we test that a snapshot with more than k entries is rejected.
+	 */
+	@Test(expected = IOException.class)
+	public void testSnapshotLargerThanKThrowsIOException() throws IOException {
+		TopK<Integer, String> top = new TopK<Integer, String>(new IntegerComparator(), 10);
+		for (int key : this.stream(100, 19)){
+			top.offer(key, "v" + key);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		top.writeSnapshot(Channels.newChannel(out), HeapCodec.INTEGER, HeapCodec.STRING);
+		TopK.readSnapshot(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())),
+				new IntegerComparator(), 5, HeapCodec.INTEGER, HeapCodec.STRING);
+	}
+
+	/**
+	 * Here we test that k must be positive.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroKThrowsIllegalArgumentException() {
+		new TopK<Integer, String>(new IntegerComparator(), 0);
+	}
+
+	// The keys 0 to n - 1, shuffled
+	private List<Integer> stream(int n, long seed) {
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++){
+			keys.add(i);
+		}
+		Collections.shuffle(keys, new Random(seed));
+		return keys;
+	}
+
+	private static class CountingComparator extends IntegerComparator {
+		private int _count = 0;
+
+		@Override
+		public int compare(Integer o1, Integer o2) {
+			_count++;
+			return super.compare(o1, o2);
+		}
+	}
+
+}